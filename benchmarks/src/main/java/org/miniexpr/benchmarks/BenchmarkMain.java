@@ -0,0 +1,50 @@
+package org.miniexpr.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * benchmarks.jar 的入口。接受与 JMH 自带入口相同的命令行参数，并补充两个默认值：
+ * <ul>
+ *   <li>总是启用 GC profiler（报告 gc.alloc.rate.norm 等分配指标）；</li>
+ *   <li>未指定 {@code -rf} / {@code -rff} 时以 JSON 格式写入 {@code miniexpr-benchmarks.json}，便于比较不同版本的结果。</li>
+ * </ul>
+ * 例如：{@code java -jar target/benchmarks.jar EvalBenchmark -p corpus=logical -rff before.json}
+ */
+public final class BenchmarkMain {
+    private static final String DEFAULT_RESULT_FILE = "miniexpr-benchmarks.json";
+
+    private BenchmarkMain() {}
+
+    public static void main(String[] args) throws RunnerException {
+        CommandLineOptions cmd;
+        try {
+            cmd = new CommandLineOptions(args);
+        } catch (CommandLineOptionException e) {
+            System.err.println("Error parsing command line: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListProfilers()
+                || cmd.shouldListResultFormats() || cmd.shouldListWithParams()) {
+            // 帮助与列表类选项交给 JMH 自带入口处理
+            try {
+                org.openjdk.jmh.Main.main(args);
+            } catch (Exception e) {
+                throw new RunnerException(e);
+            }
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd).addProfiler(GCProfiler.class);
+        if (!cmd.getResultFormat().hasValue()) options.resultFormat(ResultFormatType.JSON);
+        if (!cmd.getResult().hasValue()) options.result(DEFAULT_RESULT_FILE);
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,120 @@
+package org.miniexpr.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.miniexpr.Bindings;
+import org.miniexpr.CompiledExpression;
+
+/**
+ * 基准测试使用的表达式语料。
+ * <p>
+ * 每条语料以名字作为 JMH 的 {@code @Param} 取值（各基准类中的取值列表须与此处保持一致），覆盖不同形态的输入：
+ * 短表达式、长表达式、深层嵌套、字符串为主、逻辑短路链、三元分支、函数调用、深度上千层的长链以及由程序生成的长规则。
+ * 变量统一取 {@link #VARIABLES} 中的值，保证各次运行的求值结果一致。
+ */
+public final class Corpus {
+
+    /** 语料中出现的变量及其取值 */
+    public static final Map<String, Object> VARIABLES;
+
+    static {
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("a", 7L);
+        vars.put("b", 3L);
+        vars.put("c", 11L);
+        vars.put("x", 2.5);
+        vars.put("name", "bob");
+        VARIABLES = vars;
+    }
+
+    private Corpus() {}
+
+    public static String get(String name) {
+        switch (name) {
+            case "short":
+                return "a + 1";
+            case "arith":
+                return "(a + b) * c - a / 2 + b % 3 - x * 4";
+            case "long":
+                return longSum(64);
+            case "nested":
+                return nested(48);
+            case "strings":
+                return "'prefix-' + name + '-' + 'suffix' == 'prefix-bob-suffix' ? 'match: ' + name : 'miss: ' + name";
+            case "logical":
+                return "a > 0 && b > 0 && c > 0 && a < 100 && b < 100 && c < 100 && x != 0";
+            case "ternary":
+                return "a > b ? (a > c ? a : c) : (b > c ? b : c)";
+            case "functions":
+                return "max(a, b) * 2 + min(c, x) - abs(b - c) + len(name)";
+            case "deep":
+                return deepChain(2000);
+            case "generated":
+                return generated(120);
+            default:
+                throw new IllegalArgumentException("Unknown corpus entry: " + name);
+        }
+    }
+
+    /** 按 {@link #VARIABLES} 填充表达式的槽位绑定 */
+    public static Bindings bind(CompiledExpression compiled) {
+        Bindings bindings = compiled.newBindings();
+        for (int i = 0; i < bindings.size(); i++) {
+            bindings.set(i, VARIABLES.get(bindings.name(i)));
+        }
+        return bindings;
+    }
+
+    // a * 1 + b * 2 + c * 3 + ...：宽而浅的长表达式
+    private static String longSum(int terms) {
+        String[] vars = {"a", "b", "c", "x"};
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < terms; i++) {
+            if (i > 0) sb.append(i % 3 == 0 ? " - " : " + ");
+            sb.append(vars[i % vars.length]).append(" * ").append(i + 1);
+        }
+        return sb.toString();
+    }
+
+    // a + 1 - b + 1 - b ...：左结合的长链，AST 深度与项数相同（解释执行时逐层递归）
+    private static String deepChain(int terms) {
+        StringBuilder sb = new StringBuilder("a");
+        for (int i = 1; i < terms; i++) sb.append(i % 2 == 0 ? " - b" : " + 1");
+        return sb.toString();
+    }
+
+    // 由程序生成的长规则：比较、算术、一元运算、函数调用与三元分支组成的子句以 && / || 连接（固定种子，结果确定）
+    private static String generated(int clauses) {
+        String[] vars = {"a", "b", "c", "x"};
+        long seed = 42;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < clauses; i++) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            int r = (int) (seed >>> 33);
+            String v = vars[r % 4], w = vars[(r >>> 4) % 4];
+            if (i > 0) sb.append((r >>> 8) % 3 == 0 ? " || " : " && ");
+            switch ((r >>> 12) % 5) {
+                case 0: sb.append('(').append(v).append(" * ").append(i % 7 + 1).append(" + -").append(w).append(") > ")
+                        .append(i % 13); break;
+                case 1: sb.append("name != 'rule-").append(i).append('\''); break;
+                case 2: sb.append("max(").append(v).append(", ").append(w).append(" - 1) <= ").append(i); break;
+                case 3: sb.append('(').append(v).append(" > ").append(i % 5).append(" ? ").append(w).append(" % 3 == 1 : !(")
+                        .append(v).append(" < ").append(w).append("))"); break;
+                default: sb.append("-(-(").append(v).append(" / 2)) != ").append(i); break;
+            }
+        }
+        return sb.toString();
+    }
+
+    // ((((a + 1) * 2 + 1) * 2 ...)：深层嵌套的括号
+    private static String nested(int depth) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) sb.append('(');
+        sb.append('a');
+        for (int i = 0; i < depth; i++) {
+            sb.append(i % 2 == 0 ? " + 1)" : " * b)");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,102 @@
+package org.miniexpr.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.miniexpr.Bindings;
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.ExecutionMode;
+import org.miniexpr.MiniExprEngine;
+import org.miniexpr.NumericMode;
+import org.miniexpr.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 金额计算：默认的 double 语义、精确十进制语义（定点数快速路径，以及小数位数超出 15 位、
+ * 只能按 BigDecimal 计算的慢速路径），与手写的逐步 BigDecimal 运算的对比。
+ * <p>
+ * 分配量可以加上 {@code -prof gc} 查看。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecimalBenchmark {
+    private static final String TOTAL = "(price * quantity - discount) * 1.0825 + shipping";
+    private static final String CHECK = "(price * quantity - discount) * 1.0825 + shipping > 50.00";
+    private static final BigDecimal TAX = new BigDecimal("1.0825");
+
+    @Param({"INTERPRETER", "BYTECODE", "VM"})
+    public String mode;
+
+    private CompiledExpression doubleTotal;
+    private CompiledExpression decimalTotal;
+    private CompiledExpression decimalCheck;
+    private Bindings doubleBindings;
+    private Bindings decimalBindings;
+    private Bindings decimalCheckBindings;
+    // 价格有 18 位小数，定点数放不下，每次都按 BigDecimal 计算
+    private Bindings exactBindings;
+
+    private BigDecimal price = new BigDecimal("19.99");
+    private long quantity = 3;
+    private BigDecimal discount = new BigDecimal("5.00");
+    private BigDecimal shipping = new BigDecimal("4.95");
+
+    @Setup
+    public void setup() throws ParseException {
+        ExecutionMode m = ExecutionMode.valueOf(mode);
+        MiniExprEngine doubles = MiniExprEngine.builder().mode(m).build();
+        MiniExprEngine decimals = MiniExprEngine.builder().mode(m).numeric(NumericMode.DECIMAL).build();
+        doubleTotal = doubles.compile(TOTAL);
+        decimalTotal = decimals.compile(TOTAL);
+        decimalCheck = decimals.compile(CHECK);
+        doubleBindings = doubleTotal.newBindings()
+                .set("price", 19.99).set("quantity", 3L).set("discount", 5.0).set("shipping", 4.95);
+        decimalBindings = bind(decimalTotal, price);
+        decimalCheckBindings = bind(decimalCheck, price);
+        exactBindings = bind(decimalTotal, new BigDecimal("19.990000000000000001"));
+    }
+
+    private Bindings bind(CompiledExpression expr, BigDecimal p) {
+        return expr.newBindings().set("price", p).set("quantity", quantity).set("discount", discount)
+                .set("shipping", shipping);
+    }
+
+    @Benchmark
+    public Object doubleTotal() throws ParseException {
+        return doubleTotal.eval(doubleBindings);
+    }
+
+    @Benchmark
+    public Object decimalTotal() throws ParseException {
+        return decimalTotal.eval(decimalBindings);
+    }
+
+    @Benchmark
+    public boolean decimalCheck() throws ParseException {
+        return decimalCheck.evalBoolean(decimalCheckBindings);
+    }
+
+    @Benchmark
+    public Object decimalTotalExactPath() throws ParseException {
+        return decimalTotal.eval(exactBindings);
+    }
+
+    @Benchmark
+    public Object handWrittenBigDecimal() {
+        return price.multiply(BigDecimal.valueOf(quantity)).subtract(discount).multiply(TAX).add(shipping);
+    }
+}
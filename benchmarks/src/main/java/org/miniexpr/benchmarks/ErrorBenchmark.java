@@ -0,0 +1,67 @@
+package org.miniexpr.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.miniexpr.CompileResult;
+import org.miniexpr.MiniExpr;
+import org.miniexpr.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 编译失败的路径：校验无效表达式时捕获异常、{@link MiniExpr#tryCompile(String)}，
+ * 以及读取完整错误消息的开销。{@code stackTrace} 参数控制 ParseException 是否捕获堆栈。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ErrorBenchmark {
+
+    @Param({"a + * b", "(a + b) * (c - 1", "'unterminated + name", "a > 1 && b < 2 || c @ 3"})
+    public String source;
+
+    @Param({"true", "false"})
+    public boolean stackTrace;
+
+    @Setup
+    public void setup() {
+        ParseException.setStackTraceEnabled(stackTrace);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ParseException.setStackTraceEnabled(true);
+    }
+
+    @Benchmark
+    public Object compileCatch() {
+        try {
+            return MiniExpr.compile(source);
+        } catch (ParseException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public CompileResult tryCompile() {
+        return MiniExpr.tryCompile(source);
+    }
+
+    @Benchmark
+    public String tryCompileMessage() {
+        return MiniExpr.tryCompile(source).formattedMessage();
+    }
+}
@@ -0,0 +1,73 @@
+package org.miniexpr.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.miniexpr.Bindings;
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.ExecutionMode;
+import org.miniexpr.MiniExpr;
+import org.miniexpr.Node;
+import org.miniexpr.ParseException;
+import org.miniexpr.bytecode.BytecodeCompiler;
+import org.miniexpr.vm.VmCompiler;
+import org.miniexpr.vm.VmProgram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 求值：对预先编译好的表达式反复求值，比较解释执行、字节码与虚拟机三种执行方式。
+ * <ul>
+ *   <li>{@link #evalNode()}：直接调用 AST 根节点（或生成类、{@link VmProgram}）的 {@link Node#eval}，不含任何包装；</li>
+ *   <li>{@link #evalCompiled()}：经由 {@link CompiledExpression#eval(Bindings)}。</li>
+ * </ul>
+ * 基本类型求值路径与入口方法见 {@link TypedEvalBenchmark}。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvalBenchmark {
+
+    @Param({"short", "arith", "long", "nested", "strings", "logical", "ternary", "functions", "deep", "generated"})
+    public String corpus;
+
+    @Param({"INTERPRETER", "BYTECODE", "VM"})
+    public ExecutionMode mode;
+
+    private CompiledExpression compiled;
+    private Node executable;
+    private Bindings bindings;
+
+    @Setup
+    public void setup() throws ParseException {
+        compiled = MiniExpr.compile(Corpus.get(corpus), mode);
+        if (compiled.mode() != mode) throw new IllegalStateException("Bytecode compilation failed for " + corpus);
+        bindings = Corpus.bind(compiled);
+        switch (mode) {
+            case BYTECODE: executable = new BytecodeCompiler().compile(compiled.root()); break;
+            case VM: executable = VmCompiler.compile(compiled.root()); break;
+            default: executable = compiled.root();
+        }
+    }
+
+    @Benchmark
+    public Object evalNode() throws ParseException {
+        return executable.eval(bindings);
+    }
+
+    @Benchmark
+    public Object evalCompiled() throws ParseException {
+        return compiled.eval(bindings);
+    }
+}
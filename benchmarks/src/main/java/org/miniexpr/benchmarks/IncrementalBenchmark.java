@@ -0,0 +1,83 @@
+package org.miniexpr.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.miniexpr.Bindings;
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.MiniExpr;
+import org.miniexpr.ParseException;
+import org.miniexpr.incremental.IncrementalEvaluator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 事件流式的反复求值：每个事件只修改一个变量，完整求值与 {@link IncrementalEvaluator} 增量求值的对比。
+ * <p>
+ * 表达式由 {@link #variables} 个变量组成（每项形如 {@code (v3 * 4 - v4 / 2)}，相加后与阈值比较），
+ * 每次操作依次修改下一个变量后求值。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IncrementalBenchmark {
+
+    @Param({"8", "32"})
+    public int variables;
+
+    private CompiledExpression expr;
+    private Bindings bindings;
+    private IncrementalEvaluator incremental;
+    private Long[] values;
+    private int next;
+
+    @Setup
+    public void setup() throws ParseException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < variables; i++) {
+            if (i > 0) sb.append(" + ");
+            sb.append("(v").append(i).append(" * ").append(i + 1).append(" - v").append((i + 1) % variables).append(" / 2)");
+        }
+        sb.append(" > 1000 ? 'high' : 'low'");
+        expr = MiniExpr.compile(sb.toString());
+        bindings = expr.newBindings();
+        incremental = expr.incremental();
+        values = new Long[16];
+        for (int i = 0; i < values.length; i++) values[i] = (long) i * 7;
+        for (int i = 0; i < variables; i++) {
+            bindings.set(i, values[i % values.length]);
+            incremental.set(i, values[i % values.length]);
+        }
+    }
+
+    // 下一个事件：依次修改下一个变量，每轮换一个新值
+    private Long nextValue() {
+        next++;
+        return values[(next / variables + next) & 15];
+    }
+
+    @Benchmark
+    public Object full() throws ParseException {
+        Long value = nextValue();
+        bindings.set(next % variables, value);
+        return expr.eval(bindings);
+    }
+
+    @Benchmark
+    public Object incremental() throws ParseException {
+        Long value = nextValue();
+        incremental.set(next % variables, value);
+        return incremental.eval();
+    }
+}
@@ -0,0 +1,55 @@
+package org.miniexpr.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.miniexpr.Lexer;
+import org.miniexpr.ParseException;
+import org.miniexpr.Token;
+import org.miniexpr.TokenType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 词法分析：拉取式扫描（{@link Lexer#next()}，解析器使用的方式）与生成 Token 列表的 {@link Lexer#tokenize()}。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark {
+
+    @Param({"short", "arith", "long", "nested", "strings", "logical", "ternary", "functions", "deep", "generated"})
+    public String corpus;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = Corpus.get(corpus);
+    }
+
+    @Benchmark
+    public int scan() throws ParseException {
+        Lexer lexer = new Lexer(source);
+        int count = 0;
+        while (lexer.next() != TokenType.EOF) count++;
+        return count;
+    }
+
+    @Benchmark
+    public List<Token> tokenize() throws ParseException {
+        return new Lexer(source).tokenize();
+    }
+}
@@ -0,0 +1,115 @@
+package org.miniexpr.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.miniexpr.Bindings;
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.ExecutionMode;
+import org.miniexpr.Lexer;
+import org.miniexpr.Limits;
+import org.miniexpr.MiniExprEngine;
+import org.miniexpr.Node;
+import org.miniexpr.ParseException;
+import org.miniexpr.Parser;
+import org.miniexpr.functions.FunctionRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 复杂度限制的开销：不限制（{@link Limits#NONE}）与同时限制源码长度、Token 个数、嵌套深度、节点数的解析对比，
+ * 以及不限制与限制拼接长度时字符串模板的求值对比、不设与设置求值超时时函数调用的求值对比。
+ * 限制都足够宽松，不会真正触发。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LimitsBenchmark {
+
+    @Param({"INTERPRETER", "BYTECODE", "VM"})
+    public String mode;
+
+    private static final Limits STRICT = Limits.DEFAULT
+            .withMaxLength(1 << 16)
+            .withMaxTokens(4096)
+            .withMaxNodes(4096)
+            .withMaxStringLength(1 << 16)
+            .withEvalTimeout(1, TimeUnit.SECONDS);
+
+    private final FunctionRegistry functions = FunctionRegistry.builtins();
+    private String source;
+    private CompiledExpression template;
+    private CompiledExpression templateLimited;
+    private Bindings templateBindings;
+    private Bindings templateLimitedBindings;
+    private CompiledExpression calls;
+    private CompiledExpression callsTimed;
+    private Bindings callsBindings;
+    private Bindings callsTimedBindings;
+
+    @Setup
+    public void setup() throws ParseException {
+        ExecutionMode m = ExecutionMode.valueOf(mode);
+        source = Corpus.get("generated");
+        String t = "'user ' + name + ' (id ' + id + ') bought ' + count + ' items for ' + price + ' at ' + store";
+        template = MiniExprEngine.builder().mode(m).limits(Limits.NONE).build().compile(t);
+        templateLimited = MiniExprEngine.builder().mode(m).limits(STRICT).build().compile(t);
+        templateBindings = bind(template);
+        templateLimitedBindings = bind(templateLimited);
+        String c = "max(abs(x), abs(y)) + min(x, y) * abs(x - y)";
+        calls = MiniExprEngine.builder().mode(m).limits(Limits.NONE).build().compile(c);
+        callsTimed = MiniExprEngine.builder().mode(m).limits(STRICT).build().compile(c);
+        callsBindings = calls.newBindings().set("x", -7L).set("y", 3L);
+        callsTimedBindings = callsTimed.newBindings().set("x", -7L).set("y", 3L);
+    }
+
+    private static Bindings bind(CompiledExpression expr) {
+        return expr.newBindings()
+                .set("name", "alice")
+                .set("id", 1234567L)
+                .set("count", 3L)
+                .set("price", 19.5)
+                .set("store", "downtown");
+    }
+
+    @Benchmark
+    public Node parseUnlimited() throws ParseException {
+        return new Parser(new Lexer(source), functions, Limits.NONE).parseExpression();
+    }
+
+    @Benchmark
+    public Node parseLimited() throws ParseException {
+        return new Parser(new Lexer(source), functions, STRICT).parseExpression();
+    }
+
+    @Benchmark
+    public Object templateUnlimited() throws ParseException {
+        return template.eval(templateBindings);
+    }
+
+    @Benchmark
+    public Object templateLimited() throws ParseException {
+        return templateLimited.eval(templateLimitedBindings);
+    }
+
+    @Benchmark
+    public Object callsUntimed() throws ParseException {
+        return calls.eval(callsBindings);
+    }
+
+    @Benchmark
+    public Object callsTimed() throws ParseException {
+        return callsTimed.eval(callsTimedBindings);
+    }
+}
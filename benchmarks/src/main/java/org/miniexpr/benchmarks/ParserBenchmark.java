@@ -0,0 +1,63 @@
+package org.miniexpr.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.miniexpr.Lexer;
+import org.miniexpr.MiniExpr;
+import org.miniexpr.Node;
+import org.miniexpr.Optimizer;
+import org.miniexpr.ParseException;
+import org.miniexpr.Parser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 语法解析：{@link Parser#parseExpression()}，以及加上优化、完整编译的过程。
+ * <p>
+ * 解析器按需从 {@link Lexer} 拉取 Token，词法分析与解析交错进行，因此 {@link #parse()}
+ * 包含词法分析的耗时；单独的词法分析耗时见 {@link LexerBenchmark}。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"short", "arith", "long", "nested", "strings", "logical", "ternary", "functions", "deep", "generated"})
+    public String corpus;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = Corpus.get(corpus);
+        // 禁用缓存，使 compile 每次都完整地执行编译
+        MiniExpr.setCacheSize(0);
+    }
+
+    @Benchmark
+    public Node parse() throws ParseException {
+        return new Parser(new Lexer(source)).parseExpression();
+    }
+
+    @Benchmark
+    public Node parseAndOptimize() throws ParseException {
+        return Optimizer.optimize(new Parser(new Lexer(source)).parseExpression());
+    }
+
+    @Benchmark
+    public Object compile() throws ParseException {
+        return MiniExpr.compile(source);
+    }
+}
@@ -0,0 +1,86 @@
+package org.miniexpr.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.miniexpr.Bindings;
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.ExpressionSet;
+import org.miniexpr.MiniExprEngine;
+import org.miniexpr.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 对同一组变量求值一组规则：逐条求值各自编译的表达式，与求值合并了公共子表达式的 {@link ExpressionSet} 的对比。
+ * <p>
+ * 规则共享 {@code price * qty}、{@code tier == 'gold'} 等子表达式，各条的常量互不相同。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuleSetBenchmark {
+
+    private static final String[] TEMPLATES = {
+            "price * qty > %d",
+            "tier == 'gold' && price * qty * (1 - discount) > %d",
+            "tier == 'gold' ? price * qty * (1 - discount) : price * qty + %d",
+            "(price * qty - cost) / qty >= %d && tier != 'banned'",
+            "max(price * qty - cost, 0) * 0.2 + %d",
+    };
+
+    @Param({"50", "500"})
+    public int rules;
+
+    private CompiledExpression[] separate;
+    private Bindings[] separateBindings;
+    private ExpressionSet set;
+    private Bindings setBindings;
+    private Object[] out;
+
+    @Setup
+    public void setup() throws ParseException {
+        MiniExprEngine engine = MiniExprEngine.builder().cacheSize(0).build();
+        List<String> sources = new ArrayList<>(rules);
+        for (int i = 0; i < rules; i++) sources.add(String.format(TEMPLATES[i % TEMPLATES.length], i));
+
+        separate = new CompiledExpression[rules];
+        separateBindings = new Bindings[rules];
+        for (int i = 0; i < rules; i++) {
+            separate[i] = engine.compile(sources.get(i));
+            separateBindings[i] = bind(separate[i].newBindings());
+        }
+        set = engine.compileAll(sources);
+        setBindings = bind(set.newBindings());
+        out = new Object[rules];
+    }
+
+    private static Bindings bind(Bindings b) {
+        return b.set("price", 12.5).set("qty", 8L).set("cost", 40L).set("discount", 0.1).set("tier", "gold");
+    }
+
+    @Benchmark
+    public Object[] separate() throws ParseException {
+        for (int i = 0; i < separate.length; i++) out[i] = separate[i].eval(separateBindings[i]);
+        return out;
+    }
+
+    @Benchmark
+    public Object[] shared() throws ParseException {
+        set.eval(setBindings, out);
+        return out;
+    }
+}
@@ -0,0 +1,77 @@
+package org.miniexpr.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.ExpressionStore;
+import org.miniexpr.MiniExprEngine;
+import org.miniexpr.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 启动时加载大量表达式：从 {@link ExpressionStore} 读取与逐条编译的对比。
+ * <p>
+ * 表达式由各条语料加上不同的常量组成（源码互不相同），引擎禁用缓存。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StoreBenchmark {
+
+    private static final String[] CORPUS = {"short", "arith", "strings", "logical", "ternary", "functions"};
+
+    @Param({"10000"})
+    public int expressions;
+
+    private MiniExprEngine engine;
+    private ExpressionStore store;
+    private List<String> sources;
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException, ParseException {
+        engine = MiniExprEngine.builder().cacheSize(0).build();
+        store = new ExpressionStore(engine);
+        sources = new ArrayList<>(expressions);
+        for (int i = 0; i < expressions; i++) sources.add(Corpus.get(CORPUS[i % CORPUS.length]) + " == " + i);
+        file = Files.createTempFile("miniexpr-store", ".bin");
+        store.write(file, compileAll());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public List<CompiledExpression> read() throws IOException {
+        return store.read(file);
+    }
+
+    @Benchmark
+    public List<CompiledExpression> compileAll() throws ParseException {
+        List<CompiledExpression> result = new ArrayList<>(sources.size());
+        for (String source : sources) result.add(engine.compile(source));
+        return result;
+    }
+}
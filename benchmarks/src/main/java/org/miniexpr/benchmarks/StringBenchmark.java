@@ -0,0 +1,97 @@
+package org.miniexpr.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.miniexpr.Bindings;
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.ExecutionMode;
+import org.miniexpr.MiniExprEngine;
+import org.miniexpr.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 字符串拼接与字面量相等比较：关闭优化（逐步拼接、比较时把两边都转为字符串）与默认优化
+ * （合并为 {@code ConcatNode} 一次拼接、与字面量的预先转换的字符串形式比较）的对比。
+ * <p>
+ * 分配量可以加上 {@code -prof gc} 查看。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringBenchmark {
+
+    @Param({"INTERPRETER", "BYTECODE", "VM"})
+    public String mode;
+
+    // 由字面量与变量组成的消息模板
+    private CompiledExpression template;
+    private CompiledExpression templateUnoptimized;
+    // 数值变量与字符串字面量、字符串变量与数值字面量的相等比较
+    private CompiledExpression equality;
+    private CompiledExpression equalityUnoptimized;
+    private Bindings templateBindings;
+    private Bindings templateUnoptimizedBindings;
+    private Bindings equalityBindings;
+    private Bindings equalityUnoptimizedBindings;
+
+    @Setup
+    public void setup() throws ParseException {
+        ExecutionMode m = ExecutionMode.valueOf(mode);
+        MiniExprEngine optimized = MiniExprEngine.builder().mode(m).build();
+        MiniExprEngine plain = MiniExprEngine.builder().mode(m).optimize(false).build();
+        String t = "'user ' + name + ' (id ' + id + ') bought ' + count + ' items for ' + price + ' at ' + store";
+        String e = "code == '200' || status == 404 || name == 'admin' || id == 42";
+        template = optimized.compile(t);
+        templateUnoptimized = plain.compile(t);
+        equality = optimized.compile(e);
+        equalityUnoptimized = plain.compile(e);
+        templateBindings = bind(template);
+        templateUnoptimizedBindings = bind(templateUnoptimized);
+        equalityBindings = bind(equality);
+        equalityUnoptimizedBindings = bind(equalityUnoptimized);
+    }
+
+    private static Bindings bind(CompiledExpression expr) {
+        return expr.newBindings()
+                .set("name", "alice")
+                .set("id", 1234567L)
+                .set("count", 3L)
+                .set("price", 19.5)
+                .set("store", "downtown")
+                .set("code", 500L)
+                .set("status", "ok");
+    }
+
+    @Benchmark
+    public Object templateUnoptimized() throws ParseException {
+        return templateUnoptimized.eval(templateUnoptimizedBindings);
+    }
+
+    @Benchmark
+    public Object template() throws ParseException {
+        return template.eval(templateBindings);
+    }
+
+    @Benchmark
+    public boolean equalityUnoptimized() throws ParseException {
+        return equalityUnoptimized.evalBoolean(equalityUnoptimizedBindings);
+    }
+
+    @Benchmark
+    public boolean equality() throws ParseException {
+        return equality.evalBoolean(equalityBindings);
+    }
+}
@@ -0,0 +1,84 @@
+package org.miniexpr.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.miniexpr.Bindings;
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.MiniExpr;
+import org.miniexpr.MiniExprEngine;
+import org.miniexpr.ParseException;
+import org.miniexpr.ValueType;
+import org.miniexpr.metrics.ExpressionMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 解释器的不同求值入口（不涉及字节码后端）：
+ * <ul>
+ *   <li>{@link #evalBoxed()}：{@link CompiledExpression#eval(Bindings)}，结果装箱为对象；</li>
+ *   <li>{@link #evalTyped()}：按静态类型走 evalDouble / evalBoolean 基本类型路径，
+ *       配合 GC profiler 可确认数值 / 布尔表达式求值不产生分配；</li>
+ *   <li>{@link #evalString()}：{@link MiniExpr#eval(String, java.util.Map)}，含缓存查找与 Map 取值；</li>
+ *   <li>{@link #evalWithMetrics()}：同 {@link #evalBoxed()}，但由安装了 {@link ExpressionMetrics} 的引擎编译，
+ *       与 evalBoxed 的差即每次求值的监听开销。</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypedEvalBenchmark {
+
+    @Param({"short", "arith", "long", "nested", "strings", "logical", "ternary", "functions", "deep", "generated"})
+    public String corpus;
+
+    private String source;
+    private CompiledExpression compiled;
+    private CompiledExpression observed;
+    private Bindings observedBindings;
+    private Bindings bindings;
+
+    @Setup
+    public void setup() throws ParseException {
+        source = Corpus.get(corpus);
+        compiled = MiniExpr.compile(source);
+        bindings = Corpus.bind(compiled);
+        observed = MiniExprEngine.builder().listener(new ExpressionMetrics()).build().compile(source);
+        observedBindings = Corpus.bind(observed);
+        MiniExpr.setCacheSize(MiniExpr.DEFAULT_CACHE_SIZE);
+    }
+
+    @Benchmark
+    public Object evalBoxed() throws ParseException {
+        return compiled.eval(bindings);
+    }
+
+    @Benchmark
+    public double evalTyped() throws ParseException {
+        ValueType type = compiled.type();
+        if (type.isNumeric()) return compiled.evalDouble(bindings);
+        if (type == ValueType.BOOLEAN) return compiled.evalBoolean(bindings) ? 1 : 0;
+        return compiled.eval(bindings).hashCode();
+    }
+
+    @Benchmark
+    public Object evalString() throws ParseException {
+        return MiniExpr.eval(source, Corpus.VARIABLES);
+    }
+
+    @Benchmark
+    public Object evalWithMetrics() throws ParseException {
+        return observed.eval(observedBindings);
+    }
+}
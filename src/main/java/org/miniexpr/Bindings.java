@@ -0,0 +1,134 @@
+package org.miniexpr;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.miniexpr.nodes.EvalState;
+
+/**
+ * 按槽位（slot）索引的变量绑定。
+ * <p>
+ * 编译表达式时，解析器按标识符首次出现的顺序为每个变量分配一个整数槽位
+ * （见 {@link CompiledExpression#variables()}）。调用方通过
+ * {@link CompiledExpression#newBindings()} 创建绑定对象，按槽位写入变量值，
+ * 求值时 {@link org.miniexpr.nodes.VariableNode} 直接按下标读取，无需任何哈希查找。
+ * <p>
+ * 未绑定的变量沿用原有语义：求值结果为标识符本身的文本。
+ * <p>
+ * 绑定同时携带求值时的限制（{@link Limits#maxStringLength()} 与 {@link Limits#evalTimeoutNanos()}），
+ * 由创建它的表达式按引擎的限制设置。
+ * <p>
+ * Bindings 是单次求值使用的可变状态，不是线程安全的；每个线程应使用各自的实例，
+ * 实例可以在多次求值之间复用。
+ */
+public final class Bindings {
+    private static final Object UNBOUND = new Object();
+    private static final Object[] NO_SHARED = new Object[0];
+
+    final String[] names;
+    private final Object[] values;
+    // ExpressionSet 中共享子表达式在本次求值中的结果（按共享编号索引），其它情况下为空数组
+    final Object[] shared;
+    private final int maxStringLength;
+    private final long evalTimeoutNanos;
+    // 本次求值的截止时间（System.nanoTime()），只在 timed 为 true 时有意义
+    private boolean timed;
+    private long deadline;
+    private final EvalState evalState = new EvalState();
+
+    Bindings(String[] names) {
+        this(names, 0, Limits.NONE);
+    }
+
+    Bindings(String[] names, int sharedCount, Limits limits) {
+        this.names = names;
+        this.values = new Object[names.length];
+        this.shared = sharedCount == 0 ? NO_SHARED : new Object[sharedCount];
+        this.maxStringLength = limits.maxStringLength();
+        this.evalTimeoutNanos = limits.evalTimeoutNanos();
+        Arrays.fill(values, UNBOUND);
+    }
+
+    /** 变量个数 */
+    public int size() { return names.length; }
+
+    /** 返回槽位对应的变量名 */
+    public String name(int slot) { return names[slot]; }
+
+    /** 返回变量名对应的槽位，不存在时返回 -1 */
+    public int slotOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    /** 按槽位设置变量值（允许为 null） */
+    public Bindings set(int slot, Object value) {
+        values[slot] = value;
+        return this;
+    }
+
+    /** 按变量名设置变量值；表达式中未出现的变量名会被忽略 */
+    public Bindings set(String name, Object value) {
+        int slot = slotOf(name);
+        if (slot >= 0) values[slot] = value;
+        return this;
+    }
+
+    /** 取消某个槽位的绑定 */
+    public Bindings unset(int slot) {
+        values[slot] = UNBOUND;
+        return this;
+    }
+
+    /** 取消所有绑定，便于复用实例 */
+    public Bindings clear() {
+        Arrays.fill(values, UNBOUND);
+        return this;
+    }
+
+    public boolean isBound(int slot) { return values[slot] != UNBOUND; }
+
+    /** 求值时拼接得到的字符串的最大长度，见 {@link Limits#maxStringLength()} */
+    public int maxStringLength() { return maxStringLength; }
+
+    /** 一次求值的最长时间（纳秒），见 {@link Limits#evalTimeoutNanos()} */
+    public long evalTimeoutNanos() { return evalTimeoutNanos; }
+
+    /**
+     * 开始一次求值：设置了求值超时时从现在开始计时。{@link CompiledExpression}、{@link ExpressionSet}、
+     * 批量与增量求值在每次求值之前调用；直接调用节点的 eval 时不计时，除非先调用本方法。
+     */
+    public void startEvaluation() {
+        if (evalTimeoutNanos == Limits.NO_TIMEOUT) return;
+        timed = true;
+        deadline = System.nanoTime() + evalTimeoutNanos;
+    }
+
+    /**
+     * 本次求值已超过截止时间时以 pos 为位置抛出 ParseException；没有开始计时的求值不检查。
+     * 由函数调用节点在每次调用返回之后调用，见 {@link Limits#evalTimeoutNanos()}。
+     */
+    public void checkDeadline(int pos) throws ParseException {
+        if (timed && System.nanoTime() - deadline > 0) {
+            throw new ParseException("Evaluation timed out (limit "
+                    + TimeUnit.NANOSECONDS.toMillis(evalTimeoutNanos) + " ms)", pos);
+        }
+    }
+
+    /** 数值节点在一次求值中交给父节点的中间结果，只供求值节点内部使用，见 {@link EvalState} */
+    public EvalState evalState() { return evalState; }
+
+    /** 返回槽位的值，未绑定时返回 null */
+    public Object get(int slot) {
+        Object v = values[slot];
+        return v == UNBOUND ? null : v;
+    }
+
+    /** 返回槽位的值，未绑定时返回 def */
+    public Object getOrDefault(int slot, Object def) {
+        Object v = values[slot];
+        return v == UNBOUND ? def : v;
+    }
+}
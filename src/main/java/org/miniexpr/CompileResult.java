@@ -0,0 +1,54 @@
+package org.miniexpr;
+
+/**
+ * {@link MiniExpr#tryCompile(String)} 的结果：编译成功时为 {@link CompiledExpression}，
+ * 失败时为错误诊断信息（原始消息、位置与源码），不抛出异常。
+ * <p>
+ * 诊断信息直接取自 {@link ParseException} 的原始字段，读取 {@link #message()} / {@link #position()}
+ * 不会生成带源码片段的完整消息；需要时调用 {@link #formattedMessage()}。
+ */
+public final class CompileResult {
+    private final String source;
+    private final CompiledExpression expression;
+    private final ParseException error;
+
+    private CompileResult(String source, CompiledExpression expression, ParseException error) {
+        this.source = source;
+        this.expression = expression;
+        this.error = error;
+    }
+
+    static CompileResult success(CompiledExpression expression) {
+        return new CompileResult(expression.source(), expression, null);
+    }
+
+    static CompileResult failure(String source, ParseException error) {
+        return new CompileResult(source, null, error);
+    }
+
+    public boolean isSuccess() { return error == null; }
+
+    /** 表达式源码 */
+    public String source() { return source; }
+
+    /** 编译结果，失败时为 null */
+    public CompiledExpression expression() { return expression; }
+
+    /** 编译错误，成功时为 null */
+    public ParseException error() { return error; }
+
+    /** 错误的原始消息（不含位置与源码片段），成功时为 null */
+    public String message() { return error == null ? null : error.detail(); }
+
+    /** 错误位置（0-based 字符索引），成功时为 -1 */
+    public int position() { return error == null ? -1 : error.pos; }
+
+    /** 带源码片段与 {@code ^} 的完整错误消息，同 {@link ParseException#getMessage()}；成功时为 null */
+    public String formattedMessage() { return error == null ? null : error.getMessage(); }
+
+    @Override
+    public String toString() {
+        if (error == null) return "CompileResult(" + source + ")";
+        return "CompileResult(" + source + ", error=" + error.detail() + " at index " + (error.pos + 1) + ")";
+    }
+}
@@ -0,0 +1,301 @@
+package org.miniexpr;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.miniexpr.analysis.ExpressionAnalysis;
+import org.miniexpr.async.AsyncEvaluator;
+import org.miniexpr.async.AsyncResolver;
+import org.miniexpr.batch.BatchEvaluator;
+import org.miniexpr.batch.Columns;
+import org.miniexpr.incremental.IncrementalEvaluator;
+import org.miniexpr.metrics.EvaluationListener;
+import org.miniexpr.metrics.NodeProfiler;
+
+/**
+ * 编译后的表达式（不可变、线程安全）。
+ * <p>
+ * 由 {@link MiniExpr#compile(String)} 创建，内部保存解析得到的 AST 根节点以及变量槽位表。
+ * 同一个实例可以在多个线程中反复求值，每次只需提供不同的变量，而无需重新执行词法分析与语法解析。
+ * <p>
+ * 变量有两种传入方式：
+ * <ul>
+ *   <li>{@link #eval(Map)}：按变量名从 Map 中取值，每次求值对每个变量做一次查找；</li>
+ *   <li>{@link #eval(Bindings)}：调用方通过 {@link #variables()} 预先得知槽位，按下标写入
+ *       {@link #newBindings()} 返回的绑定对象，求值期间不做任何哈希查找。</li>
+ * </ul>
+ * 执行方式由 {@link ExecutionMode} 决定，见 {@link MiniExpr#compile(String, ExecutionMode)}。
+ * 对大量行求值同一个表达式时，可以使用列式的 {@link #evalBatch(Columns, Object[])} 等方法；
+ * 变量来自较慢的异步数据源时，可以使用 {@link #evalAsync(AsyncResolver)}；每次只有少数变量变化的反复求值
+ * 可以使用 {@link #incremental()}。
+ * <p>
+ * 由安装了 {@link EvaluationListener} 的引擎编译时，每次求值向监听器报告耗时与错误；
+ * {@link #withProfiler(NodeProfiler)} 返回逐节点采样计时的副本。
+ */
+public final class CompiledExpression {
+    private static final String[] NO_VARIABLES = new String[0];
+
+    private final String source;
+    private final Node root;
+    private final String[] variables;
+    private final Node executable;
+    private final ExecutionMode mode;
+    // evalLong / evalDouble / evalBoolean 使用的节点：解释执行时与 executable 相同（可能带有采样计时）；
+    // 虚拟机方式下也使用 executable，避免深层表达式在基本类型路径上递归
+    private final Node interpreted;
+    // 可选的监听器，null 时不计时
+    private final EvaluationListener listener;
+    // 求值时的限制（拼接长度、求值超时），由 newBindings() 创建的绑定携带
+    private final Limits limits;
+
+    CompiledExpression(String source, Node root, String[] variables) {
+        this(source, root, variables, Limits.NONE);
+    }
+
+    CompiledExpression(String source, Node root, String[] variables, Limits limits) {
+        this(source, root, variables, root, ExecutionMode.INTERPRETER, null, limits);
+    }
+
+    private CompiledExpression(String source, Node root, String[] variables, Node executable, ExecutionMode mode,
+                               EvaluationListener listener, Limits limits) {
+        this.source = source;
+        this.root = root;
+        this.variables = variables.length == 0 ? NO_VARIABLES : variables;
+        this.executable = executable;
+        this.mode = mode;
+        this.interpreted = mode == ExecutionMode.BYTECODE ? root : executable;
+        this.listener = listener;
+        this.limits = limits;
+    }
+
+    /** 返回以 executable 执行、其余信息相同的新实例 */
+    CompiledExpression withExecutable(Node executable, ExecutionMode mode) {
+        return new CompiledExpression(source, root, variables, executable, mode, listener, limits);
+    }
+
+    /** 返回向 listener 报告求值事件、其余信息相同的新实例 */
+    CompiledExpression withListener(EvaluationListener listener) {
+        return new CompiledExpression(source, root, variables, executable, mode, listener, limits);
+    }
+
+    /**
+     * 返回由 profiler 逐节点采样计时的副本（解释执行），见 {@link NodeProfiler}。
+     * 计时覆盖 eval / evalLong / evalDouble / evalBoolean，不覆盖批量求值。
+     */
+    public CompiledExpression withProfiler(NodeProfiler profiler) {
+        return withExecutable(profiler.instrument(this), ExecutionMode.INTERPRETER);
+    }
+
+    /** 返回原始表达式文本 */
+    public String source() { return source; }
+
+    /** 返回解析得到的 AST 根节点 */
+    public Node root() { return root; }
+
+    /** 返回实际使用的执行方式（字节码编译失败回退时为 {@link ExecutionMode#INTERPRETER}） */
+    public ExecutionMode mode() { return mode; }
+
+    /** 求值时拼接得到的字符串的最大长度（编译它的引擎的 {@link Limits#maxStringLength()}） */
+    public int maxStringLength() { return limits.maxStringLength(); }
+
+    /** 一次求值的最长时间（编译它的引擎的 {@link Limits#evalTimeoutNanos()}） */
+    public long evalTimeoutNanos() { return limits.evalTimeoutNanos(); }
+
+    /** 返回表达式引用的变量名，列表下标即槽位 */
+    public List<String> variables() {
+        return Collections.unmodifiableList(Arrays.asList(variables));
+    }
+
+    /**
+     * 静态分析：一定 / 可能读取的变量、使用的运算符、嵌套深度与估算代价，见 {@link ExpressionAnalysis}。
+     */
+    public ExpressionAnalysis analyze() {
+        return ExpressionAnalysis.of(this);
+    }
+
+    /** 返回变量名对应的槽位，表达式未引用该变量时返回 -1 */
+    public int slotOf(String name) {
+        for (int i = 0; i < variables.length; i++) {
+            if (variables[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 创建与本表达式槽位布局一致的空绑定（所有变量未绑定）。没有变量时也返回新的实例：
+     * 求值过程会在绑定中记录中间状态（见 {@link Bindings#evalState()}），不能在线程之间共享。
+     */
+    public Bindings newBindings() {
+        return new Bindings(variables, 0, limits);
+    }
+
+    /**
+     * 计算表达式（无变量上下文）
+     */
+    public Object eval() throws ParseException {
+        return eval(newBindings());
+    }
+
+    /**
+     * 计算表达式，提供变量上下文
+     */
+    public Object eval(Map<String, Object> vars) throws ParseException {
+        Bindings bindings = newBindings();
+        if (vars != null) {
+            for (int i = 0; i < variables.length; i++) {
+                Object v = vars.get(variables[i]);
+                if (v != null || vars.containsKey(variables[i])) bindings.set(i, v);
+            }
+        }
+        return eval(bindings);
+    }
+
+    /**
+     * 按槽位绑定计算表达式。bindings 必须由本表达式的 {@link #newBindings()} 创建。
+     */
+    public Object eval(Bindings bindings) throws ParseException {
+        checkBindings(bindings);
+        bindings.startEvaluation();
+        long start = listener != null ? System.nanoTime() : 0L;
+        try {
+            Object value = executable.eval(bindings);
+            if (listener != null) listener.evaluated(this, System.nanoTime() - start);
+            return value;
+        } catch (ParseException e) {
+            throw failed(e, start);
+        }
+    }
+
+    /** 返回表达式结果的静态类型 */
+    public ValueType type() { return root.type(); }
+
+    /**
+     * 以 long 求值。静态类型为 {@link ValueType#LONG} 时全程不装箱；
+     * 其它数值结果按 {@link Number#longValue()} 转换，非数值结果抛出 ParseException。
+     */
+    public long evalLong(Bindings bindings) throws ParseException {
+        checkBindings(bindings);
+        bindings.startEvaluation();
+        long start = listener != null ? System.nanoTime() : 0L;
+        try {
+            long value = root.type() == ValueType.LONG
+                    ? interpreted.evalLong(bindings) : toNumber(interpreted.eval(bindings)).longValue();
+            if (listener != null) listener.evaluated(this, System.nanoTime() - start);
+            return value;
+        } catch (ParseException e) {
+            throw failed(e, start);
+        }
+    }
+
+    /**
+     * 以 double 求值。静态类型为数值时不装箱中间结果；非数值结果抛出 ParseException。
+     */
+    public double evalDouble(Bindings bindings) throws ParseException {
+        checkBindings(bindings);
+        bindings.startEvaluation();
+        long start = listener != null ? System.nanoTime() : 0L;
+        try {
+            double value = root.type().isNumeric()
+                    ? interpreted.evalDouble(bindings) : toNumber(interpreted.eval(bindings)).doubleValue();
+            if (listener != null) listener.evaluated(this, System.nanoTime() - start);
+            return value;
+        } catch (ParseException e) {
+            throw failed(e, start);
+        }
+    }
+
+    /**
+     * 求值并按真值规则转换为 boolean（比较、逻辑运算不装箱中间结果）。
+     */
+    public boolean evalBoolean(Bindings bindings) throws ParseException {
+        checkBindings(bindings);
+        bindings.startEvaluation();
+        long start = listener != null ? System.nanoTime() : 0L;
+        try {
+            boolean value = interpreted.evalBoolean(bindings);
+            if (listener != null) listener.evaluated(this, System.nanoTime() - start);
+            return value;
+        } catch (ParseException e) {
+            throw failed(e, start);
+        }
+    }
+
+    /**
+     * 列式批量求值：第 i 行的结果写入 out[i]，与逐行调用 {@link #eval(Bindings)} 的结果相同。
+     * 求值按列逐节点进行，见 {@link BatchEvaluator}。某一行出错时，之前的行已经写入，异常与逐行求值时相同。
+     */
+    public void evalBatch(Columns columns, Object[] out) throws ParseException {
+        long start = listener != null ? System.nanoTime() : 0L;
+        try {
+            new BatchEvaluator(this).eval(columns, out);
+            if (listener != null) listener.batchEvaluated(this, columns.rows(), System.nanoTime() - start);
+        } catch (ParseException e) {
+            throw failed(e, start);
+        }
+    }
+
+    /** 列式批量求值，每一行按 {@link #evalDouble(Bindings)} 的规则转换为 double */
+    public void evalBatch(Columns columns, double[] out) throws ParseException {
+        long start = listener != null ? System.nanoTime() : 0L;
+        try {
+            new BatchEvaluator(this).evalDouble(columns, out);
+            if (listener != null) listener.batchEvaluated(this, columns.rows(), System.nanoTime() - start);
+        } catch (ParseException e) {
+            throw failed(e, start);
+        }
+    }
+
+    /** 列式批量求值谓词：第 i 行为真时置位 out 的第 i 位，为假时清除 */
+    public void evalBatch(Columns columns, BitSet out) throws ParseException {
+        long start = listener != null ? System.nanoTime() : 0L;
+        try {
+            new BatchEvaluator(this).evalBoolean(columns, out);
+            if (listener != null) listener.batchEvaluated(this, columns.rows(), System.nanoTime() - start);
+        } catch (ParseException e) {
+            throw failed(e, start);
+        }
+    }
+
+    /**
+     * 异步求值：变量通过 resolver 按需取得，只请求实际会读取的变量，互不依赖的变量同时请求。
+     * 结果与异常与 {@link #eval(Bindings)} 相同（失败时 future 以 ParseException 等异常完成），见 {@link AsyncEvaluator}。
+     */
+    public CompletableFuture<Object> evalAsync(AsyncResolver resolver) {
+        return new AsyncEvaluator(this).eval(resolver);
+    }
+
+    /**
+     * 返回增量求值器：记住每个子表达式上次的结果，只有部分变量变化时只重新计算依赖它们的子表达式，
+     * 见 {@link IncrementalEvaluator}。
+     */
+    public IncrementalEvaluator incremental() {
+        return new IncrementalEvaluator(this);
+    }
+
+    // 附加源码并报告失败（start 为求值开始时刻，没有监听器时不使用）
+    private ParseException failed(ParseException e, long start) {
+        e.withSource(source);
+        if (listener != null) listener.evaluationFailed(this, e, System.nanoTime() - start);
+        return e;
+    }
+
+    private Number toNumber(Object v) throws ParseException {
+        if (v instanceof Number) return (Number) v;
+        throw new ParseException("Expression does not evaluate to a number", root.pos());
+    }
+
+    private void checkBindings(Bindings bindings) {
+        if (bindings.names != variables) {
+            throw new IllegalArgumentException("Bindings were not created by this expression");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledExpression(" + source + ")";
+    }
+}
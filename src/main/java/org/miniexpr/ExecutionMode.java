@@ -0,0 +1,25 @@
+package org.miniexpr;
+
+/**
+ * 表达式的执行方式。
+ */
+public enum ExecutionMode {
+    /** 直接遍历 AST 求值（默认） */
+    INTERPRETER,
+    /**
+     * 把 AST 编译为生成的 JVM 类再求值，便于 HotSpot 把整个表达式内联优化。
+     * 适合被反复求值的热点表达式；无法编译时自动回退为 {@link #INTERPRETER}。
+     */
+    BYTECODE,
+    /**
+     * 把 AST 降为扁平的指令序列，由一个不递归的栈式虚拟机执行（见 {@link org.miniexpr.vm.VmProgram}）。
+     * 求值深度不受线程栈大小限制，适合嵌套很深的生成规则。
+     * <p>
+     * 不递归的只有编译（解析、VM 降级；优化器栈溢出时保留未优化的 AST）与
+     * {@link CompiledExpression#eval(Bindings)} 等逐个求值。以下过程仍按 AST 递归，嵌套上万层时会栈溢出：
+     * {@link CompiledExpression#analyze()}、批量求值、异步求值、增量求值、{@link ExpressionSet}、
+     * {@link ExpressionStore} 的读写，以及指令中作为常量嵌入、自行求值的节点（例如十进制模式的
+     * {@link org.miniexpr.nodes.DecimalNode} 子树）。
+     */
+    VM
+}
@@ -0,0 +1,123 @@
+package org.miniexpr;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 以表达式源码为键的有界缓存，缓存 {@link CompiledExpression}，按近似 LRU 淘汰。
+ * <p>
+ * 命中只读 {@link ConcurrentHashMap} 并在条目上记下访问时间戳，不加锁；时间戳取自只在插入时前进的逻辑时钟，
+ * 同一时钟值内的重复命中不再写条目，热门表达式的并发命中不会争用同一缓存行。未命中时在锁外编译后放入，
+ * 超出容量时由一个线程在淘汰锁内按时间戳批量淘汰最久未访问的条目，一次淘汰到容量的 15/16，
+ * 因此每次未命中分摊的淘汰开销是常数级的排序，缓存大小在容量的 15/16 与容量之间波动。
+ * <p>
+ * 命中 / 未命中 / 淘汰次数用 {@link LongAdder} 记录，便于在生产环境中根据实际负载调整容量。
+ * 容量为 0 表示禁用缓存。
+ */
+public final class ExpressionCache {
+    private final int maxSize;
+    // 未命中时用于编译的引擎；为 null 时按默认配置解释执行
+    private final MiniExprEngine engine;
+    private final ConcurrentHashMap<String, Entry> map = new ConcurrentHashMap<>();
+    // 逻辑时钟，每次插入前进一次
+    private final AtomicLong clock = new AtomicLong();
+    private final Object evictionLock = new Object();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static final class Entry {
+        final CompiledExpression expression;
+        volatile long lastAccess;
+
+        Entry(CompiledExpression expression, long lastAccess) {
+            this.expression = expression;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    public ExpressionCache(int maxSize) {
+        this(maxSize, null);
+    }
+
+    ExpressionCache(int maxSize, MiniExprEngine engine) {
+        if (maxSize < 0) throw new IllegalArgumentException("maxSize must be >= 0: " + maxSize);
+        this.maxSize = maxSize;
+        this.engine = engine;
+    }
+
+    /**
+     * 返回缓存中的编译结果；未命中时编译并放入缓存。
+     * 编译失败（ParseException）不会被缓存。
+     */
+    public CompiledExpression get(String source) throws ParseException {
+        if (maxSize == 0) {
+            misses.increment();
+            return compile(source);
+        }
+        Entry cached = map.get(source);
+        if (cached != null) {
+            hits.increment();
+            long now = clock.get();
+            if (cached.lastAccess != now) cached.lastAccess = now;
+            return cached.expression;
+        }
+        misses.increment();
+        // 在锁外编译，避免慢表达式阻塞其他线程；并发编译同一源码时以后放入者为准，结果等价
+        CompiledExpression compiled = compile(source);
+        map.put(source, new Entry(compiled, clock.incrementAndGet()));
+        if (map.size() > maxSize) evict();
+        return compiled;
+    }
+
+    // 淘汰时间戳最早的条目，直到大小不超过容量的 15/16；其它线程等到锁时大小多半已在容量之内，直接返回
+    private void evict() {
+        synchronized (evictionLock) {
+            int size = map.size();
+            if (size <= maxSize) return;
+            int target = maxSize - maxSize / 16;
+            // 先对时间戳的快照排序得到分界，再删除不晚于分界的条目：排序期间被命中的条目时间戳已前进，会被保留
+            long[] stamps = new long[size];
+            int n = 0;
+            for (Entry e : map.values()) {
+                if (n == stamps.length) break;
+                stamps[n++] = e.lastAccess;
+            }
+            Arrays.sort(stamps, 0, n);
+            long cutoff = stamps[Math.max(0, Math.min(n, size - target) - 1)];
+            for (Map.Entry<String, Entry> e : map.entrySet()) {
+                if (map.size() <= target) break;
+                if (e.getValue().lastAccess <= cutoff && map.remove(e.getKey(), e.getValue())) {
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    private CompiledExpression compile(String source) throws ParseException {
+        return engine != null ? engine.compile(source) : MiniExprEngine.parse(source, true);
+    }
+
+    /** 清空缓存（不重置统计计数） */
+    public void clear() { map.clear(); }
+
+    public int maxSize() { return maxSize; }
+
+    public int size() { return map.size(); }
+
+    public long hitCount() { return hits.sum(); }
+
+    public long missCount() { return misses.sum(); }
+
+    public long evictionCount() { return evictions.sum(); }
+
+    @Override
+    public String toString() {
+        return "ExpressionCache(size=" + map.size() + "/" + maxSize
+                + ", hits=" + hits.sum() + ", misses=" + misses.sum() + ", evictions=" + evictions.sum() + ")";
+    }
+}
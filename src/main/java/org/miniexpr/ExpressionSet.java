@@ -0,0 +1,311 @@
+package org.miniexpr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.miniexpr.functions.FunctionDef;
+import org.miniexpr.nodes.BinaryNode;
+import org.miniexpr.nodes.BooleanNode;
+import org.miniexpr.nodes.CallNode;
+import org.miniexpr.nodes.ConcatNode;
+import org.miniexpr.nodes.ConditionalNode;
+import org.miniexpr.nodes.DecimalNode;
+import org.miniexpr.nodes.LogicalNode;
+import org.miniexpr.nodes.NumberNode;
+import org.miniexpr.nodes.StringNode;
+import org.miniexpr.nodes.UnaryNode;
+import org.miniexpr.nodes.VariableNode;
+
+/**
+ * 一起求值的一组表达式（不可变、线程安全），由 {@link MiniExprEngine#compileAll(List)} 创建。
+ * <p>
+ * 各表达式的 AST 合并为一个共享的 DAG：变量按名字使用同一套槽位，结构相同的子表达式
+ * （运算符与操作数都相同，例如多条规则中的 {@code price * qty} 或 {@code tier == 'gold'}）只保留一个节点。
+ * 对一组变量求值时，被多处引用的子表达式在本次求值中最多计算一次，结果按表达式的输入顺序返回。
+ * <p>
+ * 共享的子表达式在第一次用到时才计算，{@code &&} / {@code ||} 与三元运算未执行的分支不会计算，
+ * 因此每个表达式的结果与单独求值时相同。没有标记为 {@link FunctionDef#pure() 纯函数} 的调用不合并，每处调用各自执行。
+ * <p>
+ * 合并后的 DAG 总是解释执行，不经过引擎的缓存与监听器。某个表达式求值出错时，以该表达式自己的 AST 重新求值，
+ * 抛出与单独求值时相同（位置准确）的异常，之前的表达式的结果已经写入。
+ */
+public final class ExpressionSet {
+    // 共享子表达式在本次求值中尚未计算
+    private static final Object MISSING = new Object();
+
+    private final CompiledExpression[] expressions;
+    private final Node[] roots;
+    private final String[] variables;
+    // 每个表达式自己的槽位到合并后槽位的映射
+    private final int[][] slotMaps;
+    private final int sharedCount;
+    // 求值时的限制：各表达式的拼接长度上限与求值超时中最小的一个
+    private final Limits limits;
+
+    private ExpressionSet(CompiledExpression[] expressions, Node[] roots, String[] variables, int[][] slotMaps,
+                          int sharedCount, Limits limits) {
+        this.expressions = expressions;
+        this.roots = roots;
+        this.variables = variables;
+        this.slotMaps = slotMaps;
+        this.sharedCount = sharedCount;
+        this.limits = limits;
+    }
+
+    /** 合并各自解析（与优化）得到的表达式 */
+    static ExpressionSet of(List<CompiledExpression> compiled) {
+        CompiledExpression[] expressions = compiled.toArray(new CompiledExpression[0]);
+        Merger merger = new Merger();
+        Node[] roots = new Node[expressions.length];
+        int[][] slotMaps = new int[expressions.length][];
+        int maxStringLength = Integer.MAX_VALUE;
+        long evalTimeoutNanos = Limits.NO_TIMEOUT;
+        for (int i = 0; i < expressions.length; i++) {
+            maxStringLength = Math.min(maxStringLength, expressions[i].maxStringLength());
+            evalTimeoutNanos = Math.min(evalTimeoutNanos, expressions[i].evalTimeoutNanos());
+            slotMaps[i] = merger.slots(expressions[i].variables());
+            roots[i] = merger.intern(expressions[i].root(), slotMaps[i]);
+            merger.use(roots[i]);
+        }
+        for (int i = 0; i < roots.length; i++) roots[i] = merger.share(roots[i]);
+        return new ExpressionSet(expressions, roots, merger.variables.toArray(new String[0]), slotMaps,
+                merger.sharedCount, Limits.NONE.withMaxStringLength(maxStringLength)
+                        .withEvalTimeout(evalTimeoutNanos, TimeUnit.NANOSECONDS));
+    }
+
+    /** 表达式个数 */
+    public int size() { return expressions.length; }
+
+    /** 返回第 index 个表达式的源码 */
+    public String source(int index) { return expressions[index].source(); }
+
+    /** 返回第 index 个表达式单独编译（解释执行）的结果 */
+    public CompiledExpression expression(int index) { return expressions[index]; }
+
+    /** 返回所有表达式引用的变量名（按首次出现的顺序），列表下标即槽位 */
+    public List<String> variables() {
+        return Collections.unmodifiableList(Arrays.asList(variables));
+    }
+
+    /** 返回变量名对应的槽位，没有表达式引用该变量时返回 -1 */
+    public int slotOf(String name) {
+        for (int i = 0; i < variables.length; i++) {
+            if (variables[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    /** 被多处引用、每次求值最多计算一次的子表达式个数 */
+    public int sharedCount() { return sharedCount; }
+
+    /** 创建与本组表达式槽位布局一致的空绑定（所有变量未绑定） */
+    public Bindings newBindings() {
+        return new Bindings(variables, sharedCount, limits);
+    }
+
+    /** 对一组变量求值所有表达式，结果按输入顺序返回 */
+    public Object[] eval(Map<String, Object> vars) throws ParseException {
+        Bindings bindings = newBindings();
+        if (vars != null) {
+            for (int i = 0; i < variables.length; i++) {
+                Object v = vars.get(variables[i]);
+                if (v != null || vars.containsKey(variables[i])) bindings.set(i, v);
+            }
+        }
+        return eval(bindings);
+    }
+
+    /** 按槽位绑定求值所有表达式。bindings 必须由本组的 {@link #newBindings()} 创建 */
+    public Object[] eval(Bindings bindings) throws ParseException {
+        Object[] out = new Object[expressions.length];
+        eval(bindings, out);
+        return out;
+    }
+
+    /**
+     * 按槽位绑定求值所有表达式，第 i 个表达式的结果写入 out[i]。
+     * 设置了求值超时时，整组表达式的一次求值共用一个截止时间（各表达式的超时中最短的一个）
+     */
+    public void eval(Bindings bindings, Object[] out) throws ParseException {
+        if (bindings.names != variables || bindings.shared.length != sharedCount) {
+            throw new IllegalArgumentException("Bindings were not created by this expression set");
+        }
+        Arrays.fill(bindings.shared, MISSING);
+        bindings.startEvaluation();
+        for (int i = 0; i < roots.length; i++) {
+            try {
+                out[i] = roots[i].eval(bindings);
+            } catch (ParseException e) {
+                throw failed(i, bindings, e);
+            }
+        }
+    }
+
+    // 共享节点的位置可能来自其它表达式：以第 index 个表达式自己的 AST 重新求值，得到位置准确的异常
+    private ParseException failed(int index, Bindings bindings, ParseException e) {
+        CompiledExpression expr = expressions[index];
+        Bindings own = expr.newBindings();
+        int[] map = slotMaps[index];
+        for (int slot = 0; slot < map.length; slot++) {
+            if (bindings.isBound(map[slot])) own.set(slot, bindings.get(map[slot]));
+        }
+        try {
+            expr.eval(own);
+        } catch (ParseException exact) {
+            return exact;
+        }
+        return e.withSource(expr.source());
+    }
+
+    @Override
+    public String toString() {
+        return "ExpressionSet(" + expressions.length + " expressions, " + sharedCount + " shared)";
+    }
+
+    // 合并过程的状态：intern 把各表达式的 AST 规范化为结构相同即为同一节点的 DAG 并统计引用次数，
+    // share 再把被多处引用的内部节点包装为 SharedNode
+    private static final class Merger {
+        final List<String> variables = new ArrayList<>();
+        private final Map<String, Integer> slotIndex = new HashMap<>();
+        private final Map<Object, Node> nodes = new HashMap<>();
+        private final Map<Node, Integer> uses = new IdentityHashMap<>();
+        private final Map<Node, Node> shared = new IdentityHashMap<>();
+        int sharedCount;
+
+        int[] slots(List<String> names) {
+            int[] map = new int[names.size()];
+            for (int i = 0; i < map.length; i++) {
+                Integer slot = slotIndex.get(names.get(i));
+                if (slot == null) {
+                    slot = variables.size();
+                    variables.add(names.get(i));
+                    slotIndex.put(names.get(i), slot);
+                }
+                map[i] = slot;
+            }
+            return map;
+        }
+
+        // 返回与 n 结构相同的规范节点（slotMap 为 n 所在表达式的槽位映射）
+        Node intern(Node n, int[] slotMap) {
+            if (n instanceof VariableNode) {
+                VariableNode v = (VariableNode) n;
+                int slot = slotMap[v.slot()];
+                return lookup(Arrays.<Object>asList(VariableNode.class, slot), new VariableNode(v.name(), slot, v.pos()));
+            }
+            if (n instanceof NumberNode) return lookup(Arrays.asList(NumberNode.class, ((NumberNode) n).value()), n);
+            if (n instanceof StringNode) return lookup(Arrays.asList(StringNode.class, ((StringNode) n).value()), n);
+            if (n instanceof BooleanNode) return lookup(Arrays.asList(BooleanNode.class, ((BooleanNode) n).value()), n);
+            Node[] children = children(n);
+            for (int i = 0; i < children.length; i++) children[i] = intern(children[i], slotMap);
+            List<Object> key = new ArrayList<>(children.length + 2);
+            key.add(n.getClass());
+            if (n instanceof BinaryNode) key.add(((BinaryNode) n).op());
+            else if (n instanceof LogicalNode) key.add(((LogicalNode) n).op());
+            else if (n instanceof UnaryNode) key.add(((UnaryNode) n).op());
+            else if (n instanceof DecimalNode) key.add(((DecimalNode) n).op());
+            else if (n instanceof CallNode) key.add(((CallNode) n).function());
+            key.addAll(Arrays.asList(children));
+            Node existing = n instanceof CallNode && !((CallNode) n).function().isPure() ? null : nodes.get(key);
+            if (existing != null) return existing;
+            Node copy = rebuild(n, children);
+            nodes.put(key, copy);
+            for (Node child : children) use(child);
+            return copy;
+        }
+
+        private Node lookup(Object key, Node n) {
+            Node existing = nodes.get(key);
+            if (existing != null) return existing;
+            nodes.put(key, n);
+            return n;
+        }
+
+        // 记录对规范节点 n 的一次引用
+        void use(Node n) {
+            Integer count = uses.get(n);
+            uses.put(n, count == null ? 1 : count + 1);
+        }
+
+        // 复制规范节点 n，被引用多次的内部节点包装为 SharedNode（同一个规范节点只复制一次）
+        Node share(Node n) {
+            Node done = shared.get(n);
+            if (done != null) return done;
+            Node[] children = children(n);
+            if (children.length == 0) return n;
+            for (int i = 0; i < children.length; i++) children[i] = share(children[i]);
+            Node copy = rebuild(n, children);
+            if (uses.get(n) > 1) copy = new SharedNode(copy, sharedCount++);
+            shared.put(n, copy);
+            return copy;
+        }
+
+        private static Node[] children(Node n) {
+            if (n instanceof BinaryNode) return new Node[] {((BinaryNode) n).left(), ((BinaryNode) n).right()};
+            if (n instanceof LogicalNode) return new Node[] {((LogicalNode) n).left(), ((LogicalNode) n).right()};
+            if (n instanceof UnaryNode) return new Node[] {((UnaryNode) n).operand()};
+            if (n instanceof ConditionalNode) {
+                ConditionalNode c = (ConditionalNode) n;
+                return new Node[] {c.cond(), c.trueExpr(), c.falseExpr()};
+            }
+            if (n instanceof CallNode) return ((CallNode) n).args().toArray(new Node[0]);
+            if (n instanceof ConcatNode) return ((ConcatNode) n).parts().toArray(new Node[0]);
+            if (n instanceof DecimalNode) return ((DecimalNode) n).operands().toArray(new Node[0]);
+            if (n instanceof NumberNode || n instanceof StringNode || n instanceof BooleanNode
+                    || n instanceof VariableNode) {
+                return new Node[0];
+            }
+            throw new IllegalArgumentException("Unsupported node: " + n.getClass().getName());
+        }
+
+        private static Node rebuild(Node n, Node[] c) {
+            if (n instanceof BinaryNode) {
+                BinaryNode b = (BinaryNode) n;
+                return new BinaryNode(c[0], b.op(), c[1], b.pos(), b.rightPos());
+            }
+            if (n instanceof LogicalNode) return new LogicalNode(c[0], ((LogicalNode) n).op(), c[1], n.pos());
+            if (n instanceof UnaryNode) return new UnaryNode(((UnaryNode) n).op(), c[0], n.pos());
+            if (n instanceof ConditionalNode) return new ConditionalNode(c[0], c[1], c[2], n.pos());
+            if (n instanceof ConcatNode) return ((ConcatNode) n).withParts(c);
+            if (n instanceof DecimalNode) return ((DecimalNode) n).withOperands(c);
+            return ((CallNode) n).withArgs(c);
+        }
+    }
+
+    // 共享的子表达式：每次求值（见 Bindings#shared）第一次用到时计算并记住结果；
+    // 基本类型求值路径使用 Node 的默认实现，从记住的结果转换
+    private static final class SharedNode implements Node {
+        private final Node delegate;
+        private final int index;
+
+        SharedNode(Node delegate, int index) {
+            this.delegate = delegate;
+            this.index = index;
+        }
+
+        @Override
+        public Object eval(Bindings vars) throws ParseException {
+            Object value = vars.shared[index];
+            if (value == MISSING) {
+                value = delegate.eval(vars);
+                vars.shared[index] = value;
+            }
+            return value;
+        }
+
+        @Override
+        public int pos() { return delegate.pos(); }
+
+        @Override
+        public ValueType type() { return delegate.type(); }
+
+        @Override
+        public String toString() { return delegate.toString(); }
+    }
+}
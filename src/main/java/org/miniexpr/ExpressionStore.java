@@ -0,0 +1,531 @@
+package org.miniexpr;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.miniexpr.functions.FunctionDef;
+import org.miniexpr.functions.FunctionRegistry;
+import org.miniexpr.nodes.BinaryNode;
+import org.miniexpr.nodes.BooleanNode;
+import org.miniexpr.nodes.CallNode;
+import org.miniexpr.nodes.ConcatNode;
+import org.miniexpr.nodes.ConditionalNode;
+import org.miniexpr.nodes.DecimalNode;
+import org.miniexpr.nodes.LogicalNode;
+import org.miniexpr.nodes.NumberNode;
+import org.miniexpr.nodes.StringNode;
+import org.miniexpr.nodes.UnaryNode;
+import org.miniexpr.nodes.VariableNode;
+
+/**
+ * 编译结果的紧凑二进制存储，用于加快启动：把（优化后的）AST 写入文件，启动时以内存映射读取，
+ * 直接重建节点，跳过词法分析、语法解析与优化。
+ * <p>
+ * 文件格式（多字节整数为大端序）：
+ * <pre>
+ * header  : magic "MXPR" | u2 格式版本 | u1 标志（bit0：AST 已优化；bit1：精确十进制模式） | u1 保留 | u4 表达式个数
+ *           | u4 payload 字节数 | u4 payload 的 CRC32 | u4 函数注册表的指纹
+ * payload : 字符串表（varint 个数，每项 varint 字节数 + UTF-8）
+ *           | 每个表达式：varint 源码（字符串表下标） | varint 变量数 + 变量名下标 | 节点（前序）
+ * 节点    : u1 标签 | varint pos（zigzag） | 标签相关的字段（运算符编号、字面量、槽位、函数名与参数个数、
+ *           拼接的部分数、十进制运算的操作数个数）| 子节点（拼接的第二部分起每部分前有其 + 的位置）
+ * </pre>
+ * 源码、变量名、字符串字面量、BigDecimal 字面量（{@link BigDecimal#toString()}）与函数名都存放在字符串表中，同一字符串只存一次。整数使用变长编码，
+ * 大多数节点只占 2 ~ 4 个字节。函数调用按名字与参数个数在读取时从引擎的注册表中重新解析。
+ * <p>
+ * 读取时校验 magic、格式版本、优化与数值模式标志（须与引擎一致）、函数注册表的指纹与 CRC32，任何不一致或解码错误
+ * 都视为缓存失效，抛出 IOException；{@link #load(Path, List)} 在缓存失效时回退为重新编译并重写文件。
+ * <p>
+ * 优化器在编译时折叠纯函数的调用，存储的 AST 中只剩结果，因此写入时记录注册表的指纹：全部函数的名字、
+ * 参数个数范围与是否为纯函数（与注册顺序无关）的 CRC32。增删函数、修改参数个数或纯函数标志之后，旧文件随之失效。
+ * 只修改纯函数的实现而不改变这些属性时指纹不变，需要删除文件或更换文件名。
+ * 存储只包含 AST，不包含字节码：读取后的表达式按引擎的执行方式（及监听器、采样器）重新准备。
+ */
+public final class ExpressionStore {
+    /** 格式版本；格式或节点语义发生不兼容的变化时递增，旧文件随之失效 */
+    public static final int FORMAT_VERSION = 3;
+
+    private static final int MAGIC = 0x4D585052; // "MXPR"
+    private static final int HEADER_SIZE = 24;
+    private static final int FLAG_OPTIMIZED = 1;
+    private static final int FLAG_DECIMAL = 2;
+
+    // 节点标签
+    private static final int TAG_LONG = 1;
+    private static final int TAG_DOUBLE = 2;
+    private static final int TAG_STRING = 3;
+    private static final int TAG_TRUE = 4;
+    private static final int TAG_FALSE = 5;
+    private static final int TAG_VARIABLE = 6;
+    private static final int TAG_UNARY = 7;
+    private static final int TAG_BINARY = 8;
+    private static final int TAG_LOGICAL = 9;
+    private static final int TAG_CONDITIONAL = 10;
+    private static final int TAG_CALL = 11;
+    private static final int TAG_CONCAT = 12;
+    private static final int TAG_DECIMAL_NUMBER = 13;
+    private static final int TAG_DECIMAL = 14;
+
+    // 运算符的固定编号（与 TokenType 的声明顺序无关）
+    private static final TokenType[] OPERATORS = {
+            TokenType.PLUS, TokenType.MINUS, TokenType.STAR, TokenType.SLASH, TokenType.PERCENT,
+            TokenType.GT, TokenType.GE, TokenType.LT, TokenType.LE, TokenType.EQ, TokenType.NE,
+            TokenType.AND, TokenType.OR, TokenType.NOT
+    };
+
+    private final MiniExprEngine engine;
+    private final int functionsFingerprint;
+
+    /** 以 engine 的配置读写：读取时使用其函数注册表与执行方式，优化标志、数值模式与注册表的指纹须与其一致 */
+    public ExpressionStore(MiniExprEngine engine) {
+        if (engine == null) throw new NullPointerException("engine");
+        this.engine = engine;
+        this.functionsFingerprint = fingerprint(engine.functionRegistry());
+    }
+
+    public MiniExprEngine engine() { return engine; }
+
+    /**
+     * 把表达式写入 file（先写临时文件再替换，读取方不会看到写了一半的文件）。
+     * 表达式应由本存储的引擎（或优化设置与数值模式相同的引擎）编译。
+     *
+     * @throws IllegalArgumentException AST 中含有无法存储的节点
+     */
+    public void write(Path file, Collection<CompiledExpression> exprs) throws IOException {
+        Encoder body = new Encoder();
+        for (CompiledExpression expr : exprs) {
+            body.varint(body.string(expr.source()));
+            List<String> variables = expr.variables();
+            body.varint(variables.size());
+            for (String v : variables) body.varint(body.string(v));
+            body.node(expr.root());
+        }
+        Encoder payload = new Encoder();
+        payload.varint(body.strings.size());
+        for (String s : body.strings) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            payload.varint(bytes.length);
+            payload.bytes(bytes, bytes.length);
+        }
+        payload.bytes(body.buf, body.len);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.buf, 0, payload.len);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC)
+                .putShort((short) FORMAT_VERSION)
+                .put((byte) ((engine.isOptimizing() ? FLAG_OPTIMIZED : 0)
+                        | (engine.numeric() == NumericMode.DECIMAL ? FLAG_DECIMAL : 0)))
+                .put((byte) 0)
+                .putInt(exprs.size())
+                .putInt(payload.len)
+                .putInt((int) crc.getValue())
+                .putInt(functionsFingerprint);
+        header.flip();
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer data = ByteBuffer.wrap(payload.buf, 0, payload.len);
+            while (header.hasRemaining()) ch.write(header);
+            while (data.hasRemaining()) ch.write(data);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 以内存映射读取 file 中的全部表达式（按写入顺序）。
+     *
+     * @throws IOException 文件不存在、格式版本、优化标志、数值模式或函数注册表不一致、校验和错误、内容损坏，
+     *                     或引用了引擎中不存在的函数
+     */
+    public List<CompiledExpression> read(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Not an expression store (size " + size + "): " + file);
+            }
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return decode(buf, file);
+        }
+    }
+
+    /**
+     * 启动时的常用入口：按 sources 的顺序返回编译结果。file 中已有的表达式直接读取，
+     * 文件不存在、失效（见 {@link #read(Path)}）或缺少某些表达式时重新编译，并把结果重写到 file；
+     * 写入失败不影响返回值。
+     *
+     * @throws ParseException 需要重新编译的表达式有语法错误
+     */
+    public List<CompiledExpression> load(Path file, List<String> sources) throws ParseException {
+        Map<String, CompiledExpression> cached = new HashMap<>();
+        boolean rewrite = false;
+        try {
+            for (CompiledExpression expr : read(file)) cached.put(expr.source(), expr);
+        } catch (IOException e) {
+            rewrite = true;
+        }
+        List<CompiledExpression> result = new ArrayList<>(sources.size());
+        for (String source : sources) {
+            CompiledExpression expr = cached.get(source);
+            if (expr == null) {
+                expr = engine.compile(source);
+                rewrite = true;
+            }
+            result.add(expr);
+        }
+        // 文件中有已不再使用的表达式时也重写，避免文件无限增长
+        if (rewrite || cached.size() != new HashSet<>(sources).size()) {
+            try {
+                write(file, result);
+            } catch (IOException e) {
+                // 缓存只是加速手段，写不进去时下次启动再重新编译
+            }
+        }
+        return result;
+    }
+
+    private List<CompiledExpression> decode(ByteBuffer buf, Path file) throws IOException {
+        if (buf.getInt(0) != MAGIC) throw new IOException("Not an expression store: " + file);
+        int version = buf.getShort(4) & 0xFFFF;
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported format version " + version + " (expected " + FORMAT_VERSION + "): " + file);
+        }
+        boolean optimized = (buf.get(6) & FLAG_OPTIMIZED) != 0;
+        if (optimized != engine.isOptimizing()) {
+            throw new IOException("Stored expressions were " + (optimized ? "" : "not ") + "optimized: " + file);
+        }
+        NumericMode numeric = (buf.get(6) & FLAG_DECIMAL) != 0 ? NumericMode.DECIMAL : NumericMode.DOUBLE;
+        if (numeric != engine.numeric()) {
+            throw new IOException("Stored expressions were compiled for numeric mode " + numeric + ": " + file);
+        }
+        if (buf.getInt(20) != functionsFingerprint) {
+            throw new IOException("Stored expressions were compiled with different functions: " + file);
+        }
+        int count = buf.getInt(8);
+        int length = buf.getInt(12);
+        int checksum = buf.getInt(16);
+        if (count < 0 || length != buf.capacity() - HEADER_SIZE) throw new IOException("Truncated expression store: " + file);
+
+        ByteBuffer payload = buf.duplicate();
+        payload.position(HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != checksum) throw new IOException("Checksum mismatch: " + file);
+
+        payload.position(HEADER_SIZE);
+        try {
+            Decoder in = new Decoder(payload, engine);
+            List<CompiledExpression> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String source = in.string();
+                String[] variables = new String[in.checkedLength(in.varint())];
+                for (int v = 0; v < variables.length; v++) variables[v] = in.string();
+                in.variables = variables;
+                Node root = in.node();
+                result.add(engine.prepare(new CompiledExpression(source, root, variables,
+                        engine.limits()), engine.mode()));
+            }
+            if (payload.hasRemaining()) throw new IOException("Trailing data in expression store: " + file);
+            return result;
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupted expression store: " + file, e);
+        }
+    }
+
+    // 各函数的名字、参数个数范围与纯函数标志，排序后取 CRC32
+    private static int fingerprint(FunctionRegistry functions) {
+        List<String> entries = new ArrayList<>();
+        for (FunctionDef fn : functions.all()) {
+            entries.add(fn.name() + '/' + fn.minArity() + '/' + fn.maxArity() + (fn.isPure() ? "/pure" : ""));
+        }
+        Collections.sort(entries);
+        CRC32 crc = new CRC32();
+        for (String entry : entries) {
+            byte[] bytes = (entry + '\n').getBytes(StandardCharsets.UTF_8);
+            crc.update(bytes, 0, bytes.length);
+        }
+        return (int) crc.getValue();
+    }
+
+    private static int operatorCode(TokenType op) {
+        for (int i = 0; i < OPERATORS.length; i++) {
+            if (OPERATORS[i] == op) return i;
+        }
+        throw new IllegalArgumentException("Cannot store operator " + op);
+    }
+
+    // 写入：可增长的字节数组，字符串按首次出现顺序编号
+    private static final class Encoder {
+        byte[] buf = new byte[256];
+        int len;
+        final List<String> strings = new ArrayList<>();
+        final Map<String, Integer> stringIndex = new HashMap<>();
+
+        int string(String s) {
+            Integer idx = stringIndex.get(s);
+            if (idx == null) {
+                idx = strings.size();
+                strings.add(s);
+                stringIndex.put(s, idx);
+            }
+            return idx;
+        }
+
+        void node(Node n) {
+            if (n instanceof NumberNode) {
+                Object value = ((NumberNode) n).value();
+                if (value instanceof Long) {
+                    header(TAG_LONG, n);
+                    varint(zigzag((Long) value));
+                } else if (value instanceof Double) {
+                    header(TAG_DOUBLE, n);
+                    long bits = Double.doubleToRawLongBits((Double) value);
+                    for (int shift = 56; shift >= 0; shift -= 8) u1((int) (bits >>> shift));
+                } else if (value instanceof BigDecimal) {
+                    header(TAG_DECIMAL_NUMBER, n);
+                    varint(string(value.toString()));
+                } else {
+                    throw new IllegalArgumentException("Cannot store number of type " + value.getClass().getName());
+                }
+            } else if (n instanceof StringNode) {
+                header(TAG_STRING, n);
+                varint(string(((StringNode) n).value()));
+            } else if (n instanceof BooleanNode) {
+                header(((BooleanNode) n).value() ? TAG_TRUE : TAG_FALSE, n);
+            } else if (n instanceof VariableNode) {
+                header(TAG_VARIABLE, n);
+                varint(((VariableNode) n).slot());
+            } else if (n instanceof UnaryNode) {
+                UnaryNode u = (UnaryNode) n;
+                header(TAG_UNARY, n);
+                u1(operatorCode(u.op()));
+                node(u.operand());
+            } else if (n instanceof BinaryNode) {
+                BinaryNode b = (BinaryNode) n;
+                header(TAG_BINARY, n);
+                u1(operatorCode(b.op()));
+                varint(zigzag(b.rightPos()));
+                node(b.left());
+                node(b.right());
+            } else if (n instanceof LogicalNode) {
+                LogicalNode l = (LogicalNode) n;
+                header(TAG_LOGICAL, n);
+                u1(operatorCode(l.op()));
+                node(l.left());
+                node(l.right());
+            } else if (n instanceof ConditionalNode) {
+                ConditionalNode c = (ConditionalNode) n;
+                header(TAG_CONDITIONAL, n);
+                node(c.cond());
+                node(c.trueExpr());
+                node(c.falseExpr());
+            } else if (n instanceof CallNode) {
+                CallNode c = (CallNode) n;
+                header(TAG_CALL, n);
+                varint(string(c.function().name()));
+                varint(c.arity());
+                for (Node arg : c.args()) node(arg);
+            } else if (n instanceof ConcatNode) {
+                ConcatNode c = (ConcatNode) n;
+                header(TAG_CONCAT, n);
+                List<Node> parts = c.parts();
+                varint(parts.size());
+                for (int i = 0; i < parts.size(); i++) {
+                    if (i > 0) varint(zigzag(c.opPos(i)));
+                    node(parts.get(i));
+                }
+            } else if (n instanceof DecimalNode) {
+                DecimalNode d = (DecimalNode) n;
+                header(TAG_DECIMAL, n);
+                u1(operatorCode(d.op()));
+                List<Node> operands = d.operands();
+                varint(operands.size());
+                if (operands.size() == 2) varint(zigzag(d.rightPos()));
+                for (Node operand : operands) node(operand);
+            } else {
+                throw new IllegalArgumentException("Cannot store node of type " + n.getClass().getName());
+            }
+        }
+
+        private void header(int tag, Node n) {
+            u1(tag);
+            varint(zigzag(n.pos()));
+        }
+
+        void u1(int b) {
+            if (len == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            buf[len++] = (byte) b;
+        }
+
+        void varint(long v) {
+            while ((v & ~0x7FL) != 0) {
+                u1((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            u1((int) v);
+        }
+
+        void bytes(byte[] b, int n) {
+            if (len + n > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + n));
+            System.arraycopy(b, 0, buf, len, n);
+            len += n;
+        }
+
+        private static long zigzag(long v) {
+            return (v << 1) ^ (v >> 63);
+        }
+    }
+
+    // 读取：直接从（映射的）缓冲区解码
+    private static final class Decoder {
+        private final ByteBuffer in;
+        private final MiniExprEngine engine;
+        private final String[] strings;
+        String[] variables;
+
+        Decoder(ByteBuffer in, MiniExprEngine engine) throws IOException {
+            this.in = in;
+            this.engine = engine;
+            this.strings = new String[checkedLength(varint())];
+            byte[] scratch = new byte[64];
+            for (int i = 0; i < strings.length; i++) {
+                int n = checkedLength(varint());
+                if (n > scratch.length) scratch = new byte[Math.max(n, scratch.length * 2)];
+                in.get(scratch, 0, n);
+                strings[i] = new String(scratch, 0, n, StandardCharsets.UTF_8);
+            }
+        }
+
+        private int checkedLength(long n) throws IOException {
+            if (n < 0 || n > in.remaining()) throw new IOException("Invalid length " + n);
+            return (int) n;
+        }
+
+        long varint() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.get();
+                v |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return v;
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        private int intValue() {
+            long v = unzigzag(varint());
+            if (v != (int) v) throw new IllegalArgumentException("Value out of range: " + v);
+            return (int) v;
+        }
+
+        String string() {
+            return strings[(int) Math.min(varint(), Integer.MAX_VALUE)];
+        }
+
+        private TokenType operator() {
+            return OPERATORS[in.get() & 0xFF];
+        }
+
+        Node node() throws IOException {
+            int tag = in.get();
+            int pos = intValue();
+            switch (tag) {
+                case TAG_LONG:
+                    return new NumberNode(unzigzag(varint()), pos);
+                case TAG_DOUBLE:
+                    return new NumberNode(Double.longBitsToDouble(in.getLong()), pos);
+                case TAG_STRING:
+                    return new StringNode(string(), pos);
+                case TAG_TRUE:
+                    return new BooleanNode(true, pos);
+                case TAG_FALSE:
+                    return new BooleanNode(false, pos);
+                case TAG_VARIABLE: {
+                    int slot = (int) Math.min(varint(), Integer.MAX_VALUE);
+                    return new VariableNode(variables[slot], slot, pos);
+                }
+                case TAG_UNARY: {
+                    TokenType op = operator();
+                    return new UnaryNode(op, node(), pos);
+                }
+                case TAG_BINARY: {
+                    TokenType op = operator();
+                    int rightPos = intValue();
+                    Node left = node();
+                    return new BinaryNode(left, op, node(), pos, rightPos);
+                }
+                case TAG_LOGICAL: {
+                    TokenType op = operator();
+                    Node left = node();
+                    return new LogicalNode(left, op, node(), pos);
+                }
+                case TAG_CONDITIONAL: {
+                    Node cond = node();
+                    Node t = node();
+                    return new ConditionalNode(cond, t, node(), pos);
+                }
+                case TAG_CALL: {
+                    String name = string();
+                    int arity = checkedLength(varint());
+                    FunctionDef fn = engine.functionRegistry().lookup(name, arity);
+                    if (fn == null) throw new IOException("Function not registered: " + name + "/" + arity);
+                    Node[] args = new Node[arity];
+                    for (int i = 0; i < arity; i++) args[i] = node();
+                    return new CallNode(fn, args, pos);
+                }
+                case TAG_CONCAT: {
+                    int count = checkedLength(varint());
+                    if (count < 2) throw new IOException("Invalid concatenation of " + count + " parts");
+                    Node[] parts = new Node[count];
+                    int[] positions = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        if (i > 0) positions[i] = intValue();
+                        parts[i] = node();
+                    }
+                    return new ConcatNode(parts, positions);
+                }
+                case TAG_DECIMAL_NUMBER:
+                    // 格式错误时抛出的 NumberFormatException 是 IllegalArgumentException
+                    return new NumberNode(new BigDecimal(string()), pos);
+                case TAG_DECIMAL: {
+                    TokenType op = operator();
+                    long arity = varint();
+                    if (arity == 1) return new DecimalNode(node(), pos);
+                    if (arity != 2) throw new IOException("Invalid decimal operation with " + arity + " operands");
+                    int rightPos = intValue();
+                    Node left = node();
+                    return new DecimalNode(left, op, node(), pos, rightPos);
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown node tag " + tag);
+            }
+        }
+
+        private static long unzigzag(long v) {
+            return (v >>> 1) ^ -(v & 1);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.miniexpr;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -10,10 +11,33 @@ import java.util.List;
  * 在原始输入中的起始字符索引（pos），便于后续解析器与错误定位。
  * <p>
  * 支持的词法元素：数字（整数/浮点）、字符串字面量（双引号）、标识符、运算符与分隔符。
+ * <p>
+ * 词法分析器是拉取式的：{@link #next()} 前进到下一个 Token，当前 Token 以
+ * 类型与输入中的区间 [{@link #start()}, {@link #end()}) 表示，不创建 Token 对象，
+ * 也不截取子串。{@link Parser} 按需驱动它，只有需要文本时（标识符首次出现、字符串字面量、
+ * 报错）才调用 {@link #text()} 等方法取值，数字直接从字符序列解析。
+ * {@link #tokenize()} 保留为一次性生成 Token 列表的兼容接口。
  */
 public class Lexer {
+    // 10^0 .. 10^22 都能用 double 精确表示
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final BigDecimal LONG_MIN = BigDecimal.valueOf(Long.MIN_VALUE);
+    private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+
     private final String input;
     private int pos = 0;
+    // 已读取的 Token 个数（不含 EOF）及其上限
+    private int tokenCount;
+    private int maxTokens = Integer.MAX_VALUE;
+
+    // 当前 Token
+    private TokenType type;
+    private int start;
+    private int end;
 
     public Lexer(String input) {
         this.input = input;
@@ -25,108 +49,216 @@ public class Lexer {
     }
 
     // 前进一个字符
-    private void next() {
+    private void next0() {
         pos++;
     }
 
+    /**
+     * 前进到下一个 Token 并返回其类型；到达输入末尾后一直返回 EOF。
+     * Token 个数超出 {@link Limits#maxTokens()} 时在超出的 Token 处抛出 ParseException。
+     */
+    public TokenType next() throws ParseException {
+        while (Character.isWhitespace(peek())) {
+            next0();
+        }
+        start = pos;
+        char ch = peek();
+        if (ch == '\0') {
+            type = TokenType.EOF;
+        } else if (Character.isDigit(ch)) {
+            type = readNumber();
+        } else if (ch == '"' || ch == '\'') {
+            type = readString();
+        } else if (Character.isLetter(ch) || ch == '_') {
+            type = readIdentifier();
+        } else {
+            type = readSymbol();
+        }
+        end = pos;
+        if (type != TokenType.EOF && ++tokenCount > maxTokens) {
+            throw new ParseException("Expression has too many tokens (limit " + maxTokens + ")", start);
+        }
+        return type;
+    }
+
+    /** 限制 Token 的个数，由 {@link Parser} 按 {@link Limits#maxTokens()} 设置 */
+    void maxTokens(int maxTokens) { this.maxTokens = maxTokens; }
+
+    /** 当前 Token 的类型（尚未调用 {@link #next()} 时为 null） */
+    public TokenType type() { return type; }
+
+    /** 当前 Token 在输入中的起始位置 */
+    public int start() { return start; }
+
+    /** 当前 Token 在输入中的结束位置（不含） */
+    public int end() { return end; }
+
+    /**
+     * 当前 Token 的文本，与 {@link Token#text} 一致：字符串字面量为去掉引号后的内容，EOF 为空串。
+     */
+    public String text() {
+        if (type == TokenType.STRING) return input.substring(start + 1, end - 1);
+        return input.substring(start, end);
+    }
+
+    /** 输入的字符数 */
+    int length() { return input.length(); }
+
+    /** 当前 Token 的文本是否等于 s（不创建子串） */
+    boolean textEquals(String s) {
+        int len = end - start;
+        return s.length() == len && input.regionMatches(start, s, 0, len);
+    }
+
+    /** 当前 Token 之后（跳过空白）的下一个字符是否为 c，用于区分函数调用与变量 */
+    boolean followedBy(char c) {
+        int i = end;
+        while (i < input.length() && Character.isWhitespace(input.charAt(i))) i++;
+        return i < input.length() && input.charAt(i) == c;
+    }
+
+    /**
+     * 把当前 NUMBER Token 解析为 Long（整数）或 Double（含小数点）。
+     * <p>
+     * 直接从输入字符计算：整数逐位累加并检查溢出；小数在有效数字不超过 2^53、
+     * 小数位数不超过 22 时用一次 double 除法得到正确舍入的结果（两个操作数都能精确表示），
+     * 其余情况（以及非 ASCII 数字）回退到 {@link Double#parseDouble} / {@link Long#parseLong}。
+     */
+    public Object numberValue() throws ParseException {
+        long mantissa = 0;
+        int fractionDigits = -1;
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            if (c == '.') {
+                fractionDigits = 0;
+                continue;
+            }
+            int d = c - '0';
+            // 非 ASCII 数字或有效数字超出 long 范围
+            if (d < 0 || d > 9 || mantissa > (Long.MAX_VALUE - d) / 10) return parseNumberSlow();
+            mantissa = mantissa * 10 + d;
+            if (fractionDigits >= 0) fractionDigits++;
+        }
+        if (fractionDigits < 0) return mantissa; // 整数
+        if (mantissa <= MAX_EXACT_MANTISSA && fractionDigits < POWERS_OF_TEN.length) {
+            return mantissa / POWERS_OF_TEN[fractionDigits];
+        }
+        return parseNumberSlow();
+    }
+
+    /**
+     * 把当前 NUMBER Token 解析为精确的十进制数（{@link NumericMode#DECIMAL}）：整数为 Long，
+     * 小数与超出 long 范围的整数为 BigDecimal，保留字面量的小数位数（{@code 1.50} 的 scale 为 2）。
+     */
+    public Object decimalValue() throws ParseException {
+        boolean fraction = false;
+        for (int i = start; i < end && !fraction; i++) fraction = input.charAt(i) == '.';
+        // 不超过 18 位的整数一定在 long 范围内
+        if (!fraction && end - start <= 18) return numberValue();
+        try {
+            BigDecimal value = new BigDecimal(input.substring(start, end));
+            if (!fraction && value.compareTo(LONG_MIN) >= 0 && value.compareTo(LONG_MAX) <= 0) {
+                return value.longValue();
+            }
+            return value;
+        } catch (NumberFormatException ex) {
+            throw new ParseException("Invalid number literal", start);
+        }
+    }
+
+    private Object parseNumberSlow() throws ParseException {
+        String text = input.substring(start, end);
+        try {
+            if (text.indexOf('.') >= 0) {
+                return Double.parseDouble(text); // 小数
+            } else {
+                return Long.parseLong(text); // 整数
+            }
+        } catch (NumberFormatException ex) {
+            throw new ParseException("Invalid number literal", start);
+        }
+    }
+
     /**
      * 把整个输入 tokenize 为 Token 列表，最后会追加一个 EOF Token。
      */
     public List<Token> tokenize() throws ParseException {
+        pos = 0;
+        tokenCount = 0;
         List<Token> tokens = new ArrayList<>();
-        while (true) {
-            char ch = peek();
-            if (ch == '\0') {
-                tokens.add(new Token(TokenType.EOF, "", pos));
-                break;
-            } else if (Character.isWhitespace(ch)) {
-                next();
-            } else if (Character.isDigit(ch)) {
-                tokens.add(readNumber());
-            } else if (ch == '"' || ch == '\'') {
-                tokens.add(readString());
-            } else if (Character.isLetter(ch) || ch == '_') {
-                tokens.add(readIdentifier());
-            } else {
-                tokens.add(readSymbol());
-            }
+        while (next() != TokenType.EOF) {
+            String fixed = type.symbol();
+            tokens.add(new Token(type, fixed != null ? fixed : text(), start));
         }
+        tokens.add(new Token(TokenType.EOF, "", start));
         return tokens;
     }
 
     // 读取标识符或关键字（本项目将标识符作为字符串值）
-    private Token readIdentifier() {
-        int start = pos;
+    private TokenType readIdentifier() {
         while (Character.isLetterOrDigit(peek()) || peek() == '_') {
-            next();
+            next0();
         }
-        return new Token(TokenType.IDENTIFIER, input.substring(start, pos), start);
+        return TokenType.IDENTIFIER;
     }
 
     // 读取数字（可能包含一个小数点）
-    private Token readNumber() {
-        int start = pos;
+    private TokenType readNumber() {
         boolean hasDot = false;
         while (Character.isDigit(peek()) || peek() == '.') {
             if (peek() == '.') {
                 if (hasDot) break; // 避免 "1.2.3"
                 hasDot = true;
             }
-            next();
+            next0();
         }
-        String text = input.substring(start, pos);
-        return new Token(TokenType.NUMBER, text, start);
+        return TokenType.NUMBER;
     }
 
-    // 读取双引号字符串字面量，不支持转义（简单实现）
-    private Token readString() throws ParseException {
-        int start = pos;
+    // 读取双引号字符串字面量，不支持转义（简单实现）；内容即引号之间的区间
+    private TokenType readString() throws ParseException {
         char quote = peek();
-        next(); // skip opening quote
-        StringBuilder sb = new StringBuilder();
-        while (peek() != quote && peek() != '\0') {
-            sb.append(peek());
-            next();
-        }
-        if (peek() != quote)
-            throw new ParseException("Unterminated string literal", start);
-        next(); // skip ending quote
-        return new Token(TokenType.STRING, sb.toString(), start);
+        int close = input.indexOf(quote, pos + 1);
+        if (close < 0)
+            throw new ParseException("Unterminated string literal", pos);
+        pos = close + 1; // skip ending quote
+        return TokenType.STRING;
     }
 
     // 读取运算符或单字符符号，支持双字符运算符如 "==", "!=", "&&", "||", ">=", "<=" 等
-    private Token readSymbol() throws ParseException {
+    private TokenType readSymbol() throws ParseException {
         int start = pos;
         char ch = peek();
-        next();
+        next0();
 
         switch (ch) {
-            case '+': return new Token(TokenType.PLUS, "+", start);
-            case '-': return new Token(TokenType.MINUS, "-", start);
-            case '*': return new Token(TokenType.STAR, "*", start);
-            case '/': return new Token(TokenType.SLASH, "/", start);
-            case '%': return new Token(TokenType.PERCENT, "%", start);
-            case '(': return new Token(TokenType.LPAREN, "(", start);
-            case ')': return new Token(TokenType.RPAREN, ")", start);
-            case '?': return new Token(TokenType.QUESTION, "?", start);
-            case ':': return new Token(TokenType.COLON, ":", start);
+            case '+': return TokenType.PLUS;
+            case '-': return TokenType.MINUS;
+            case '*': return TokenType.STAR;
+            case '/': return TokenType.SLASH;
+            case '%': return TokenType.PERCENT;
+            case '(': return TokenType.LPAREN;
+            case ')': return TokenType.RPAREN;
+            case ',': return TokenType.COMMA;
+            case '?': return TokenType.QUESTION;
+            case ':': return TokenType.COLON;
             case '!':
-                if (peek() == '=') { next(); return new Token(TokenType.NE, "!=", start); }
-                return new Token(TokenType.NOT, "!", start);
+                if (peek() == '=') { next0(); return TokenType.NE; }
+                return TokenType.NOT;
             case '=':
-                if (peek() == '=') { next(); return new Token(TokenType.EQ, "==", start); }
+                if (peek() == '=') { next0(); return TokenType.EQ; }
                 break;
             case '>':
-                if (peek() == '=') { next(); return new Token(TokenType.GE, ">=", start); }
-                return new Token(TokenType.GT, ">", start);
+                if (peek() == '=') { next0(); return TokenType.GE; }
+                return TokenType.GT;
             case '<':
-                if (peek() == '=') { next(); return new Token(TokenType.LE, "<=", start); }
-                return new Token(TokenType.LT, "<", start);
+                if (peek() == '=') { next0(); return TokenType.LE; }
+                return TokenType.LT;
             case '&':
-                if (peek() == '&') { next(); return new Token(TokenType.AND, "&&", start); }
+                if (peek() == '&') { next0(); return TokenType.AND; }
                 break;
             case '|':
-                if (peek() == '|') { next(); return new Token(TokenType.OR, "||", start); }
+                if (peek() == '|') { next0(); return TokenType.OR; }
                 break;
         }
         throw new ParseException("Unexpected symbol: " + ch, start);
@@ -0,0 +1,148 @@
+package org.miniexpr;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 表达式的复杂度限制（不可变），用于编译与求值不受信任的输入。
+ * <p>
+ * {@link Parser} 不递归，任意长、任意深的输入都能解析；但优化器、解释执行与静态分析等按 AST 递归的过程
+ * 在嵌套很深时会 {@link StackOverflowError}。超出编译时限制的表达式在解析时就以带位置的 {@link ParseException} 失败：
+ * <ul>
+ *   <li>{@link #maxLength()}：源码的最大字符数（默认不限制），在词法分析之前检查；</li>
+ *   <li>{@link #maxTokens()}：Token 的最大个数（默认不限制），由 {@link Lexer} 在读到超出的 Token 时报错；</li>
+ *   <li>{@link #maxDepth()}：AST 的最大嵌套深度（默认不限制）。叶子节点深度为 1，
+ *       每个运算符、三元运算与函数调用比其最深的操作数多 1；括号不增加深度，
+ *       {@code a + b + c + ...} 这样左结合的长链的深度与项数相同。几千项的 {@code ||} / {@code +} 长链
+ *       在默认线程栈下可以正常处理，因此默认不限制；编译不受信任的输入时应设置为
+ *       {@value #SAFE_MAX_DEPTH} 左右；</li>
+ *   <li>{@link #maxNodes()}：AST（优化之前）的最大节点数（默认不限制），在构造超出的节点时报错。</li>
+ * </ul>
+ * 表达式没有循环与递归，各种执行方式在一次求值中对每个节点至多求值一次（结果超出快速路径时也不重新求值子树），
+ * 因此不计已注册函数自身的开销，一次求值的工作量与节点数成正比，{@link #maxNodes()} 间接限制了它。
+ * 求值时的限制针对其余两种可能随输入放大的开销：
+ * <ul>
+ *   <li>{@link #maxStringLength()}：{@code +} 拼接得到的字符串的最大长度（默认不限制）。在分配结果之前检查，
+ *       超出时以 {@code +} 的位置抛出 ParseException。变量值、函数返回的字符串以及编译期折叠的字面量拼接
+ *       （长度不超过源码）本身不受限制；</li>
+ *   <li>{@link #evalTimeoutNanos()}：一次求值的最长时间（默认不限制）。求值开始时读取一次时钟，
+ *       之后每次函数调用返回时检查，超出时以该函数调用的位置抛出 ParseException，不再调用其余的函数。
+ *       函数之外的求值没有循环、耗时由节点数限制，因此不在其它节点上检查；正在执行的函数不会被打断，
+ *       单次调用本身的耗时仍由注册它的代码负责。</li>
+ * </ul>
+ * 编译时的检查每个 Token / 节点只是一次计数比较，拼接时多一次长度比较，设置超时时每次求值与每次函数调用各多读一次
+ * {@link System#nanoTime()}（不设置时只是一次布尔判断），可以在生产环境中一直开启。
+ * <p>
+ * {@link #DEFAULT} 什么都不限制，<b>不能用于不受信任的输入</b>：任意长的源码、任意多的节点与任意长的拼接结果
+ * 都会被接受。编译不受信任的输入时使用 {@link #UNTRUSTED}，或在它的基础上按需调整。
+ * 通过 {@link MiniExprEngine.Builder#limits(Limits)} 为引擎设置；从 {@link ExpressionStore} 读取的表达式
+ * 不再检查编译时限制，拼接长度与求值超时按读取它的引擎的限制检查。
+ */
+public final class Limits {
+    /** 在默认线程栈大小下对所有递归处理 AST 的过程都是安全的嵌套深度，用于 {@link #withMaxDepth(int)} */
+    public static final int SAFE_MAX_DEPTH = 1000;
+
+    /** {@link #evalTimeoutNanos()} 表示不限制求值时间的值 */
+    public static final long NO_TIMEOUT = Long.MAX_VALUE;
+
+    /** 不做任何限制（深层表达式可能在解析之后的处理中栈溢出） */
+    public static final Limits NONE = new Limits(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+            Integer.MAX_VALUE, Integer.MAX_VALUE, NO_TIMEOUT);
+
+    /** 默认限制：同 {@link #NONE}，与引入限制之前的行为相同。不能用于不受信任的输入，见 {@link #UNTRUSTED} */
+    public static final Limits DEFAULT = NONE;
+
+    /**
+     * 编译不受信任的输入时的限制：源码 10000 个字符、2000 个 Token、嵌套深度 {@value #SAFE_MAX_DEPTH}、
+     * 2000 个节点、拼接结果 64K 个字符、每次求值 1 秒。足够容纳手写的业务规则，超出时以 ParseException 拒绝。
+     */
+    public static final Limits UNTRUSTED = new Limits(10_000, 2_000, SAFE_MAX_DEPTH, 2_000, 64 * 1024,
+            TimeUnit.SECONDS.toNanos(1));
+
+    private final int maxLength;
+    private final int maxTokens;
+    private final int maxDepth;
+    private final int maxNodes;
+    private final int maxStringLength;
+    private final long evalTimeoutNanos;
+
+    private Limits(int maxLength, int maxTokens, int maxDepth, int maxNodes, int maxStringLength,
+                   long evalTimeoutNanos) {
+        this.maxLength = maxLength;
+        this.maxTokens = maxTokens;
+        this.maxDepth = maxDepth;
+        this.maxNodes = maxNodes;
+        this.maxStringLength = maxStringLength;
+        this.evalTimeoutNanos = evalTimeoutNanos;
+    }
+
+    /** 源码的最大字符数 */
+    public int maxLength() { return maxLength; }
+
+    /** Token 的最大个数（不含输入末尾的 EOF） */
+    public int maxTokens() { return maxTokens; }
+
+    /** AST 的最大嵌套深度 */
+    public int maxDepth() { return maxDepth; }
+
+    /** AST 的最大节点数 */
+    public int maxNodes() { return maxNodes; }
+
+    /** 求值时拼接得到的字符串的最大长度 */
+    public int maxStringLength() { return maxStringLength; }
+
+    /** 一次求值的最长时间（纳秒），{@link #NO_TIMEOUT} 表示不限制 */
+    public long evalTimeoutNanos() { return evalTimeoutNanos; }
+
+    /** 返回最大字符数为 maxLength、其余相同的限制 */
+    public Limits withMaxLength(int maxLength) {
+        if (maxLength < 0) throw new IllegalArgumentException("maxLength must be >= 0: " + maxLength);
+        return new Limits(maxLength, maxTokens, maxDepth, maxNodes, maxStringLength, evalTimeoutNanos);
+    }
+
+    /** 返回 Token 最大个数为 maxTokens、其余相同的限制 */
+    public Limits withMaxTokens(int maxTokens) {
+        if (maxTokens < 1) throw new IllegalArgumentException("maxTokens must be >= 1: " + maxTokens);
+        return new Limits(maxLength, maxTokens, maxDepth, maxNodes, maxStringLength, evalTimeoutNanos);
+    }
+
+    /** 返回最大嵌套深度为 maxDepth、其余相同的限制 */
+    public Limits withMaxDepth(int maxDepth) {
+        if (maxDepth < 1) throw new IllegalArgumentException("maxDepth must be >= 1: " + maxDepth);
+        return new Limits(maxLength, maxTokens, maxDepth, maxNodes, maxStringLength, evalTimeoutNanos);
+    }
+
+    /** 返回最大节点数为 maxNodes、其余相同的限制 */
+    public Limits withMaxNodes(int maxNodes) {
+        if (maxNodes < 1) throw new IllegalArgumentException("maxNodes must be >= 1: " + maxNodes);
+        return new Limits(maxLength, maxTokens, maxDepth, maxNodes, maxStringLength, evalTimeoutNanos);
+    }
+
+    /** 返回拼接字符串的最大长度为 maxStringLength、其余相同的限制 */
+    public Limits withMaxStringLength(int maxStringLength) {
+        if (maxStringLength < 0) {
+            throw new IllegalArgumentException("maxStringLength must be >= 0: " + maxStringLength);
+        }
+        return new Limits(maxLength, maxTokens, maxDepth, maxNodes, maxStringLength, evalTimeoutNanos);
+    }
+
+    /** 返回一次求值的最长时间为 timeout、其余相同的限制；超过约 146 年的时间视为不限制 */
+    public Limits withEvalTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0) throw new IllegalArgumentException("timeout must be > 0: " + timeout);
+        long nanos = unit.toNanos(timeout);
+        // 截止时间按 nanoTime 的差值比较，时长不能超过 long 范围的一半
+        return new Limits(maxLength, maxTokens, maxDepth, maxNodes, maxStringLength,
+                nanos >= Long.MAX_VALUE / 2 ? NO_TIMEOUT : nanos);
+    }
+
+    /** 返回不限制求值时间、其余相同的限制 */
+    public Limits withoutEvalTimeout() {
+        return new Limits(maxLength, maxTokens, maxDepth, maxNodes, maxStringLength, NO_TIMEOUT);
+    }
+
+    @Override
+    public String toString() {
+        return "Limits(maxLength=" + maxLength + ", maxTokens=" + maxTokens + ", maxDepth=" + maxDepth
+                + ", maxNodes=" + maxNodes + ", maxStringLength=" + maxStringLength
+                + (evalTimeoutNanos != NO_TIMEOUT ? ", evalTimeoutNanos=" + evalTimeoutNanos : "") + ")";
+    }
+}
@@ -1,37 +1,110 @@
 package org.miniexpr;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+import org.miniexpr.async.AsyncResolver;
+
+/**
+ * 静态入口，委托给一个默认配置的 {@link MiniExprEngine}（见 {@link #engine()}）。
+ * 需要多套独立配置（缓存、执行方式、优化开关）时直接创建 {@link MiniExprEngine}。
+ */
 public class MiniExpr {
 
-    private static final ThreadLocal<Map<String, Object>> context = new ThreadLocal<>();
+    /** 默认缓存容量 */
+    public static final int DEFAULT_CACHE_SIZE = 512;
+
+    private static volatile MiniExprEngine engine = MiniExprEngine.builder().build();
+
+    /** 返回静态方法使用的默认引擎 */
+    public static MiniExprEngine engine() { return engine; }
+
+    /**
+     * 重新设置 {@link #eval(String, Map)} 使用的编译缓存容量（会丢弃现有缓存条目），0 表示禁用缓存。
+     */
+    public static void setCacheSize(int maxSize) { engine = engine.toBuilder().cacheSize(maxSize).build(); }
+
+    /** 返回当前使用的编译缓存（可读取命中 / 未命中 / 淘汰计数） */
+    public static ExpressionCache cache() { return engine.cache(); }
+
+    /**
+     * 编译表达式：只执行一次词法分析、语法解析与优化（见 {@link Optimizer}），
+     * 返回可重复求值的 {@link CompiledExpression}。
+     */
+    public static CompiledExpression compile(String expr) throws ParseException {
+        return engine.compile(expr);
+    }
+
+    /**
+     * 以指定的执行方式编译表达式。{@link ExecutionMode#BYTECODE} 会把 AST 编译为生成类，
+     * 无法编译时回退为解释执行（可通过 {@link CompiledExpression#mode()} 查看实际执行方式）。
+     * {@link ExecutionMode#VM} 把 AST 降为由不递归的虚拟机执行的指令序列。
+     */
+    public static CompiledExpression compile(String expr, ExecutionMode mode) throws ParseException {
+        return engine.compile(expr, mode);
+    }
+
+    /**
+     * 编译一组表达式：结构相同的子表达式合并为一个节点，对同一组变量求值所有表达式时每个共享的子表达式
+     * 只计算一次，结果按输入顺序返回，见 {@link ExpressionSet}。
+     */
+    public static ExpressionSet compileAll(List<String> exprs) throws ParseException {
+        return engine.compileAll(exprs);
+    }
+
+    /** 同 {@link #compileAll(List)} */
+    public static ExpressionSet compileAll(String... exprs) throws ParseException {
+        return engine.compileAll(exprs);
+    }
+
+    /**
+     * 编译一组布尔表达式（例如订阅过滤条件）并建立谓词索引：对一条记录只返回结果为真的表达式编号，
+     * 只有索引无法排除的表达式才会求值，见 {@link PredicateIndex}。
+     */
+    public static PredicateIndex compileIndex(List<String> exprs) throws ParseException {
+        return engine.compileIndex(exprs);
+    }
 
-    public static void setContext(Map<String, Object> ctx) { context.set(ctx); }
-    public static void clearContext() { context.remove(); }
-    public static Map<String, Object> getContext() { return context.get(); }
+    /** 同 {@link #compileIndex(List)} */
+    public static PredicateIndex compileIndex(String... exprs) throws ParseException {
+        return engine.compileIndex(exprs);
+    }
+
+    /**
+     * 编译表达式但不抛出异常：成功或失败都返回 {@link CompileResult}，失败时包含错误消息与位置。
+     * 适合大量校验用户输入的表达式；配合 {@link ParseException#setStackTraceEnabled(boolean)} 关闭堆栈捕获后，
+     * 失败路径只创建一个轻量的异常对象。
+     */
+    public static CompileResult tryCompile(String expr) {
+        return engine.tryCompile(expr);
+    }
+
+    /** 同 {@link #tryCompile(String)}，以指定的执行方式编译 */
+    public static CompileResult tryCompile(String expr, ExecutionMode mode) {
+        return engine.tryCompile(expr, mode);
+    }
 
     /**
      * 入口方法：计算表达式（无变量上下文）
      */
     public static Object eval(String expr) throws ParseException {
-        return eval(expr, null);
+        return engine.eval(expr);
     }
 
     /**
-     * 入口方法：计算表达式，提供变量上下文
+     * 入口方法：计算表达式，提供变量上下文。
+     * 相同源码的编译结果会被缓存（见 {@link #cache()}），重复求值时跳过词法分析与解析。
      */
     public static Object eval(String expr, Map<String, Object> vars) throws ParseException {
-        try {
-            ParseException.setSource(expr);
-            setContext(vars);
-            Lexer lexer = new Lexer(expr);
-            Parser parser = new Parser(lexer);
-            Node node = parser.parseExpression();
-            return node.eval();
-        } finally {
-            ParseException.clearSource();
-            clearContext();
-        }
+        return engine.eval(expr, vars);
+    }
+
+    /**
+     * 异步计算表达式，变量通过 resolver 按需取得，见 {@link MiniExprEngine#evalAsync(String, AsyncResolver)}。
+     */
+    public static CompletableFuture<Object> evalAsync(String expr, AsyncResolver resolver) {
+        return engine.evalAsync(expr, resolver);
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,321 @@
+package org.miniexpr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.miniexpr.async.AsyncResolver;
+import org.miniexpr.bytecode.BytecodeCompiler;
+import org.miniexpr.functions.FunctionRegistry;
+import org.miniexpr.metrics.EvaluationListener;
+import org.miniexpr.metrics.NodeProfiler;
+import org.miniexpr.vm.VmCompiler;
+
+/**
+ * 可配置的表达式引擎实例。
+ * <p>
+ * 每个引擎持有自己的编译缓存、函数注册表、默认执行方式与优化开关（字节码方式下还有自己的 {@link BytecodeCompiler}），同一个 JVM 中可以同时使用多个配置不同、互不影响的引擎。
+ * 引擎不使用任何线程本地状态：变量通过 {@link Bindings} 显式传入求值过程，错误源码在异常传出时附加，
+ * 因此可以在虚拟线程、异步回调或工作窃取的任务中安全求值。实例不可变，可以在多个线程中共享。
+ * <p>
+ * 可选地安装 {@link EvaluationListener}（例如 {@link org.miniexpr.metrics.ExpressionMetrics}）记录编译与求值的
+ * 耗时和错误，或安装 {@link NodeProfiler} 对 AST 逐节点采样计时；两者默认关闭，关闭时没有额外开销。
+ * <p>
+ * 通过 {@link #builder()} 创建；静态入口 {@link MiniExpr} 委托给一个默认配置的引擎。
+ */
+public final class MiniExprEngine {
+    private final int cacheSize;
+    private final ExecutionMode mode;
+    private final boolean optimize;
+    private final NumericMode numeric;
+    private final FunctionRegistry functions;
+    private final Limits limits;
+    private final EvaluationListener listener;
+    private final NodeProfiler profiler;
+    private final BytecodeCompiler bytecodeCompiler;
+    private final ExpressionCache cache;
+
+    private MiniExprEngine(Builder builder) {
+        this.cacheSize = builder.cacheSize;
+        this.mode = builder.mode;
+        this.optimize = builder.optimize;
+        this.numeric = builder.numeric;
+        this.functions = builder.functions.copy();
+        this.limits = builder.limits;
+        this.listener = builder.listener;
+        this.profiler = builder.profiler;
+        this.bytecodeCompiler = new BytecodeCompiler();
+        this.cache = new ExpressionCache(cacheSize, this);
+    }
+
+    public static Builder builder() { return new Builder(); }
+
+    /** 返回配置相同的构建器（新引擎有自己的空缓存） */
+    public Builder toBuilder() {
+        return new Builder().cacheSize(cacheSize).mode(mode).optimize(optimize).numeric(numeric)
+                .functions(functions).limits(limits).listener(listener).profiler(profiler);
+    }
+
+    /** 默认执行方式 */
+    public ExecutionMode mode() { return mode; }
+
+    /** 编译时是否运行 {@link Optimizer} */
+    public boolean isOptimizing() { return optimize; }
+
+    /** 数值运算的语义 */
+    public NumericMode numeric() { return numeric; }
+
+    /** 表达式可调用的函数（返回副本，修改它不影响本引擎） */
+    public FunctionRegistry functions() { return functions.copy(); }
+
+    /** 编译与求值时的复杂度限制 */
+    public Limits limits() { return limits; }
+
+    /** 安装的监听器，没有时为 null */
+    public EvaluationListener listener() { return listener; }
+
+    /** 安装的逐节点采样器，没有时为 null */
+    public NodeProfiler profiler() { return profiler; }
+
+    /** 返回 {@link #eval(String, Map)} 使用的编译缓存（可读取命中 / 未命中 / 淘汰计数） */
+    public ExpressionCache cache() { return cache; }
+
+    /**
+     * 以默认执行方式编译表达式（不经过缓存）。
+     */
+    public CompiledExpression compile(String expr) throws ParseException {
+        return compile(expr, mode);
+    }
+
+    /**
+     * 以指定的执行方式编译表达式。{@link ExecutionMode#BYTECODE} 会把 AST 编译为生成类，
+     * 无法编译时回退为解释执行（可通过 {@link CompiledExpression#mode()} 查看实际执行方式）。
+     * {@link ExecutionMode#VM} 把 AST 降为由不递归的虚拟机执行的指令序列。
+     * 安装了 {@link NodeProfiler} 时总是解释执行。
+     */
+    public CompiledExpression compile(String expr, ExecutionMode mode) throws ParseException {
+        long start = listener != null ? System.nanoTime() : 0L;
+        CompiledExpression compiled;
+        try {
+            compiled = parse(expr, optimize, numeric, functions, limits);
+        } catch (ParseException e) {
+            if (listener != null) listener.compileFailed(expr, e, System.nanoTime() - start);
+            throw e;
+        }
+        compiled = prepare(compiled, mode);
+        if (listener != null) listener.compiled(compiled, System.nanoTime() - start);
+        return compiled;
+    }
+
+    /**
+     * 编译一组表达式，合并为共享结构相同的子表达式的 {@link ExpressionSet}，对同一组变量一次求值所有表达式。
+     * 各表达式按本引擎的函数、优化开关与限制解析；任何一个编译失败时抛出其 ParseException（附带该表达式的源码）。
+     */
+    public ExpressionSet compileAll(List<String> exprs) throws ParseException {
+        List<CompiledExpression> compiled = new ArrayList<>(exprs.size());
+        for (String expr : exprs) compiled.add(parse(expr, optimize, numeric, functions, limits));
+        return ExpressionSet.of(compiled);
+    }
+
+    /** 同 {@link #compileAll(List)} */
+    public ExpressionSet compileAll(String... exprs) throws ParseException {
+        return compileAll(Arrays.asList(exprs));
+    }
+
+    /**
+     * 编译一组布尔表达式并建立 {@link PredicateIndex}：对一条记录只返回结果为真的表达式编号，
+     * 由索引排除的表达式不会求值。编译方式与失败时的异常同 {@link #compileAll(List)}。
+     */
+    public PredicateIndex compileIndex(List<String> exprs) throws ParseException {
+        List<CompiledExpression> compiled = new ArrayList<>(exprs.size());
+        for (String expr : exprs) compiled.add(parse(expr, optimize, numeric, functions, limits));
+        return PredicateIndex.of(compiled);
+    }
+
+    /** 同 {@link #compileIndex(List)} */
+    public PredicateIndex compileIndex(String... exprs) throws ParseException {
+        return compileIndex(Arrays.asList(exprs));
+    }
+
+    // 对解析（或从 ExpressionStore 读取）得到的解释执行结果应用执行方式、采样器与监听器
+    CompiledExpression prepare(CompiledExpression compiled, ExecutionMode mode) {
+        if (profiler != null) {
+            compiled = compiled.withProfiler(profiler);
+        } else if (mode == ExecutionMode.BYTECODE) {
+            Node generated = bytecodeCompiler.compile(compiled.root());
+            if (generated != null) compiled = compiled.withExecutable(generated, ExecutionMode.BYTECODE);
+        } else if (mode == ExecutionMode.VM) {
+            compiled = compiled.withExecutable(VmCompiler.compile(compiled.root()), ExecutionMode.VM);
+        }
+        return listener != null ? compiled.withListener(listener) : compiled;
+    }
+
+    // 解析函数调用使用的注册表（不复制，只读）
+    FunctionRegistry functionRegistry() { return functions; }
+
+    /** 编译表达式但不抛出异常，见 {@link MiniExpr#tryCompile(String)} */
+    public CompileResult tryCompile(String expr) {
+        return tryCompile(expr, mode);
+    }
+
+    /** 同 {@link #tryCompile(String)}，以指定的执行方式编译 */
+    public CompileResult tryCompile(String expr, ExecutionMode mode) {
+        try {
+            return CompileResult.success(compile(expr, mode));
+        } catch (ParseException e) {
+            return CompileResult.failure(expr, e);
+        }
+    }
+
+    /** 计算表达式（无变量上下文） */
+    public Object eval(String expr) throws ParseException {
+        return eval(expr, null);
+    }
+
+    /**
+     * 计算表达式，提供变量上下文。相同源码的编译结果会被缓存（见 {@link #cache()}）。
+     */
+    public Object eval(String expr, Map<String, Object> vars) throws ParseException {
+        return cache.get(expr).eval(vars);
+    }
+
+    /**
+     * 异步计算表达式，变量通过 resolver 按需取得（见 {@link CompiledExpression#evalAsync(AsyncResolver)}）。
+     * 编译结果同样经过缓存；编译失败时返回以 ParseException 异常完成的 future。
+     */
+    public CompletableFuture<Object> evalAsync(String expr, AsyncResolver resolver) {
+        try {
+            return cache.get(expr).evalAsync(resolver);
+        } catch (ParseException e) {
+            CompletableFuture<Object> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    // 未指定引擎时（例如独立的 ExpressionCache）使用的函数
+    private static final FunctionRegistry DEFAULT_FUNCTIONS = FunctionRegistry.builtins();
+
+    static CompiledExpression parse(String expr, boolean optimize) throws ParseException {
+        return parse(expr, optimize, NumericMode.DOUBLE, DEFAULT_FUNCTIONS, Limits.DEFAULT);
+    }
+
+    // 词法分析、语法解析与（可选的）优化，得到解释执行的编译结果
+    static CompiledExpression parse(String expr, boolean optimize, NumericMode numeric, FunctionRegistry functions,
+                                    Limits limits) throws ParseException {
+        try {
+            Lexer lexer = new Lexer(expr);
+            Parser parser = new Parser(lexer, functions, limits, numeric);
+            Node root = parser.parseExpression();
+            if (optimize) root = optimize(root);
+            return new CompiledExpression(expr, root, parser.variables(), limits);
+        } catch (ParseException e) {
+            throw e.withSource(expr);
+        }
+    }
+
+    // 优化器按 AST 递归：嵌套过深而栈溢出时保留未优化的 AST（优化不改变结果），
+    // 使 ExecutionMode.VM 仍能编译并执行任意深度的表达式
+    private static Node optimize(Node root) {
+        try {
+            return Optimizer.optimize(root);
+        } catch (StackOverflowError e) {
+            return root;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MiniExprEngine(mode=" + mode + ", optimize=" + optimize + ", numeric=" + numeric + ", cacheSize=" + cacheSize
+                + ", functions=" + functions.names() + ", " + limits + ")";
+    }
+
+    /**
+     * {@link MiniExprEngine} 的构建器。默认：缓存容量 {@link MiniExpr#DEFAULT_CACHE_SIZE}、
+     * {@link ExecutionMode#INTERPRETER}、启用优化、{@link NumericMode#DOUBLE}、内置函数（{@link FunctionRegistry#builtins()}）、
+     * 默认限制（{@link Limits#DEFAULT}，不限制；编译不受信任的输入时应设置为 {@link Limits#UNTRUSTED}）。
+     */
+    public static final class Builder {
+        private int cacheSize = MiniExpr.DEFAULT_CACHE_SIZE;
+        private ExecutionMode mode = ExecutionMode.INTERPRETER;
+        private boolean optimize = true;
+        private NumericMode numeric = NumericMode.DOUBLE;
+        private FunctionRegistry functions = FunctionRegistry.builtins();
+        private Limits limits = Limits.DEFAULT;
+        private EvaluationListener listener;
+        private NodeProfiler profiler;
+
+        private Builder() {}
+
+        /** 编译缓存容量，0 表示禁用缓存 */
+        public Builder cacheSize(int cacheSize) {
+            if (cacheSize < 0) throw new IllegalArgumentException("cacheSize must be >= 0: " + cacheSize);
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        /** 默认执行方式，用于 {@link MiniExprEngine#compile(String)} 与 {@link MiniExprEngine#eval(String, Map)} */
+        public Builder mode(ExecutionMode mode) {
+            if (mode == null) throw new NullPointerException("mode");
+            this.mode = mode;
+            return this;
+        }
+
+        /** 是否在编译时运行 {@link Optimizer}（常量折叠与恒等化简） */
+        public Builder optimize(boolean optimize) {
+            this.optimize = optimize;
+            return this;
+        }
+
+        /**
+         * 数值运算的语义：{@link NumericMode#DOUBLE}（默认）或精确十进制的 {@link NumericMode#DECIMAL}。
+         * 十进制模式下算术与比较解释执行（字节码与虚拟机方式把这些节点作为解释执行的子树调用）。
+         */
+        public Builder numeric(NumericMode numeric) {
+            if (numeric == null) throw new NullPointerException("numeric");
+            this.numeric = numeric;
+            return this;
+        }
+
+        /**
+         * 表达式可调用的函数。构建时保存注册表的副本，之后修改 functions 不影响已构建的引擎；
+         * 需要内置函数时从 {@link FunctionRegistry#builtins()} 开始注册。
+         */
+        public Builder functions(FunctionRegistry functions) {
+            if (functions == null) throw new NullPointerException("functions");
+            this.functions = functions;
+            return this;
+        }
+
+        /**
+         * 复杂度限制：源码长度、Token 个数、嵌套深度与节点数超出时编译失败，
+         * 拼接得到的字符串超出长度上限时求值失败
+         */
+        public Builder limits(Limits limits) {
+            if (limits == null) throw new NullPointerException("limits");
+            this.limits = limits;
+            return this;
+        }
+
+        /** 接收编译与求值事件的监听器，null 表示不监听（默认） */
+        public Builder listener(EvaluationListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * 对编译出的表达式逐节点采样计时，null 表示不采样（默认）。采样时表达式总是解释执行，
+         * 并且每个内部节点多一层包装，只应在定位热点时临时启用。
+         */
+        public Builder profiler(NodeProfiler profiler) {
+            this.profiler = profiler;
+            return this;
+        }
+
+        public MiniExprEngine build() {
+            return new MiniExprEngine(this);
+        }
+    }
+}
@@ -1,8 +1,39 @@
 package org.miniexpr;
 
+import org.miniexpr.nodes.Operators;
+
 public interface Node {
-    Object eval() throws ParseException;
+    /**
+     * 对节点求值。vars 为本次求值的变量绑定（按槽位索引，见 {@link Bindings}）。
+     */
+    Object eval(Bindings vars) throws ParseException;
 
     /** 返回该节点在原始输入字符串中的起始字符索引（用于错误定位） */
     int pos();
+
+    /** 返回节点的静态类型（解析时推导），默认 {@link ValueType#ANY} */
+    default ValueType type() { return ValueType.ANY; }
+
+    /**
+     * 以 long 求值，仅当 {@link #type()} 为 {@link ValueType#LONG} 时调用；
+     * 结果与 {@code ((Number) eval(vars)).longValue()} 相同，但实现可以避免装箱。
+     */
+    default long evalLong(Bindings vars) throws ParseException {
+        return ((Number) eval(vars)).longValue();
+    }
+
+    /**
+     * 以 double 求值，仅当 {@link #type()} 为数值类型时调用；
+     * 结果与 {@code ((Number) eval(vars)).doubleValue()} 相同，但实现可以避免装箱。
+     */
+    default double evalDouble(Bindings vars) throws ParseException {
+        return ((Number) eval(vars)).doubleValue();
+    }
+
+    /**
+     * 求值并按真值规则（见 {@link Operators#truthy(Object)}）转换为 boolean，任何类型的节点都可调用。
+     */
+    default boolean evalBoolean(Bindings vars) throws ParseException {
+        return Operators.truthy(eval(vars));
+    }
 }
@@ -0,0 +1,19 @@
+package org.miniexpr;
+
+/**
+ * 数值运算的语义，由引擎在编译时选择（见 {@link MiniExprEngine.Builder#numeric(NumericMode)}）。
+ */
+public enum NumericMode {
+    /**
+     * 按 double 计算（默认）：任一操作数为浮点数时结果为 Double；两边都是整数且结果为整数时为 Long。
+     * {@code 0.1 + 0.2} 等小数与超出 2^53 的整数会有舍入误差。
+     */
+    DOUBLE,
+    /**
+     * 精确的十进制运算（见 {@link org.miniexpr.nodes.DecimalNode}）：小数字面量为 BigDecimal，
+     * 加、减、乘与取模的结果精确，除法的商超过 34 位有效数字时舍入；比较按数值精确比较。
+     * 整数之间的运算结果为 Long（超出 long 范围时为 BigDecimal），其余为 BigDecimal。
+     * 适合金额等需要精确小数的计算。
+     */
+    DECIMAL
+}
@@ -0,0 +1,257 @@
+package org.miniexpr;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.miniexpr.nodes.BinaryNode;
+import org.miniexpr.nodes.BooleanNode;
+import org.miniexpr.nodes.CallNode;
+import org.miniexpr.nodes.ConcatNode;
+import org.miniexpr.nodes.ConditionalNode;
+import org.miniexpr.nodes.DecimalNode;
+import org.miniexpr.nodes.LogicalNode;
+import org.miniexpr.nodes.NumberNode;
+import org.miniexpr.nodes.Operators;
+import org.miniexpr.nodes.StringNode;
+import org.miniexpr.nodes.UnaryNode;
+
+/**
+ * 解析之后、求值之前的优化 pass：常量折叠与代数化简。
+ * <p>
+ * 自底向上重建 AST：
+ * <ul>
+ *   <li>操作数全为常量的 {@link BinaryNode} / {@link UnaryNode} / {@link DecimalNode} 在编译期求值，替换为常量节点；</li>
+ *   <li>条件为常量的 {@link ConditionalNode} 直接替换为被选中的分支；</li>
+ *   <li>参数全为常量的纯函数调用（{@link CallNode}，见 {@link org.miniexpr.functions.FunctionDef#pure()}）
+ *       在编译期求值；</li>
+ *   <li>结果严格不变的恒等式被化简，例如 {@code !!x}（x 为布尔）、{@code -(-x)}、{@code +x}、
+ *       {@code x * 1} / {@code x / 1} / {@code x - 0}（x 为 Double）、{@code s + ''}（s 为字符串）、
+ *       {@code x && true} / {@code x || false}（x 为布尔）；</li>
+ *   <li>左边为常量的 {@link LogicalNode} 按短路语义化简：{@code false && x} 为 false，
+ *       {@code true && x} 为 x 的真值；</li>
+ *   <li>每一步结果都是字符串的 {@code a + b + c ...} 合并为一个 {@link ConcatNode}，
+ *       相邻的常量部分（第一部分之后）预先拼接为一个字符串常量。</li>
+ * </ul>
+ * 编译期求值抛出 ParseException 的子树（例如 {@code 1 / 0}）保持原样，错误仍在求值时抛出。
+ * 新节点沿用被替换节点的 pos()（比较运算的报错位置、三元节点的位置也一并保留），
+ * 因此 ParseException 的 caret 仍指向原始字符。子树未发生变化时复用原节点。
+ */
+public final class Optimizer {
+
+    private Optimizer() {}
+
+    public static Node optimize(Node node) {
+        if (node instanceof BinaryNode) return optimizeBinary((BinaryNode) node);
+        if (node instanceof LogicalNode) return optimizeLogical((LogicalNode) node);
+        if (node instanceof UnaryNode) return optimizeUnary((UnaryNode) node);
+        if (node instanceof ConditionalNode) return optimizeConditional((ConditionalNode) node);
+        if (node instanceof CallNode) return optimizeCall((CallNode) node);
+        if (node instanceof DecimalNode) return optimizeDecimal((DecimalNode) node);
+        return node;
+    }
+
+    private static Node optimizeBinary(BinaryNode b) {
+        Node left = optimize(b.left());
+        Node right = optimize(b.right());
+        BinaryNode n = left == b.left() && right == b.right()
+                ? b : new BinaryNode(left, b.op(), right, b.pos(), b.rightPos());
+        if (isConstant(left) && isConstant(right)) return fold(n);
+
+        switch (b.op()) {
+            case PLUS:
+                if (left.type() == ValueType.STRING && isString(right, "")) return left;
+                if (right.type() == ValueType.STRING && isString(left, "")) return right;
+                if (n.type() == ValueType.STRING) return concat(n);
+                break;
+            case STAR:
+                if (left.type() == ValueType.DOUBLE && isNumber(right, 1)) return left;
+                if (right.type() == ValueType.DOUBLE && isNumber(left, 1)) return right;
+                break;
+            case SLASH:
+                if (left.type() == ValueType.DOUBLE && isNumber(right, 1)) return left;
+                break;
+            case MINUS:
+                // x - 0 对 -0.0 同样成立；x + 0 则不成立（-0.0 + 0 = 0.0），故不化简
+                if (left.type() == ValueType.DOUBLE && isNumber(right, 0)) return left;
+                break;
+            default:
+                break;
+        }
+        return n;
+    }
+
+    // n 为结果是字符串的 +：左边也是（已合并的）字符串拼接时，把 n 的右边接到左边的各部分之后。
+    // 每一步的结果都是字符串，因此 a + b + c 等于各部分的字符串形式依次相接，
+    // 第一部分之后相邻的常量可以预先拼接（x + 'a' + 1 即 x + 'a1'）
+    private static Node concat(BinaryNode n) {
+        Node left = n.left();
+        Node[] parts;
+        int[] positions;
+        if (left instanceof ConcatNode) {
+            ConcatNode c = (ConcatNode) left;
+            parts = c.parts().toArray(new Node[c.parts().size() + 1]);
+            positions = new int[parts.length];
+            for (int i = 1; i < parts.length - 1; i++) positions[i] = c.opPos(i);
+        } else if (left instanceof BinaryNode && ((BinaryNode) left).op() == TokenType.PLUS
+                && left.type() == ValueType.STRING) {
+            BinaryNode l = (BinaryNode) left;
+            parts = new Node[] {l.left(), l.right(), null};
+            positions = new int[] {0, l.pos(), 0};
+        } else {
+            return n;
+        }
+        int last = parts.length - 1;
+        Node right = n.right();
+        if (last >= 2 && isConstant(parts[last - 1]) && isConstant(right)) {
+            // 与前一个常量部分合并，沿用它的位置
+            parts[last - 1] = new StringNode(text(parts[last - 1]) + text(right), parts[last - 1].pos());
+            parts = Arrays.copyOf(parts, last);
+            positions = Arrays.copyOf(positions, last);
+            if (parts.length == 2) return new BinaryNode(parts[0], TokenType.PLUS, parts[1], positions[1]);
+        } else {
+            parts[last] = right;
+            positions[last] = n.pos();
+        }
+        return new ConcatNode(parts, positions);
+    }
+
+    private static String text(Node constant) {
+        if (constant instanceof NumberNode) return ((NumberNode) constant).text();
+        if (constant instanceof StringNode) return ((StringNode) constant).text();
+        return ((BooleanNode) constant).text();
+    }
+
+    private static Node optimizeLogical(LogicalNode l) {
+        Node left = optimize(l.left());
+        Node right = optimize(l.right());
+        boolean and = l.op() == TokenType.AND;
+        if (isConstant(left)) {
+            boolean lv = Operators.truthy(constantValue(left));
+            // 左边已决定结果（false && x、true || x）：右边本就不会被求值，直接替换为常量
+            if (lv != and) return new BooleanNode(lv, l.pos());
+            // 否则结果就是右边的真值（true && x、false || x）
+            if (right.type() == ValueType.BOOLEAN) return right;
+            if (isConstant(right)) return new BooleanNode(Operators.truthy(constantValue(right)), l.pos());
+        } else if (left.type() == ValueType.BOOLEAN && isConstant(right)
+                && Operators.truthy(constantValue(right)) == and) {
+            // x && true、x || false（x 为布尔）：结果就是 x
+            return left;
+        }
+        if (left == l.left() && right == l.right()) return l;
+        return new LogicalNode(left, l.op(), right, l.pos());
+    }
+
+    private static Node optimizeUnary(UnaryNode u) {
+        Node operand = optimize(u.operand());
+        UnaryNode n = operand == u.operand() ? u : new UnaryNode(u.op(), operand, u.pos());
+        if (isConstant(operand)) return fold(n);
+
+        ValueType t = operand.type();
+        switch (u.op()) {
+            case PLUS:
+                // +x 原样返回数值操作数
+                if (t.isNumeric()) return operand;
+                break;
+            case NOT:
+                // !!x == x（仅当 x 本身为布尔）
+                if (operand instanceof UnaryNode && ((UnaryNode) operand).op() == TokenType.NOT
+                        && ((UnaryNode) operand).operand().type() == ValueType.BOOLEAN) {
+                    return ((UnaryNode) operand).operand();
+                }
+                break;
+            case MINUS:
+                // -(-x) == x（Long 取负两次回到原值，Double 取负精确）
+                if (operand instanceof UnaryNode && ((UnaryNode) operand).op() == TokenType.MINUS) {
+                    Node inner = ((UnaryNode) operand).operand();
+                    if (inner.type() == ValueType.LONG || inner.type() == ValueType.DOUBLE) return inner;
+                }
+                break;
+            default:
+                break;
+        }
+        return n;
+    }
+
+    private static Node optimizeConditional(ConditionalNode c) {
+        Node cond = optimize(c.cond());
+        Node t = optimize(c.trueExpr());
+        Node f = optimize(c.falseExpr());
+        if (isConstant(cond)) {
+            try {
+                return cond.evalBoolean(null) ? t : f;
+            } catch (ParseException ignored) {
+                // 常量节点求值不会失败；保险起见保留原结构
+            }
+        }
+        if (cond == c.cond() && t == c.trueExpr() && f == c.falseExpr()) return c;
+        return new ConditionalNode(cond, t, f, c.pos());
+    }
+
+    private static Node optimizeCall(CallNode c) {
+        Node[] args = c.args().toArray(new Node[0]);
+        boolean changed = false, allConstant = true;
+        for (int i = 0; i < args.length; i++) {
+            Node arg = optimize(args[i]);
+            changed |= arg != args[i];
+            allConstant &= isConstant(arg);
+            args[i] = arg;
+        }
+        CallNode n = changed ? c.withArgs(args) : c;
+        // 非纯函数（例如读取时间、随机数）每次求值都要调用
+        if (allConstant && c.function().isPure()) return fold(n);
+        return n;
+    }
+
+    // 十进制运算只做常量折叠：x * 1 等恒等式会改变结果的 scale（1.5 * 1.0 为 1.50）
+    private static Node optimizeDecimal(DecimalNode d) {
+        Node[] operands = d.operands().toArray(new Node[0]);
+        boolean changed = false, allConstant = true;
+        for (int i = 0; i < operands.length; i++) {
+            Node operand = optimize(operands[i]);
+            changed |= operand != operands[i];
+            allConstant &= isConstant(operand);
+            operands[i] = operand;
+        }
+        DecimalNode n = changed ? d.withOperands(operands) : d;
+        return allConstant ? fold(n) : n;
+    }
+
+    // 编译期求值，成功则替换为位置相同的常量节点；失败（运行时错误）则保留原节点
+    private static Node fold(Node n) {
+        Object value;
+        try {
+            value = n.eval(null);
+        } catch (ParseException e) {
+            return n;
+        }
+        Node constant = constant(value, n.pos());
+        return constant != null ? constant : n;
+    }
+
+    static Node constant(Object value, int pos) {
+        if (value instanceof Long || value instanceof Double || value instanceof BigDecimal) {
+            return new NumberNode(value, pos);
+        }
+        if (value instanceof String) return new StringNode((String) value, pos);
+        if (value instanceof Boolean) return new BooleanNode((Boolean) value, pos);
+        return null;
+    }
+
+    private static Object constantValue(Node n) {
+        if (n instanceof NumberNode) return ((NumberNode) n).value();
+        if (n instanceof StringNode) return ((StringNode) n).value();
+        return ((BooleanNode) n).value();
+    }
+
+    static boolean isConstant(Node n) {
+        return n instanceof NumberNode || n instanceof StringNode || n instanceof BooleanNode;
+    }
+
+    private static boolean isNumber(Node n, double v) {
+        return n instanceof NumberNode && ((NumberNode) n).evalDouble(null) == v;
+    }
+
+    private static boolean isString(Node n, String v) {
+        return n instanceof StringNode && ((StringNode) n).value().equals(v);
+    }
+}
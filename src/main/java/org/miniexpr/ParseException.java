@@ -1,24 +1,71 @@
 package org.miniexpr;
 
+/**
+ * 解析或求值错误。
+ * <p>
+ * 构造时只记录原始消息与位置，带源码片段与 {@code ^} 的完整消息在第一次调用 {@link #getMessage()} 时才生成并缓存，
+ * 因此只检查是否出错、不读取消息的调用方（例如批量校验表达式）几乎不需要额外开销。
+ * 通过 {@link #setStackTraceEnabled(boolean)} 或系统属性 {@code miniexpr.stacklessErrors=true}
+ * 可以关闭堆栈捕获，进一步降低失败路径的成本。
+ */
 public class ParseException extends Exception {
-    public final int pos;
+    // 是否捕获堆栈；关闭后 getStackTrace() 返回空数组
+    private static volatile boolean stackTraceEnabled = !Boolean.getBoolean("miniexpr.stacklessErrors");
 
-    // 可选的线程本地源码片段（由调用方设置，通常在解析/求值入口处设置）
-    // 使用 ThreadLocal 以保证多线程并发时的安全
-    private static final ThreadLocal<String> source = new ThreadLocal<>();
+    public final int pos;
 
-    public static void setSource(String src) { source.set(src); }
-    public static void clearSource() { source.remove(); }
+    // 出错的源码（可选）。不再通过线程本地变量传递：异常沿调用栈传出入口方法时由入口附加，
+    // 因此求值在哪个线程上执行（包括被工作窃取迁移的任务）都不影响错误信息
+    private String source;
+    // getMessage() 的缓存
+    private String message;
 
     public ParseException(String msg, int pos) {
-        super(buildMessage(msg, pos));
+        super(msg);
         this.pos = pos;
     }
 
-    private static String buildMessage(String msg, int pos) {
+    /** 设置之后创建的 ParseException 是否捕获堆栈（全局设置，默认捕获） */
+    public static void setStackTraceEnabled(boolean enabled) { stackTraceEnabled = enabled; }
+
+    public static boolean isStackTraceEnabled() { return stackTraceEnabled; }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return stackTraceEnabled ? super.fillInStackTrace() : this;
+    }
+
+    /**
+     * 附加出错的源码，用于在消息中显示上下文片段；已有源码时保持不变（最内层的入口优先）。
+     * 返回异常本身，便于 {@code throw e.withSource(src)}。
+     */
+    public ParseException withSource(String src) {
+        if (source == null) {
+            source = src;
+            message = null;
+        }
+        return this;
+    }
+
+    /** 附加的源码，没有时为 null */
+    public String source() { return source; }
+
+    /** 不含位置与源码上下文的原始消息 */
+    public String detail() { return super.getMessage(); }
+
+    @Override
+    public String getMessage() {
+        String m = message;
+        if (m == null) {
+            m = buildMessage(super.getMessage(), pos, source);
+            message = m;
+        }
+        return m;
+    }
+
+    private static String buildMessage(String msg, int pos, String sourceStr) {
         // 对外显示使用 1-based 索引，更友好；内部仍保留 pos 为 0-based
         String base = msg + " at index " + (pos + 1);
-        String sourceStr = source.get();
         if (sourceStr == null) return base;
 
         int len = sourceStr.length();
@@ -46,4 +93,4 @@ public class ParseException extends Exception {
         sb.append('^');
         return sb.toString();
     }
-}
\ No newline at end of file
+}
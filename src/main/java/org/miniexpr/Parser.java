@@ -1,18 +1,28 @@
 package org.miniexpr;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import org.miniexpr.functions.FunctionDef;
+import org.miniexpr.functions.FunctionRegistry;
 import org.miniexpr.nodes.BinaryNode;
+import org.miniexpr.nodes.BooleanNode;
+import org.miniexpr.nodes.CallNode;
 import org.miniexpr.nodes.ConditionalNode;
+import org.miniexpr.nodes.DecimalNode;
+import org.miniexpr.nodes.LogicalNode;
+import org.miniexpr.nodes.NumberNode;
+import org.miniexpr.nodes.StringNode;
 import org.miniexpr.nodes.UnaryNode;
+import org.miniexpr.nodes.VariableNode;
 
 /**
- * 递归下降解析器（Recursive Descent Parser）。
+ * 运算符优先级解析器（precedence climbing，不递归）。
  * <p>
- * 解析器基于从 Lexer 获取的 Token 列表进行
- * 递归下降式解析。语法大致如下（简化描述）：
+ * 解析器按需从 Lexer 拉取 Token（只向前看一个 Token），不生成中间的 Token 列表。语法如下（简化描述）：
  * <p>
- * conditional  := logicalOr ( '?' expression ':' expression )?
+ * conditional  := logicalOr ( '?' conditional ':' conditional )?
  * logicalOr    := logicalAnd ( '||' logicalAnd )*
  * logicalAnd   := equality ( '&&' equality )*
  * equality     := relational ( ('==' | '!=') relational )*
@@ -20,174 +30,357 @@ import org.miniexpr.nodes.UnaryNode;
  * additive     := multiplicative ( ('+' | '-') multiplicative )*
  * multiplicative := unary ( ('*' | '/' | '%') unary )*
  * unary        := ( '!' | '+' | '-' ) unary | primary
- * primary      := NUMBER | STRING | IDENTIFIER | '(' expression ')'
+ * primary      := NUMBER | STRING | call | IDENTIFIER | '(' conditional ')'
+ * call         := IDENTIFIER '(' ( conditional ( ',' conditional )* )? ')'
+ * <p>
+ * 解析不使用方法递归：已解析的子表达式放在操作数栈中，尚未完成的结构（二元运算符、一元运算符、括号、
+ * 函数调用与三元运算的两个分支）放在帧栈中，两者都是按需扩容的数组。读到一个操作数后，下一个 Token
+ * 若是二元运算符，先归约帧栈顶所有优先级不低于它的运算符（左结合），再把它入栈；若是 ')'、','、':' 或 EOF，
+ * 归约到最近的括号、函数调用或三元运算帧并按该帧的规则继续。因此每个 Token 只经过一次循环，
+ * 任意深的括号或 {@code -(-(-...))} 链都不会导致 {@link StackOverflowError}。
+ * <p>
+ * AST 的嵌套深度、节点数、Token 个数与源码长度受 {@link Limits} 限制，超出时抛出带位置的 ParseException。
+ * <p>
+ * 标识符解析为 {@link VariableNode}，解析器按首次出现顺序为每个不同的变量名分配槽位，
+ * 可通过 {@link #variables()} 获取槽位到变量名的映射。后面紧跟 '(' 的标识符是函数调用：
+ * 函数在此时按名字与参数个数从 {@link FunctionRegistry} 中解析为 {@link CallNode}，
+ * 函数名不占用变量槽位。
  * <p>
  * 解析过程会在构造对应的 AST 节点时传入操作符位置（op.pos），以便于在运行时
  * 抛出带有精确字符索引的 ParseException。
+ * <p>
+ * {@link NumericMode#DECIMAL} 下小数字面量解析为 BigDecimal，算术、比较与取负解析为 {@link DecimalNode}；
+ * 静态类型为字符串的 + 以及与字符串、布尔字面量比较的 == / != 仍为 {@link BinaryNode}（不涉及数值运算）。
  */
 public class Parser {
-    private final List<Token> tokens;
-    private int idx = 0;
+    private static final FunctionRegistry BUILTINS = FunctionRegistry.builtins();
+
+    // 帧的种类
+    private static final int BINARY = 0;
+    private static final int UNARY = 1;
+    private static final int PAREN = 2;
+    private static final int CALL = 3;
+    private static final int COND_TRUE = 4;   // 已读到 '?'，正在解析 true 分支
+    private static final int COND_FALSE = 5;  // 已读到 ':'，正在解析 false 分支
+
+    // 二元运算符的优先级（按 TokenType 序号），0 表示不是二元运算符
+    private static final int[] PRECEDENCE = new int[TokenType.values().length];
+
+    static {
+        PRECEDENCE[TokenType.OR.ordinal()] = 1;
+        PRECEDENCE[TokenType.AND.ordinal()] = 2;
+        PRECEDENCE[TokenType.EQ.ordinal()] = 3;
+        PRECEDENCE[TokenType.NE.ordinal()] = 3;
+        PRECEDENCE[TokenType.GT.ordinal()] = 4;
+        PRECEDENCE[TokenType.GE.ordinal()] = 4;
+        PRECEDENCE[TokenType.LT.ordinal()] = 4;
+        PRECEDENCE[TokenType.LE.ordinal()] = 4;
+        PRECEDENCE[TokenType.PLUS.ordinal()] = 5;
+        PRECEDENCE[TokenType.MINUS.ordinal()] = 5;
+        PRECEDENCE[TokenType.STAR.ordinal()] = 6;
+        PRECEDENCE[TokenType.SLASH.ordinal()] = 6;
+        PRECEDENCE[TokenType.PERCENT.ordinal()] = 6;
+    }
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    // 栈的初始容量，按需加倍（大多数表达式只用到很浅的栈，解析短表达式时不多分配）
+    private static final int INITIAL_CAPACITY = 4;
+
+    // 每帧占用的 int 个数：种类与运算符（kind | 运算符序号 << 3）、位置、
+    // 入帧时操作数栈的大小（CALL 的第一个参数的下标）、帧内已完成的操作数的最大深度
+    private static final int FRAME = 4;
+
+    private final Lexer lexer;
+    private final FunctionRegistry functions;
+    private final int maxDepth;
+    private final int maxNodes;
+    private final boolean decimal;
+    private final List<String> variables = new ArrayList<>();
+
+    // 操作数栈：已解析的子表达式；lastDepth 为栈顶子表达式的深度，其余操作数的深度记在所属的帧中
+    private Node[] values = new Node[INITIAL_CAPACITY];
+    private int valueCount;
+    private int lastDepth;
+    // 已构造的节点数
+    private int nodeCount;
+
+    // 帧栈（见 FRAME）；CALL 帧的函数名按帧下标存于 names，第一次遇到函数调用时才创建
+    private int[] frames = new int[INITIAL_CAPACITY * FRAME];
+    private String[] names;
+    private int frameCount;
 
+    /** 使用内置函数与默认限制 */
     public Parser(Lexer lexer) throws ParseException {
-        this.tokens = lexer.tokenize();
+        this(lexer, BUILTINS);
     }
 
-    private Token peek() {
-        return tokens.get(idx);
+    public Parser(Lexer lexer, FunctionRegistry functions) throws ParseException {
+        this(lexer, functions, Limits.DEFAULT);
     }
 
-    private Token next() {
-        Token t = tokens.get(idx);
-        if (t.type != TokenType.EOF) idx++;
-        return t;
+    public Parser(Lexer lexer, FunctionRegistry functions, Limits limits) throws ParseException {
+        this(lexer, functions, limits, NumericMode.DOUBLE);
     }
 
-    private boolean match(TokenType... types) {
-        Token t = peek();
-        for (TokenType ty : types) {
-            if (t.type == ty) {
-                next();
-                return true;
-            }
+    public Parser(Lexer lexer, FunctionRegistry functions, Limits limits, NumericMode numeric) throws ParseException {
+        this.lexer = lexer;
+        this.functions = functions;
+        this.maxDepth = limits.maxDepth();
+        this.maxNodes = limits.maxNodes();
+        this.decimal = numeric == NumericMode.DECIMAL;
+        if (lexer.length() > limits.maxLength()) {
+            throw new ParseException("Expression is too long: " + lexer.length() + " characters (limit "
+                    + limits.maxLength() + ")", limits.maxLength());
         }
-        return false;
+        lexer.maxTokens(limits.maxTokens());
+        lexer.next();
     }
 
-    private Token consume(TokenType type, String errMsg) throws ParseException {
-        Token t = peek();
-        if (t.type == type) return next();
-        throw new ParseException(errMsg, t.pos);
+    private TokenType peek() {
+        return lexer.type();
     }
 
-    public Node parseExpression() throws ParseException {
-        Node n = parseConditional();
-        Token t = peek();
-        if (t.type != TokenType.EOF) {
-            throw new ParseException("Unexpected token after expression: " + t.text, t.pos);
-        }
-        return n;
+    // 消费当前 Token，返回其位置
+    private int advance() throws ParseException {
+        int pos = lexer.start();
+        if (lexer.type() != TokenType.EOF) lexer.next();
+        return pos;
     }
 
-    // conditional: logicalOr ( '?' expression ':' expression )?
-    private Node parseConditional() throws ParseException {
-        Node cond = parseLogicalOr();
-        if (match(TokenType.QUESTION)) {
-            Node trueExpr = parseConditional(); // allow nested conditionals on true branch
-            consume(TokenType.COLON, "Expected ':' in conditional expression");
-            Node falseExpr = parseConditional();
-            return new ConditionalNode(cond, trueExpr, falseExpr);
-        }
-        return cond;
+    /** 返回解析过程中遇到的变量名，下标即槽位 */
+    public String[] variables() {
+        return variables.toArray(new String[0]);
     }
 
-    // logicalOr: logicalAnd ( '||' logicalAnd )*
-    private Node parseLogicalOr() throws ParseException {
-        Node left = parseLogicalAnd();
-        while (match(TokenType.OR)) {
-            Token op = tokens.get(idx - 1);
-            Node right = parseLogicalAnd();
-            left = new BinaryNode(left, op.type, right, op.pos);
+    // 当前 IDENTIFIER 的槽位；已出现过的变量直接比较输入区间，不再截取子串
+    private int currentSlot() {
+        for (int i = 0; i < variables.size(); i++) {
+            if (lexer.textEquals(variables.get(i))) return i;
         }
-        return left;
+        variables.add(lexer.text());
+        return variables.size() - 1;
     }
 
-    // logicalAnd: equality ( '&&' equality )*
-    private Node parseLogicalAnd() throws ParseException {
-        Node left = parseEquality();
-        while (match(TokenType.AND)) {
-            Token op = tokens.get(idx - 1);
-            Node right = parseEquality();
-            left = new BinaryNode(left, op.type, right, op.pos);
+    public Node parseExpression() throws ParseException {
+        boolean expectOperand = true;
+        while (true) {
+            if (expectOperand) {
+                expectOperand = !parseOperand();
+                continue;
+            }
+            TokenType t = peek();
+            int prec = PRECEDENCE[t.ordinal()];
+            if (prec > 0) {
+                reduce(prec);
+                pushFrame(BINARY, t, advance(), lastDepth);
+                expectOperand = true;
+            } else if (t == TokenType.QUESTION) {
+                // 条件是 logicalOr：归约所有二元与一元运算符
+                reduce(1);
+                pushFrame(COND_TRUE, t, advance(), lastDepth);
+                expectOperand = true;
+            } else {
+                reduce(1);
+                if (frameCount == 0) {
+                    if (t != TokenType.EOF) {
+                        throw new ParseException("Unexpected token after expression: " + lexer.text(), lexer.start());
+                    }
+                    return values[0];
+                }
+                expectOperand = close(t);
+            }
         }
-        return left;
     }
 
-    // equality: relational ( ('==' | '!=') relational )*
-    private Node parseEquality() throws ParseException {
-        Node left = parseRelational();
-        while (match(TokenType.EQ, TokenType.NE)) {
-            Token op = tokens.get(idx - 1);
-            Node right = parseRelational();
-            left = new BinaryNode(left, op.type, right, op.pos);
+    // 读取前缀运算符、'(' 或函数调用的开头（入帧栈），或者一个基本表达式（入操作数栈，返回 true）
+    private boolean parseOperand() throws ParseException {
+        int pos = lexer.start();
+        TokenType t = peek();
+        switch (t) {
+            case NOT:
+            case PLUS:
+            case MINUS:
+                pushFrame(UNARY, t, advance(), 0);
+                return false;
+            case LPAREN:
+                pushFrame(PAREN, t, advance(), 0);
+                return false;
+            case NUMBER: {
+                // Long（整数）或 Double（小数）；精确十进制模式下小数为 BigDecimal
+                Object value = decimal ? lexer.decimalValue() : lexer.numberValue();
+                advance();
+                pushValue(new NumberNode(value, pos), 1);
+                return true;
+            }
+            case STRING: {
+                String value = lexer.text();
+                advance();
+                pushValue(new StringNode(value, pos), 1);
+                return true;
+            }
+            case IDENTIFIER: {
+                if (lexer.followedBy('(')) {
+                    String name = lexer.text();
+                    advance(); // 函数名
+                    advance(); // '('
+                    pushFrame(CALL, t, pos, 0);
+                    setName(frameCount - 1, name);
+                    if (peek() != TokenType.RPAREN) return false;
+                    advance();
+                    reduceCall();
+                    return true;
+                }
+                // 标识符作为变量读取；未绑定时求值为标识符文本（兼容无引号字符串的写法）
+                int slot = currentSlot();
+                String name = variables.get(slot);
+                advance();
+                pushValue(new VariableNode(name, slot, pos), 1);
+                return true;
+            }
+            default:
+                throw new ParseException("Unexpected token: " + lexer.text(), pos);
         }
-        return left;
     }
 
-    // relational: additive ( ('>' | '>=' | '<' | '<=') additive )*
-    private Node parseRelational() throws ParseException {
-        Node left = parseAdditive();
-        while (match(TokenType.GT, TokenType.GE, TokenType.LT, TokenType.LE)) {
-            Token op = tokens.get(idx - 1);
-            Node right = parseAdditive();
-            left = new BinaryNode(left, op.type, right, op.pos);
+    // 一个操作数之后读到 ')'、','、':' 或其它结束符：按栈顶帧处理，返回接下来是否期待操作数
+    private boolean close(TokenType t) throws ParseException {
+        int at = (frameCount - 1) * FRAME;
+        switch (frames[at] & 7) {
+            case COND_FALSE:
+                reduceConditional();
+                return false;
+            case COND_TRUE:
+                if (t != TokenType.COLON) {
+                    throw new ParseException("Expected ':' in conditional expression", lexer.start());
+                }
+                advance();
+                frames[at] = (frames[at] & ~7) | COND_FALSE;
+                frames[at + 3] = Math.max(frames[at + 3], lastDepth);
+                return true;
+            case PAREN:
+                if (t != TokenType.RPAREN) throw new ParseException("Expected ')' to close '('", lexer.start());
+                advance();
+                frameCount--;
+                return false;
+            default: // CALL
+                if (t == TokenType.COMMA) {
+                    advance();
+                    frames[at + 3] = Math.max(frames[at + 3], lastDepth);
+                    return true;
+                }
+                if (t != TokenType.RPAREN) {
+                    throw new ParseException("Expected ')' to close function call", lexer.start());
+                }
+                advance();
+                reduceCall();
+                return false;
         }
-        return left;
     }
 
-    // additive: multiplicative ( ('+' | '-') multiplicative )*
-    private Node parseAdditive() throws ParseException {
-        Node left = parseMultiplicative();
-        while (match(TokenType.PLUS, TokenType.MINUS)) {
-            Token op = tokens.get(idx - 1);
-            Node right = parseMultiplicative();
-            left = new BinaryNode(left, op.type, right, op.pos);
+    // 归约栈顶的一元运算符与优先级不低于 minPrec 的二元运算符
+    private void reduce(int minPrec) throws ParseException {
+        while (frameCount > 0) {
+            int head = frames[(frameCount - 1) * FRAME];
+            int kind = head & 7;
+            if (kind == UNARY) {
+                reduceUnary();
+            } else if (kind == BINARY && PRECEDENCE[head >>> 3] >= minPrec) {
+                reduceBinary();
+            } else {
+                return;
+            }
         }
-        return left;
     }
 
-    // multiplicative: unary ( ('*' | '/' | '%') unary )*
-    private Node parseMultiplicative() throws ParseException {
-        Node left = parseUnary();
-        while (match(TokenType.STAR, TokenType.SLASH, TokenType.PERCENT)) {
-            Token op = tokens.get(idx - 1);
-            Node right = parseUnary();
-            left = new BinaryNode(left, op.type, right, op.pos);
-        }
-        return left;
+    private void reduceUnary() throws ParseException {
+        int at = --frameCount * FRAME;
+        Node operand = values[--valueCount];
+        TokenType op = TOKEN_TYPES[frames[at] >>> 3];
+        pushValue(decimal && op == TokenType.MINUS
+                ? new DecimalNode(operand, frames[at + 1])
+                : new UnaryNode(op, operand, frames[at + 1]), lastDepth + 1);
     }
 
-    // unary: ( '!' | '+' | '-' ) unary | primary
-    private Node parseUnary() throws ParseException {
-        if (match(TokenType.NOT, TokenType.PLUS, TokenType.MINUS)) {
-            Token op = tokens.get(idx - 1);
-            Node operand = parseUnary();
-            return new UnaryNode(op.type, operand, op.pos);
-        }
-        return parsePrimary();
-    }
-
-    // primary: NUMBER | STRING | '(' expression ')'
-    private Node parsePrimary() throws ParseException {
-        Token t = peek();
-        if (match(TokenType.NUMBER)) {
-            try {
-                if (t.text.contains(".")) {
-                    return new org.miniexpr.nodes.NumberNode(Double.parseDouble(t.text), t.pos); // 小数
-                } else {
-                    return new org.miniexpr.nodes.NumberNode(Long.parseLong(t.text), t.pos); // 整数
-                }
-            } catch (NumberFormatException ex) {
-                throw new ParseException("Invalid number literal", t.pos);
-            }
-        }
-        if (match(TokenType.STRING)) {
-            return new org.miniexpr.nodes.StringNode(t.text, t.pos);
+    private void reduceBinary() throws ParseException {
+        int at = --frameCount * FRAME;
+        Node right = values[--valueCount];
+        Node left = values[--valueCount];
+        TokenType op = TOKEN_TYPES[frames[at] >>> 3];
+        int pos = frames[at + 1];
+        pushValue(op == TokenType.AND || op == TokenType.OR
+                ? new LogicalNode(left, op, right, pos)
+                : binary(left, op, right, pos), Math.max(frames[at + 3], lastDepth) + 1);
+    }
+
+    private Node binary(Node left, TokenType op, Node right, int pos) {
+        BinaryNode b = new BinaryNode(left, op, right, pos);
+        if (!decimal || b.type() == ValueType.STRING) return b;
+        if ((op == TokenType.EQ || op == TokenType.NE) && (isTextLiteral(left) || isTextLiteral(right))) return b;
+        return new DecimalNode(left, op, right, pos);
+    }
+
+    private static boolean isTextLiteral(Node n) {
+        return n instanceof StringNode || n instanceof BooleanNode;
+    }
+
+    private void reduceConditional() throws ParseException {
+        int at = --frameCount * FRAME;
+        Node falseExpr = values[--valueCount];
+        Node trueExpr = values[--valueCount];
+        Node cond = values[--valueCount];
+        pushValue(new ConditionalNode(cond, trueExpr, falseExpr), Math.max(frames[at + 3], lastDepth) + 1);
+    }
+
+    // 栈顶的 CALL 帧：参数为操作数栈中入帧之后压入的节点
+    private void reduceCall() throws ParseException {
+        int top = --frameCount;
+        int at = top * FRAME;
+        int pos = frames[at + 1];
+        int base = frames[at + 2];
+        String name = names[top];
+        names[top] = null;
+        Node[] args = Arrays.copyOfRange(values, base, valueCount);
+        int d = args.length == 0 ? 0 : Math.max(frames[at + 3], lastDepth);
+        valueCount = base;
+        FunctionDef fn = functions.lookup(name, args.length);
+        if (fn == null) {
+            if (!functions.contains(name)) throw new ParseException("Unknown function: " + name, pos);
+            throw new ParseException("Function '" + name + "' does not take " + args.length + " arguments", pos);
         }
+        pushValue(new CallNode(fn, args, pos), d + 1);
+    }
 
-        if (match(TokenType.IDENTIFIER)) {
-            // 标识符直接作为字符串处理（无需引号），用于比较和三元运算
-            return new org.miniexpr.nodes.StringNode(t.text, t.pos);
+    // 压栈保持短小以便内联，扩容与报错在单独的方法中
+    private void pushValue(Node node, int depth) throws ParseException {
+        if (depth > maxDepth) throw tooDeep(node);
+        if (++nodeCount > maxNodes) {
+            throw new ParseException("Expression has too many nodes (limit " + maxNodes + ")", node.pos());
         }
+        if (valueCount == values.length) values = Arrays.copyOf(values, valueCount * 2);
+        values[valueCount++] = node;
+        lastDepth = depth;
+    }
 
-        if (match(TokenType.LPAREN)) {
-            Node inner = parseConditional();
-            Token closing = peek();
-            if (!match(TokenType.RPAREN)) {
-                throw new ParseException("Expected ')' to close '('", closing.pos);
-            }
-            return inner;
+    private ParseException tooDeep(Node node) {
+        return new ParseException("Expression is nested too deeply (limit " + maxDepth + ")", node.pos());
+    }
+
+    private void pushFrame(int kind, TokenType op, int pos, int depth) {
+        int at = frameCount++ * FRAME;
+        if (at == frames.length) frames = Arrays.copyOf(frames, at * 2);
+        frames[at] = kind | op.ordinal() << 3;
+        frames[at + 1] = pos;
+        frames[at + 2] = valueCount;
+        frames[at + 3] = depth;
+    }
+
+    private void setName(int frame, String name) {
+        if (names == null) {
+            names = new String[frames.length / FRAME];
+        } else if (frame >= names.length) {
+            names = Arrays.copyOf(names, frames.length / FRAME);
         }
-        throw new ParseException("Unexpected token: " + t.text, t.pos);
+        names[frame] = name;
     }
 }
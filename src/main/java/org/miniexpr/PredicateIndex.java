@@ -0,0 +1,557 @@
+package org.miniexpr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.miniexpr.nodes.BinaryNode;
+import org.miniexpr.nodes.BooleanNode;
+import org.miniexpr.nodes.LogicalNode;
+import org.miniexpr.nodes.NumberNode;
+import org.miniexpr.nodes.Operators;
+import org.miniexpr.nodes.StringNode;
+import org.miniexpr.nodes.VariableNode;
+
+/**
+ * 一组布尔表达式（例如订阅过滤条件）的谓词索引：对一条记录只返回结果为真的表达式编号，
+ * 不对不可能为真的表达式求值。不可变、线程安全，由 {@link MiniExprEngine#compileIndex(List)} 创建。
+ * <p>
+ * 每个表达式按 {@code &&} 拆分为依次求值的各项，开头连续的形如 {@code 变量 op 常量}（或 {@code 常量 op 变量}）、
+ * op 为 {@code == != > >= < <=} 的项是可索引的原子条件。相同的原子条件在所有表达式中只保留一个：
+ * 相等比较按常量建立哈希索引，大小比较按常量排序后二分查找。匹配一条记录时，先由索引得到每个原子条件的真假，
+ * 所有原子条件都为真（且没有不等条件命中）的表达式才是候选；表达式只由原子条件组成时直接得出结果，
+ * 否则（还有其它项）以该表达式自己编译的结果完整求值。没有可索引前缀的表达式每次都完整求值。
+ * <p>
+ * 原子条件的真假与 {@link Operators} 的语义完全一致（数值按 double 比较，其它值按字符串表示比较，
+ * 未绑定的变量取变量名本身）。大小比较遇到非数值的变量值会抛出异常，此时用到该变量的大小比较的表达式改为完整求值，
+ * 由求值决定抛出异常还是被前面的项短路。原子条件只出现在 {@code &&} 的开头，在它们之前不会执行其它项，
+ * 因此跳过的表达式单独求值时一定为假且不会出错：结果、异常（按编号第一个出错的表达式）与逐个调用
+ * {@link CompiledExpression#evalBoolean(Bindings)} 完全相同。
+ * <p>
+ * 匹配使用的临时状态保存在 {@link Matcher} 中，每个线程应使用各自的实例。
+ */
+public final class PredicateIndex {
+    private static final int FORCED = 1;
+    private static final int REJECTED = 2;
+    // 大小比较按 变量 op 常量 归一后的下标
+    private static final int GT = 0, GE = 1, LT = 2, LE = 3;
+
+    private final CompiledExpression[] expressions;
+    private final String[] variables;
+    // 每个表达式自己的槽位到合并后槽位的映射
+    private final int[][] slotMaps;
+    // 有原子条件的变量
+    private final SlotIndex[] slots;
+    // 每个原子条件被哪些表达式使用，以及它是否为不等条件
+    private final int[][] atomUsers;
+    private final boolean[] atomNegated;
+    // 每个表达式需要为真的相等 / 大小比较条件个数
+    private final int[] required;
+    // 表达式只由原子条件组成：候选即为真，无需求值
+    private final boolean[] complete;
+    // 只有不等条件的表达式（没有被命中时即为候选）与无法索引的表达式（总是完整求值）
+    private final int[] negativeOnly;
+    private final int[] unindexed;
+
+    private PredicateIndex(CompiledExpression[] expressions, String[] variables, int[][] slotMaps, SlotIndex[] slots,
+                           int[][] atomUsers, boolean[] atomNegated, int[] required, boolean[] complete,
+                           int[] negativeOnly, int[] unindexed) {
+        this.expressions = expressions;
+        this.variables = variables;
+        this.slotMaps = slotMaps;
+        this.slots = slots;
+        this.atomUsers = atomUsers;
+        this.atomNegated = atomNegated;
+        this.required = required;
+        this.complete = complete;
+        this.negativeOnly = negativeOnly;
+        this.unindexed = unindexed;
+    }
+
+    /** 为各自解析（与优化）得到的表达式建立索引 */
+    static PredicateIndex of(List<CompiledExpression> compiled) {
+        return new Builder(compiled.toArray(new CompiledExpression[0])).build();
+    }
+
+    /** 表达式个数 */
+    public int size() { return expressions.length; }
+
+    /** 返回第 index 个表达式的源码 */
+    public String source(int index) { return expressions[index].source(); }
+
+    /** 返回第 index 个表达式单独编译（解释执行）的结果 */
+    public CompiledExpression expression(int index) { return expressions[index]; }
+
+    /** 返回所有表达式引用的变量名（按首次出现的顺序），列表下标即槽位 */
+    public List<String> variables() {
+        return Collections.unmodifiableList(Arrays.asList(variables));
+    }
+
+    /** 返回变量名对应的槽位，没有表达式引用该变量时返回 -1 */
+    public int slotOf(String name) {
+        for (int i = 0; i < variables.length; i++) {
+            if (variables[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    /** 创建与本索引槽位布局一致的空绑定（所有变量未绑定） */
+    public Bindings newBindings() {
+        return new Bindings(variables);
+    }
+
+    /** 不同的原子条件个数 */
+    public int atomCount() { return atomUsers.length; }
+
+    /** 有可索引条件的表达式个数；其余表达式每次匹配都完整求值 */
+    public int indexedCount() { return expressions.length - unindexed.length; }
+
+    /** 创建匹配用的临时状态，可以在同一线程的多次匹配之间复用 */
+    public Matcher matcher() { return new Matcher(); }
+
+    /** 返回对这组变量结果为真的表达式编号（升序） */
+    public int[] match(Map<String, Object> vars) throws ParseException {
+        return matcher().match(vars);
+    }
+
+    /** 按槽位绑定匹配。bindings 必须由本索引的 {@link #newBindings()} 创建 */
+    public int[] match(Bindings bindings) throws ParseException {
+        return matcher().match(bindings);
+    }
+
+    @Override
+    public String toString() {
+        return "PredicateIndex(" + expressions.length + " expressions, " + atomUsers.length + " atoms, "
+                + unindexed.length + " unindexed)";
+    }
+
+    /**
+     * 一次匹配的临时状态（每个表达式命中的条件数等），按轮次编号复用，不需要每次清零。
+     * 不是线程安全的；每个线程应使用各自的实例。
+     */
+    public final class Matcher {
+        private final int[] stamps = new int[expressions.length];
+        private final int[] hits = new int[expressions.length];
+        private final byte[] flags = new byte[expressions.length];
+        private final int[] touched = new int[expressions.length];
+        private final int[] candidates = new int[expressions.length];
+        private final int[] matched = new int[expressions.length];
+        private int round;
+        private int touchedCount;
+        private int lastEvaluated;
+
+        private Matcher() {}
+
+        /** 返回对这组变量结果为真的表达式编号（升序） */
+        public int[] match(Map<String, Object> vars) throws ParseException {
+            Bindings bindings = newBindings();
+            if (vars != null) {
+                for (int i = 0; i < variables.length; i++) {
+                    Object v = vars.get(variables[i]);
+                    if (v != null || vars.containsKey(variables[i])) bindings.set(i, v);
+                }
+            }
+            return match(bindings);
+        }
+
+        /** 按槽位绑定匹配。bindings 必须由本索引的 {@link PredicateIndex#newBindings()} 创建 */
+        public int[] match(Bindings bindings) throws ParseException {
+            if (bindings.names != variables) {
+                throw new IllegalArgumentException("Bindings were not created by this predicate index");
+            }
+            nextRound();
+            for (SlotIndex s : slots) probe(s, bindings.getOrDefault(s.slot, s.name));
+
+            int count = 0;
+            for (int i = 0; i < touchedCount; i++) {
+                int e = touched[i];
+                if ((flags[e] & FORCED) != 0 || (flags[e] & REJECTED) == 0 && hits[e] == required[e]) {
+                    candidates[count++] = e;
+                }
+            }
+            for (int e : negativeOnly) {
+                if (stamps[e] != round) candidates[count++] = e;
+            }
+            for (int e : unindexed) candidates[count++] = e;
+            // 按编号求值，出错时与逐个求值一样抛出编号最小的表达式的异常
+            Arrays.sort(candidates, 0, count);
+
+            int found = 0;
+            int evaluated = 0;
+            for (int i = 0; i < count; i++) {
+                int e = candidates[i];
+                boolean forced = stamps[e] == round && (flags[e] & FORCED) != 0;
+                if (complete[e] && !forced) {
+                    matched[found++] = e;
+                } else {
+                    evaluated++;
+                    if (eval(e, bindings)) matched[found++] = e;
+                }
+            }
+            lastEvaluated = evaluated;
+            return Arrays.copyOf(matched, found);
+        }
+
+        /** 上一次匹配中完整求值的表达式个数 */
+        public int lastEvaluated() { return lastEvaluated; }
+
+        private void nextRound() {
+            if (++round == Integer.MAX_VALUE) {
+                Arrays.fill(stamps, 0);
+                round = 1;
+            }
+            touchedCount = 0;
+        }
+
+        // 由索引确定变量值 v 使哪些原子条件为真
+        private void probe(SlotIndex s, Object v) {
+            if (v instanceof Number) {
+                double d = ((Number) v).doubleValue();
+                if (s.numbers != null) hitAll(s.numbers.get(d));
+                if (s.texts != null) hitAll(s.texts.get(String.valueOf(v)));
+                // NaN 与任何常量比较都为假
+                if (d != d) return;
+                for (int op = 0; op < 4; op++) {
+                    double[] bounds = s.bounds[op];
+                    if (bounds == null) continue;
+                    int[] atoms = s.boundAtoms[op];
+                    switch (op) {
+                        case GT: hitRange(atoms, 0, lowerBound(bounds, d)); break;
+                        case GE: hitRange(atoms, 0, upperBound(bounds, d)); break;
+                        case LT: hitRange(atoms, upperBound(bounds, d), atoms.length); break;
+                        default: hitRange(atoms, lowerBound(bounds, d), atoms.length); break;
+                    }
+                }
+            } else {
+                String text = String.valueOf(v);
+                if (s.texts != null) hitAll(s.texts.get(text));
+                if (s.numberTexts != null) hitAll(s.numberTexts.get(text));
+                // 大小比较会抛出异常：交给完整求值决定
+                for (int e : s.rangeUsers) touch(e, FORCED);
+            }
+        }
+
+        private void hitRange(int[] atoms, int from, int to) {
+            for (int i = from; i < to; i++) hit(atoms[i]);
+        }
+
+        private void hitAll(int[] atoms) {
+            if (atoms == null) return;
+            for (int atom : atoms) hit(atom);
+        }
+
+        private void hit(int atom) {
+            if (atomNegated[atom]) {
+                for (int e : atomUsers[atom]) touch(e, REJECTED);
+            } else {
+                for (int e : atomUsers[atom]) {
+                    touch(e, 0);
+                    hits[e]++;
+                }
+            }
+        }
+
+        private void touch(int e, int flag) {
+            if (stamps[e] != round) {
+                stamps[e] = round;
+                hits[e] = 0;
+                flags[e] = 0;
+                touched[touchedCount++] = e;
+            }
+            flags[e] |= flag;
+        }
+    }
+
+    // 以第 index 个表达式自己的槽位布局完整求值
+    private boolean eval(int index, Bindings bindings) throws ParseException {
+        CompiledExpression expr = expressions[index];
+        Bindings own = expr.newBindings();
+        int[] map = slotMaps[index];
+        for (int slot = 0; slot < map.length; slot++) {
+            if (bindings.isBound(map[slot])) own.set(slot, bindings.get(map[slot]));
+        }
+        return expr.evalBoolean(own);
+    }
+
+    // 第一个大于等于 / 大于 d 的下标（bounds 升序且不含 NaN）
+    private static int lowerBound(double[] bounds, double d) {
+        int lo = 0, hi = bounds.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (bounds[mid] < d) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private static int upperBound(double[] bounds, double d) {
+        int lo = 0, hi = bounds.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (bounds[mid] <= d) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    // 一个变量上的原子条件
+    private static final class SlotIndex {
+        final int slot;
+        final String name;
+        // 相等 / 不等条件：数值常量按 double 值（数值变量值）与字符串表示（其它变量值）索引，其它常量按字符串表示索引
+        Map<Double, int[]> numbers;
+        Map<String, int[]> numberTexts;
+        Map<String, int[]> texts;
+        // 大小比较：按 GT / GE / LT / LE 分别保存升序的常量与对应的原子条件
+        final double[][] bounds = new double[4][];
+        final int[][] boundAtoms = new int[4][];
+        // 有大小比较条件的表达式
+        int[] rangeUsers;
+
+        SlotIndex(int slot, String name) {
+            this.slot = slot;
+            this.name = name;
+        }
+    }
+
+    // 原子条件：slot op constant（op 已归一为变量在左）
+    private static final class Atom {
+        final int slot;
+        final TokenType op;
+        final Object constant;
+
+        Atom(int slot, TokenType op, Object constant) {
+            this.slot = slot;
+            this.op = op;
+            this.constant = constant;
+        }
+    }
+
+    // 建立索引的过程：拆分各表达式的 && 前缀，合并相同的原子条件，再按变量建立哈希与排序索引
+    private static final class Builder {
+        final CompiledExpression[] expressions;
+        final List<String> variables = new ArrayList<>();
+        private final Map<String, Integer> slotIndex = new HashMap<>();
+        private final Map<List<Object>, Integer> atomIds = new HashMap<>();
+        private final List<Atom> atoms = new ArrayList<>();
+        private final List<List<Integer>> atomUsers = new ArrayList<>();
+
+        Builder(CompiledExpression[] expressions) {
+            this.expressions = expressions;
+        }
+
+        PredicateIndex build() {
+            int n = expressions.length;
+            int[][] slotMaps = new int[n][];
+            int[] required = new int[n];
+            boolean[] complete = new boolean[n];
+            List<Integer> negativeOnly = new ArrayList<>();
+            List<Integer> unindexed = new ArrayList<>();
+            Map<Integer, Set<Integer>> rangeUsers = new HashMap<>();
+
+            for (int e = 0; e < n; e++) {
+                slotMaps[e] = slots(expressions[e].variables());
+                List<Node> conjuncts = new ArrayList<>();
+                flatten(expressions[e].root(), conjuncts);
+                Set<Integer> own = new LinkedHashSet<>();
+                int prefix = 0;
+                for (Node c : conjuncts) {
+                    Atom atom = atom(c, slotMaps[e]);
+                    if (atom == null) break;
+                    own.add(intern(atom));
+                    prefix++;
+                }
+                if (own.isEmpty()) {
+                    unindexed.add(e);
+                    continue;
+                }
+                complete[e] = prefix == conjuncts.size();
+                for (int id : own) {
+                    Atom atom = atoms.get(id);
+                    atomUsers.get(id).add(e);
+                    if (atom.op != TokenType.NE) required[e]++;
+                    if (isRange(atom.op)) {
+                        Set<Integer> users = rangeUsers.get(atom.slot);
+                        if (users == null) rangeUsers.put(atom.slot, users = new LinkedHashSet<>());
+                        users.add(e);
+                    }
+                }
+                if (required[e] == 0) negativeOnly.add(e);
+            }
+
+            int[][] users = new int[atoms.size()][];
+            boolean[] negated = new boolean[atoms.size()];
+            for (int id = 0; id < users.length; id++) {
+                users[id] = toArray(atomUsers.get(id));
+                negated[id] = atoms.get(id).op == TokenType.NE;
+            }
+            return new PredicateIndex(expressions, variables.toArray(new String[0]), slotMaps,
+                    slotIndexes(rangeUsers), users, negated, required, complete, toArray(negativeOnly),
+                    toArray(unindexed));
+        }
+
+        private int[] slots(List<String> names) {
+            int[] map = new int[names.size()];
+            for (int i = 0; i < map.length; i++) {
+                Integer slot = slotIndex.get(names.get(i));
+                if (slot == null) {
+                    slot = variables.size();
+                    variables.add(names.get(i));
+                    slotIndex.put(names.get(i), slot);
+                }
+                map[i] = slot;
+            }
+            return map;
+        }
+
+        // 按求值顺序展开 && 的各项
+        private static void flatten(Node n, List<Node> out) {
+            if (n instanceof LogicalNode && ((LogicalNode) n).op() == TokenType.AND) {
+                flatten(((LogicalNode) n).left(), out);
+                flatten(((LogicalNode) n).right(), out);
+            } else {
+                out.add(n);
+            }
+        }
+
+        // n 为 变量 op 常量 形式的比较时返回对应的原子条件（槽位已映射），否则返回 null
+        private static Atom atom(Node n, int[] slotMap) {
+            if (!(n instanceof BinaryNode)) return null;
+            BinaryNode b = (BinaryNode) n;
+            TokenType op = b.op();
+            if (op != TokenType.EQ && op != TokenType.NE && !isRange(op)) return null;
+            Node var = b.left(), constant = b.right();
+            if (!(var instanceof VariableNode)) {
+                var = b.right();
+                constant = b.left();
+                op = flip(op);
+            }
+            if (!(var instanceof VariableNode)) return null;
+            Object value;
+            if (constant instanceof NumberNode) value = ((NumberNode) constant).value();
+            else if (constant instanceof StringNode) value = ((StringNode) constant).value();
+            else if (constant instanceof BooleanNode) value = ((BooleanNode) constant).value();
+            else return null;
+            // 大小比较的常量必须是数字（否则总是抛出异常）；NaN 无法排序，不索引
+            if (isRange(op) && (!(value instanceof Number) || Double.isNaN(((Number) value).doubleValue()))) {
+                return null;
+            }
+            return new Atom(slotMap[((VariableNode) var).slot()], op, value);
+        }
+
+        // 常量 op 变量 改写为 变量 op' 常量
+        private static TokenType flip(TokenType op) {
+            switch (op) {
+                case GT: return TokenType.LT;
+                case GE: return TokenType.LE;
+                case LT: return TokenType.GT;
+                case LE: return TokenType.GE;
+                default: return op;
+            }
+        }
+
+        private static boolean isRange(TokenType op) {
+            return op == TokenType.GT || op == TokenType.GE || op == TokenType.LT || op == TokenType.LE;
+        }
+
+        private int intern(Atom atom) {
+            List<Object> key = Arrays.asList(atom.slot, atom.op, atom.constant);
+            Integer id = atomIds.get(key);
+            if (id == null) {
+                id = atoms.size();
+                atoms.add(atom);
+                atomUsers.add(new ArrayList<Integer>());
+                atomIds.put(key, id);
+            }
+            return id;
+        }
+
+        private SlotIndex[] slotIndexes(Map<Integer, Set<Integer>> rangeUsers) {
+            Map<Integer, SlotIndex> bySlot = new HashMap<>();
+            List<SlotIndex> result = new ArrayList<>();
+            // 键为 slot * 4 + GT / GE / LT / LE
+            Map<Integer, List<Integer>> ranges = new HashMap<>();
+            for (int id = 0; id < atoms.size(); id++) {
+                Atom atom = atoms.get(id);
+                SlotIndex s = bySlot.get(atom.slot);
+                if (s == null) {
+                    s = new SlotIndex(atom.slot, variables.get(atom.slot));
+                    bySlot.put(atom.slot, s);
+                    result.add(s);
+                }
+                if (isRange(atom.op)) {
+                    int key = atom.slot * 4 + rangeIndex(atom.op);
+                    List<Integer> ids = ranges.get(key);
+                    if (ids == null) ranges.put(key, ids = new ArrayList<>());
+                    ids.add(id);
+                } else if (atom.constant instanceof Number) {
+                    if (s.numbers == null) {
+                        s.numbers = new HashMap<>();
+                        s.numberTexts = new HashMap<>();
+                    }
+                    add(s.numbers, ((Number) atom.constant).doubleValue(), id);
+                    add(s.numberTexts, String.valueOf(atom.constant), id);
+                } else {
+                    if (s.texts == null) s.texts = new HashMap<>();
+                    add(s.texts, String.valueOf(atom.constant), id);
+                }
+            }
+            Comparator<Integer> byThreshold = new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Double.compare(threshold(a), threshold(b));
+                }
+            };
+            for (SlotIndex s : result) {
+                for (int op = 0; op < 4; op++) {
+                    List<Integer> ids = ranges.get(s.slot * 4 + op);
+                    if (ids == null) continue;
+                    Collections.sort(ids, byThreshold);
+                    s.bounds[op] = new double[ids.size()];
+                    s.boundAtoms[op] = toArray(ids);
+                    for (int j = 0; j < ids.size(); j++) s.bounds[op][j] = threshold(ids.get(j));
+                }
+                Set<Integer> users = rangeUsers.get(s.slot);
+                s.rangeUsers = users == null ? new int[0] : toArray(users);
+            }
+            return result.toArray(new SlotIndex[0]);
+        }
+
+        private double threshold(int atom) {
+            return ((Number) atoms.get(atom).constant).doubleValue();
+        }
+
+        private static int rangeIndex(TokenType op) {
+            switch (op) {
+                case GT: return GT;
+                case GE: return GE;
+                case LT: return LT;
+                default: return LE;
+            }
+        }
+
+        // 多个原子条件可能有相同的键（例如 x == 1 与 x != 1），按键保存原子条件编号的数组
+        private static <K> void add(Map<K, int[]> map, K key, int id) {
+            int[] ids = map.get(key);
+            if (ids == null) {
+                ids = new int[] {id};
+            } else {
+                ids = Arrays.copyOf(ids, ids.length + 1);
+                ids[ids.length - 1] = id;
+            }
+            map.put(key, ids);
+        }
+
+        private static int[] toArray(Collection<Integer> values) {
+            int[] out = new int[values.size()];
+            int i = 0;
+            for (int v : values) out[i++] = v;
+            return out;
+        }
+    }
+}
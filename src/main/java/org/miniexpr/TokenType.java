@@ -2,10 +2,23 @@ package org.miniexpr;
 
 public enum TokenType {
     IDENTIFIER, NUMBER, STRING,
-    PLUS, MINUS, STAR, SLASH, PERCENT,
-    GT, GE, LT, LE, EQ, NE,
-    AND, OR, NOT,
-    QUESTION, COLON,
-    LPAREN, RPAREN,
-    EOF
+    PLUS("+"), MINUS("-"), STAR("*"), SLASH("/"), PERCENT("%"),
+    GT(">"), GE(">="), LT("<"), LE("<="), EQ("=="), NE("!="),
+    AND("&&"), OR("||"), NOT("!"),
+    QUESTION("?"), COLON(":"),
+    LPAREN("("), RPAREN(")"), COMMA(","),
+    EOF("");
+
+    private final String symbol;
+
+    TokenType() {
+        this(null);
+    }
+
+    TokenType(String symbol) {
+        this.symbol = symbol;
+    }
+
+    /** 固定文本的 Token（运算符、分隔符、EOF）返回其文本，数字 / 字符串 / 标识符返回 null */
+    public String symbol() { return symbol; }
 }
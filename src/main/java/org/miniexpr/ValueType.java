@@ -0,0 +1,26 @@
+package org.miniexpr;
+
+/**
+ * 节点的静态类型，由各节点在构造（即解析）时根据子节点类型推导得出。
+ * <p>
+ * 静态类型为数值或布尔的节点可以通过 {@link Node#evalLong}、{@link Node#evalDouble}、
+ * {@link Node#evalBoolean} 直接以基本类型求值，避免中间结果装箱。
+ */
+public enum ValueType {
+    /** 结果一定是 Long */
+    LONG,
+    /** 结果一定是 Double */
+    DOUBLE,
+    /** 结果一定是数字（Long / Double，或由变量直接传入的其它 Number） */
+    NUMBER,
+    /** 结果一定是 Boolean */
+    BOOLEAN,
+    /** 结果一定是 String */
+    STRING,
+    /** 编译期无法确定（例如变量） */
+    ANY;
+
+    public boolean isNumeric() {
+        return this == LONG || this == DOUBLE || this == NUMBER;
+    }
+}
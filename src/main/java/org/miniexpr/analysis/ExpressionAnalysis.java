@@ -0,0 +1,233 @@
+package org.miniexpr.analysis;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.Node;
+import org.miniexpr.TokenType;
+import org.miniexpr.nodes.BinaryNode;
+import org.miniexpr.nodes.BooleanNode;
+import org.miniexpr.nodes.CallNode;
+import org.miniexpr.nodes.ConcatNode;
+import org.miniexpr.nodes.ConditionalNode;
+import org.miniexpr.nodes.DecimalNode;
+import org.miniexpr.nodes.LogicalNode;
+import org.miniexpr.nodes.NumberNode;
+import org.miniexpr.nodes.StringNode;
+import org.miniexpr.nodes.UnaryNode;
+import org.miniexpr.nodes.VariableNode;
+
+/**
+ * 对编译后 AST 的静态分析：读取的变量、使用的运算符与函数、嵌套深度与估算的求值代价。
+ * <p>
+ * 变量分为两类：
+ * <ul>
+ *   <li>{@link #alwaysRead()}：每次求值都会读取（除非之前已经出错），例如算术运算的两边、函数的参数、
+ *       {@code &&} / {@code ||} 的左边、三元运算的条件，以及在两个分支中都会读取的变量；</li>
+ *   <li>{@link #conditionallyRead()}：只在部分情况下读取，例如只出现在 {@code &&} / {@code ||}
+ *       右边或三元运算某一个分支中的变量。</li>
+ * </ul>
+ * 分析的是优化后的 AST，被常量折叠掉的分支中的变量不会出现。
+ * <p>
+ * 代价是以“一次简单运算”为单位的最坏情况估计：变量读取与简单运算记 1，除法 / 取模记 2，
+ * 字符串拼接与函数调用记 4（函数另加参数），常量不计；{@code &&} / {@code ||} 计两边之和，
+ * 三元运算计条件加上较贵的分支。
+ * 可用于在求值前拒绝过于昂贵的表达式。
+ */
+public final class ExpressionAnalysis {
+    private final Set<String> alwaysRead;
+    private final Set<String> conditionallyRead;
+    private final Set<TokenType> operators;
+    private final Set<String> functions;
+    private final int maxDepth;
+    private final int nodeCount;
+    private final long cost;
+
+    private ExpressionAnalysis(Set<String> alwaysRead, Set<String> conditionallyRead, Set<TokenType> operators,
+                               Set<String> functions, int maxDepth, int nodeCount, long cost) {
+        this.alwaysRead = alwaysRead;
+        this.conditionallyRead = conditionallyRead;
+        this.operators = operators;
+        this.functions = functions;
+        this.maxDepth = maxDepth;
+        this.nodeCount = nodeCount;
+        this.cost = cost;
+    }
+
+    /** 分析编译后的表达式 */
+    public static ExpressionAnalysis of(CompiledExpression expr) {
+        return analyze(expr.root(), expr.variables().toArray(new String[0]));
+    }
+
+    /**
+     * 分析以 root 为根的 AST；variables 为槽位到变量名的映射（见 {@link CompiledExpression#variables()}）。
+     */
+    public static ExpressionAnalysis analyze(Node root, String[] variables) {
+        Walker w = new Walker();
+        BitSet always = w.walk(root, 1);
+        BitSet conditional = (BitSet) w.all.clone();
+        conditional.andNot(always);
+        return new ExpressionAnalysis(names(always, variables), names(conditional, variables),
+                Collections.unmodifiableSet(w.operators), Collections.unmodifiableSet(w.functions),
+                w.maxDepth, w.nodeCount, w.cost(root));
+    }
+
+    private static Set<String> names(BitSet slots, String[] variables) {
+        Set<String> names = new LinkedHashSet<>();
+        for (int i = slots.nextSetBit(0); i >= 0; i = slots.nextSetBit(i + 1)) names.add(variables[i]);
+        return Collections.unmodifiableSet(names);
+    }
+
+    /** 每次求值都会读取的变量（按槽位顺序） */
+    public Set<String> alwaysRead() { return alwaysRead; }
+
+    /** 只在部分求值路径上读取的变量（按槽位顺序） */
+    public Set<String> conditionallyRead() { return conditionallyRead; }
+
+    /** 可能读取的全部变量：alwaysRead 与 conditionallyRead 的并集 */
+    public Set<String> variables() {
+        Set<String> all = new LinkedHashSet<>(alwaysRead);
+        all.addAll(conditionallyRead);
+        return Collections.unmodifiableSet(all);
+    }
+
+    /**
+     * 使用的运算符。一元与二元的 {@code -} / {@code +} 都记为 MINUS / PLUS，
+     * 三元运算记为 {@link TokenType#QUESTION}。
+     */
+    public Set<TokenType> operators() { return operators; }
+
+    /** 调用的函数名（按首次出现顺序） */
+    public Set<String> functions() { return functions; }
+
+    /** AST 的最大嵌套深度（只有一个节点时为 1） */
+    public int maxDepth() { return maxDepth; }
+
+    /** AST 节点数 */
+    public int nodeCount() { return nodeCount; }
+
+    /** 估算的最坏情况求值代价 */
+    public long cost() { return cost; }
+
+    @Override
+    public String toString() {
+        return "ExpressionAnalysis(always=" + alwaysRead + ", conditional=" + conditionallyRead
+                + ", operators=" + operators + ", functions=" + functions
+                + ", depth=" + maxDepth + ", nodes=" + nodeCount + ", cost=" + cost + ")";
+    }
+
+    private static final class Walker {
+        final BitSet all = new BitSet();
+        final Set<TokenType> operators = EnumSet.noneOf(TokenType.class);
+        final Set<String> functions = new LinkedHashSet<>();
+        int maxDepth;
+        int nodeCount;
+
+        // 记录变量、运算符、函数、深度与节点数，返回 n 每次求值都会读取的变量槽位
+        BitSet walk(Node n, int depth) {
+            nodeCount++;
+            if (depth > maxDepth) maxDepth = depth;
+            if (n instanceof VariableNode) {
+                BitSet s = new BitSet();
+                s.set(((VariableNode) n).slot());
+                all.or(s);
+                return s;
+            }
+            if (n instanceof BinaryNode) {
+                BinaryNode b = (BinaryNode) n;
+                operators.add(b.op());
+                BitSet s = walk(b.left(), depth + 1);
+                s.or(walk(b.right(), depth + 1));
+                return s;
+            }
+            if (n instanceof UnaryNode) {
+                UnaryNode u = (UnaryNode) n;
+                operators.add(u.op());
+                return walk(u.operand(), depth + 1);
+            }
+            if (n instanceof LogicalNode) {
+                LogicalNode l = (LogicalNode) n;
+                operators.add(l.op());
+                BitSet s = walk(l.left(), depth + 1);
+                walk(l.right(), depth + 1);
+                return s;
+            }
+            if (n instanceof ConditionalNode) {
+                ConditionalNode c = (ConditionalNode) n;
+                operators.add(TokenType.QUESTION);
+                BitSet s = walk(c.cond(), depth + 1);
+                BitSet t = walk(c.trueExpr(), depth + 1);
+                t.and(walk(c.falseExpr(), depth + 1));
+                s.or(t);
+                return s;
+            }
+            if (n instanceof CallNode) {
+                CallNode c = (CallNode) n;
+                functions.add(c.function().name());
+                // 参数总是全部求值
+                BitSet s = new BitSet();
+                for (Node arg : c.args()) s.or(walk(arg, depth + 1));
+                return s;
+            }
+            if (n instanceof ConcatNode) {
+                operators.add(TokenType.PLUS);
+                BitSet s = new BitSet();
+                for (Node part : ((ConcatNode) n).parts()) s.or(walk(part, depth + 1));
+                return s;
+            }
+            if (n instanceof DecimalNode) {
+                DecimalNode d = (DecimalNode) n;
+                operators.add(d.op());
+                BitSet s = new BitSet();
+                for (Node operand : d.operands()) s.or(walk(operand, depth + 1));
+                return s;
+            }
+            // 常量及其它节点
+            return new BitSet();
+        }
+
+        long cost(Node n) {
+            if (n instanceof VariableNode) return 1;
+            if (n instanceof BinaryNode) {
+                BinaryNode b = (BinaryNode) n;
+                long own;
+                if (b.op() == TokenType.SLASH || b.op() == TokenType.PERCENT) own = 2;
+                else if (b.op() == TokenType.PLUS && !b.type().isNumeric()) own = 4; // 可能是字符串拼接
+                else own = 1;
+                return own + cost(b.left()) + cost(b.right());
+            }
+            if (n instanceof UnaryNode) return 1 + cost(((UnaryNode) n).operand());
+            if (n instanceof LogicalNode) {
+                LogicalNode l = (LogicalNode) n;
+                return 1 + cost(l.left()) + cost(l.right());
+            }
+            if (n instanceof ConditionalNode) {
+                ConditionalNode c = (ConditionalNode) n;
+                return 1 + cost(c.cond()) + Math.max(cost(c.trueExpr()), cost(c.falseExpr()));
+            }
+            if (n instanceof CallNode) {
+                long c = 4;
+                for (Node arg : ((CallNode) n).args()) c += cost(arg);
+                return c;
+            }
+            if (n instanceof ConcatNode) {
+                long c = 4;
+                for (Node part : ((ConcatNode) n).parts()) c += cost(part);
+                return c;
+            }
+            if (n instanceof DecimalNode) {
+                // 定点数运算比 double 略贵，除法需要寻找能整除的小数位数
+                DecimalNode d = (DecimalNode) n;
+                long c = d.op() == TokenType.SLASH || d.op() == TokenType.PERCENT ? 4 : 2;
+                for (Node operand : d.operands()) c += cost(operand);
+                return c;
+            }
+            if (n instanceof NumberNode || n instanceof StringNode || n instanceof BooleanNode) return 0;
+            return 1;
+        }
+    }
+}
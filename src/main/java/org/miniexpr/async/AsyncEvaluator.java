@@ -0,0 +1,247 @@
+package org.miniexpr.async;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import org.miniexpr.Bindings;
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.Node;
+import org.miniexpr.ParseException;
+import org.miniexpr.TokenType;
+import org.miniexpr.nodes.BinaryNode;
+import org.miniexpr.nodes.BooleanNode;
+import org.miniexpr.nodes.CallNode;
+import org.miniexpr.nodes.ConcatNode;
+import org.miniexpr.nodes.ConditionalNode;
+import org.miniexpr.nodes.DecimalNode;
+import org.miniexpr.nodes.LogicalNode;
+import org.miniexpr.nodes.NumberNode;
+import org.miniexpr.nodes.StringNode;
+import org.miniexpr.nodes.UnaryNode;
+import org.miniexpr.nodes.VariableNode;
+
+/**
+ * 异步求值：变量通过 {@link AsyncResolver} 按需取得，返回 {@link CompletableFuture}。
+ * <p>
+ * 求值按轮进行。每一轮根据已取得的变量遍历 AST，找出接下来一定会被读取的变量：
+ * 二元 / 一元运算的两边都会求值，{@code &&} / {@code ||} 只有左边已能求值且不短路时才继续看右边，
+ * 三元运算只有条件已能求值时才看被选中的分支。这一轮找到的变量同时请求，全部完成后进入下一轮；
+ * 没有待取的变量时，以普通的同步方式求值整个表达式，因此结果与异常和 {@link CompiledExpression#eval(Bindings)} 完全一致。
+ * 未被走到的分支中的变量不会被请求。
+ * <p>
+ * 条件（{@code &&} / {@code ||} 的左边与三元运算的条件）在变量取齐后只求值一次，结果在之后的轮次中复用。
+ * 含有非纯函数调用的条件在最后求值之前无法确定，这时两边的变量都会请求，条件本身只在最后求值时计算一次，
+ * 因此非纯函数在一次异步求值中与同步求值调用相同的次数。
+ * <p>
+ * 整个过程不阻塞线程：后续轮次在完成上一轮请求的线程上继续，适合虚拟线程与异步调用链。
+ * 由 {@link CompiledExpression#evalAsync} 调用；实例不可变，可以在多个线程中使用。
+ */
+public final class AsyncEvaluator {
+    private final CompiledExpression expr;
+    private final Node root;
+    // 含有非纯函数调用（或不认识的节点）的子树，求值结果每次可能不同
+    private final Set<Node> impure = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+
+    public AsyncEvaluator(CompiledExpression expr) {
+        this.expr = expr;
+        this.root = expr.root();
+        markImpure(root);
+    }
+
+    private boolean markImpure(Node n) {
+        boolean result;
+        if (n instanceof NumberNode || n instanceof StringNode || n instanceof BooleanNode
+                || n instanceof VariableNode) {
+            result = false;
+        } else if (n instanceof BinaryNode) {
+            result = markImpure(((BinaryNode) n).left()) | markImpure(((BinaryNode) n).right());
+        } else if (n instanceof UnaryNode) {
+            result = markImpure(((UnaryNode) n).operand());
+        } else if (n instanceof LogicalNode) {
+            result = markImpure(((LogicalNode) n).left()) | markImpure(((LogicalNode) n).right());
+        } else if (n instanceof ConditionalNode) {
+            ConditionalNode c = (ConditionalNode) n;
+            result = markImpure(c.cond()) | markImpure(c.trueExpr()) | markImpure(c.falseExpr());
+        } else if (n instanceof CallNode) {
+            result = !((CallNode) n).function().isPure();
+            for (Node arg : ((CallNode) n).args()) result |= markImpure(arg);
+        } else if (n instanceof ConcatNode) {
+            result = false;
+            for (Node part : ((ConcatNode) n).parts()) result |= markImpure(part);
+        } else if (n instanceof DecimalNode) {
+            result = false;
+            for (Node operand : ((DecimalNode) n).operands()) result |= markImpure(operand);
+        } else {
+            result = true;
+        }
+        if (result) impure.add(n);
+        return result;
+    }
+
+    /** 异步求值；求值错误时 future 以 {@link ParseException} 异常完成 */
+    public CompletableFuture<Object> eval(AsyncResolver resolver) {
+        State state = new State(expr.newBindings(), resolver);
+        return state.next();
+    }
+
+    /**
+     * 单次求值的状态：已取得的变量写入 bindings，resolved 标记已请求过的槽位（包括不存在的变量），
+     * decided 记录已求值的条件（求值出错时为 null）
+     */
+    private final class State {
+        final Bindings bindings;
+        final AsyncResolver resolver;
+        final boolean[] resolved;
+        final boolean[] pending;
+        final Map<Node, Boolean> decided = new IdentityHashMap<>();
+
+        State(Bindings bindings, AsyncResolver resolver) {
+            this.bindings = bindings;
+            this.resolver = resolver;
+            this.resolved = new boolean[bindings.size()];
+            this.pending = new boolean[bindings.size()];
+        }
+
+        CompletableFuture<Object> next() {
+            collect(root);
+            int count = 0;
+            for (boolean p : pending) if (p) count++;
+            if (count == 0) return finish();
+
+            // 同时请求本轮的所有变量
+            final int[] slots = new int[count];
+            final List<CompletableFuture<Object>> fetches = new ArrayList<>(count);
+            int n = 0;
+            for (int slot = 0; slot < pending.length; slot++) {
+                if (!pending[slot]) continue;
+                pending[slot] = false;
+                resolved[slot] = true;
+                slots[n++] = slot;
+                fetches.add(request(bindings.name(slot)));
+            }
+            CompletableFuture<Void> all = CompletableFuture.allOf(fetches.toArray(new CompletableFuture<?>[0]));
+            return all.thenCompose(new Function<Void, CompletableFuture<Object>>() {
+                @Override
+                public CompletableFuture<Object> apply(Void ignored) {
+                    for (int i = 0; i < slots.length; i++) {
+                        Object value = fetches.get(i).join();
+                        if (value != AsyncResolver.UNBOUND) bindings.set(slots[i], value);
+                    }
+                    return next();
+                }
+            });
+        }
+
+        private CompletableFuture<Object> request(String name) {
+            try {
+                CompletableFuture<Object> f = resolver.resolve(name);
+                if (f == null) throw new NullPointerException("Resolver returned null for '" + name + "'");
+                return f;
+            } catch (RuntimeException e) {
+                CompletableFuture<Object> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+        }
+
+        private CompletableFuture<Object> finish() {
+            CompletableFuture<Object> result = new CompletableFuture<>();
+            try {
+                result.complete(expr.eval(bindings));
+            } catch (ParseException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+            return result;
+        }
+
+        /**
+         * 把 n 求值时接下来一定会读取、但尚未请求的变量标记到 pending。
+         * 返回 n 的所有变量是否都已取得（即 n 现在可以同步求值）。
+         */
+        private boolean collect(Node n) {
+            if (n instanceof NumberNode || n instanceof StringNode || n instanceof BooleanNode) return true;
+            if (n instanceof VariableNode) {
+                int slot = ((VariableNode) n).slot();
+                if (resolved[slot]) return true;
+                pending[slot] = true;
+                return false;
+            }
+            if (n instanceof BinaryNode) {
+                BinaryNode b = (BinaryNode) n;
+                boolean left = collect(b.left());
+                return collect(b.right()) && left;
+            }
+            if (n instanceof UnaryNode) return collect(((UnaryNode) n).operand());
+            if (n instanceof CallNode) {
+                // 参数总是全部求值
+                boolean all = true;
+                for (Node arg : ((CallNode) n).args()) all &= collect(arg);
+                return all;
+            }
+            if (n instanceof ConcatNode) {
+                boolean all = true;
+                for (Node part : ((ConcatNode) n).parts()) all &= collect(part);
+                return all;
+            }
+            if (n instanceof DecimalNode) {
+                boolean all = true;
+                for (Node operand : ((DecimalNode) n).operands()) all &= collect(operand);
+                return all;
+            }
+            if (n instanceof LogicalNode) {
+                LogicalNode l = (LogicalNode) n;
+                if (impure.contains(l.left())) {
+                    // 左边要到最后求值时才能确定，右边可能会求值
+                    boolean left = collect(l.left());
+                    return collect(l.right()) && left;
+                }
+                if (!collect(l.left())) return false;
+                Boolean left = decide(l.left());
+                // 左边求值出错时整个表达式会在同一处出错，无需再取右边的变量
+                if (left == null || left == (l.op() == TokenType.OR)) return true;
+                return collect(l.right());
+            }
+            if (n instanceof ConditionalNode) {
+                ConditionalNode c = (ConditionalNode) n;
+                if (impure.contains(c.cond())) {
+                    // 条件要到最后求值时才能确定，两个分支都可能被选中
+                    boolean cond = collect(c.cond());
+                    boolean t = collect(c.trueExpr());
+                    return collect(c.falseExpr()) && t && cond;
+                }
+                if (!collect(c.cond())) return false;
+                Boolean cond = decide(c.cond());
+                if (cond == null) return true;
+                return collect(cond ? c.trueExpr() : c.falseExpr());
+            }
+            // 不认识的节点：无法判断会读取哪些变量，请求所有尚未取得的变量
+            boolean all = true;
+            for (int slot = 0; slot < resolved.length; slot++) {
+                if (!resolved[slot]) {
+                    pending[slot] = true;
+                    all = false;
+                }
+            }
+            return all;
+        }
+
+        // 所有变量都已取得、不含非纯函数的条件按真值规则求值，只求值一次；出错时为 null
+        private Boolean decide(Node n) {
+            if (decided.containsKey(n)) return decided.get(n);
+            Boolean value;
+            try {
+                value = n.evalBoolean(bindings);
+            } catch (ParseException e) {
+                value = null;
+            }
+            decided.put(n, value);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.miniexpr.async;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 异步取得变量值，供 {@link AsyncEvaluator} 使用。
+ * <p>
+ * 每次求值中每个变量最多被请求一次，且只请求求值实际会读取的变量；同一轮中互不依赖的变量会同时请求，
+ * 实现应立即返回 future，不要在调用线程上阻塞等待数据源。
+ */
+public interface AsyncResolver {
+    /** 以此值完成 future 表示变量不存在：与未绑定相同，求值结果为标识符文本 */
+    Object UNBOUND = new Object();
+
+    /**
+     * 请求变量 name 的值。值可以为 null；future 异常完成时整个求值以同一异常失败。
+     */
+    CompletableFuture<Object> resolve(String name);
+}
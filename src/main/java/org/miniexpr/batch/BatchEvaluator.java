@@ -0,0 +1,627 @@
+package org.miniexpr.batch;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.miniexpr.Bindings;
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.Node;
+import org.miniexpr.ParseException;
+import org.miniexpr.TokenType;
+import org.miniexpr.nodes.BinaryNode;
+import org.miniexpr.nodes.BooleanNode;
+import org.miniexpr.nodes.ConcatNode;
+import org.miniexpr.nodes.ConditionalNode;
+import org.miniexpr.nodes.LogicalNode;
+import org.miniexpr.nodes.NumberNode;
+import org.miniexpr.nodes.Operators;
+import org.miniexpr.nodes.StringNode;
+import org.miniexpr.nodes.UnaryNode;
+import org.miniexpr.nodes.VariableNode;
+
+/**
+ * 列式批量求值：对同一个表达式求值整列数据，逐节点处理一整个分块，而不是逐行遍历整棵树。
+ * <p>
+ * 行按 {@link #CHUNK_SIZE} 分块。每个节点对分块中被选中的行（选择向量）求值，结果为一个 {@link Vector}；
+ * 数值、布尔结果按运行时的确切类型保存在基本类型数组中，运算时走基本类型循环，只有类型混合或非数值的情况
+ * 才逐个元素调用 {@link Operators}。{@code &&} / {@code ||} 与三元运算通过缩小选择向量实现短路：
+ * 右操作数 / 分支只对需要的行求值，因此不会产生逐行求值时不会出现的错误。
+ * <p>
+ * 结果与逐行调用 {@link CompiledExpression#eval(Bindings)} 完全一致（整数 / 浮点提升、字符串拼接、真值规则）。
+ * 分块求值中出现任何错误时，该分块改为逐行求值：之前的行照常写入，第一个出错的行抛出与逐行求值相同的异常。
+ * <p>
+ * 由 {@link CompiledExpression#evalBatch} 调用；实例不可变，可以在多个线程中使用。
+ */
+public final class BatchEvaluator {
+    /** 每个分块的行数 */
+    public static final int CHUNK_SIZE = 1024;
+
+    // 绝对值不超过该值的 long 可以精确转换为 double
+    private static final long EXACT_LONG = 1L << 53;
+
+    private final CompiledExpression expr;
+    private final Node root;
+    private final String[] variables;
+    // 拼接长度上限，见 CompiledExpression#maxStringLength()
+    private final int maxStringLength;
+
+    public BatchEvaluator(CompiledExpression expr) {
+        this.expr = expr;
+        this.root = expr.root();
+        this.maxStringLength = expr.maxStringLength();
+        List<String> vars = expr.variables();
+        this.variables = vars.toArray(new String[0]);
+    }
+
+    /** 求值每一行，结果写入 out[0, rows) */
+    public void eval(Columns columns, Object[] out) throws ParseException {
+        checkLength(columns, out.length);
+        eval(columns, 0, columns.rows(), out);
+    }
+
+    /** 只求值 [from, to) 行，结果写入 out 的相同下标 */
+    void eval(Columns columns, int from, int to, final Object[] out) throws ParseException {
+        run(columns, from, to, new Output() {
+            @Override
+            void write(int row, Vector v, int r) {
+                out[row] = v.get(r);
+            }
+
+            @Override
+            void writeRow(int row, Bindings b) throws ParseException {
+                out[row] = root.eval(b);
+            }
+        });
+    }
+
+    /**
+     * 以 double 求值每一行（同 {@link CompiledExpression#evalDouble}），结果写入 out[0, rows)；
+     * 某行结果不是数字时抛出 ParseException。
+     */
+    public void evalDouble(Columns columns, double[] out) throws ParseException {
+        checkLength(columns, out.length);
+        evalDouble(columns, 0, columns.rows(), out);
+    }
+
+    void evalDouble(Columns columns, int from, int to, final double[] out) throws ParseException {
+        run(columns, from, to, new Output() {
+            @Override
+            void write(int row, Vector v, int r) throws ParseException {
+                if (v.isNumeric()) {
+                    out[row] = v.doubleAt(r);
+                } else {
+                    out[row] = toNumber(v.get(r)).doubleValue();
+                }
+            }
+
+            @Override
+            void writeRow(int row, Bindings b) throws ParseException {
+                out[row] = root.type().isNumeric() ? root.evalDouble(b) : toNumber(root.eval(b)).doubleValue();
+            }
+        });
+    }
+
+    /** 按真值规则求值每一行（同 {@link CompiledExpression#evalBoolean}），第 i 行为真时置位 out 的第 i 位 */
+    public void evalBoolean(Columns columns, BitSet out) throws ParseException {
+        out.clear(0, columns.rows());
+        evalBoolean(columns, 0, columns.rows(), out, 0);
+    }
+
+    /** 只求值 [from, to) 行，第 i 行为真时置位 out 的第 i - shift 位（不清除其它位） */
+    void evalBoolean(Columns columns, int from, int to, final BitSet out, final int shift) throws ParseException {
+        run(columns, from, to, new Output() {
+            @Override
+            void write(int row, Vector v, int r) {
+                if (v.truthy(r)) out.set(row - shift);
+            }
+
+            @Override
+            void writeRow(int row, Bindings b) throws ParseException {
+                if (root.evalBoolean(b)) out.set(row - shift);
+            }
+        });
+    }
+
+    private void checkLength(Columns columns, int length) {
+        if (length < columns.rows()) {
+            throw new IllegalArgumentException("Output has " + length + " slots, expected at least " + columns.rows());
+        }
+    }
+
+    private Number toNumber(Object v) throws ParseException {
+        if (v instanceof Number) return (Number) v;
+        throw new ParseException("Expression does not evaluate to a number", root.pos());
+    }
+
+    // ---- 驱动 ----
+
+    /** 结果写入方式：分块结果按行写入，或逐行求值后写入 */
+    private abstract static class Output {
+        abstract void write(int row, Vector v, int r) throws ParseException;
+
+        abstract void writeRow(int row, Bindings b) throws ParseException;
+    }
+
+    /**
+     * 分块的求值上下文。中间结果数组从这里分配，每个分块开始时 {@link #reset} 后复用上一分块的数组，
+     * 因此只有第一个分块会真正分配内存。数组不会清零：各节点只读写被选中的行。
+     */
+    private static final class Chunk {
+        final Object[] columns; // 按槽位，未提供的变量为 null
+        final int capacity;
+        int base;
+        int length;
+
+        private final List<long[]> longs = new ArrayList<>();
+        private final List<double[]> doubles = new ArrayList<>();
+        private final List<boolean[]> bools = new ArrayList<>();
+        private final List<Object[]> objects = new ArrayList<>();
+        private final List<int[]> ints = new ArrayList<>();
+        private int nextLong, nextDouble, nextBool, nextObject, nextInt;
+
+        Chunk(Object[] columns, int capacity) {
+            this.columns = columns;
+            this.capacity = capacity;
+        }
+
+        void reset(int base, int length) {
+            this.base = base;
+            this.length = length;
+            nextLong = nextDouble = nextBool = nextObject = nextInt = 0;
+        }
+
+        long[] longs() {
+            if (nextLong == longs.size()) longs.add(new long[capacity]);
+            return longs.get(nextLong++);
+        }
+
+        double[] doubles() {
+            if (nextDouble == doubles.size()) doubles.add(new double[capacity]);
+            return doubles.get(nextDouble++);
+        }
+
+        boolean[] bools() {
+            if (nextBool == bools.size()) bools.add(new boolean[capacity]);
+            return bools.get(nextBool++);
+        }
+
+        Object[] objects() {
+            if (nextObject == objects.size()) objects.add(new Object[capacity]);
+            return objects.get(nextObject++);
+        }
+
+        int[] ints() {
+            if (nextInt == ints.size()) ints.add(new int[capacity]);
+            return ints.get(nextInt++);
+        }
+    }
+
+    private void run(Columns columns, int from, int to, Output out) throws ParseException {
+        Object[] bySlot = new Object[variables.length];
+        for (int i = 0; i < variables.length; i++) {
+            bySlot[i] = columns.column(variables[i]);
+        }
+        int[] identity = new int[Math.min(CHUNK_SIZE, to - from)];
+        for (int i = 0; i < identity.length; i++) identity[i] = i;
+
+        Chunk chunk = new Chunk(bySlot, identity.length);
+        for (int base = from; base < to; base += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, to - base);
+            chunk.reset(base, length);
+            Vector result;
+            try {
+                result = eval(root, identity, length, chunk);
+            } catch (ParseException e) {
+                // 逐行重新求值，得到与逐行调用完全相同的结果与异常
+                evalRows(chunk, out);
+                continue;
+            }
+            for (int r = 0; r < length; r++) {
+                out.write(base + r, result, r);
+            }
+        }
+    }
+
+    private void evalRows(Chunk chunk, Output out) throws ParseException {
+        Bindings b = expr.newBindings();
+        for (int r = 0; r < chunk.length; r++) {
+            bind(b, chunk, r);
+            out.writeRow(chunk.base + r, b);
+        }
+    }
+
+    // 把分块第 r 行的值写入 bindings
+    private static void bind(Bindings b, Chunk chunk, int r) {
+        int row = chunk.base + r;
+        for (int slot = 0; slot < chunk.columns.length; slot++) {
+            Object column = chunk.columns[slot];
+            if (column == null) continue;
+            if (column instanceof long[]) {
+                b.set(slot, ((long[]) column)[row]);
+            } else if (column instanceof double[]) {
+                b.set(slot, ((double[]) column)[row]);
+            } else if (column instanceof boolean[]) {
+                b.set(slot, ((boolean[]) column)[row]);
+            } else {
+                b.set(slot, ((Object[]) column)[row]);
+            }
+        }
+    }
+
+    // ---- 逐节点求值 ----
+
+    // 对 sel[0, count) 中的行求值 n；返回向量中未被选中的行没有意义
+    private Vector eval(Node n, int[] sel, int count, Chunk chunk) throws ParseException {
+        if (n instanceof NumberNode) return Vector.constant(((NumberNode) n).value());
+        if (n instanceof StringNode) return Vector.constant(((StringNode) n).value());
+        if (n instanceof BooleanNode) return Vector.constant(((BooleanNode) n).value());
+        if (n instanceof VariableNode) return variable((VariableNode) n, chunk);
+        if (n instanceof BinaryNode) return binary((BinaryNode) n, sel, count, chunk);
+        if (n instanceof LogicalNode) return logical((LogicalNode) n, sel, count, chunk);
+        if (n instanceof UnaryNode) return unary((UnaryNode) n, sel, count, chunk);
+        if (n instanceof ConditionalNode) return conditional((ConditionalNode) n, sel, count, chunk);
+        if (n instanceof ConcatNode) return concat((ConcatNode) n, sel, count, chunk);
+        return perRow(n, sel, count, chunk);
+    }
+
+    private static Vector variable(VariableNode v, Chunk chunk) {
+        Object column = chunk.columns[v.slot()];
+        // 未提供的变量与未绑定相同：值为标识符文本
+        if (column == null) return Vector.constant(v.name());
+        if (column instanceof long[]) return Vector.ofLongs((long[]) column, chunk.base);
+        if (column instanceof double[]) return Vector.ofDoubles((double[]) column, chunk.base);
+        if (column instanceof boolean[]) return Vector.ofBooleans((boolean[]) column, chunk.base);
+        return Vector.ofObjects((Object[]) column, chunk.base);
+    }
+
+    // 无法按列处理的节点：逐行求值
+    private Vector perRow(Node n, int[] sel, int count, Chunk chunk) throws ParseException {
+        Object[] res = chunk.objects();
+        Bindings b = expr.newBindings();
+        for (int i = 0; i < count; i++) {
+            int r = sel[i];
+            bind(b, chunk, r);
+            // 求值超时按行计时：每行是一次求值
+            b.startEvaluation();
+            res[r] = n.eval(b);
+        }
+        return Vector.ofObjects(res, 0);
+    }
+
+    // 各部分按列求值，再逐行一次拼接
+    private Vector concat(ConcatNode c, int[] sel, int count, Chunk chunk) throws ParseException {
+        List<Node> parts = c.parts();
+        Vector[] vectors = new Vector[parts.size()];
+        for (int i = 0; i < vectors.length; i++) vectors[i] = eval(parts.get(i), sel, count, chunk);
+        Object[] res = chunk.objects();
+        Object[] values = new Object[vectors.length];
+        for (int i = 0; i < count; i++) {
+            int row = sel[i];
+            for (int j = 0; j < vectors.length; j++) values[j] = vectors[j].get(row);
+            res[row] = c.join(values, maxStringLength);
+        }
+        return Vector.ofObjects(res, 0);
+    }
+
+    private Vector binary(BinaryNode b, int[] sel, int count, Chunk chunk) throws ParseException {
+        Vector l = eval(b.left(), sel, count, chunk);
+        Vector r = eval(b.right(), sel, count, chunk);
+        switch (b.op()) {
+            case PLUS:
+            case MINUS:
+            case STAR:
+            case SLASH:
+            case PERCENT:
+                if (l.isNumeric() && r.isNumeric()) return arithmetic(b.op(), b.pos(), l, r, sel, count, chunk);
+                break;
+            case GT:
+            case GE:
+            case LT:
+            case LE:
+                if (l.isNumeric() && r.isNumeric()) return compare(b.op(), l, r, sel, count, chunk);
+                break;
+            case EQ:
+            case NE:
+                return equality(b.op() == TokenType.EQ, l, r, sel, count, chunk);
+            default:
+                break;
+        }
+        Object[] res = chunk.objects();
+        for (int i = 0; i < count; i++) {
+            int row = sel[i];
+            res[row] = apply(b, l.get(row), r.get(row), maxStringLength);
+        }
+        return Vector.ofObjects(res, 0);
+    }
+
+    private static Object apply(BinaryNode b, Object l, Object r, int maxStringLength) throws ParseException {
+        switch (b.op()) {
+            case PLUS: return Operators.add(l, r, b.pos(), maxStringLength);
+            case MINUS: return Operators.subtract(l, r, b.pos());
+            case STAR: return Operators.multiply(l, r, b.pos());
+            case SLASH: return Operators.divide(l, r, b.pos());
+            case PERCENT: return Operators.remainder(l, r, b.pos());
+            case GT: return Operators.greaterThan(l, r, b.rightPos());
+            case GE: return Operators.greaterOrEqual(l, r, b.rightPos());
+            case LT: return Operators.lessThan(l, r, b.rightPos());
+            case LE: return Operators.lessOrEqual(l, r, b.rightPos());
+            default: throw new ParseException("Unsupported binary operator: " + b.op(), b.pos());
+        }
+    }
+
+    // 两边都是数值向量。与 Operators 一致：按 double 计算；任一边为 Double 时结果为 Double，
+    // 两边都是 Long 时结果为整数则为 Long，否则为 Double（只有 / 和 % 可能出现非整数）
+    private static Vector arithmetic(TokenType op, int pos, Vector l, Vector r,
+                                     int[] sel, int count, Chunk chunk) throws ParseException {
+        boolean floating = l.kind == Vector.DOUBLE || r.kind == Vector.DOUBLE;
+        if (!floating && op != TokenType.SLASH && op != TokenType.PERCENT) {
+            // 两边都是 Long 的 + - *：结果一定是整数（有限且不小于 2^53 的 double 都是整数）
+            long[] a = l.longs, b = r.longs, res = chunk.longs();
+            int ao = l.offset, as = l.stride, bo = r.offset, bs = r.stride;
+            switch (op) {
+                case PLUS:
+                    for (int i = 0; i < count; i++) {
+                        int row = sel[i];
+                        res[row] = (long) ((double) a[ao + row * as] + (double) b[bo + row * bs]);
+                    }
+                    break;
+                case MINUS:
+                    for (int i = 0; i < count; i++) {
+                        int row = sel[i];
+                        res[row] = (long) ((double) a[ao + row * as] - (double) b[bo + row * bs]);
+                    }
+                    break;
+                default:
+                    for (int i = 0; i < count; i++) {
+                        int row = sel[i];
+                        res[row] = (long) ((double) a[ao + row * as] * (double) b[bo + row * bs]);
+                    }
+                    break;
+            }
+            return Vector.ofLongs(res, 0);
+        }
+
+        if (!floating && op == TokenType.PERCENT) {
+            Vector exact = longRemainder(l, r, sel, count, chunk);
+            if (exact != null) return exact;
+        }
+
+        Vector lv = asDoubles(l, sel, count, chunk), rv = asDoubles(r, sel, count, chunk);
+        double[] a = lv.doubles, b = rv.doubles, res = chunk.doubles();
+        int ao = lv.offset, as = lv.stride, bo = rv.offset, bs = rv.stride;
+        switch (op) {
+            case PLUS:
+                for (int i = 0; i < count; i++) { int row = sel[i]; res[row] = a[ao + row * as] + b[bo + row * bs]; }
+                break;
+            case MINUS:
+                for (int i = 0; i < count; i++) { int row = sel[i]; res[row] = a[ao + row * as] - b[bo + row * bs]; }
+                break;
+            case STAR:
+                for (int i = 0; i < count; i++) { int row = sel[i]; res[row] = a[ao + row * as] * b[bo + row * bs]; }
+                break;
+            case SLASH:
+                for (int i = 0; i < count; i++) {
+                    int row = sel[i];
+                    double d = b[bo + row * bs];
+                    if (d == 0.0) throw new ParseException("Division by zero", pos);
+                    res[row] = a[ao + row * as] / d;
+                }
+                break;
+            default:
+                for (int i = 0; i < count; i++) { int row = sel[i]; res[row] = a[ao + row * as] % b[bo + row * bs]; }
+                break;
+        }
+        if (floating) return Vector.ofDoubles(res, 0);
+
+        // 两边都是 Long 的 / 和 %：结果按是否为整数分别装箱为 Long / Double
+        boolean anyIntegral = false, anyFractional = false;
+        for (int i = 0; i < count; i++) {
+            double v = res[sel[i]];
+            if (Operators.isIntegral(v)) anyIntegral = true; else anyFractional = true;
+        }
+        if (!anyIntegral) return Vector.ofDoubles(res, 0);
+        if (!anyFractional) {
+            long[] longs = chunk.longs();
+            for (int i = 0; i < count; i++) { int row = sel[i]; longs[row] = (long) res[row]; }
+            return Vector.ofLongs(longs, 0);
+        }
+        // 整数与非整数混合：逐行装箱
+        Object[] boxed = chunk.objects();
+        for (int i = 0; i < count; i++) {
+            int row = sel[i];
+            double v = res[row];
+            boxed[row] = Operators.isIntegral(v) ? (Object) Long.valueOf((long) v) : Double.valueOf(v);
+        }
+        return Vector.ofObjects(boxed, 0);
+    }
+
+    // 两边都是 Long 的 %：绝对值不超过 2^53 时 double 取模的结果与 long 取模相同且一定是整数，
+    // 直接用整数取模，省去 double 取模与逐行的整数判断。有除数为 0 或超出范围的行时返回 null
+    private static Vector longRemainder(Vector l, Vector r, int[] sel, int count, Chunk chunk) {
+        long[] a = l.longs, b = r.longs, res = chunk.longs();
+        int ao = l.offset, as = l.stride, bo = r.offset, bs = r.stride;
+        for (int i = 0; i < count; i++) {
+            int row = sel[i];
+            long x = a[ao + row * as], y = b[bo + row * bs];
+            if (y == 0L || x > EXACT_LONG || x < -EXACT_LONG || y > EXACT_LONG || y < -EXACT_LONG) return null;
+            res[row] = x % y;
+        }
+        return Vector.ofLongs(res, 0);
+    }
+
+    private static Vector compare(TokenType op, Vector l, Vector r, int[] sel, int count, Chunk chunk) {
+        Vector lv = asDoubles(l, sel, count, chunk), rv = asDoubles(r, sel, count, chunk);
+        double[] a = lv.doubles, b = rv.doubles;
+        int ao = lv.offset, as = lv.stride, bo = rv.offset, bs = rv.stride;
+        boolean[] res = chunk.bools();
+        switch (op) {
+            case GT:
+                for (int i = 0; i < count; i++) { int row = sel[i]; res[row] = a[ao + row * as] > b[bo + row * bs]; }
+                break;
+            case GE:
+                for (int i = 0; i < count; i++) { int row = sel[i]; res[row] = a[ao + row * as] >= b[bo + row * bs]; }
+                break;
+            case LT:
+                for (int i = 0; i < count; i++) { int row = sel[i]; res[row] = a[ao + row * as] < b[bo + row * bs]; }
+                break;
+            default:
+                for (int i = 0; i < count; i++) { int row = sel[i]; res[row] = a[ao + row * as] <= b[bo + row * bs]; }
+                break;
+        }
+        return Vector.ofBooleans(res, 0);
+    }
+
+    // 把数值向量转换为 DOUBLE 向量（值与 Number.doubleValue() 相同）；已是 DOUBLE 时原样返回
+    private static Vector asDoubles(Vector v, int[] sel, int count, Chunk chunk) {
+        if (v.kind == Vector.DOUBLE) return v;
+        if (v.stride == 0) return Vector.constant((double) v.longs[v.offset]);
+        long[] src = v.longs;
+        int o = v.offset;
+        double[] out = chunk.doubles();
+        for (int i = 0; i < count; i++) { int row = sel[i]; out[row] = src[o + row]; }
+        return Vector.ofDoubles(out, 0);
+    }
+
+    private static Vector equality(boolean eq, Vector l, Vector r, int[] sel, int count, Chunk chunk) {
+        boolean[] res = chunk.bools();
+        boolean numeric = l.isNumeric() && r.isNumeric();
+        boolean bools = l.kind == Vector.BOOLEAN && r.kind == Vector.BOOLEAN;
+        for (int i = 0; i < count; i++) {
+            int row = sel[i];
+            boolean same;
+            if (numeric) {
+                same = Double.compare(l.doubleAt(row), r.doubleAt(row)) == 0;
+            } else if (bools) {
+                same = l.bools[l.index(row)] == r.bools[r.index(row)];
+            } else {
+                same = Operators.isEqual(l.get(row), r.get(row));
+            }
+            res[row] = same == eq;
+        }
+        return Vector.ofBooleans(res, 0);
+    }
+
+    // 短路：只对左边未能决定结果的行求值右边
+    private Vector logical(LogicalNode n, int[] sel, int count, Chunk chunk) throws ParseException {
+        boolean and = n.op() == TokenType.AND;
+        Vector l = eval(n.left(), sel, count, chunk);
+        boolean[] res = chunk.bools();
+        int[] rest = chunk.ints();
+        int m = 0;
+        // 无分支地收集需要求值右边的行：先写入左边的真值，需要右边的行随后被覆盖
+        if (l.kind == Vector.BOOLEAN) {
+            boolean[] lb = l.bools;
+            int o = l.offset, st = l.stride;
+            for (int i = 0; i < count; i++) {
+                int row = sel[i];
+                boolean t = lb[o + row * st];
+                res[row] = t;
+                rest[m] = row;
+                m += t == and ? 1 : 0;
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                int row = sel[i];
+                boolean t = l.truthy(row);
+                res[row] = t;
+                rest[m] = row;
+                m += t == and ? 1 : 0;
+            }
+        }
+        if (m > 0) {
+            Vector r = eval(n.right(), rest, m, chunk);
+            if (r.kind == Vector.BOOLEAN) {
+                boolean[] rb = r.bools;
+                int o = r.offset, st = r.stride;
+                for (int i = 0; i < m; i++) { int row = rest[i]; res[row] = rb[o + row * st]; }
+            } else {
+                for (int i = 0; i < m; i++) res[rest[i]] = r.truthy(rest[i]);
+            }
+        }
+        return Vector.ofBooleans(res, 0);
+    }
+
+    private Vector unary(UnaryNode u, int[] sel, int count, Chunk chunk) throws ParseException {
+        Vector v = eval(u.operand(), sel, count, chunk);
+        switch (u.op()) {
+            case NOT: {
+                boolean[] res = chunk.bools();
+                for (int i = 0; i < count; i++) res[sel[i]] = !v.truthy(sel[i]);
+                return Vector.ofBooleans(res, 0);
+            }
+            case PLUS:
+                if (v.isNumeric()) return v;
+                break;
+            case MINUS:
+                if (v.kind == Vector.LONG) {
+                    long[] res = chunk.longs();
+                    for (int i = 0; i < count; i++) res[sel[i]] = -v.longs[v.index(sel[i])];
+                    return Vector.ofLongs(res, 0);
+                }
+                if (v.kind == Vector.DOUBLE) {
+                    double[] res = chunk.doubles();
+                    for (int i = 0; i < count; i++) res[sel[i]] = -v.doubles[v.index(sel[i])];
+                    return Vector.ofDoubles(res, 0);
+                }
+                break;
+            default:
+                break;
+        }
+        Object[] res = chunk.objects();
+        for (int i = 0; i < count; i++) {
+            int row = sel[i];
+            res[row] = u.op() == TokenType.PLUS
+                    ? Operators.unaryPlus(v.get(row), u.pos())
+                    : Operators.negate(v.get(row), u.pos());
+        }
+        return Vector.ofObjects(res, 0);
+    }
+
+    // 按条件把选择向量拆成两部分，分别只对各自的行求值分支，再合并
+    private Vector conditional(ConditionalNode c, int[] sel, int count, Chunk chunk) throws ParseException {
+        Vector cond = eval(c.cond(), sel, count, chunk);
+        int[] whenTrue = chunk.ints();
+        int[] whenFalse = chunk.ints();
+        int t = 0, f = 0;
+        for (int i = 0; i < count; i++) {
+            int row = sel[i];
+            if (cond.truthy(row)) whenTrue[t++] = row; else whenFalse[f++] = row;
+        }
+        if (f == 0) return eval(c.trueExpr(), whenTrue, t, chunk);
+        if (t == 0) return eval(c.falseExpr(), whenFalse, f, chunk);
+        Vector a = eval(c.trueExpr(), whenTrue, t, chunk);
+        Vector b = eval(c.falseExpr(), whenFalse, f, chunk);
+        return merge(a, whenTrue, t, b, whenFalse, f, chunk);
+    }
+
+    private static Vector merge(Vector a, int[] aSel, int aCount, Vector b, int[] bSel, int bCount, Chunk chunk) {
+        int kind = a.kind == b.kind ? a.kind : Vector.OBJECT;
+        switch (kind) {
+            case Vector.LONG: {
+                long[] res = chunk.longs();
+                for (int i = 0; i < aCount; i++) res[aSel[i]] = a.longs[a.index(aSel[i])];
+                for (int i = 0; i < bCount; i++) res[bSel[i]] = b.longs[b.index(bSel[i])];
+                return Vector.ofLongs(res, 0);
+            }
+            case Vector.DOUBLE: {
+                double[] res = chunk.doubles();
+                for (int i = 0; i < aCount; i++) res[aSel[i]] = a.doubles[a.index(aSel[i])];
+                for (int i = 0; i < bCount; i++) res[bSel[i]] = b.doubles[b.index(bSel[i])];
+                return Vector.ofDoubles(res, 0);
+            }
+            case Vector.BOOLEAN: {
+                boolean[] res = chunk.bools();
+                for (int i = 0; i < aCount; i++) res[aSel[i]] = a.bools[a.index(aSel[i])];
+                for (int i = 0; i < bCount; i++) res[bSel[i]] = b.bools[b.index(bSel[i])];
+                return Vector.ofBooleans(res, 0);
+            }
+            default: {
+                Object[] res = chunk.objects();
+                for (int i = 0; i < aCount; i++) res[aSel[i]] = a.get(aSel[i]);
+                for (int i = 0; i < bCount; i++) res[bSel[i]] = b.get(bSel[i]);
+                return Vector.ofObjects(res, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.miniexpr.batch;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 列式输入：每个变量一列，所有列的行数相同。
+ * <p>
+ * 列的数组类型决定该变量每一行的值：{@code long[]} 为 Long，{@code double[]} 为 Double，
+ * {@code boolean[]} 为 Boolean，{@code String[]} / {@code Object[]} 按元素原样使用（元素可以为 null）。
+ * 与逐行求值时写入 {@link org.miniexpr.Bindings} 的值完全对应；表达式引用了但此处没有的变量视为未绑定。
+ * <p>
+ * 数组不会被复制，求值期间调用方不应修改它们。
+ */
+public final class Columns {
+    private final int rows;
+    private final Map<String, Object> columns = new LinkedHashMap<>();
+
+    public Columns(int rows) {
+        if (rows < 0) throw new IllegalArgumentException("Negative row count: " + rows);
+        this.rows = rows;
+    }
+
+    public int rows() { return rows; }
+
+    /** 已添加的列名 */
+    public Set<String> names() {
+        return Collections.unmodifiableSet(columns.keySet());
+    }
+
+    public Columns add(String name, long[] values) {
+        return put(name, values, values.length);
+    }
+
+    public Columns add(String name, double[] values) {
+        return put(name, values, values.length);
+    }
+
+    public Columns add(String name, boolean[] values) {
+        return put(name, values, values.length);
+    }
+
+    /** String[]、Object[] 以及其它引用类型数组 */
+    public Columns add(String name, Object[] values) {
+        return put(name, values, values.length);
+    }
+
+    private Columns put(String name, Object array, int length) {
+        if (name == null) throw new NullPointerException("name");
+        if (length != rows) {
+            throw new IllegalArgumentException("Column '" + name + "' has " + length + " rows, expected " + rows);
+        }
+        columns.put(name, array);
+        return this;
+    }
+
+    /** 返回列数组，不存在时返回 null */
+    Object column(String name) {
+        return columns.get(name);
+    }
+}
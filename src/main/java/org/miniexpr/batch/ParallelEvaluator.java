@@ -0,0 +1,264 @@
+package org.miniexpr.batch;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.ParseException;
+
+/**
+ * 多线程的列式批量求值。
+ * <p>
+ * 行按 {@link #chunkRows()} 切分为若干区间，每个（表达式，区间）组合作为一个任务提交给执行器，
+ * 在任务内由 {@link BatchEvaluator} 求值。各任务只写入输出中属于自己区间的部分，结果按行号直接就位，
+ * 与单线程的 {@link CompiledExpression#evalBatch} 完全相同。
+ * <p>
+ * 求值过程不依赖任何线程本地状态，任务可以在任意线程上执行（包括 ForkJoinPool 的工作窃取）。
+ * 调用线程按顺序等待各任务：尚未被执行器开始的任务由调用线程自己执行（执行器拒绝的任务也是如此），
+ * 因此执行器繁忙、或调用线程本身就是执行器的线程时也不会卡住；只有等待其它线程正在执行的任务时才阻塞，
+ * 阻塞通过 {@link ForkJoinPool#managedBlock} 进行，在 ForkJoinPool 的工作线程中等待时线程池会补充线程。
+ * <p>
+ * 方法返回（包括抛出异常）前所有已开始的任务都已结束，之后不会再写入输出。出错时抛出按（表达式，行）顺序
+ * 第一个出错任务的异常，尚未开始的后续任务被取消；与单线程不同，出错行之后的行可能已经写入。
+ * 等待时被中断同样取消尚未开始的任务，等已开始的任务结束后抛出 InterruptedException。
+ * <p>
+ * 实例不可变，可以在多个线程中共享。
+ */
+public final class ParallelEvaluator {
+    /** 默认每个任务的行数 */
+    public static final int DEFAULT_CHUNK_ROWS = 16 * BatchEvaluator.CHUNK_SIZE;
+
+    private final Executor executor;
+    private final int chunkRows;
+
+    /** 使用 {@link ForkJoinPool#commonPool()} 与默认的任务行数 */
+    public ParallelEvaluator() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_ROWS);
+    }
+
+    /**
+     * @param executor  执行任务的执行器（ForkJoinPool、线程池等）
+     * @param chunkRows 每个任务求值的行数，必须为正数
+     */
+    public ParallelEvaluator(Executor executor, int chunkRows) {
+        if (executor == null) throw new NullPointerException("executor");
+        if (chunkRows <= 0) throw new IllegalArgumentException("Chunk rows must be positive: " + chunkRows);
+        this.executor = executor;
+        this.chunkRows = chunkRows;
+    }
+
+    public Executor executor() { return executor; }
+
+    public int chunkRows() { return chunkRows; }
+
+    /** 同 {@link CompiledExpression#evalBatch(Columns, Object[])} */
+    public void eval(final CompiledExpression expr, final Columns columns, final Object[] out)
+            throws ParseException, InterruptedException {
+        checkLength(columns, out.length);
+        final BatchEvaluator evaluator = new BatchEvaluator(expr);
+        run(expr, columns, new RangeTask() {
+            @Override
+            public void run(int from, int to) throws ParseException {
+                evaluator.eval(columns, from, to, out);
+            }
+        });
+    }
+
+    /** 同 {@link CompiledExpression#evalBatch(Columns, double[])} */
+    public void evalDouble(final CompiledExpression expr, final Columns columns, final double[] out)
+            throws ParseException, InterruptedException {
+        checkLength(columns, out.length);
+        final BatchEvaluator evaluator = new BatchEvaluator(expr);
+        run(expr, columns, new RangeTask() {
+            @Override
+            public void run(int from, int to) throws ParseException {
+                evaluator.evalDouble(columns, from, to, out);
+            }
+        });
+    }
+
+    /**
+     * 同 {@link CompiledExpression#evalBatch(Columns, BitSet)}。BitSet 不是线程安全的，
+     * 每个任务写入自己的 BitSet，全部完成后按区间顺序合并到 out。
+     */
+    public void evalBoolean(final CompiledExpression expr, final Columns columns, BitSet out)
+            throws ParseException, InterruptedException {
+        final BatchEvaluator evaluator = new BatchEvaluator(expr);
+        final BitSet[] parts = new BitSet[Math.max(1, taskCount(columns.rows()))];
+        out.clear(0, columns.rows());
+        run(expr, columns, new RangeTask() {
+            @Override
+            public void run(int from, int to) throws ParseException {
+                BitSet part = new BitSet(to - from);
+                evaluator.evalBoolean(columns, from, to, part, from);
+                parts[from / chunkRows] = part;
+            }
+        });
+        for (int t = 0; t < parts.length; t++) {
+            int from = t * chunkRows;
+            for (int i = parts[t].nextSetBit(0); i >= 0; i = parts[t].nextSetBit(i + 1)) {
+                out.set(from + i);
+            }
+        }
+    }
+
+    /**
+     * 对每个表达式求值全部行：返回 results，results[e][row] 为第 e 个表达式在第 row 行的结果。
+     * 表达式与行区间同时切分为任务，表达式很多而行数不多时也能利用多个线程。
+     */
+    public Object[][] evalAll(List<CompiledExpression> exprs, final Columns columns)
+            throws ParseException, InterruptedException {
+        final Object[][] results = new Object[exprs.size()][columns.rows()];
+        List<Chunk> chunks = new ArrayList<>();
+        for (int e = 0; e < exprs.size(); e++) {
+            final BatchEvaluator evaluator = new BatchEvaluator(exprs.get(e));
+            final Object[] out = results[e];
+            submit(exprs.get(e), columns.rows(), new RangeTask() {
+                @Override
+                public void run(int from, int to) throws ParseException {
+                    evaluator.eval(columns, from, to, out);
+                }
+            }, chunks);
+        }
+        await(chunks);
+        return results;
+    }
+
+    // ---- 任务调度 ----
+
+    /** 求值 [from, to) 行的任务 */
+    private interface RangeTask {
+        void run(int from, int to) throws ParseException;
+    }
+
+    private int taskCount(int rows) {
+        return (int) (((long) rows + chunkRows - 1) / chunkRows);
+    }
+
+    private void run(CompiledExpression expr, Columns columns, RangeTask task)
+            throws ParseException, InterruptedException {
+        int rows = columns.rows();
+        if (rows <= chunkRows) {
+            // 只有一个区间：直接在调用线程上求值
+            try {
+                task.run(0, rows);
+            } catch (ParseException e) {
+                throw e.withSource(expr.source());
+            }
+            return;
+        }
+        List<Chunk> chunks = new ArrayList<>();
+        submit(expr, rows, task, chunks);
+        await(chunks);
+    }
+
+    private void submit(CompiledExpression expr, int rows, RangeTask task, List<Chunk> chunks) {
+        for (int start = 0; start < rows; start += chunkRows) {
+            Chunk chunk = new Chunk(expr, task, start, (int) Math.min((long) start + chunkRows, rows));
+            chunks.add(chunk);
+            try {
+                executor.execute(chunk);
+            } catch (RejectedExecutionException e) {
+                // 留给调用线程在 await 中执行
+            }
+        }
+    }
+
+    // 按提交顺序等待全部任务：尚未开始的任务由调用线程执行，正在执行的任务等待其结束；
+    // 记录第一个失败，并立即取消所有尚未开始的任务。被中断时同样取消，等正在执行的任务结束后再抛出
+    private static void await(List<Chunk> chunks) throws ParseException, InterruptedException {
+        Chunk failed = null;
+        boolean interrupted = false;
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.get(i);
+            chunk.run();
+            while (true) {
+                try {
+                    ForkJoinPool.managedBlock(chunk);
+                    break;
+                } catch (InterruptedException e) {
+                    if (!interrupted) cancel(chunks, i + 1);
+                    interrupted = true;
+                }
+            }
+            if (failed == null && chunk.failure != null) {
+                failed = chunk;
+                cancel(chunks, i + 1);
+            }
+        }
+        if (interrupted) throw new InterruptedException();
+        if (failed == null) return;
+        Throwable failure = failed.failure;
+        if (failure instanceof ParseException) throw ((ParseException) failure).withSource(failed.source.source());
+        if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if (failure instanceof Error) throw (Error) failure;
+        throw new IllegalStateException(failure);
+    }
+
+    /**
+     * 一个（表达式，区间）任务。执行器的线程与等待中的调用线程中只有先认领（NEW → RUNNING）的一方执行它；
+     * 尚未认领的任务可以取消。作为 ManagedBlocker 时等待它不再处于 RUNNING 状态。
+     */
+    private static final class Chunk implements Runnable, ForkJoinPool.ManagedBlocker {
+        private static final int NEW = 0, RUNNING = 1, DONE = 2, CANCELLED = 3;
+
+        private final AtomicInteger state = new AtomicInteger(NEW);
+        final CompiledExpression source;
+        private final RangeTask task;
+        private final int from, to;
+        // 在状态变为 DONE 之前写入，读到 DONE 后可见
+        Throwable failure;
+
+        Chunk(CompiledExpression source, RangeTask task, int from, int to) {
+            this.source = source;
+            this.task = task;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void run() {
+            if (!state.compareAndSet(NEW, RUNNING)) return;
+            try {
+                task.run(from, to);
+            } catch (Throwable e) {
+                failure = e;
+            } finally {
+                synchronized (this) {
+                    state.set(DONE);
+                    notifyAll();
+                }
+            }
+        }
+
+        void cancel() {
+            state.compareAndSet(NEW, CANCELLED);
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return state.get() != RUNNING;
+        }
+
+        @Override
+        public synchronized boolean block() throws InterruptedException {
+            while (state.get() == RUNNING) wait();
+            return true;
+        }
+    }
+
+    private static void cancel(List<Chunk> chunks, int from) {
+        for (int i = from; i < chunks.size(); i++) chunks.get(i).cancel();
+    }
+
+    private static void checkLength(Columns columns, int length) {
+        if (length < columns.rows()) {
+            throw new IllegalArgumentException("Output has " + length + " slots, expected at least " + columns.rows());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.miniexpr.batch;
+
+import org.miniexpr.nodes.Operators;
+
+/**
+ * 一个节点在一个分块上的求值结果。
+ * <p>
+ * kind 记录的是运行时值的确切类型：LONG 的每个元素代表一个 Long，DOUBLE 代表 Double，
+ * BOOLEAN 代表 Boolean，OBJECT 为任意对象。运算时据此选择与 {@link Operators} 结果一致的基本类型循环。
+ * <p>
+ * 第 r 行（分块内下标）的元素位于 {@code offset + r * stride}：输入列直接以 offset 指向分块起点
+ * 而不复制，常量的 stride 为 0。
+ */
+final class Vector {
+    static final int LONG = 0;
+    static final int DOUBLE = 1;
+    static final int BOOLEAN = 2;
+    static final int OBJECT = 3;
+
+    final int kind;
+    final long[] longs;
+    final double[] doubles;
+    final boolean[] bools;
+    final Object[] objects;
+    final int offset;
+    final int stride;
+
+    private Vector(int kind, long[] longs, double[] doubles, boolean[] bools, Object[] objects,
+                   int offset, int stride) {
+        this.kind = kind;
+        this.longs = longs;
+        this.doubles = doubles;
+        this.bools = bools;
+        this.objects = objects;
+        this.offset = offset;
+        this.stride = stride;
+    }
+
+    static Vector ofLongs(long[] values, int offset) {
+        return new Vector(LONG, values, null, null, null, offset, 1);
+    }
+
+    static Vector ofDoubles(double[] values, int offset) {
+        return new Vector(DOUBLE, null, values, null, null, offset, 1);
+    }
+
+    static Vector ofBooleans(boolean[] values, int offset) {
+        return new Vector(BOOLEAN, null, null, values, null, offset, 1);
+    }
+
+    static Vector ofObjects(Object[] values, int offset) {
+        return new Vector(OBJECT, null, null, null, values, offset, 1);
+    }
+
+    /** 每一行都等于 value 的常量向量 */
+    static Vector constant(Object value) {
+        if (value instanceof Long) return new Vector(LONG, new long[]{(Long) value}, null, null, null, 0, 0);
+        if (value instanceof Double) return new Vector(DOUBLE, null, new double[]{(Double) value}, null, null, 0, 0);
+        if (value instanceof Boolean) return new Vector(BOOLEAN, null, null, new boolean[]{(Boolean) value}, null, 0, 0);
+        return new Vector(OBJECT, null, null, null, new Object[]{value}, 0, 0);
+    }
+
+    boolean isNumeric() {
+        return kind == LONG || kind == DOUBLE;
+    }
+
+    int index(int row) {
+        return offset + row * stride;
+    }
+
+    /** 数值向量第 row 行的 double 值（与 Number.doubleValue() 相同） */
+    double doubleAt(int row) {
+        int i = offset + row * stride;
+        return kind == LONG ? (double) longs[i] : doubles[i];
+    }
+
+    /** 第 row 行装箱后的值，即逐行求值时得到的对象 */
+    Object get(int row) {
+        int i = offset + row * stride;
+        switch (kind) {
+            case LONG: return Long.valueOf(longs[i]);
+            case DOUBLE: return Double.valueOf(doubles[i]);
+            case BOOLEAN: return bools[i] ? Boolean.TRUE : Boolean.FALSE;
+            default: return objects[i];
+        }
+    }
+
+    /** 第 row 行的真值（见 {@link Operators#truthy(Object)}） */
+    boolean truthy(int row) {
+        int i = offset + row * stride;
+        switch (kind) {
+            case LONG: return longs[i] != 0L;
+            case DOUBLE: return doubles[i] != 0.0;
+            case BOOLEAN: return bools[i];
+            default: return Operators.truthy(objects[i]);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package org.miniexpr.bytecode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.miniexpr.Node;
+import org.miniexpr.TokenType;
+import org.miniexpr.nodes.BinaryNode;
+import org.miniexpr.nodes.BooleanNode;
+import org.miniexpr.nodes.CallNode;
+import org.miniexpr.nodes.ConcatNode;
+import org.miniexpr.nodes.ConditionalNode;
+import org.miniexpr.nodes.LogicalNode;
+import org.miniexpr.nodes.NumberNode;
+import org.miniexpr.nodes.StringNode;
+import org.miniexpr.nodes.UnaryNode;
+import org.miniexpr.nodes.VariableNode;
+
+/**
+ * 字节码编译后端：把 AST 编译为一个实现 {@link Node} 的生成类。
+ * <p>
+ * 生成类的 {@code eval(Bindings)} 方法体就是整棵表达式树展开后的直线代码：
+ * 字面量来自常量数组，变量直接按槽位读取 {@link org.miniexpr.Bindings}，运算符调用
+ * {@link org.miniexpr.nodes.Operators} 中的静态方法（与解释器共用同一套语义），三元运算编译为条件跳转。
+ * 这样消除了逐节点的接口分派与 {@code switch (op)}，HotSpot 可以把整个表达式内联。
+ * 函数调用的参数同样展开为直线代码，再调用嵌入的 {@link CallNode} 的 {@code invokeN}（函数已在解析时解析）；
+ * 字符串拼接的各部分存入一个数组后交给嵌入的 {@link ConcatNode#join} 一次拼接。
+ * <p>
+ * 无法识别的节点类型会作为常量嵌入，并通过其自身的 {@code eval} 解释执行；
+ * 若整个类无法生成（例如方法体超出 class 文件限制，或 AST 嵌套过深使按 AST 递归的生成过程栈溢出），
+ * {@link #compile(Node)} 返回 null，由调用方回退为解释执行。
+ * <p>
+ * 每个生成类由自己的类加载器加载：表达式（例如被缓存淘汰的编译结果）不再被引用后，
+ * 它的类随类加载器一起被卸载，长期运行、不断编译新表达式的引擎不会积累生成类。本类是线程安全的。
+ */
+public final class BytecodeCompiler {
+    private static final String NODE = "org/miniexpr/Node";
+    private static final String BINDINGS = "org/miniexpr/Bindings";
+    private static final String OPERATORS = "org/miniexpr/nodes/Operators";
+    private static final String CALL_NODE = "org/miniexpr/nodes/CallNode";
+    private static final String CONCAT_NODE = "org/miniexpr/nodes/ConcatNode";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String PACKAGE = "org/miniexpr/bytecode/gen/";
+
+    private static final String EVAL_DESC = "(L" + BINDINGS + ";)Ljava/lang/Object;";
+    private static final String ARITH_DESC = "(Ljava/lang/Object;Ljava/lang/Object;I)Ljava/lang/Object;";
+    // + 额外传入本次求值的 Bindings，用于拼接长度上限
+    private static final String ADD_DESC = "(Ljava/lang/Object;Ljava/lang/Object;IL" + BINDINGS + ";)Ljava/lang/Object;";
+    private static final String COMPARE_DESC = "(Ljava/lang/Object;Ljava/lang/Object;I)Ljava/lang/Boolean;";
+    private static final String LOGIC_DESC = "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Boolean;";
+
+    // 较长的字符串字面量放入常量数组，避免超出常量池 65535 字节的 UTF-8 限制
+    private static final int MAX_LDC_STRING = 8192;
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * 编译 AST，返回生成类的实例；无法生成时返回 null。
+     */
+    public Node compile(Node root) {
+        String name = PACKAGE + "Expr" + counter.incrementAndGet();
+        Generator gen = new Generator(name);
+        byte[] bytes;
+        try {
+            bytes = gen.generate(root);
+        } catch (IllegalStateException | StackOverflowError e) {
+            return null;
+        }
+        try {
+            ExpressionClassLoader loader = new ExpressionClassLoader(Node.class.getClassLoader());
+            Class<?> cls = loader.define(name.replace('/', '.'), bytes);
+            return (Node) cls.getConstructor(Object[].class).newInstance((Object) gen.constants.toArray());
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static final class Generator {
+        private final String name;
+        private final ClassFileWriter cw;
+        private final List<Object> constants = new ArrayList<>();
+        private ClassFileWriter.Code code;
+
+        Generator(String name) {
+            this.name = name;
+            this.cw = new ClassFileWriter(name, OBJECT, NODE);
+        }
+
+        byte[] generate(Node root) {
+            cw.field(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_FINAL, "k", "[Ljava/lang/Object;");
+
+            // <init>(Object[] k)
+            ClassFileWriter.Code init = new ClassFileWriter.Code(2);
+            init.op(ClassFileWriter.Code.ALOAD_0, 1);
+            init.op(ClassFileWriter.Code.INVOKESPECIAL, cw.methodRef(OBJECT, "<init>", "()V"), -1);
+            init.op(ClassFileWriter.Code.ALOAD_0, 1);
+            init.op(ClassFileWriter.Code.ALOAD_1, 1);
+            init.op(ClassFileWriter.Code.PUTFIELD, cw.fieldRef(name, "k", "[Ljava/lang/Object;"), -2);
+            init.op(ClassFileWriter.Code.RETURN, 0);
+            cw.method(ClassFileWriter.ACC_PUBLIC, "<init>", "([Ljava/lang/Object;)V", init);
+
+            // Object eval(Bindings vars)
+            code = new ClassFileWriter.Code(2);
+            emit(root);
+            code.op(ClassFileWriter.Code.ARETURN, -1);
+            cw.method(ClassFileWriter.ACC_PUBLIC, "eval", EVAL_DESC, code);
+
+            // int pos()
+            ClassFileWriter.Code pos = new ClassFileWriter.Code(1);
+            pos.pushInt(cw, root.pos());
+            pos.op(ClassFileWriter.Code.IRETURN, -1);
+            cw.method(ClassFileWriter.ACC_PUBLIC, "pos", "()I", pos);
+
+            return cw.toByteArray();
+        }
+
+        private void emit(Node n) {
+            if (n instanceof NumberNode) {
+                constant(((NumberNode) n).value());
+            } else if (n instanceof BooleanNode) {
+                constant(((BooleanNode) n).value());
+            } else if (n instanceof StringNode) {
+                String s = ((StringNode) n).value();
+                if (s.length() <= MAX_LDC_STRING) {
+                    code.ldc(cw.string(s));
+                } else {
+                    constant(s);
+                }
+            } else if (n instanceof VariableNode) {
+                VariableNode v = (VariableNode) n;
+                code.op(ClassFileWriter.Code.ALOAD_1, 1);
+                code.pushInt(cw, v.slot());
+                code.ldc(cw.string(v.name()));
+                code.op(ClassFileWriter.Code.INVOKEVIRTUAL,
+                        cw.methodRef(BINDINGS, "getOrDefault", "(ILjava/lang/Object;)Ljava/lang/Object;"), -2);
+            } else if (n instanceof BinaryNode) {
+                emitBinary((BinaryNode) n);
+            } else if (n instanceof LogicalNode) {
+                emitLogical((LogicalNode) n);
+            } else if (n instanceof UnaryNode) {
+                emitUnary((UnaryNode) n);
+            } else if (n instanceof ConditionalNode) {
+                ConditionalNode c = (ConditionalNode) n;
+                emit(c.cond());
+                invokeOperator("truthy", "(Ljava/lang/Object;)Z", 0);
+                int toElse = code.jump(ClassFileWriter.Code.IFEQ, -1);
+                int depth = code.stack();
+                emit(c.trueExpr());
+                int toEnd = code.jump(ClassFileWriter.Code.GOTO, 0);
+                code.bind(toElse);
+                code.stack(depth);
+                emit(c.falseExpr());
+                code.bind(toEnd);
+            } else if (n instanceof CallNode) {
+                emitCall((CallNode) n);
+            } else if (n instanceof ConcatNode) {
+                emitConcat((ConcatNode) n);
+            } else {
+                emitInterpreted(n);
+            }
+        }
+
+        // 参数个数不超过 3 的调用：压入 CallNode、各参数与 Bindings，调用 invokeN(Object..., Bindings)
+        private void emitCall(CallNode c) {
+            int arity = c.arity();
+            if (arity > 3) {
+                emitInterpreted(c);
+                return;
+            }
+            constant(c);
+            code.op(ClassFileWriter.Code.CHECKCAST, cw.classRef(CALL_NODE), 0);
+            StringBuilder desc = new StringBuilder("(");
+            for (Node arg : c.args()) {
+                emit(arg);
+                desc.append("Ljava/lang/Object;");
+            }
+            desc.append("L").append(BINDINGS).append(";)Ljava/lang/Object;");
+            code.op(ClassFileWriter.Code.ALOAD_1, 1);
+            code.op(ClassFileWriter.Code.INVOKEVIRTUAL, cw.methodRef(CALL_NODE, "invoke" + arity, desc.toString()),
+                    -arity - 1);
+        }
+
+        // 压入 ConcatNode、各部分的值组成的 Object[] 与 Bindings，调用 join(Object[], Bindings)
+        private void emitConcat(ConcatNode c) {
+            List<Node> parts = c.parts();
+            constant(c);
+            code.op(ClassFileWriter.Code.CHECKCAST, cw.classRef(CONCAT_NODE), 0);
+            code.pushInt(cw, parts.size());
+            code.op(ClassFileWriter.Code.ANEWARRAY, cw.classRef(OBJECT), 0);
+            for (int i = 0; i < parts.size(); i++) {
+                code.op(ClassFileWriter.Code.DUP, 1);
+                code.pushInt(cw, i);
+                emit(parts.get(i));
+                code.op(ClassFileWriter.Code.AASTORE, -3);
+            }
+            code.op(ClassFileWriter.Code.ALOAD_1, 1);
+            code.op(ClassFileWriter.Code.INVOKEVIRTUAL,
+                    cw.methodRef(CONCAT_NODE, "join", "([Ljava/lang/Object;L" + BINDINGS + ";)Ljava/lang/Object;"), -2);
+        }
+
+        private void emitBinary(BinaryNode b) {
+            String method;
+            String desc;
+            int pos;
+            switch (b.op()) {
+                case PLUS: method = "add"; desc = ADD_DESC; pos = b.pos(); break;
+                case MINUS: method = "subtract"; desc = ARITH_DESC; pos = b.pos(); break;
+                case STAR: method = "multiply"; desc = ARITH_DESC; pos = b.pos(); break;
+                case SLASH: method = "divide"; desc = ARITH_DESC; pos = b.pos(); break;
+                case PERCENT: method = "remainder"; desc = ARITH_DESC; pos = b.pos(); break;
+                // 比较运算的类型错误报告在右操作数的位置（与 BinaryNode 一致）
+                case GT: method = "greaterThan"; desc = COMPARE_DESC; pos = b.rightPos(); break;
+                case GE: method = "greaterOrEqual"; desc = COMPARE_DESC; pos = b.rightPos(); break;
+                case LT: method = "lessThan"; desc = COMPARE_DESC; pos = b.rightPos(); break;
+                case LE: method = "lessOrEqual"; desc = COMPARE_DESC; pos = b.rightPos(); break;
+                case EQ: method = "equal"; desc = LOGIC_DESC; pos = -1; break;
+                case NE: method = "notEqual"; desc = LOGIC_DESC; pos = -1; break;
+                default:
+                    emitInterpreted(b);
+                    return;
+            }
+            emit(b.left());
+            emit(b.right());
+            if (desc == LOGIC_DESC) {
+                invokeOperator(method, desc, -1);
+            } else if (desc == ADD_DESC) {
+                code.pushInt(cw, pos);
+                code.op(ClassFileWriter.Code.ALOAD_1, 1);
+                invokeOperator(method, desc, -3);
+            } else {
+                code.pushInt(cw, pos);
+                invokeOperator(method, desc, -2);
+            }
+        }
+
+        // 短路：&& 任一边为假跳到 FALSE，|| 任一边为真跳到 TRUE
+        private void emitLogical(LogicalNode l) {
+            boolean and = l.op() == TokenType.AND;
+            int jump = and ? ClassFileWriter.Code.IFEQ : ClassFileWriter.Code.IFNE;
+            int depth = code.stack();
+            emit(l.left());
+            invokeOperator("truthy", "(Ljava/lang/Object;)Z", 0);
+            int first = code.jump(jump, -1);
+            emit(l.right());
+            invokeOperator("truthy", "(Ljava/lang/Object;)Z", 0);
+            int second = code.jump(jump, -1);
+            booleanConstant(and);
+            int toEnd = code.jump(ClassFileWriter.Code.GOTO, 0);
+            code.bind(first);
+            code.bind(second);
+            code.stack(depth);
+            booleanConstant(!and);
+            code.bind(toEnd);
+        }
+
+        private void booleanConstant(boolean value) {
+            code.op(ClassFileWriter.Code.GETSTATIC,
+                    cw.fieldRef("java/lang/Boolean", value ? "TRUE" : "FALSE", "Ljava/lang/Boolean;"), 1);
+        }
+
+        private void emitUnary(UnaryNode u) {
+            switch (u.op()) {
+                case NOT:
+                    emit(u.operand());
+                    invokeOperator("not", "(Ljava/lang/Object;)Ljava/lang/Boolean;", 0);
+                    break;
+                case PLUS:
+                    emit(u.operand());
+                    code.pushInt(cw, u.pos());
+                    invokeOperator("unaryPlus", "(Ljava/lang/Object;I)Ljava/lang/Object;", -1);
+                    break;
+                case MINUS:
+                    emit(u.operand());
+                    code.pushInt(cw, u.pos());
+                    invokeOperator("negate", "(Ljava/lang/Object;I)Ljava/lang/Object;", -1);
+                    break;
+                default:
+                    emitInterpreted(u);
+            }
+        }
+
+        // 不支持的节点：作为常量嵌入，调用其自身的 eval 解释执行
+        private void emitInterpreted(Node n) {
+            constant(n);
+            code.op(ClassFileWriter.Code.CHECKCAST, cw.classRef(NODE), 0);
+            code.op(ClassFileWriter.Code.ALOAD_1, 1);
+            code.op(ClassFileWriter.Code.INVOKEINTERFACE, cw.interfaceMethodRef(NODE, "eval", EVAL_DESC), -1);
+            code.u1(2); // 参数槽数（含 this）
+            code.u1(0);
+        }
+
+        private void constant(Object value) {
+            int idx = constants.size();
+            constants.add(value);
+            code.op(ClassFileWriter.Code.ALOAD_0, 1);
+            code.op(ClassFileWriter.Code.GETFIELD, cw.fieldRef(name, "k", "[Ljava/lang/Object;"), 0);
+            code.pushInt(cw, idx);
+            code.op(ClassFileWriter.Code.AALOAD, -1);
+        }
+
+        private void invokeOperator(String method, String desc, int stackDelta) {
+            code.op(ClassFileWriter.Code.INVOKESTATIC, cw.methodRef(OPERATORS, method, desc), stackDelta);
+        }
+    }
+}
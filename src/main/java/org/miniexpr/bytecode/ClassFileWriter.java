@@ -0,0 +1,333 @@
+package org.miniexpr.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 极简的 class 文件写入器，仅覆盖生成表达式类所需的结构：常量池、字段、方法（Code 属性）。
+ * <p>
+ * 生成的 class 版本为 49（Java 5），该版本不要求 StackMapTable，
+ * 因此带分支的方法体无需计算栈帧映射，由 JVM 的类型推导校验器完成校验。
+ */
+final class ClassFileWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int CLASS_VERSION = 49;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+
+    ClassFileWriter(String name, String superName, String... interfaceNames) {
+        this.thisClass = classRef(name);
+        this.superClass = classRef(superName);
+        this.interfaces = new int[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; i++) {
+            interfaces[i] = classRef(interfaceNames[i]);
+        }
+    }
+
+    // ---- 常量池 ----
+
+    int utf8(String s) {
+        Integer idx = poolIndex.get("U" + s);
+        if (idx != null) return idx;
+        try {
+            pool.writeByte(1);
+            pool.writeUTF(s);
+        } catch (IOException e) {
+            // writeUTF 在超过 65535 字节时抛出 UTFDataFormatException
+            throw new IllegalStateException("Constant too large", e);
+        }
+        return register("U" + s, 1);
+    }
+
+    int classRef(String internalName) {
+        String key = "C" + internalName;
+        Integer idx = poolIndex.get(key);
+        if (idx != null) return idx;
+        int name = utf8(internalName);
+        write(7, name);
+        return register(key, 1);
+    }
+
+    int string(String s) {
+        String key = "S" + s;
+        Integer idx = poolIndex.get(key);
+        if (idx != null) return idx;
+        int value = utf8(s);
+        write(8, value);
+        return register(key, 1);
+    }
+
+    int integer(int v) {
+        String key = "I" + v;
+        Integer idx = poolIndex.get(key);
+        if (idx != null) return idx;
+        try {
+            pool.writeByte(3);
+            pool.writeInt(v);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return register(key, 1);
+    }
+
+    int fieldRef(String owner, String name, String desc) {
+        return memberRef(9, owner, name, desc);
+    }
+
+    int methodRef(String owner, String name, String desc) {
+        return memberRef(10, owner, name, desc);
+    }
+
+    int interfaceMethodRef(String owner, String name, String desc) {
+        return memberRef(11, owner, name, desc);
+    }
+
+    private int memberRef(int tag, String owner, String name, String desc) {
+        String key = "M" + tag + owner + '.' + name + desc;
+        Integer idx = poolIndex.get(key);
+        if (idx != null) return idx;
+        int cls = classRef(owner);
+        int nat = nameAndType(name, desc);
+        write(tag, cls, nat);
+        return register(key, 1);
+    }
+
+    private int nameAndType(String name, String desc) {
+        String key = "N" + name + ' ' + desc;
+        Integer idx = poolIndex.get(key);
+        if (idx != null) return idx;
+        int n = utf8(name);
+        int d = utf8(desc);
+        write(12, n, d);
+        return register(key, 1);
+    }
+
+    private void write(int tag, int... u2) {
+        try {
+            pool.writeByte(tag);
+            for (int v : u2) pool.writeShort(v);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int register(String key, int slots) {
+        int idx = poolCount;
+        poolCount += slots;
+        if (poolCount > 0xFFFF) throw new IllegalStateException("Constant pool overflow");
+        poolIndex.put(key, idx);
+        return idx;
+    }
+
+    // ---- 成员 ----
+
+    void field(int access, String name, String desc) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(desc));
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    void method(int access, String name, String desc, Code code) {
+        byte[] body = code.toByteArray();
+        if (body.length > 0xFFFF) throw new IllegalStateException("Method too large");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(desc));
+            out.writeShort(1); // attributes: Code
+            out.writeShort(utf8("Code"));
+            out.writeInt(2 + 2 + 4 + body.length + 2 + 2);
+            out.writeShort(code.maxStack());
+            out.writeShort(code.maxLocals());
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(0); // exception table
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (int i : interfaces) out.writeShort(i);
+            out.writeShort(fields.size());
+            for (byte[] f : fields) out.write(f);
+            out.writeShort(methods.size());
+            for (byte[] m : methods) out.write(m);
+            out.writeShort(0); // class attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 方法体字节码缓冲区，同时跟踪操作数栈深度以计算 max_stack。
+     */
+    static final class Code {
+        static final int ICONST_0 = 0x03;
+        static final int BIPUSH = 0x10;
+        static final int SIPUSH = 0x11;
+        static final int LDC = 0x12;
+        static final int LDC_W = 0x13;
+        static final int ALOAD_0 = 0x2a;
+        static final int ALOAD_1 = 0x2b;
+        static final int AALOAD = 0x32;
+        static final int AASTORE = 0x53;
+        static final int DUP = 0x59;
+        static final int IFEQ = 0x99;
+        static final int IFNE = 0x9a;
+        static final int GOTO = 0xa7;
+        static final int IRETURN = 0xac;
+        static final int ARETURN = 0xb0;
+        static final int RETURN = 0xb1;
+        static final int GETSTATIC = 0xb2;
+        static final int GETFIELD = 0xb4;
+        static final int PUTFIELD = 0xb5;
+        static final int INVOKEVIRTUAL = 0xb6;
+        static final int INVOKESPECIAL = 0xb7;
+        static final int INVOKESTATIC = 0xb8;
+        static final int INVOKEINTERFACE = 0xb9;
+        static final int ANEWARRAY = 0xbd;
+        static final int CHECKCAST = 0xc0;
+
+        private byte[] buf = new byte[64];
+        private int len;
+        private int stack;
+        private int maxStack;
+        private final int maxLocals;
+
+        Code(int maxLocals) {
+            this.maxLocals = maxLocals;
+        }
+
+        /** 写入一个操作码，stackDelta 为该指令对操作数栈深度的净影响 */
+        void op(int opcode, int stackDelta) {
+            u1(opcode);
+            adjust(stackDelta);
+        }
+
+        void op(int opcode, int u2, int stackDelta) {
+            u1(opcode);
+            u2(u2);
+            adjust(stackDelta);
+        }
+
+        void pushInt(ClassFileWriter cw, int v) {
+            if (v >= -1 && v <= 5) {
+                op(ICONST_0 + v, 1);
+            } else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) {
+                op(BIPUSH, 1);
+                u1(v);
+            } else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) {
+                op(SIPUSH, v, 1);
+            } else {
+                ldc(cw.integer(v));
+            }
+        }
+
+        void ldc(int index) {
+            if (index <= 0xFF) {
+                op(LDC, 1);
+                u1(index);
+            } else {
+                op(LDC_W, index, 1);
+            }
+        }
+
+        /** 写入跳转指令并返回待回填的位置 */
+        int jump(int opcode, int stackDelta) {
+            int at = len;
+            op(opcode, 0, stackDelta);
+            return at;
+        }
+
+        /** 把 jump 返回的跳转指令目标回填为当前位置 */
+        void bind(int jumpAt) {
+            int offset = len - jumpAt;
+            if (offset > Short.MAX_VALUE) throw new IllegalStateException("Branch offset too large");
+            buf[jumpAt + 1] = (byte) (offset >> 8);
+            buf[jumpAt + 2] = (byte) offset;
+        }
+
+        int stack() { return stack; }
+
+        /** 在跳转目标处重置栈深度（该处的栈深度由跳转来源决定） */
+        void stack(int depth) { this.stack = depth; }
+
+        void u1(int v) {
+            ensure(1);
+            buf[len++] = (byte) v;
+        }
+
+        void u2(int v) {
+            ensure(2);
+            buf[len++] = (byte) (v >> 8);
+            buf[len++] = (byte) v;
+        }
+
+        private void adjust(int delta) {
+            stack += delta;
+            if (stack > maxStack) maxStack = stack;
+        }
+
+        private void ensure(int n) {
+            if (len + n > buf.length) {
+                byte[] grown = new byte[Math.max(buf.length * 2, len + n)];
+                System.arraycopy(buf, 0, grown, 0, len);
+                buf = grown;
+            }
+        }
+
+        int maxStack() { return maxStack; }
+
+        int maxLocals() { return maxLocals; }
+
+        byte[] toByteArray() {
+            byte[] out = new byte[len];
+            System.arraycopy(buf, 0, out, 0, len);
+            return out;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.miniexpr.bytecode;
+
+/**
+ * 加载生成的表达式类的类加载器。{@link BytecodeCompiler} 为每个生成类创建一个实例，
+ * 表达式不再被引用后，它的类可以随类加载器一起被卸载。
+ */
+final class ExpressionClassLoader extends ClassLoader {
+
+    ExpressionClassLoader(ClassLoader parent) {
+        super(parent);
+    }
+
+    Class<?> define(String binaryName, byte[] bytes) {
+        return defineClass(binaryName, bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,44 @@
+package org.miniexpr.functions;
+
+import java.util.function.Function;
+
+import org.miniexpr.ValueType;
+
+/**
+ * 内置函数，均为纯函数：
+ * <ul>
+ *   <li>{@code min(a, b)} / {@code max(a, b)} / {@code abs(x)}：整数参数返回 Long，否则返回 Double；</li>
+ *   <li>{@code len(s)}：参数转为字符串后的长度（Long）；</li>
+ *   <li>{@code substr(s, start[, end])}：子串，下标截断到 [0, len(s)]，end &lt; start 时为空串。</li>
+ * </ul>
+ */
+final class Builtins {
+    private Builtins() {}
+
+    static void registerAll(FunctionRegistry registry) {
+        registry.register(FunctionDef.numeric2("min", Math::min, Math::min).pure());
+        registry.register(FunctionDef.numeric2("max", Math::max, Math::max).pure());
+        registry.register(FunctionDef.numeric1("abs", Math::abs, Math::abs).pure());
+        registry.register(FunctionDef.object1("len", new Function<Object, Object>() {
+            @Override
+            public Object apply(Object v) {
+                return Long.valueOf(String.valueOf(v).length());
+            }
+        }).pure().returning(ValueType.LONG));
+        registry.register(FunctionDef.varargs("substr", 2, 3, new Function<Object[], Object>() {
+            @Override
+            public Object apply(Object[] args) {
+                String s = String.valueOf(args[0]);
+                int start = index(args[1], s.length());
+                int end = args.length > 2 ? index(args[2], s.length()) : s.length();
+                return end <= start ? "" : s.substring(start, end);
+            }
+        }).pure().returning(ValueType.STRING));
+    }
+
+    private static int index(Object v, int length) {
+        if (!(v instanceof Number)) throw new IllegalArgumentException("index must be a number: " + v);
+        double d = ((Number) v).doubleValue();
+        return (int) Math.max(0, Math.min(d, length));
+    }
+}
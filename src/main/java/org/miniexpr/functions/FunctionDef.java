@@ -0,0 +1,340 @@
+package org.miniexpr.functions;
+
+import java.util.function.BiFunction;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
+
+import org.miniexpr.ParseException;
+import org.miniexpr.ValueType;
+
+/**
+ * 可在表达式中调用的函数，注册到 {@link FunctionRegistry} 后以 {@code name(args...)} 调用。
+ * <p>
+ * 解析时按名字与参数个数解析为 FunctionDef 实例，保存在 {@link org.miniexpr.nodes.CallNode} 中，
+ * 求值时直接调用，不再按名字查找。函数按形态创建：
+ * <ul>
+ *   <li>{@link #numeric1} / {@link #numeric2}：数值函数（{@link Numeric1} / {@link Numeric2}），同时提供 long 与
+ *       double 实现。参数都是整数（Long / Integer / Short / Byte）时调用 long 实现、结果为 Long，否则调用 double 实现、
+ *       结果为 Double。参数静态类型为数值时整个调用不装箱；</li>
+ *   <li>{@link #double1} / {@link #double2}：只有 double 实现，结果总是 Double；</li>
+ *   <li>{@link #object0} ... {@link #object3}：固定参数个数的对象函数，不创建参数数组；</li>
+ *   <li>{@link #varargs}：参数个数可变，参数以数组传入。</li>
+ * </ul>
+ * 用 {@link #pure()} 标记纯函数（结果只取决于参数、没有副作用）后，参数全为常量的调用会在编译期求值。
+ * 函数实现抛出的 RuntimeException 会被转换为调用位置的 ParseException。
+ * <p>
+ * 实例不可变，实现应当是线程安全的。
+ */
+public abstract class FunctionDef {
+    /** 三个参数的对象函数 */
+    public interface Function3 {
+        Object apply(Object a, Object b, Object c);
+    }
+
+    private final String name;
+    private final int minArity;
+    private final int maxArity;
+    private final boolean pure;
+    // 声明的结果类型，null 时按形态推导
+    private final ValueType declaredType;
+
+    FunctionDef(String name, int minArity, int maxArity, boolean pure, ValueType declaredType) {
+        if (name == null) throw new NullPointerException("name");
+        this.name = name;
+        this.minArity = minArity;
+        this.maxArity = maxArity;
+        this.pure = pure;
+        this.declaredType = declaredType;
+    }
+
+    // ---- 创建 ----
+
+    public static FunctionDef numeric1(String name, LongUnaryOperator longForm, DoubleUnaryOperator doubleForm) {
+        return new Numeric1(name, false, null, longForm, doubleForm);
+    }
+
+    public static FunctionDef numeric2(String name, LongBinaryOperator longForm, DoubleBinaryOperator doubleForm) {
+        return new Numeric2(name, false, null, longForm, doubleForm);
+    }
+
+    public static FunctionDef double1(String name, DoubleUnaryOperator fn) {
+        return new Numeric1(name, false, null, null, fn);
+    }
+
+    public static FunctionDef double2(String name, DoubleBinaryOperator fn) {
+        return new Numeric2(name, false, null, null, fn);
+    }
+
+    public static FunctionDef object0(String name, Supplier<Object> fn) {
+        return new Object0(name, false, null, fn);
+    }
+
+    public static FunctionDef object1(String name, Function<Object, Object> fn) {
+        return new Object1(name, false, null, fn);
+    }
+
+    public static FunctionDef object2(String name, BiFunction<Object, Object, Object> fn) {
+        return new Object2(name, false, null, fn);
+    }
+
+    public static FunctionDef object3(String name, Function3 fn) {
+        return new Object3(name, false, null, fn);
+    }
+
+    /** 接受 [minArity, maxArity] 个参数的函数 */
+    public static FunctionDef varargs(String name, int minArity, int maxArity, Function<Object[], Object> fn) {
+        if (minArity < 0 || maxArity < minArity) {
+            throw new IllegalArgumentException("Invalid arity range [" + minArity + ", " + maxArity + "]");
+        }
+        return new Varargs(name, minArity, maxArity, false, null, fn);
+    }
+
+    /** 返回标记为纯函数的副本：参数全为常量的调用可以在编译期求值 */
+    public FunctionDef pure() {
+        return copy(true, declaredType);
+    }
+
+    /** 返回声明了结果静态类型的副本（函数必须总是返回该类型的值），用于类型推导与基本类型求值路径 */
+    public FunctionDef returning(ValueType type) {
+        return copy(pure, type);
+    }
+
+    abstract FunctionDef copy(boolean pure, ValueType declaredType);
+
+    // ---- 属性 ----
+
+    public String name() { return name; }
+
+    public int minArity() { return minArity; }
+
+    public int maxArity() { return maxArity; }
+
+    public boolean isPure() { return pure; }
+
+    public boolean accepts(int arity) {
+        return arity >= minArity && arity <= maxArity;
+    }
+
+    /** 根据参数的静态类型推导调用结果的静态类型；用 {@link #returning} 声明过时总是声明的类型 */
+    public ValueType resultType(ValueType[] argTypes) {
+        return declaredType != null ? declaredType : ValueType.ANY;
+    }
+
+    // ---- 对象参数调用，pos 为类型错误时报告的位置 ----
+
+    public Object call0(int pos) throws ParseException {
+        return call(new Object[0], pos);
+    }
+
+    public Object call1(Object a, int pos) throws ParseException {
+        return call(new Object[]{a}, pos);
+    }
+
+    public Object call2(Object a, Object b, int pos) throws ParseException {
+        return call(new Object[]{a, b}, pos);
+    }
+
+    public Object call3(Object a, Object b, Object c, int pos) throws ParseException {
+        return call(new Object[]{a, b, c}, pos);
+    }
+
+    /** 以数组传入参数调用；固定参数个数的函数转发到对应的 callN */
+    public Object call(Object[] args, int pos) throws ParseException {
+        switch (args.length) {
+            case 0: return call0(pos);
+            case 1: return call1(args[0], pos);
+            case 2: return call2(args[0], args[1], pos);
+            case 3: return call3(args[0], args[1], args[2], pos);
+            default: throw new ParseException("Function '" + name + "' does not take " + args.length + " arguments", pos);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FunctionDef(" + name + ", arity=" + (minArity == maxArity ? "" + minArity : minArity + ".." + maxArity)
+                + (pure ? ", pure" : "") + ")";
+    }
+
+    // ---- 形态 ----
+
+    private static boolean isWhole(Object v) {
+        return v instanceof Long || v instanceof Integer || v instanceof Short || v instanceof Byte;
+    }
+
+    private Number number(Object v, int pos) throws ParseException {
+        if (v instanceof Number) return (Number) v;
+        throw new ParseException("Function '" + name + "' requires numeric arguments", pos);
+    }
+
+    private static ValueType numericType(ValueType[] argTypes, boolean hasLong) {
+        if (!hasLong) return ValueType.DOUBLE;
+        boolean allLong = true;
+        for (ValueType t : argTypes) {
+            if (t == ValueType.DOUBLE) return ValueType.DOUBLE;
+            if (t != ValueType.LONG) allLong = false;
+        }
+        return allLong ? ValueType.LONG : ValueType.NUMBER;
+    }
+
+    /**
+     * 一个参数的数值函数，由 {@link #numeric1} / {@link #double1} 创建。{@link org.miniexpr.nodes.CallNode}
+     * 在参数静态类型为数值时直接调用 {@link #applyLong} / {@link #applyDouble}。
+     */
+    public static final class Numeric1 extends FunctionDef {
+        private final LongUnaryOperator longForm;
+        private final DoubleUnaryOperator doubleForm;
+
+        Numeric1(String name, boolean pure, ValueType type, LongUnaryOperator longForm, DoubleUnaryOperator doubleForm) {
+            super(name, 1, 1, pure, type);
+            if (doubleForm == null) throw new NullPointerException("doubleForm");
+            this.longForm = longForm;
+            this.doubleForm = doubleForm;
+        }
+
+        @Override
+        FunctionDef copy(boolean pure, ValueType type) {
+            return new Numeric1(name(), pure, type, longForm, doubleForm);
+        }
+
+        @Override
+        public ValueType resultType(ValueType[] argTypes) {
+            ValueType declared = super.declaredType;
+            return declared != null ? declared : numericType(argTypes, longForm != null);
+        }
+
+        /** 是否有 long 实现（{@link #applyLong}）；没有时 double 实现用于所有参数 */
+        public boolean hasLongForm() { return longForm != null; }
+
+        /** long 实现，只在 {@link #hasLongForm()} 时可用 */
+        public long applyLong(long a) { return longForm.applyAsLong(a); }
+
+        public double applyDouble(double a) { return doubleForm.applyAsDouble(a); }
+
+        @Override
+        public Object call1(Object a, int pos) throws ParseException {
+            Number n = super.number(a, pos);
+            if (longForm != null && isWhole(n)) return longForm.applyAsLong(n.longValue());
+            return doubleForm.applyAsDouble(n.doubleValue());
+        }
+    }
+
+    /** 两个参数的数值函数，由 {@link #numeric2} / {@link #double2} 创建，见 {@link Numeric1} */
+    public static final class Numeric2 extends FunctionDef {
+        private final LongBinaryOperator longForm;
+        private final DoubleBinaryOperator doubleForm;
+
+        Numeric2(String name, boolean pure, ValueType type, LongBinaryOperator longForm, DoubleBinaryOperator doubleForm) {
+            super(name, 2, 2, pure, type);
+            if (doubleForm == null) throw new NullPointerException("doubleForm");
+            this.longForm = longForm;
+            this.doubleForm = doubleForm;
+        }
+
+        @Override
+        FunctionDef copy(boolean pure, ValueType type) {
+            return new Numeric2(name(), pure, type, longForm, doubleForm);
+        }
+
+        @Override
+        public ValueType resultType(ValueType[] argTypes) {
+            ValueType declared = super.declaredType;
+            return declared != null ? declared : numericType(argTypes, longForm != null);
+        }
+
+        /** 是否有 long 实现（{@link #applyLong}）；没有时 double 实现用于所有参数 */
+        public boolean hasLongForm() { return longForm != null; }
+
+        /** long 实现，只在 {@link #hasLongForm()} 时可用 */
+        public long applyLong(long a, long b) { return longForm.applyAsLong(a, b); }
+
+        public double applyDouble(double a, double b) { return doubleForm.applyAsDouble(a, b); }
+
+        @Override
+        public Object call2(Object a, Object b, int pos) throws ParseException {
+            Number x = super.number(a, pos), y = super.number(b, pos);
+            if (longForm != null && isWhole(x) && isWhole(y)) return longForm.applyAsLong(x.longValue(), y.longValue());
+            return doubleForm.applyAsDouble(x.doubleValue(), y.doubleValue());
+        }
+    }
+
+    private static final class Object0 extends FunctionDef {
+        private final Supplier<Object> fn;
+
+        Object0(String name, boolean pure, ValueType type, Supplier<Object> fn) {
+            super(name, 0, 0, pure, type);
+            this.fn = fn;
+        }
+
+        @Override
+        FunctionDef copy(boolean pure, ValueType type) { return new Object0(name(), pure, type, fn); }
+
+        @Override
+        public Object call0(int pos) { return fn.get(); }
+    }
+
+    private static final class Object1 extends FunctionDef {
+        private final Function<Object, Object> fn;
+
+        Object1(String name, boolean pure, ValueType type, Function<Object, Object> fn) {
+            super(name, 1, 1, pure, type);
+            this.fn = fn;
+        }
+
+        @Override
+        FunctionDef copy(boolean pure, ValueType type) { return new Object1(name(), pure, type, fn); }
+
+        @Override
+        public Object call1(Object a, int pos) { return fn.apply(a); }
+    }
+
+    private static final class Object2 extends FunctionDef {
+        private final BiFunction<Object, Object, Object> fn;
+
+        Object2(String name, boolean pure, ValueType type, BiFunction<Object, Object, Object> fn) {
+            super(name, 2, 2, pure, type);
+            this.fn = fn;
+        }
+
+        @Override
+        FunctionDef copy(boolean pure, ValueType type) { return new Object2(name(), pure, type, fn); }
+
+        @Override
+        public Object call2(Object a, Object b, int pos) { return fn.apply(a, b); }
+    }
+
+    private static final class Object3 extends FunctionDef {
+        private final Function3 fn;
+
+        Object3(String name, boolean pure, ValueType type, Function3 fn) {
+            super(name, 3, 3, pure, type);
+            this.fn = fn;
+        }
+
+        @Override
+        FunctionDef copy(boolean pure, ValueType type) { return new Object3(name(), pure, type, fn); }
+
+        @Override
+        public Object call3(Object a, Object b, Object c, int pos) { return fn.apply(a, b, c); }
+    }
+
+    private static final class Varargs extends FunctionDef {
+        private final Function<Object[], Object> fn;
+
+        Varargs(String name, int minArity, int maxArity, boolean pure, ValueType type, Function<Object[], Object> fn) {
+            super(name, minArity, maxArity, pure, type);
+            this.fn = fn;
+        }
+
+        @Override
+        FunctionDef copy(boolean pure, ValueType type) {
+            return new Varargs(name(), minArity(), maxArity(), pure, type, fn);
+        }
+
+        @Override
+        public Object call(Object[] args, int pos) { return fn.apply(args); }
+    }
+}
@@ -0,0 +1,95 @@
+package org.miniexpr.functions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 表达式可调用的函数集合，按名字与参数个数查找 {@link FunctionDef}。
+ * <p>
+ * 查找只在解析时进行一次：解析器把 {@code name(args...)} 解析为持有函数引用的
+ * {@link org.miniexpr.nodes.CallNode}，之后修改注册表不影响已编译的表达式。
+ * 同名函数可以按参数个数重载（参数个数范围不能重叠，后注册的替换重叠的旧函数）。
+ * <p>
+ * 注册表不是线程安全的：应在配置阶段填充，之后只读使用。{@link org.miniexpr.MiniExprEngine}
+ * 在构建时保存注册表的副本。
+ */
+public final class FunctionRegistry {
+    private final Map<String, List<FunctionDef>> functions = new LinkedHashMap<>();
+
+    /** 空注册表 */
+    public FunctionRegistry() {}
+
+    /** 包含内置函数（min、max、abs、len、substr）的新注册表 */
+    public static FunctionRegistry builtins() {
+        FunctionRegistry registry = new FunctionRegistry();
+        Builtins.registerAll(registry);
+        return registry;
+    }
+
+    /** 注册函数；与已有同名函数的参数个数范围重叠时替换旧函数 */
+    public FunctionRegistry register(FunctionDef fn) {
+        if (fn == null) throw new NullPointerException("fn");
+        List<FunctionDef> defs = functions.get(fn.name());
+        if (defs == null) {
+            defs = new ArrayList<>(1);
+            functions.put(fn.name(), defs);
+        }
+        for (Iterator<FunctionDef> it = defs.iterator(); it.hasNext(); ) {
+            FunctionDef old = it.next();
+            if (old.minArity() <= fn.maxArity() && fn.minArity() <= old.maxArity()) it.remove();
+        }
+        defs.add(fn);
+        return this;
+    }
+
+    /** 移除名为 name 的全部函数，返回是否存在 */
+    public boolean remove(String name) {
+        return functions.remove(name) != null;
+    }
+
+    /** 查找接受 arity 个参数的函数，没有时返回 null */
+    public FunctionDef lookup(String name, int arity) {
+        List<FunctionDef> defs = functions.get(name);
+        if (defs == null) return null;
+        for (int i = 0; i < defs.size(); i++) {
+            if (defs.get(i).accepts(arity)) return defs.get(i);
+        }
+        return null;
+    }
+
+    /** 是否注册了名为 name 的函数（任意参数个数） */
+    public boolean contains(String name) {
+        return functions.containsKey(name);
+    }
+
+    /** 已注册的函数名（按注册顺序） */
+    public Set<String> names() {
+        return Collections.unmodifiableSet(functions.keySet());
+    }
+
+    /** 全部已注册的函数（按函数名的注册顺序） */
+    public List<FunctionDef> all() {
+        List<FunctionDef> all = new ArrayList<>();
+        for (List<FunctionDef> defs : functions.values()) all.addAll(defs);
+        return Collections.unmodifiableList(all);
+    }
+
+    /** 返回独立的副本 */
+    public FunctionRegistry copy() {
+        FunctionRegistry copy = new FunctionRegistry();
+        for (Map.Entry<String, List<FunctionDef>> e : functions.entrySet()) {
+            copy.functions.put(e.getKey(), new ArrayList<>(e.getValue()));
+        }
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "FunctionRegistry" + functions.keySet();
+    }
+}
@@ -0,0 +1,312 @@
+package org.miniexpr.incremental;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.miniexpr.Bindings;
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.Node;
+import org.miniexpr.ParseException;
+import org.miniexpr.ValueType;
+import org.miniexpr.nodes.BinaryNode;
+import org.miniexpr.nodes.BooleanNode;
+import org.miniexpr.nodes.CallNode;
+import org.miniexpr.nodes.ConcatNode;
+import org.miniexpr.nodes.ConditionalNode;
+import org.miniexpr.nodes.DecimalNode;
+import org.miniexpr.nodes.LogicalNode;
+import org.miniexpr.nodes.NumberNode;
+import org.miniexpr.nodes.Operators;
+import org.miniexpr.nodes.StringNode;
+import org.miniexpr.nodes.UnaryNode;
+import org.miniexpr.nodes.VariableNode;
+
+/**
+ * 增量求值：反复求值同一个表达式，而每次只有少数变量变化时，只重新计算受影响的子表达式。
+ * <p>
+ * 创建时复制表达式的 AST，把每个内部节点（二元、一元、逻辑、三元运算、十进制运算、字符串拼接与函数调用）包装为记住上次结果的节点，
+ * 并静态地记录它读取的变量。通过 {@link #set(int, Object)} 等方法修改的变量值与原值不相等（{@link Objects#equals}）时，
+ * 所有依赖该变量的节点的结果作废；{@link #eval()} 中结果仍有效的节点直接返回上次的值，其余节点照常求值并记住结果。
+ * 求值由原有的节点完成，短路、类型提升与错误位置都与 {@link CompiledExpression#eval(Bindings)} 相同。
+ * <p>
+ * 未标记为纯函数的调用及包含它的节点每次都重新计算。变量的值是可变对象且被原地修改时，需要调用 {@link #invalidate()}。
+ * {@link #lastRecomputed()} 返回上一次求值中重新计算的节点数，可与 {@link #nodeCount()} 对比节省的计算。
+ * <p>
+ * 由 {@link CompiledExpression#incremental()} 创建。实例保存变量与各节点的结果，不是线程安全的；
+ * 每个线程（或每个事件流）应使用各自的实例。
+ */
+public final class IncrementalEvaluator {
+    private final CompiledExpression expr;
+    private final Bindings bindings;
+    private final Node root;
+    private final List<MemoNode> nodes = new ArrayList<>();
+    // 每个变量槽位被哪些节点读取（节点编号）
+    private final int[][] dependents;
+    // 各节点上次的结果（按节点的静态类型存于其中一个数组）及其是否仍然有效
+    private final Object[] values;
+    private final long[] longs;
+    private final double[] doubles;
+    private final boolean[] booleans;
+    private final boolean[] valid;
+
+    private int recomputed;
+    private int lastRecomputed;
+    private long evaluations;
+    private long totalRecomputed;
+
+    public IncrementalEvaluator(CompiledExpression expr) {
+        this.expr = expr;
+        this.bindings = expr.newBindings();
+        this.root = build(expr.root());
+        this.values = new Object[nodes.size()];
+        this.longs = new long[nodes.size()];
+        this.doubles = new double[nodes.size()];
+        this.booleans = new boolean[nodes.size()];
+        this.valid = new boolean[nodes.size()];
+        int[] counts = new int[bindings.size()];
+        for (MemoNode n : nodes) {
+            for (int slot = n.slots.nextSetBit(0); slot >= 0; slot = n.slots.nextSetBit(slot + 1)) counts[slot]++;
+        }
+        this.dependents = new int[bindings.size()][];
+        for (int slot = 0; slot < counts.length; slot++) dependents[slot] = new int[counts[slot]];
+        for (MemoNode n : nodes) {
+            for (int slot = n.slots.nextSetBit(0); slot >= 0; slot = n.slots.nextSetBit(slot + 1)) {
+                dependents[slot][--counts[slot]] = n.id;
+            }
+        }
+    }
+
+    // 复制以 n 为根的子树，内部节点包装为 MemoNode；字面量与变量原样返回
+    private Node build(Node n) {
+        Node copy;
+        Node[] children;
+        if (n instanceof BinaryNode) {
+            BinaryNode b = (BinaryNode) n;
+            children = new Node[] {build(b.left()), build(b.right())};
+            copy = new BinaryNode(children[0], b.op(), children[1], b.pos(), b.rightPos());
+        } else if (n instanceof LogicalNode) {
+            LogicalNode l = (LogicalNode) n;
+            children = new Node[] {build(l.left()), build(l.right())};
+            copy = new LogicalNode(children[0], l.op(), children[1], l.pos());
+        } else if (n instanceof UnaryNode) {
+            UnaryNode u = (UnaryNode) n;
+            children = new Node[] {build(u.operand())};
+            copy = new UnaryNode(u.op(), children[0], u.pos());
+        } else if (n instanceof ConditionalNode) {
+            ConditionalNode c = (ConditionalNode) n;
+            children = new Node[] {build(c.cond()), build(c.trueExpr()), build(c.falseExpr())};
+            copy = new ConditionalNode(children[0], children[1], children[2], c.pos());
+        } else if (n instanceof CallNode) {
+            CallNode c = (CallNode) n;
+            children = new Node[c.arity()];
+            for (int i = 0; i < children.length; i++) children[i] = build(c.args().get(i));
+            copy = c.withArgs(children);
+        } else if (n instanceof ConcatNode) {
+            ConcatNode c = (ConcatNode) n;
+            children = new Node[c.parts().size()];
+            for (int i = 0; i < children.length; i++) children[i] = build(c.parts().get(i));
+            copy = c.withParts(children);
+        } else if (n instanceof DecimalNode) {
+            DecimalNode d = (DecimalNode) n;
+            children = d.operands().toArray(new Node[0]);
+            for (int i = 0; i < children.length; i++) children[i] = build(children[i]);
+            copy = d.withOperands(children);
+        } else if (n instanceof NumberNode || n instanceof StringNode || n instanceof BooleanNode
+                || n instanceof VariableNode) {
+            return n;
+        } else {
+            // 无法识别的节点：不知道它读取哪些变量，每次都重新计算
+            return memo(n, new BitSet(), true);
+        }
+        BitSet slots = new BitSet();
+        boolean alwaysRecompute = n instanceof CallNode && !((CallNode) n).function().isPure();
+        for (Node child : children) {
+            if (child instanceof MemoNode) {
+                slots.or(((MemoNode) child).slots);
+                alwaysRecompute |= ((MemoNode) child).alwaysRecompute;
+            } else if (child instanceof VariableNode) {
+                slots.set(((VariableNode) child).slot());
+            }
+        }
+        return memo(copy, slots, alwaysRecompute);
+    }
+
+    private MemoNode memo(Node n, BitSet slots, boolean alwaysRecompute) {
+        MemoNode m = new MemoNode(n, nodes.size(), slots, alwaysRecompute);
+        nodes.add(m);
+        return m;
+    }
+
+    /** 返回被求值的表达式 */
+    public CompiledExpression expression() { return expr; }
+
+    /** 按槽位（见 {@link CompiledExpression#variables()}）设置变量值；与原值相等时不使任何结果作废 */
+    public IncrementalEvaluator set(int slot, Object value) {
+        if (bindings.isBound(slot) && Objects.equals(bindings.get(slot), value)) return this;
+        bindings.set(slot, value);
+        changed(slot);
+        return this;
+    }
+
+    /** 按变量名设置变量值；表达式中未出现的变量名会被忽略 */
+    public IncrementalEvaluator set(String name, Object value) {
+        int slot = bindings.slotOf(name);
+        if (slot >= 0) set(slot, value);
+        return this;
+    }
+
+    /** 设置 vars 中出现的所有变量，其余变量保持不变 */
+    public IncrementalEvaluator setAll(Map<String, Object> vars) {
+        for (int slot = 0; slot < bindings.size(); slot++) {
+            String name = bindings.name(slot);
+            Object v = vars.get(name);
+            if (v != null || vars.containsKey(name)) set(slot, v);
+        }
+        return this;
+    }
+
+    /** 取消某个槽位的绑定 */
+    public IncrementalEvaluator unset(int slot) {
+        if (!bindings.isBound(slot)) return this;
+        bindings.unset(slot);
+        changed(slot);
+        return this;
+    }
+
+    private void changed(int slot) {
+        for (int id : dependents[slot]) valid[id] = false;
+    }
+
+    /** 使所有节点的结果作废，下次求值完整计算（例如变量的值被原地修改之后） */
+    public IncrementalEvaluator invalidate() {
+        Arrays.fill(valid, false);
+        return this;
+    }
+
+    /** 以当前的变量求值，只重新计算结果已作废的节点 */
+    public Object eval() throws ParseException {
+        recomputed = 0;
+        bindings.startEvaluation();
+        try {
+            return root.eval(bindings);
+        } catch (ParseException e) {
+            throw e.withSource(expr.source());
+        } finally {
+            lastRecomputed = recomputed;
+            totalRecomputed += recomputed;
+            evaluations++;
+        }
+    }
+
+    /** 上一次 {@link #eval()} 中重新计算的节点数 */
+    public int lastRecomputed() { return lastRecomputed; }
+
+    /** 可以记住结果的节点总数（内部节点数），即完整求值时计算的节点数上限 */
+    public int nodeCount() { return nodes.size(); }
+
+    /** 求值次数 */
+    public long evaluations() { return evaluations; }
+
+    /** 所有求值中重新计算的节点数之和 */
+    public long totalRecomputed() { return totalRecomputed; }
+
+    @Override
+    public String toString() {
+        return "IncrementalEvaluator(" + expr.source() + ", nodes=" + nodes.size() + ", evaluations=" + evaluations
+                + ", recomputed=" + totalRecomputed + ")";
+    }
+
+    // 记住结果的节点：结果有效时直接返回，否则由被包装的节点求值（其子节点同样是 MemoNode 或叶子）。
+    // 静态类型为 LONG / DOUBLE / BOOLEAN 的节点按基本类型求值并保存结果，与原节点一样不装箱
+    private final class MemoNode implements Node {
+        final Node delegate;
+        final int id;
+        final ValueType type;
+        // 子树读取的变量槽位
+        final BitSet slots;
+        // 子树含有不纯的函数调用（或无法识别的节点），结果从不保留
+        final boolean alwaysRecompute;
+
+        MemoNode(Node delegate, int id, BitSet slots, boolean alwaysRecompute) {
+            this.delegate = delegate;
+            this.id = id;
+            this.type = delegate.type();
+            this.slots = slots;
+            this.alwaysRecompute = alwaysRecompute;
+        }
+
+        @Override
+        public Object eval(Bindings vars) throws ParseException {
+            switch (type) {
+                case LONG:
+                    return Long.valueOf(evalLong(vars));
+                case DOUBLE:
+                    return Double.valueOf(evalDouble(vars));
+                case BOOLEAN:
+                    return evalBoolean(vars) ? Boolean.TRUE : Boolean.FALSE;
+                default:
+                    if (valid[id]) return values[id];
+                    recomputed++;
+                    Object value = delegate.eval(vars);
+                    values[id] = value;
+                    valid[id] = !alwaysRecompute;
+                    return value;
+            }
+        }
+
+        // 只在 type 为 LONG 时调用
+        @Override
+        public long evalLong(Bindings vars) throws ParseException {
+            if (valid[id]) return longs[id];
+            recomputed++;
+            long value = delegate.evalLong(vars);
+            longs[id] = value;
+            valid[id] = !alwaysRecompute;
+            return value;
+        }
+
+        @Override
+        public double evalDouble(Bindings vars) throws ParseException {
+            if (type == ValueType.LONG) return evalLong(vars);
+            if (type != ValueType.DOUBLE) return ((Number) eval(vars)).doubleValue();
+            if (valid[id]) return doubles[id];
+            recomputed++;
+            double value = delegate.evalDouble(vars);
+            doubles[id] = value;
+            valid[id] = !alwaysRecompute;
+            return value;
+        }
+
+        @Override
+        public boolean evalBoolean(Bindings vars) throws ParseException {
+            switch (type) {
+                case LONG:
+                    return evalLong(vars) != 0L;
+                case DOUBLE:
+                    return evalDouble(vars) != 0.0;
+                case BOOLEAN:
+                    if (valid[id]) return booleans[id];
+                    recomputed++;
+                    boolean value = delegate.evalBoolean(vars);
+                    booleans[id] = value;
+                    valid[id] = !alwaysRecompute;
+                    return value;
+                default:
+                    return Operators.truthy(eval(vars));
+            }
+        }
+
+        @Override
+        public int pos() { return delegate.pos(); }
+
+        @Override
+        public ValueType type() { return type; }
+
+        @Override
+        public String toString() { return delegate.toString(); }
+    }
+}
@@ -0,0 +1,37 @@
+package org.miniexpr.metrics;
+
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.ParseException;
+
+/**
+ * 编译与求值事件的监听器，通过 {@link org.miniexpr.MiniExprEngine.Builder#listener(EvaluationListener)} 安装。
+ * <p>
+ * 未安装监听器时，编译与求值路径只多一次对 null 字段的判断，没有计时也没有回调。
+ * 安装后每次编译与求值前后各读取一次 {@link System#nanoTime()}，并在求值线程上同步回调，
+ * 因此实现必须线程安全且足够轻量（例如只累加计数，见 {@link ExpressionMetrics}）。
+ * 回调抛出的异常会传给求值的调用方。
+ * <p>
+ * 求值事件覆盖 {@link CompiledExpression} 的 eval / evalLong / evalDouble / evalBoolean
+ * （包括经由 {@code MiniExprEngine.eval} 的求值与异步求值的最后一步）；
+ * {@link CompiledExpression#evalBatch} 每批报告一次，{@link org.miniexpr.batch.ParallelEvaluator} 不报告。
+ * 命中编译缓存的求值不产生编译事件。所有方法默认不做任何事。
+ */
+public interface EvaluationListener {
+
+    /**
+     * 编译成功。nanos 为词法分析、语法解析（二者交错进行）、优化与字节码生成的总耗时。
+     */
+    default void compiled(CompiledExpression expr, long nanos) {}
+
+    /** 编译失败，error 已附加源码 */
+    default void compileFailed(String source, ParseException error, long nanos) {}
+
+    /** 一次求值成功 */
+    default void evaluated(CompiledExpression expr, long nanos) {}
+
+    /** 一次求值失败，error 已附加源码 */
+    default void evaluationFailed(CompiledExpression expr, ParseException error, long nanos) {}
+
+    /** 一次列式批量求值成功，共 rows 行（失败时报告 {@link #evaluationFailed}） */
+    default void batchEvaluated(CompiledExpression expr, int rows, long nanos) {}
+}
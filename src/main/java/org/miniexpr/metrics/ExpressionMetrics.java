@@ -0,0 +1,301 @@
+package org.miniexpr.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.ParseException;
+
+/**
+ * 按表达式源码累计编译与求值统计的 {@link EvaluationListener}，同时是一个 JMX 标准 MBean。
+ * <p>
+ * 每个表达式记录编译次数与耗时、成功求值的次数、总耗时、最大耗时与对数直方图（用于估计分位数）、错误次数
+ * 以及最近一次错误消息。计数使用 {@link LongAdder} 与原子数组，多线程同时求值时不加锁；
+ * 每次求值的开销是一次以源码为键的哈希查找与几次原子累加。
+ * <p>
+ * 为避免动态生成的表达式无限增长，最多单独统计 {@link #maxExpressions()} 个表达式，
+ * 之后出现的表达式合并计入 {@link #untracked()}。
+ * <pre>
+ * ExpressionMetrics metrics = new ExpressionMetrics();
+ * MiniExprEngine engine = MiniExprEngine.builder().listener(metrics).build();
+ * metrics.register("rules");            // 可在 JConsole 的 org.miniexpr 域下查看
+ * ...
+ * for (ExpressionStats s : metrics.slowest(10)) log.info(s.toString());
+ * </pre>
+ */
+public final class ExpressionMetrics implements EvaluationListener, ExpressionMetricsMBean {
+    /** 默认最多单独统计的表达式个数 */
+    public static final int DEFAULT_MAX_EXPRESSIONS = 10_000;
+    // 直方图桶数：第 i 个桶为 [2^i, 2^(i+1)) 纳秒，最后一个桶收纳更长的耗时（约 9 分钟以上）
+    static final int BUCKETS = 40;
+    // JMX 列表的长度
+    private static final int TOP = 10;
+
+    private final int maxExpressions;
+    private final ConcurrentHashMap<String, Counters> counters = new ConcurrentHashMap<>();
+    private volatile Counters untracked = new Counters(null);
+
+    public ExpressionMetrics() {
+        this(DEFAULT_MAX_EXPRESSIONS);
+    }
+
+    public ExpressionMetrics(int maxExpressions) {
+        if (maxExpressions < 0) throw new IllegalArgumentException("maxExpressions must be >= 0: " + maxExpressions);
+        this.maxExpressions = maxExpressions;
+    }
+
+    public int maxExpressions() { return maxExpressions; }
+
+    // ---- EvaluationListener ----
+
+    @Override
+    public void compiled(CompiledExpression expr, long nanos) {
+        Counters c = counters(expr.source());
+        c.compilations.increment();
+        c.compileNanos.add(nanos);
+    }
+
+    @Override
+    public void compileFailed(String source, ParseException error, long nanos) {
+        Counters c = counters(source);
+        c.compileErrors.increment();
+        c.compileNanos.add(nanos);
+        c.lastError = error.detail();
+    }
+
+    @Override
+    public void evaluated(CompiledExpression expr, long nanos) {
+        counters(expr.source()).record(nanos);
+    }
+
+    @Override
+    public void evaluationFailed(CompiledExpression expr, ParseException error, long nanos) {
+        // 失败的耗时不计入直方图（批量求值的失败也在这里报告）
+        Counters c = counters(expr.source());
+        c.errors.increment();
+        c.lastError = error.detail();
+    }
+
+    @Override
+    public void batchEvaluated(CompiledExpression expr, int rows, long nanos) {
+        Counters c = counters(expr.source());
+        c.batchRows.add(rows);
+        c.batchNanos.add(nanos);
+    }
+
+    private Counters counters(String source) {
+        Counters c = counters.get(source);
+        if (c != null) return c;
+        if (counters.size() >= maxExpressions) return untracked;
+        c = counters.computeIfAbsent(source, Counters::new);
+        return c;
+    }
+
+    // ---- 查询 ----
+
+    /** 表达式的统计快照，没有记录时返回 null */
+    public ExpressionStats stats(String source) {
+        Counters c = counters.get(source);
+        return c != null ? c.snapshot() : null;
+    }
+
+    /** 超出 {@link #maxExpressions()} 后出现的表达式的合计（source 为 null） */
+    public ExpressionStats untracked() {
+        return untracked.snapshot();
+    }
+
+    /** 所有单独统计的表达式的快照（无序） */
+    public List<ExpressionStats> snapshot() {
+        List<ExpressionStats> list = new ArrayList<>(counters.size());
+        for (Counters c : counters.values()) list.add(c.snapshot());
+        return list;
+    }
+
+    /**
+     * 单次求值平均耗时（{@link ExpressionStats#meanEvalNanos()}）最高的 limit 个表达式，平均耗时相同时总耗时高的在前。
+     * 求值次数多而单次很快的表达式不会排在前面；要找总开销最大的表达式，按 {@link ExpressionStats#evalNanos()} 排序快照
+     */
+    public List<ExpressionStats> slowest(int limit) {
+        return top(limit, new Comparator<ExpressionStats>() {
+            @Override
+            public int compare(ExpressionStats a, ExpressionStats b) {
+                int c = Double.compare(b.meanEvalNanos(), a.meanEvalNanos());
+                return c != 0 ? c : Long.compare(b.evalNanos(), a.evalNanos());
+            }
+        });
+    }
+
+    /** 出错（编译或求值）次数最多的 limit 个表达式，不含从未出错的表达式 */
+    public List<ExpressionStats> failing(int limit) {
+        List<ExpressionStats> list = top(Integer.MAX_VALUE, new Comparator<ExpressionStats>() {
+            @Override
+            public int compare(ExpressionStats a, ExpressionStats b) {
+                return Long.compare(b.errors() + b.compileErrors(), a.errors() + a.compileErrors());
+            }
+        });
+        List<ExpressionStats> result = new ArrayList<>();
+        for (ExpressionStats s : list) {
+            if (result.size() >= limit || s.errors() + s.compileErrors() == 0) break;
+            result.add(s);
+        }
+        return result;
+    }
+
+    private List<ExpressionStats> top(int limit, Comparator<ExpressionStats> order) {
+        List<ExpressionStats> list = snapshot();
+        Collections.sort(list, order);
+        return list.size() > limit ? new ArrayList<>(list.subList(0, limit)) : list;
+    }
+
+    // ---- JMX ----
+
+    /**
+     * 以 {@code org.miniexpr:type=ExpressionMetrics,name=<name>} 注册到平台 MBeanServer，返回注册的名字。
+     */
+    public ObjectName register(String name) {
+        try {
+            ObjectName objectName = objectName(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register MBean '" + name + "': " + e.getMessage(), e);
+        }
+    }
+
+    /** 从平台 MBeanServer 注销以 name 注册的 MBean（未注册时不做任何事） */
+    public void unregister(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = objectName(name);
+            if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot unregister MBean '" + name + "': " + e.getMessage(), e);
+        }
+    }
+
+    private static ObjectName objectName(String name) throws JMException {
+        return new ObjectName("org.miniexpr:type=ExpressionMetrics,name=" + ObjectName.quote(name));
+    }
+
+    @Override
+    public int getTrackedExpressions() { return counters.size(); }
+
+    @Override
+    public long getCompilations() {
+        long sum = untracked.compilations.sum();
+        for (Counters c : counters.values()) sum += c.compilations.sum();
+        return sum;
+    }
+
+    @Override
+    public long getCompileErrors() {
+        long sum = untracked.compileErrors.sum();
+        for (Counters c : counters.values()) sum += c.compileErrors.sum();
+        return sum;
+    }
+
+    @Override
+    public long getEvaluations() {
+        long sum = untracked.evaluations.sum();
+        for (Counters c : counters.values()) sum += c.evaluations.sum();
+        return sum;
+    }
+
+    @Override
+    public long getEvaluationErrors() {
+        long sum = untracked.errors.sum();
+        for (Counters c : counters.values()) sum += c.errors.sum();
+        return sum;
+    }
+
+    @Override
+    public long getTotalEvalNanos() {
+        long sum = untracked.evalNanos.sum();
+        for (Counters c : counters.values()) sum += c.evalNanos.sum();
+        return sum;
+    }
+
+    @Override
+    public long getBatchRows() {
+        long sum = untracked.batchRows.sum();
+        for (Counters c : counters.values()) sum += c.batchRows.sum();
+        return sum;
+    }
+
+    @Override
+    public String[] getSlowestExpressions() {
+        List<ExpressionStats> list = slowest(TOP);
+        String[] lines = new String[list.size()];
+        for (int i = 0; i < lines.length; i++) {
+            ExpressionStats s = list.get(i);
+            lines[i] = "mean " + Math.round(s.meanEvalNanos()) + " ns, p99 <= " + s.percentileNanos(0.99) + " ns, "
+                    + s.evaluations() + " evals, " + s.evalNanos() / 1000 + " us total: " + s.source();
+        }
+        return lines;
+    }
+
+    @Override
+    public String[] getFailingExpressions() {
+        List<ExpressionStats> list = failing(TOP);
+        String[] lines = new String[list.size()];
+        for (int i = 0; i < lines.length; i++) {
+            ExpressionStats s = list.get(i);
+            lines[i] = (s.errors() + s.compileErrors()) + " errors (" + s.lastError() + "): " + s.source();
+        }
+        return lines;
+    }
+
+    @Override
+    public void reset() {
+        counters.clear();
+        untracked = new Counters(null);
+    }
+
+    // 单个表达式的计数
+    private static final class Counters {
+        final String source;
+        final LongAdder compilations = new LongAdder();
+        final LongAdder compileErrors = new LongAdder();
+        final LongAdder compileNanos = new LongAdder();
+        final LongAdder evaluations = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder evalNanos = new LongAdder();
+        final LongAdder batchRows = new LongAdder();
+        final LongAdder batchNanos = new LongAdder();
+        final AtomicLong maxEvalNanos = new AtomicLong();
+        final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+        volatile String lastError;
+
+        Counters(String source) {
+            this.source = source;
+        }
+
+        void record(long nanos) {
+            evaluations.increment();
+            evalNanos.add(nanos);
+            int bucket = 63 - Long.numberOfLeadingZeros(Math.max(1L, nanos));
+            histogram.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+            long max = maxEvalNanos.get();
+            while (nanos > max && !maxEvalNanos.compareAndSet(max, nanos)) max = maxEvalNanos.get();
+        }
+
+        ExpressionStats snapshot() {
+            long[] h = new long[BUCKETS];
+            for (int i = 0; i < h.length; i++) h[i] = histogram.get(i);
+            return new ExpressionStats(source, compilations.sum(), compileErrors.sum(), compileNanos.sum(),
+                    evaluations.sum(), errors.sum(), evalNanos.sum(), maxEvalNanos.get(),
+                    batchRows.sum(), batchNanos.sum(), h, lastError);
+        }
+    }
+}
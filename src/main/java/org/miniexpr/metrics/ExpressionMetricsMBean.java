@@ -0,0 +1,32 @@
+package org.miniexpr.metrics;
+
+/**
+ * {@link ExpressionMetrics} 的 JMX 管理接口（标准 MBean），通过 {@link ExpressionMetrics#register(String)} 注册。
+ * 计数为注册以来（或上次 {@link #reset()} 以来）所有表达式的合计。
+ */
+public interface ExpressionMetricsMBean {
+
+    /** 单独统计的表达式个数 */
+    int getTrackedExpressions();
+
+    long getCompilations();
+
+    long getCompileErrors();
+
+    long getEvaluations();
+
+    long getEvaluationErrors();
+
+    long getTotalEvalNanos();
+
+    long getBatchRows();
+
+    /** 单次求值平均耗时最高的表达式（最多 10 个），每项为一行说明 */
+    String[] getSlowestExpressions();
+
+    /** 出错（编译或求值）次数最多的表达式（最多 10 个），每项含最近一次错误消息 */
+    String[] getFailingExpressions();
+
+    /** 清空所有统计 */
+    void reset();
+}
@@ -0,0 +1,105 @@
+package org.miniexpr.metrics;
+
+/**
+ * 单个表达式的统计快照（不可变），由 {@link ExpressionMetrics} 生成。
+ * <p>
+ * 求值耗时记录在以 2 为底的对数直方图中：第 i 个桶计数耗时在 [2^i, 2^(i+1)) 纳秒内的求值（第 0 个桶含 0），
+ * 因此 {@link #percentileNanos(double)} 返回的是所在桶的上界（不超过最大耗时），误差不超过一倍。
+ */
+public final class ExpressionStats {
+    private final String source;
+    private final long compilations;
+    private final long compileErrors;
+    private final long compileNanos;
+    private final long evaluations;
+    private final long errors;
+    private final long evalNanos;
+    private final long maxEvalNanos;
+    private final long batchRows;
+    private final long batchNanos;
+    private final long[] histogram;
+    private final String lastError;
+
+    ExpressionStats(String source, long compilations, long compileErrors, long compileNanos,
+                    long evaluations, long errors, long evalNanos, long maxEvalNanos,
+                    long batchRows, long batchNanos, long[] histogram, String lastError) {
+        this.source = source;
+        this.compilations = compilations;
+        this.compileErrors = compileErrors;
+        this.compileNanos = compileNanos;
+        this.evaluations = evaluations;
+        this.errors = errors;
+        this.evalNanos = evalNanos;
+        this.maxEvalNanos = maxEvalNanos;
+        this.batchRows = batchRows;
+        this.batchNanos = batchNanos;
+        this.histogram = histogram;
+        this.lastError = lastError;
+    }
+
+    /** 表达式源码；超出 {@link ExpressionMetrics#maxExpressions()} 而合并统计的表达式为 null */
+    public String source() { return source; }
+
+    /** 编译成功次数 */
+    public long compilations() { return compilations; }
+
+    /** 编译失败次数 */
+    public long compileErrors() { return compileErrors; }
+
+    /** 编译（含失败）的总耗时 */
+    public long compileNanos() { return compileNanos; }
+
+    /** 成功的单次求值次数（不含批量求值） */
+    public long evaluations() { return evaluations; }
+
+    /** 求值失败次数（单次与批量求值） */
+    public long errors() { return errors; }
+
+    /** 成功的单次求值的总耗时 */
+    public long evalNanos() { return evalNanos; }
+
+    /** 单次求值的最大耗时 */
+    public long maxEvalNanos() { return maxEvalNanos; }
+
+    /** 单次求值的平均耗时，没有求值时为 0 */
+    public double meanEvalNanos() {
+        return evaluations == 0 ? 0 : (double) evalNanos / evaluations;
+    }
+
+    /** 批量求值成功的总行数 */
+    public long batchRows() { return batchRows; }
+
+    /** 批量求值成功的总耗时 */
+    public long batchNanos() { return batchNanos; }
+
+    /** 求值耗时直方图的副本，见类说明 */
+    public long[] histogram() { return histogram.clone(); }
+
+    /**
+     * 单次求值耗时的 q 分位数（0 &lt; q &lt;= 1）的上界估计，没有求值时为 0。
+     */
+    public long percentileNanos(double q) {
+        if (!(q > 0 && q <= 1)) throw new IllegalArgumentException("Quantile must be in (0, 1]: " + q);
+        long total = 0;
+        for (long c : histogram) total += c;
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank) return Math.min(i + 1 < 63 ? 1L << (i + 1) : Long.MAX_VALUE, maxEvalNanos);
+        }
+        return maxEvalNanos;
+    }
+
+    /** 最近一次错误（编译或求值）的原始消息，没有时为 null */
+    public String lastError() { return lastError; }
+
+    @Override
+    public String toString() {
+        return "ExpressionStats(" + source + ": evaluations=" + evaluations + ", errors=" + errors
+                + ", meanNanos=" + Math.round(meanEvalNanos()) + ", p99Nanos<=" + percentileNanos(0.99)
+                + ", maxNanos=" + maxEvalNanos + ", compilations=" + compilations
+                + ", compileErrors=" + compileErrors + ")";
+    }
+}
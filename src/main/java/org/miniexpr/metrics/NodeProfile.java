@@ -0,0 +1,95 @@
+package org.miniexpr.metrics;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.miniexpr.Node;
+
+/**
+ * {@link NodeProfiler} 为一个 AST 内部节点记录的计数：调用次数、采样次数与采样的总耗时。
+ * <p>
+ * 耗时是包含子树在内的时间（inclusive）。{@link #totalNanos()} 按采样均值乘以调用次数估算全部调用的耗时，
+ * {@link #selfNanos()} 再减去各个子节点的估算耗时，得到该节点自身（运算本身与未单独计时的叶子节点）的耗时，
+ * 用于在大表达式中定位热点。子节点的计时开销会计入父节点，耗时小的节点的估算值偏大。
+ */
+public final class NodeProfile {
+    private final String source;
+    private final Node node;
+    private final String label;
+    private final List<NodeProfile> children;
+    private final long mask;
+    private final AtomicLong calls = new AtomicLong();
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder sampledNanos = new LongAdder();
+
+    NodeProfile(String source, Node node, String label, List<NodeProfile> children, long mask) {
+        this.source = source;
+        this.node = node;
+        this.label = label;
+        this.children = Collections.unmodifiableList(children);
+        this.mask = mask;
+    }
+
+    // 计数一次调用，返回本次是否需要计时
+    boolean tick() {
+        return (calls.getAndIncrement() & mask) == 0;
+    }
+
+    void sample(long nanos) {
+        samples.increment();
+        sampledNanos.add(nanos);
+    }
+
+    void reset() {
+        calls.set(0);
+        samples.reset();
+        sampledNanos.reset();
+        for (NodeProfile child : children) child.reset();
+    }
+
+    /** 所属表达式的源码 */
+    public String source() { return source; }
+
+    /** 被计时的（原始）节点 */
+    public Node node() { return node; }
+
+    /** 节点的简短描述，例如 {@code BinaryNode(*)} */
+    public String label() { return label; }
+
+    /** 节点在源码中的位置（0-based） */
+    public int pos() { return node.pos(); }
+
+    /** 被计时的子节点（叶子节点不单独计时） */
+    public List<NodeProfile> children() { return children; }
+
+    public long calls() { return calls.get(); }
+
+    public long samples() { return samples.sum(); }
+
+    /** 采样的平均耗时（含子树），没有采样时为 0 */
+    public double meanNanos() {
+        long n = samples.sum();
+        return n == 0 ? 0 : (double) sampledNanos.sum() / n;
+    }
+
+    /** 估算的全部调用总耗时（含子树） */
+    public long totalNanos() {
+        return Math.round(meanNanos() * calls.get());
+    }
+
+    /** 估算的自身耗时：totalNanos 减去子节点的 totalNanos，不小于 0 */
+    public long selfNanos() {
+        long self = totalNanos();
+        for (NodeProfile child : children) self -= child.totalNanos();
+        return Math.max(0, self);
+    }
+
+    @Override
+    public String toString() {
+        return label + " at index " + (pos() + 1) + ": calls=" + calls() + ", samples=" + samples()
+                + ", meanNanos=" + Math.round(meanNanos()) + ", selfNanos=" + selfNanos()
+                + ", totalNanos=" + totalNanos();
+    }
+}
@@ -0,0 +1,262 @@
+package org.miniexpr.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.miniexpr.Bindings;
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.Node;
+import org.miniexpr.ParseException;
+import org.miniexpr.ValueType;
+import org.miniexpr.nodes.BinaryNode;
+import org.miniexpr.nodes.CallNode;
+import org.miniexpr.nodes.ConcatNode;
+import org.miniexpr.nodes.ConditionalNode;
+import org.miniexpr.nodes.DecimalNode;
+import org.miniexpr.nodes.LogicalNode;
+import org.miniexpr.nodes.UnaryNode;
+
+/**
+ * 逐节点的采样计时器，用于在很大的表达式中找出耗时集中的子树。
+ * <p>
+ * {@link #instrument(CompiledExpression)} 复制 AST，在每个内部节点（{@link BinaryNode}、{@link LogicalNode}、
+ * {@link UnaryNode}、{@link ConditionalNode}、{@link CallNode}）外包一层计时节点；叶子节点（常量、变量）不包装。
+ * 计时节点统计每次调用，但每 {@link #sampleInterval()} 次调用只对一次读取 {@link System#nanoTime()}，
+ * 以降低计时本身的开销。结果按节点记录在 {@link NodeProfile} 中，见 {@link #hotspots(int)}。
+ * <p>
+ * 通常通过 {@link org.miniexpr.MiniExprEngine.Builder#profiler(NodeProfiler)} 对一个引擎编译的所有表达式启用，
+ * 或对单个表达式调用 {@link CompiledExpression#withProfiler(NodeProfiler)}。被计时的表达式总是解释执行。
+ * 实例是线程安全的，可以被多个表达式、多个线程共享。
+ * <p>
+ * 计数按源码登记：同一源码重新编译（例如编译缓存淘汰之后、或缓存容量为 0 时）得到形状相同的 AST，
+ * 新的计时副本复用已登记的 {@link NodeProfile}，计数继续累加。为避免动态生成的表达式无限增长，
+ * 最多登记 {@link #maxExpressions()} 个源码，之后出现的源码照常计时，但不出现在结果中。
+ */
+public final class NodeProfiler {
+    /** 默认每 64 次调用计时一次 */
+    public static final int DEFAULT_SAMPLE_INTERVAL = 64;
+    /** 默认最多登记的源码个数 */
+    public static final int DEFAULT_MAX_EXPRESSIONS = 10_000;
+
+    private final int sampleInterval;
+    private final int maxExpressions;
+    private final ConcurrentHashMap<String, NodeProfile> roots = new ConcurrentHashMap<>();
+
+    public NodeProfiler() {
+        this(DEFAULT_SAMPLE_INTERVAL);
+    }
+
+    /** @param sampleInterval 每多少次调用计时一次，必须是 2 的幂（1 表示每次都计时） */
+    public NodeProfiler(int sampleInterval) {
+        this(sampleInterval, DEFAULT_MAX_EXPRESSIONS);
+    }
+
+    /**
+     * @param sampleInterval 每多少次调用计时一次，必须是 2 的幂（1 表示每次都计时）
+     * @param maxExpressions 最多登记的源码个数
+     */
+    public NodeProfiler(int sampleInterval, int maxExpressions) {
+        if (sampleInterval <= 0 || Integer.bitCount(sampleInterval) != 1) {
+            throw new IllegalArgumentException("Sample interval must be a power of two: " + sampleInterval);
+        }
+        if (maxExpressions < 0) throw new IllegalArgumentException("maxExpressions must be >= 0: " + maxExpressions);
+        this.sampleInterval = sampleInterval;
+        this.maxExpressions = maxExpressions;
+    }
+
+    public int sampleInterval() { return sampleInterval; }
+
+    public int maxExpressions() { return maxExpressions; }
+
+    /**
+     * 返回 expr 的 AST 的计时副本，并按源码登记其根节点的 {@link NodeProfile}。
+     * 同一源码已登记形状相同的 AST 时复用其计数；形状不同（例如优化设置不同的引擎）时以新的计数替换。
+     * 根节点是叶子时不计时，原样返回。
+     */
+    public synchronized Node instrument(CompiledExpression expr) {
+        String source = expr.source();
+        NodeProfile registered = roots.get(source);
+        List<NodeProfile> top = new ArrayList<>(1);
+        Node instrumented;
+        if (registered != null) {
+            List<NodeProfile> previous = new ArrayList<>();
+            postOrder(registered, previous);
+            instrumented = wrap(source, expr.root(), top, new Reuse(previous));
+            if (!top.isEmpty() && top.get(0) == registered) return instrumented;
+            top.clear();
+        }
+        instrumented = wrap(source, expr.root(), top, null);
+        if (!top.isEmpty() && (registered != null || roots.size() < maxExpressions)) roots.put(source, top.get(0));
+        return instrumented;
+    }
+
+    // 已登记的计数按创建顺序（后序）排列，形状相同的 AST 以同样的顺序创建计数
+    private static final class Reuse {
+        final List<NodeProfile> previous;
+        int next;
+
+        Reuse(List<NodeProfile> previous) {
+            this.previous = previous;
+        }
+
+        // 标签相同且子节点的计数都已复用时复用下一个计数，否则返回 null
+        NodeProfile match(String label, List<NodeProfile> children) {
+            if (next >= previous.size()) return null;
+            NodeProfile p = previous.get(next++);
+            return p.label().equals(label) && p.children().equals(children) ? p : null;
+        }
+    }
+
+    private static void postOrder(NodeProfile p, List<NodeProfile> out) {
+        for (NodeProfile child : p.children()) postOrder(child, out);
+        out.add(p);
+    }
+
+    // 复制以 n 为根的子树，把 n 及其中的内部节点包装为计时节点，n 的 NodeProfile 加入 profiles
+    private Node wrap(String source, Node n, List<NodeProfile> profiles, Reuse reuse) {
+        List<NodeProfile> children = new ArrayList<>();
+        Node copy;
+        String label;
+        if (n instanceof BinaryNode) {
+            BinaryNode b = (BinaryNode) n;
+            copy = new BinaryNode(wrap(source, b.left(), children, reuse), b.op(),
+                    wrap(source, b.right(), children, reuse), b.pos(), b.rightPos());
+            label = "BinaryNode(" + b.op().symbol() + ")";
+        } else if (n instanceof LogicalNode) {
+            LogicalNode l = (LogicalNode) n;
+            copy = new LogicalNode(wrap(source, l.left(), children, reuse), l.op(),
+                    wrap(source, l.right(), children, reuse), l.pos());
+            label = "LogicalNode(" + l.op().symbol() + ")";
+        } else if (n instanceof UnaryNode) {
+            UnaryNode u = (UnaryNode) n;
+            copy = new UnaryNode(u.op(), wrap(source, u.operand(), children, reuse), u.pos());
+            label = "UnaryNode(" + u.op().symbol() + ")";
+        } else if (n instanceof ConditionalNode) {
+            ConditionalNode c = (ConditionalNode) n;
+            copy = new ConditionalNode(wrap(source, c.cond(), children, reuse),
+                    wrap(source, c.trueExpr(), children, reuse), wrap(source, c.falseExpr(), children, reuse), c.pos());
+            label = "ConditionalNode(?:)";
+        } else if (n instanceof CallNode) {
+            CallNode c = (CallNode) n;
+            Node[] args = new Node[c.arity()];
+            for (int i = 0; i < args.length; i++) args[i] = wrap(source, c.args().get(i), children, reuse);
+            copy = c.withArgs(args);
+            label = "CallNode(" + c.function().name() + ")";
+        } else if (n instanceof ConcatNode) {
+            ConcatNode c = (ConcatNode) n;
+            Node[] parts = new Node[c.parts().size()];
+            for (int i = 0; i < parts.length; i++) parts[i] = wrap(source, c.parts().get(i), children, reuse);
+            copy = c.withParts(parts);
+            label = "ConcatNode(+)";
+        } else if (n instanceof DecimalNode) {
+            DecimalNode d = (DecimalNode) n;
+            Node[] operands = new Node[d.operands().size()];
+            for (int i = 0; i < operands.length; i++) operands[i] = wrap(source, d.operands().get(i), children, reuse);
+            copy = d.withOperands(operands);
+            label = "DecimalNode(" + d.op().symbol() + ")";
+        } else {
+            return n;
+        }
+        NodeProfile profile = reuse != null ? reuse.match(label, children) : null;
+        if (profile == null) profile = new NodeProfile(source, n, label, children, sampleInterval - 1);
+        profiles.add(profile);
+        return new TimedNode(copy, profile);
+    }
+
+    /** 已登记的各个表达式的根节点计数（无序，每个源码一个） */
+    public List<NodeProfile> roots() {
+        return Collections.unmodifiableList(new ArrayList<>(roots.values()));
+    }
+
+    /** 所有被计时的节点，按估算的自身耗时（{@link NodeProfile#selfNanos()}）从高到低取前 limit 个 */
+    public List<NodeProfile> hotspots(int limit) {
+        List<NodeProfile> all = new ArrayList<>();
+        for (NodeProfile root : roots.values()) collect(root, all);
+        Collections.sort(all, new Comparator<NodeProfile>() {
+            @Override
+            public int compare(NodeProfile a, NodeProfile b) {
+                return Long.compare(b.selfNanos(), a.selfNanos());
+            }
+        });
+        return all.size() > limit ? new ArrayList<>(all.subList(0, limit)) : all;
+    }
+
+    private static void collect(NodeProfile p, List<NodeProfile> out) {
+        out.add(p);
+        for (NodeProfile child : p.children()) collect(child, out);
+    }
+
+    /** 清零所有计数（已包装的表达式继续计时） */
+    public void reset() {
+        for (NodeProfile root : roots.values()) root.reset();
+    }
+
+    /** 不再登记之前包装的表达式（它们仍会计时，但不出现在结果中） */
+    public void clear() {
+        roots.clear();
+    }
+
+    // 计时包装：类型与位置同被包装的节点，基本类型求值路径原样转发
+    private static final class TimedNode implements Node {
+        private final Node delegate;
+        private final NodeProfile profile;
+
+        TimedNode(Node delegate, NodeProfile profile) {
+            this.delegate = delegate;
+            this.profile = profile;
+        }
+
+        @Override
+        public Object eval(Bindings vars) throws ParseException {
+            if (!profile.tick()) return delegate.eval(vars);
+            long start = System.nanoTime();
+            try {
+                return delegate.eval(vars);
+            } finally {
+                profile.sample(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public long evalLong(Bindings vars) throws ParseException {
+            if (!profile.tick()) return delegate.evalLong(vars);
+            long start = System.nanoTime();
+            try {
+                return delegate.evalLong(vars);
+            } finally {
+                profile.sample(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public double evalDouble(Bindings vars) throws ParseException {
+            if (!profile.tick()) return delegate.evalDouble(vars);
+            long start = System.nanoTime();
+            try {
+                return delegate.evalDouble(vars);
+            } finally {
+                profile.sample(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public boolean evalBoolean(Bindings vars) throws ParseException {
+            if (!profile.tick()) return delegate.evalBoolean(vars);
+            long start = System.nanoTime();
+            try {
+                return delegate.evalBoolean(vars);
+            } finally {
+                profile.sample(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public ValueType type() { return delegate.type(); }
+
+        @Override
+        public int pos() { return delegate.pos(); }
+    }
+}
@@ -1,178 +1,316 @@
 package org.miniexpr.nodes;
 
+import org.miniexpr.Bindings;
 import org.miniexpr.Node;
 import org.miniexpr.ParseException;
 import org.miniexpr.TokenType;
+import org.miniexpr.ValueType;
 
 /**
- * 二元运算节点：算术 / 比较 / 逻辑 / 字符串拼接（+）
+ * 二元运算节点：算术 / 比较 / 字符串拼接（+）。逻辑运算见 {@link LogicalNode}。
  * opPos 用于错误位置信息（从 Parser 传入 token.pos）
+ * <p>
+ * 具体运算语义见 {@link Operators}。构造时根据操作数的静态类型推导结果类型：
+ * 结果为数值 / 布尔的节点走基本类型求值路径（{@link #evalLong}、{@link #evalDouble}、
+ * {@link #evalBoolean}），中间结果不装箱；其余情况按对象求值。
  */
 public class BinaryNode implements Node {
     private final Node left, right;
     private final TokenType op;
     private final int opPos;
+    private final int rightPos;
+    private final ValueType type;
+    private final boolean leftNumeric, rightNumeric;
+    // evalDouble 中操作数的求值方式：直接以 double 求值，或求值后读取结果是否装箱为 Long（见 reportsIntegral）
+    private final boolean leftPrimitive, rightPrimitive;
+    private final boolean leftReports, rightReports;
+    // 一边是字面量的 == / !=：只对另一边（other）求值，与字面量预先计算的字符串形式比较
+    private final Node other;
+    private final Object literal;
+    private final String literalText;
 
     public BinaryNode(Node left, TokenType op, Node right, int opPos) {
+        this(left, op, right, opPos, right.pos());
+    }
+
+    /**
+     * rightPos 为比较运算类型错误时报告的位置（默认取右操作数的位置）；
+     * 优化器替换右操作数时用它保留原始位置。
+     */
+    public BinaryNode(Node left, TokenType op, Node right, int opPos, int rightPos) {
         this.left = left;
         this.op = op;
         this.right = right;
         this.opPos = opPos;
+        this.rightPos = rightPos;
+        ValueType l = left.type(), r = right.type();
+        this.leftNumeric = l.isNumeric();
+        this.rightNumeric = r.isNumeric();
+        this.type = inferType(l, op, r, right);
+        // 只有 NUMBER 类型的结果需要知道操作数的装箱类型
+        boolean number = type == ValueType.NUMBER;
+        this.leftPrimitive = leftNumeric && !(number && l == ValueType.NUMBER);
+        this.rightPrimitive = rightNumeric && !(number && r == ValueType.NUMBER);
+        this.leftReports = number && l == ValueType.NUMBER && reportsIntegral(left);
+        this.rightReports = number && r == ValueType.NUMBER && reportsIntegral(right);
+        Node lit = op != TokenType.EQ && op != TokenType.NE ? null
+                : isLiteral(right) ? right : isLiteral(left) ? left : null;
+        this.other = lit == null ? null : lit == right ? left : right;
+        this.literal = lit == null ? null : lit instanceof NumberNode ? ((NumberNode) lit).value()
+                : lit instanceof StringNode ? ((StringNode) lit).value() : ((BooleanNode) lit).value();
+        this.literalText = lit == null ? null : literalText(lit);
     }
 
-    @Override
-    public Object eval() throws ParseException {
-        Object l = left.eval();
-        Object r = right.eval();
+    private static boolean isLiteral(Node n) {
+        return n instanceof NumberNode || n instanceof StringNode || n instanceof BooleanNode;
+    }
 
+    private static String literalText(Node n) {
+        if (n instanceof NumberNode) return ((NumberNode) n).text();
+        if (n instanceof StringNode) return ((StringNode) n).text();
+        if (n instanceof BooleanNode) return ((BooleanNode) n).text();
+        return null;
+    }
+
+    private static ValueType inferType(ValueType l, TokenType op, ValueType r, Node right) {
         switch (op) {
-            // 算术
             case PLUS:
-                if (l instanceof Number && r instanceof Number) {
-                    return numericOp((Number) l, (Number) r, (a, b) -> a + b);
-                }
-                // 如果任意一方是字符串，做字符串拼接
-                if (l instanceof String || r instanceof String) {
-                    return String.valueOf(l) + String.valueOf(r);
+                if (l.isNumeric() && r.isNumeric()) {
+                    if (l == ValueType.DOUBLE || r == ValueType.DOUBLE) return ValueType.DOUBLE;
+                    if (l == ValueType.LONG && r == ValueType.LONG) return ValueType.LONG;
+                    return ValueType.NUMBER;
                 }
-                // 如果一方是数字另一方是非字符串（例如标识符被解析成 String），也当作字符串拼接
-                if (l != null && r != null) {
-                    return String.valueOf(l) + String.valueOf(r);
-                }
-                throw new ParseException("Operator '+' requires numbers or strings", opPos);
-
+                // 两边类型已知且不都是数字：一定是字符串拼接
+                if (l == ValueType.STRING || r == ValueType.STRING) return ValueType.STRING;
+                if (l != ValueType.ANY && r != ValueType.ANY) return ValueType.STRING;
+                return ValueType.ANY;
             case MINUS:
-                return numericOpCheck(l, r, (a, b) -> a - b);
             case STAR:
-                return numericOpCheck(l, r, (a, b) -> a * b);
             case SLASH:
-                return numericOpCheck(l, r, (a, b) -> {
-                    if (b == 0.0) throw new ArithmeticException("Division by zero");
-                    return a / b;
-                });
             case PERCENT:
-                return numericOpCheck(l, r, (a, b) -> a % b);
-
-            // 比较
+                // 结果一定是数字（或抛出异常）；任一边是 Double 则结果为 Double
+                if (l == ValueType.DOUBLE || r == ValueType.DOUBLE) return ValueType.DOUBLE;
+                if (l == ValueType.LONG && r == ValueType.LONG) {
+                    if (op == TokenType.MINUS || op == TokenType.STAR) return ValueType.LONG;
+                    // 整数取模仅当除数为非零常量时才一定是整数（x % 0 为 NaN）
+                    if (op == TokenType.PERCENT && right instanceof NumberNode
+                            && ((NumberNode) right).evalDouble(null) != 0.0) return ValueType.LONG;
+                }
+                return ValueType.NUMBER;
             case GT:
-                return compareNumeric(l, r, (a, b) -> a > b);
             case GE:
-                return compareNumeric(l, r, (a, b) -> a >= b);
             case LT:
-                return compareNumeric(l, r, (a, b) -> a < b);
             case LE:
-                return compareNumeric(l, r, (a, b) -> a <= b);
             case EQ:
-                return equalsOp(l, r);
             case NE:
-                return !((Boolean) equalsOp(l, r));
-
-            // 逻辑
-            case AND:
-                return toBool(l) && toBool(r);
-            case OR:
-                return toBool(l) || toBool(r);
+                return ValueType.BOOLEAN;
+            default:
+                return ValueType.ANY;
+        }
+    }
 
+    @Override
+    public Object eval(Bindings vars) throws ParseException {
+        switch (type) {
+            case LONG:
+                return Long.valueOf(evalLong(vars));
+            case DOUBLE:
+                return Double.valueOf(evalDouble(vars));
+            case BOOLEAN:
+                return evalBoolean(vars) ? Boolean.TRUE : Boolean.FALSE;
             default:
-                throw new ParseException("Unsupported binary operator: " + op, opPos);
+                return evalObject(vars);
         }
     }
 
+    // 对象求值路径：先依次求值左右操作数，再交给 Operators
+    private Object evalObject(Bindings vars) throws ParseException {
+        Object l = left.eval(vars);
+        Object r = right.eval(vars);
+
+        switch (op) {
+            // 算术
+            case PLUS:
+                return Operators.add(l, r, opPos, vars);
+            case MINUS:
+                return Operators.subtract(l, r, opPos);
+            case STAR:
+                return Operators.multiply(l, r, opPos);
+            case SLASH:
+                return Operators.divide(l, r, opPos);
+            case PERCENT:
+                return Operators.remainder(l, r, opPos);
 
+            // 比较：使用右操作数的起始位置来指示报错字符（比如标识符的位置）
+            case GT:
+                return Operators.greaterThan(l, r, rightPos);
+            case GE:
+                return Operators.greaterOrEqual(l, r, rightPos);
+            case LT:
+                return Operators.lessThan(l, r, rightPos);
+            case LE:
+                return Operators.lessOrEqual(l, r, rightPos);
+            case EQ:
+                return Operators.equal(l, r);
+            case NE:
+                return Operators.notEqual(l, r);
 
-    // 辅助：尝试把任意对象当 Number 并计算，若不是 Number 则抛错
-    private Object numericOpCheck(Object l, Object r, DoubleBinary opFunc) throws ParseException {
-        if (!(l instanceof Number) || !(r instanceof Number)) {
-            throw new ParseException("Numeric operator requires numeric operands", opPos);
+            default:
+                throw new ParseException("Unsupported binary operator: " + op, opPos);
         }
-        return numericOp((Number) l, (Number) r, opFunc);
     }
 
-    // 真正的数值运算：返回 Long（如果输入都是整数并且结果为整数），否则返回 Double
-    private Object numericOp(Number lnum, Number rnum, DoubleBinary opFunc) throws ParseException {
-        double la = toDouble(lnum);
-        double ra = toDouble(rnum);
-        double res;
-        try {
-            res = opFunc.apply(la, ra);
-        } catch (ArithmeticException ae) {
-            throw new ParseException(ae.getMessage(), opPos);
+    @Override
+    public long evalLong(Bindings vars) throws ParseException {
+        if (type != ValueType.LONG) return Node.super.evalLong(vars);
+        // 与对象路径一致：整数也按 double 计算，再截断为 long
+        double a = left.evalLong(vars);
+        double b = right.evalLong(vars);
+        switch (op) {
+            case PLUS: return (long) (a + b);
+            case MINUS: return (long) (a - b);
+            case STAR: return (long) (a * b);
+            case PERCENT: return (long) (a % b);
+            default: return Node.super.evalLong(vars);
         }
+    }
 
-        // --- 自动提升精度逻辑 ---
-        boolean lFloat = (lnum instanceof Float || lnum instanceof Double);
-        boolean rFloat = (rnum instanceof Float || rnum instanceof Double);
+    @Override
+    public double evalDouble(Bindings vars) throws ParseException {
+        if (type == ValueType.LONG) return evalLong(vars);
+        if (!type.isNumeric()) return Node.super.evalDouble(vars);
 
-        // 如果任意一边是浮点数，则强制返回 Double
-        if (lFloat || rFloat) {
-            return Double.valueOf(res);
+        // 结果为 NUMBER 时需要操作数的装箱类型：LONG / DOUBLE 类型的操作数是确定的，NUMBER 类型的算术子节点
+        // 报告结果是否装箱为 Long，其余操作数按对象求值（变量不会产生新对象）。intA / intB 为操作数是否按整数参与装箱
+        double a = 0, b = 0;
+        boolean intA = left.type() == ValueType.LONG, intB = right.type() == ValueType.LONG;
+        Object lo = null, ro = null;
+        boolean leftObject = false, rightObject = false;
+        if (leftReports && vars != null) {
+            a = left.evalDouble(vars);
+            intA = vars.evalState().integralResult;
+        } else if (leftPrimitive) {
+            a = left.evalDouble(vars);
+        } else {
+            lo = left.eval(vars);
+            leftObject = true;
         }
-
-        boolean lInt = isIntegral(lnum);
-        boolean rInt = isIntegral(rnum);
-        boolean resInt = isIntegral(res);
-
-        if (lInt && rInt && resInt) {
-            return Long.valueOf((long) res);
+        if (rightReports && vars != null) {
+            b = right.evalDouble(vars);
+            intB = vars.evalState().integralResult;
+        } else if (rightPrimitive) {
+            b = right.evalDouble(vars);
         } else {
-            return Double.valueOf(res);
+            ro = right.eval(vars);
+            rightObject = true;
+        }
+        if (leftObject || rightObject) {
+            if (leftObject && !(lo instanceof Number) || rightObject && !(ro instanceof Number)) {
+                throw new ParseException("Numeric operator requires numeric operands", opPos);
+            }
+            if (leftObject) {
+                a = ((Number) lo).doubleValue();
+                intA = integralOperand((Number) lo);
+            }
+            if (rightObject) {
+                b = ((Number) ro).doubleValue();
+                intB = integralOperand((Number) ro);
+            }
         }
-    }
 
-    private Boolean compareNumeric(Object l, Object r, DoubleCompare cmp) throws ParseException {
-        if (l instanceof Number && r instanceof Number) {
-            return cmp.compare(toDouble((Number) l), toDouble((Number) r));
+        double res;
+        switch (op) {
+            case PLUS: res = a + b; break;
+            case MINUS: res = a - b; break;
+            case STAR: res = a * b; break;
+            case SLASH:
+                if (b == 0.0) throw new ParseException("Division by zero", opPos);
+                res = a / b;
+                break;
+            case PERCENT: res = a % b; break;
+            default: return Node.super.evalDouble(vars);
         }
-        // 使用右操作数的起始位置来指示报错字符（比如标识符的位置），若右节点没有位置信息则回退到运算符位置
-        int errPos = opPos;
-        if (right instanceof Node) {
-            try {
-                errPos = ((Node) right).pos();
-            } catch (Throwable ignored) {}
+        if (type == ValueType.NUMBER) {
+            // 与 Operators 的装箱规则一致：两边都是整数且结果为整数时装箱为 Long（-0.0 变为 0，超出范围时饱和）
+            boolean integral = intA && intB && Operators.isIntegral(res);
+            if (integral) res = (long) res;
+            if (vars != null) vars.evalState().integralResult = integral;
         }
-        throw new ParseException("Relational operators require numeric operands", errPos);
+        return res;
     }
 
-    private Boolean equalsOp(Object l, Object r) {
-        // 两边都是数字 -> 数值比较
-        if (l instanceof Number && r instanceof Number) {
-            double dl = toDouble((Number) l);
-            double dr = toDouble((Number) r);
-            return Double.compare(dl, dr) == 0;
-        }
-        // 其他情况：按字符串表示比较（保持宽松规则）
-        return String.valueOf(l).equals(String.valueOf(r));
+    /**
+     * 以 double 求值后在 {@link EvalState#integralResult} 中记录结果是否装箱为 Long 的节点：
+     * NUMBER 类型的算术运算与取负，它们的对象结果只会是 Long 或 Double。
+     */
+    static boolean reportsIntegral(Node n) {
+        if (n.type() != ValueType.NUMBER) return false;
+        return n instanceof BinaryNode || n instanceof UnaryNode && ((UnaryNode) n).op() == TokenType.MINUS;
     }
 
-    private boolean toBool(Object o) {
-        if (o instanceof Boolean) return (Boolean) o;
-        if (o instanceof Number) return !isZero((Number) o);
-        if (o instanceof String) return !((String) o).isEmpty();
-        return o != null;
+    // 作为算术操作数时是否按整数参与装箱（见 Operators 的装箱规则）
+    private static boolean integralOperand(Number n) {
+        return !Operators.isFloating(n) && Operators.isIntegral(n);
     }
 
-    private double toDouble(Number n) {
-        return n.doubleValue();
+    @Override
+    public boolean evalBoolean(Bindings vars) throws ParseException {
+        if (type.isNumeric()) return evalDouble(vars) != 0.0;
+        switch (op) {
+            case GT:
+            case GE:
+            case LT:
+            case LE: {
+                double a = 0, b = 0;
+                Object lo = null, ro = null;
+                if (leftNumeric) a = left.evalDouble(vars); else lo = left.eval(vars);
+                if (rightNumeric) b = right.evalDouble(vars); else ro = right.eval(vars);
+                if (!leftNumeric || !rightNumeric) {
+                    if (!(leftNumeric || lo instanceof Number) || !(rightNumeric || ro instanceof Number)) {
+                        throw new ParseException("Relational operators require numeric operands", rightPos);
+                    }
+                    if (!leftNumeric) a = ((Number) lo).doubleValue();
+                    if (!rightNumeric) b = ((Number) ro).doubleValue();
+                }
+                switch (op) {
+                    case GT: return a > b;
+                    case GE: return a >= b;
+                    case LT: return a < b;
+                    default: return a <= b;
+                }
+            }
+            case EQ:
+            case NE: {
+                boolean eq;
+                if (leftNumeric && rightNumeric) {
+                    double a = left.evalDouble(vars);
+                    double b = right.evalDouble(vars);
+                    eq = Double.compare(a, b) == 0;
+                } else if (other != null) {
+                    eq = Operators.isEqual(other.eval(vars), literal, literalText);
+                } else {
+                    Object l = left.eval(vars);
+                    Object r = right.eval(vars);
+                    eq = Operators.isEqual(l, r);
+                }
+                return op == TokenType.EQ ? eq : !eq;
+            }
+            default:
+                return Operators.truthy(evalObject(vars));
+        }
     }
 
-    private boolean isIntegral(Number n) {
-        // 如果是 Long/Integer/Short -> true
-        if (n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte) return true;
-        // 如果是 Double/Float -> 检查是否为整数值
-        double d = n.doubleValue();
-        return Double.isFinite(d) && d == Math.floor(d);
-    }
+    @Override
+    public ValueType type() { return type; }
 
-    private boolean isIntegral(double d) {
-        return Double.isFinite(d) && d == Math.floor(d);
-    }
+    public Node left() { return left; }
 
-    private boolean isZero(Number n) {
-        return n.doubleValue() == 0.0;
-    }
+    public Node right() { return right; }
+
+    public TokenType op() { return op; }
 
-    private interface DoubleBinary { Double apply(Double a, Double b); }
-    private interface DoubleCompare { boolean compare(Double a, Double b); }
+    /** 比较运算类型错误时报告的位置 */
+    public int rightPos() { return rightPos; }
 
     @Override
     public int pos() { return opPos; }
@@ -0,0 +1,32 @@
+package org.miniexpr.nodes;
+
+import org.miniexpr.Bindings;
+import org.miniexpr.Node;
+import org.miniexpr.ValueType;
+
+/**
+ * 布尔常量节点。语法中没有布尔字面量，该节点由常量折叠产生（例如 {@code 1 > 0}）。
+ */
+public class BooleanNode implements Node {
+    private final Boolean value;
+    private final int pos;
+
+    public BooleanNode(boolean value, int pos) { this.value = value; this.pos = pos; }
+
+    @Override
+    public Object eval(Bindings vars) { return value; }
+
+    @Override
+    public boolean evalBoolean(Bindings vars) { return value; }
+
+    @Override
+    public ValueType type() { return ValueType.BOOLEAN; }
+
+    public Boolean value() { return value; }
+
+    /** 字符串形式（{@code "true"} / {@code "false"}），见 {@link NumberNode#text()} */
+    public String text() { return value.toString(); }
+
+    @Override
+    public int pos() { return pos; }
+}
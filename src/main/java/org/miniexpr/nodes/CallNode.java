@@ -0,0 +1,202 @@
+package org.miniexpr.nodes;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.miniexpr.Bindings;
+import org.miniexpr.Node;
+import org.miniexpr.ParseException;
+import org.miniexpr.ValueType;
+import org.miniexpr.functions.FunctionDef;
+
+/**
+ * 函数调用节点： name(arg1, arg2, ...)
+ * <p>
+ * 函数在解析时已按名字与参数个数解析为 {@link FunctionDef}，求值时直接调用，不再查找。
+ * 参数个数不超过 3 时按个数调用 {@code call0 ... call3}，不创建参数数组；
+ * 数值函数（{@link FunctionDef.Numeric1} / {@link FunctionDef.Numeric2}）的参数静态类型为数值时，
+ * 通过它们的 applyLong / applyDouble 以基本类型求值，参数与结果都不装箱。
+ * <p>
+ * 每次调用返回之后检查本次求值是否已超过截止时间（{@link Bindings#checkDeadline(int)}），
+ * 超时时以调用的位置抛出 ParseException，见 {@link org.miniexpr.Limits#evalTimeoutNanos()}。
+ */
+public class CallNode implements Node {
+    private final FunctionDef fn;
+    private final Node[] args;
+    private final int pos;
+    private final ValueType type;
+    // fn 为数值函数时按参数个数之一不为 null
+    private final FunctionDef.Numeric1 numeric1;
+    private final FunctionDef.Numeric2 numeric2;
+    // 参数静态类型全为 LONG / 全为数值时，可以走对应的基本类型实现
+    private final boolean longArgs;
+    private final boolean doubleArgs;
+
+    public CallNode(FunctionDef fn, Node[] args, int pos) {
+        this.fn = fn;
+        this.args = args.clone();
+        this.pos = pos;
+        ValueType[] types = new ValueType[args.length];
+        boolean allLong = true, allNumeric = true;
+        for (int i = 0; i < args.length; i++) {
+            types[i] = args[i].type();
+            allLong &= types[i] == ValueType.LONG;
+            allNumeric &= types[i].isNumeric();
+        }
+        this.type = fn.resultType(types);
+        this.numeric1 = fn instanceof FunctionDef.Numeric1 ? (FunctionDef.Numeric1) fn : null;
+        this.numeric2 = fn instanceof FunctionDef.Numeric2 ? (FunctionDef.Numeric2) fn : null;
+        boolean numeric = numeric1 != null || numeric2 != null;
+        boolean hasLong = numeric1 != null ? numeric1.hasLongForm() : numeric2 != null && numeric2.hasLongForm();
+        this.longArgs = allLong && hasLong && type == ValueType.LONG;
+        this.doubleArgs = numeric && allNumeric && type == ValueType.DOUBLE;
+    }
+
+    @Override
+    public Object eval(Bindings vars) throws ParseException {
+        if (longArgs) return Long.valueOf(evalLong(vars));
+        if (doubleArgs) return Double.valueOf(evalDouble(vars));
+        Object result;
+        try {
+            switch (args.length) {
+                case 0: result = fn.call0(pos); break;
+                case 1: result = fn.call1(args[0].eval(vars), pos); break;
+                case 2: result = fn.call2(args[0].eval(vars), args[1].eval(vars), pos); break;
+                case 3: result = fn.call3(args[0].eval(vars), args[1].eval(vars), args[2].eval(vars), pos); break;
+                default: {
+                    Object[] values = new Object[args.length];
+                    for (int i = 0; i < values.length; i++) values[i] = args[i].eval(vars);
+                    result = fn.call(values, pos);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw failure(e);
+        }
+        checkDeadline(vars);
+        return result;
+    }
+
+    @Override
+    public long evalLong(Bindings vars) throws ParseException {
+        if (!longArgs) return Node.super.evalLong(vars);
+        long result;
+        try {
+            result = numeric1 != null
+                    ? numeric1.applyLong(args[0].evalLong(vars))
+                    : numeric2.applyLong(args[0].evalLong(vars), args[1].evalLong(vars));
+        } catch (RuntimeException e) {
+            throw failure(e);
+        }
+        checkDeadline(vars);
+        return result;
+    }
+
+    @Override
+    public double evalDouble(Bindings vars) throws ParseException {
+        if (longArgs) return evalLong(vars);
+        if (!doubleArgs) return Node.super.evalDouble(vars);
+        double result;
+        try {
+            result = numeric1 != null
+                    ? numeric1.applyDouble(args[0].evalDouble(vars))
+                    : numeric2.applyDouble(args[0].evalDouble(vars), args[1].evalDouble(vars));
+        } catch (RuntimeException e) {
+            throw failure(e);
+        }
+        checkDeadline(vars);
+        return result;
+    }
+
+    @Override
+    public boolean evalBoolean(Bindings vars) throws ParseException {
+        if (longArgs) return evalLong(vars) != 0L;
+        if (doubleArgs) return evalDouble(vars) != 0.0;
+        return Node.super.evalBoolean(vars);
+    }
+
+    // ---- 供字节码后端与虚拟机调用：参数已由调用方求值 ----
+
+    public Object invoke0(Bindings vars) throws ParseException {
+        Object result;
+        try {
+            result = fn.call0(pos);
+        } catch (RuntimeException e) {
+            throw failure(e);
+        }
+        checkDeadline(vars);
+        return result;
+    }
+
+    public Object invoke1(Object a, Bindings vars) throws ParseException {
+        Object result;
+        try {
+            result = fn.call1(a, pos);
+        } catch (RuntimeException e) {
+            throw failure(e);
+        }
+        checkDeadline(vars);
+        return result;
+    }
+
+    public Object invoke2(Object a, Object b, Bindings vars) throws ParseException {
+        Object result;
+        try {
+            result = fn.call2(a, b, pos);
+        } catch (RuntimeException e) {
+            throw failure(e);
+        }
+        checkDeadline(vars);
+        return result;
+    }
+
+    public Object invoke3(Object a, Object b, Object c, Bindings vars) throws ParseException {
+        Object result;
+        try {
+            result = fn.call3(a, b, c, pos);
+        } catch (RuntimeException e) {
+            throw failure(e);
+        }
+        checkDeadline(vars);
+        return result;
+    }
+
+    public Object invoke(Object[] args, Bindings vars) throws ParseException {
+        Object result;
+        try {
+            result = fn.call(args, pos);
+        } catch (RuntimeException e) {
+            throw failure(e);
+        }
+        checkDeadline(vars);
+        return result;
+    }
+
+    /** 常量折叠时 vars 为 null，没有截止时间 */
+    private void checkDeadline(Bindings vars) throws ParseException {
+        if (vars != null) vars.checkDeadline(pos);
+    }
+
+    private ParseException failure(RuntimeException e) {
+        String msg = e.getMessage();
+        return new ParseException("Function '" + fn.name() + "' failed"
+                + (msg != null ? ": " + msg : ": " + e.getClass().getSimpleName()), pos);
+    }
+
+    /** 返回参数替换后的新节点（函数与位置不变），供优化器使用 */
+    public CallNode withArgs(Node[] newArgs) {
+        return new CallNode(fn, newArgs, pos);
+    }
+
+    @Override
+    public ValueType type() { return type; }
+
+    public FunctionDef function() { return fn; }
+
+    public List<Node> args() { return Collections.unmodifiableList(Arrays.asList(args)); }
+
+    public int arity() { return args.length; }
+
+    @Override
+    public int pos() { return pos; }
+}
@@ -0,0 +1,117 @@
+package org.miniexpr.nodes;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.miniexpr.Bindings;
+import org.miniexpr.Node;
+import org.miniexpr.ParseException;
+import org.miniexpr.ValueType;
+
+/**
+ * 连续的字符串拼接 {@code a + b + c + ...}，由优化器把每一步结果都是字符串（静态类型为
+ * {@link ValueType#STRING}）的左结合 {@code +} 链合并而成。
+ * <p>
+ * 依次对各部分求值后，先算出结果的总长度，再写入一个按该长度分配的缓冲区，
+ * 不产生逐步拼接的中间字符串；整数直接按十进制写入，字面量使用构造时的字符串形式。
+ * 总长度超过拼接长度上限（{@link org.miniexpr.Limits#maxStringLength()}）时不分配缓冲区，
+ * 在使长度超出的 + 处报错。
+ * 每一步都是拼接，因此结果与逐步调用 {@link Operators#add} 相同；前两部分都不是字符串时
+ * （例如函数声明的返回类型与实际不符）退回逐步调用 {@link Operators#add}。
+ */
+public class ConcatNode implements Node {
+    private final Node[] parts;
+    // opPositions[i] 为 parts[i] 之前的 + 的位置（opPositions[0] 不使用）
+    private final int[] opPositions;
+    // 字面量部分的字符串形式，其它部分为 null
+    private final String[] texts;
+
+    public ConcatNode(Node[] parts, int[] opPositions) {
+        if (parts.length < 2 || opPositions.length != parts.length) {
+            throw new IllegalArgumentException("Concatenation needs at least two parts and one position per part");
+        }
+        this.parts = parts.clone();
+        this.opPositions = opPositions.clone();
+        this.texts = new String[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            Node p = parts[i];
+            if (p instanceof StringNode) texts[i] = ((StringNode) p).text();
+            else if (p instanceof NumberNode) texts[i] = ((NumberNode) p).text();
+            else if (p instanceof BooleanNode) texts[i] = ((BooleanNode) p).text();
+        }
+    }
+
+    @Override
+    public Object eval(Bindings vars) throws ParseException {
+        Object[] values = new Object[parts.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = texts[i] != null ? texts[i] : parts[i].eval(vars);
+        }
+        return join(values, vars);
+    }
+
+    /** 同 {@link #join(Object[], int)}，拼接长度上限取自 vars（为 null 时不限制） */
+    public Object join(Object[] values, Bindings vars) throws ParseException {
+        return join(values, Operators.maxStringLength(vars));
+    }
+
+    /**
+     * 按顺序拼接各部分的值（values 与 {@link #parts()} 一一对应），供其它执行后端调用。
+     * values 中的元素可能被替换为其字符串形式。结果超过 maxLength 个字符时报错。
+     */
+    public Object join(Object[] values, int maxLength) throws ParseException {
+        if (!(values[0] instanceof String) && !(values[1] instanceof String)) return fold(values, maxLength);
+        long length = 0;
+        for (int i = 0; i < values.length; i++) {
+            Object v = values[i];
+            if (v instanceof String) {
+                length += ((String) v).length();
+            } else if (v instanceof Long || v instanceof Integer || v instanceof Short || v instanceof Byte) {
+                length += digits(((Number) v).longValue());
+            } else {
+                String s = String.valueOf(v);
+                values[i] = s;
+                length += s.length();
+            }
+            if (length > maxLength) Operators.checkLength(length, maxLength, opPositions[Math.max(i, 1)]);
+        }
+        StringBuilder sb = new StringBuilder((int) length);
+        for (Object v : values) {
+            if (v instanceof String) sb.append((String) v);
+            else sb.append(((Number) v).longValue());
+        }
+        return sb.toString();
+    }
+
+    // 逐步调用 Operators.add，错误位置为对应的 +
+    private Object fold(Object[] values, int maxLength) throws ParseException {
+        Object acc = values[0];
+        for (int i = 1; i < values.length; i++) acc = Operators.add(acc, values[i], opPositions[i], maxLength);
+        return acc;
+    }
+
+    // Long.toString(v) 的长度
+    private static int digits(long v) {
+        int n = v < 0 ? 2 : 1;
+        for (long q = v / 10; q != 0; q /= 10) n++;
+        return n;
+    }
+
+    @Override
+    public ValueType type() { return ValueType.STRING; }
+
+    public List<Node> parts() { return Collections.unmodifiableList(Arrays.asList(parts)); }
+
+    /** parts[index] 之前的 + 的位置（index 从 1 开始） */
+    public int opPos(int index) { return opPositions[index]; }
+
+    /** 返回各部分替换为 newParts、位置不变的拼接节点 */
+    public ConcatNode withParts(Node[] newParts) {
+        return new ConcatNode(newParts, opPositions);
+    }
+
+    /** 最后一个 + 的位置（与被合并的 + 链的根节点相同） */
+    @Override
+    public int pos() { return opPositions[opPositions.length - 1]; }
+}
@@ -1,34 +1,61 @@
 package org.miniexpr.nodes;
 
+import org.miniexpr.Bindings;
 import org.miniexpr.Node;
 import org.miniexpr.ParseException;
+import org.miniexpr.ValueType;
 
 /**
  * 三元运算节点： condition ? trueExpr : falseExpr
  */
 public class ConditionalNode implements Node {
     private final Node cond, trueExpr, falseExpr;
+    private final int pos;
+    private final ValueType type;
 
     public ConditionalNode(Node cond, Node trueExpr, Node falseExpr) {
+        this(cond, trueExpr, falseExpr, cond.pos());
+    }
+
+    /** pos 默认取条件表达式的位置；优化器替换条件时用它保留原始位置 */
+    public ConditionalNode(Node cond, Node trueExpr, Node falseExpr, int pos) {
         this.cond = cond;
+        this.pos = pos;
         this.trueExpr = trueExpr;
         this.falseExpr = falseExpr;
+        ValueType t = trueExpr.type(), f = falseExpr.type();
+        this.type = t == f ? t : (t.isNumeric() && f.isNumeric() ? ValueType.NUMBER : ValueType.ANY);
+    }
+
+    @Override
+    public Object eval(Bindings vars) throws ParseException {
+        return cond.evalBoolean(vars) ? trueExpr.eval(vars) : falseExpr.eval(vars);
+    }
+
+    @Override
+    public long evalLong(Bindings vars) throws ParseException {
+        return cond.evalBoolean(vars) ? trueExpr.evalLong(vars) : falseExpr.evalLong(vars);
     }
 
     @Override
-    public Object eval() throws ParseException {
-        Object c = cond.eval();
-        boolean cb = toBool(c);
-        return cb ? trueExpr.eval() : falseExpr.eval();
+    public double evalDouble(Bindings vars) throws ParseException {
+        return cond.evalBoolean(vars) ? trueExpr.evalDouble(vars) : falseExpr.evalDouble(vars);
     }
 
-    private boolean toBool(Object o) {
-        if (o instanceof Boolean) return (Boolean) o;
-        if (o instanceof Number) return ((Number) o).doubleValue() != 0.0;
-        if (o instanceof String) return !((String) o).isEmpty();
-        return o != null;
+    @Override
+    public boolean evalBoolean(Bindings vars) throws ParseException {
+        return cond.evalBoolean(vars) ? trueExpr.evalBoolean(vars) : falseExpr.evalBoolean(vars);
     }
 
     @Override
-    public int pos() { return cond.pos(); }
+    public ValueType type() { return type; }
+
+    public Node cond() { return cond; }
+
+    public Node trueExpr() { return trueExpr; }
+
+    public Node falseExpr() { return falseExpr; }
+
+    @Override
+    public int pos() { return pos; }
 }
@@ -0,0 +1,402 @@
+package org.miniexpr.nodes;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.miniexpr.Bindings;
+import org.miniexpr.Node;
+import org.miniexpr.NumericMode;
+import org.miniexpr.ParseException;
+import org.miniexpr.TokenType;
+import org.miniexpr.ValueType;
+
+/**
+ * 精确十进制语义（{@link NumericMode#DECIMAL}）的运算节点：二元的 {@code + - * / % > >= < <= == !=}
+ * 与一元取负。
+ * <p>
+ * 语义与 BigDecimal 运算相同（结果的 scale 不小于 0）：
+ * <ul>
+ *   <li>Long / Integer / Short / Byte / BigInteger 为整数，BigDecimal 为小数，Double / Float 按
+ *       {@link BigDecimal#valueOf(double)}（最短的十进制表示）转换；NaN 与无穷大仍按 {@link Operators} 的 double 语义计算；</li>
+ *   <li>加、减、乘与取模精确，scale 为两边的较大值（乘法为两边之和）；</li>
+ *   <li>除法按 {@link MathContext#DECIMAL128} 计算：商不超过 34 位有效数字时精确（scale 取两边之差与 0 中的较大者，
+ *       不够表示时增加），否则舍入为 34 位有效数字；除数为 0（包括取模）时报错；</li>
+ *   <li>两边都是整数且结果为整数时为 Long（超出 long 范围时为 BigDecimal），否则为 BigDecimal；</li>
+ *   <li>比较与相等按数值比较（{@code 1.0 == 1}）；非数字的 + 为字符串拼接，其余情况与错误信息同 {@link Operators}。</li>
+ * </ul>
+ * 热路径不创建 BigDecimal：每个值以定点数打包在一个 long 中（未缩放值不超过 2^58、小数位数 0 ~ 15、
+ * 是否为小数的标志），加减乘除用 {@link Math#addExact} 等检查溢出，整数之间就是 long 运算，
+ * 只在十进制子树的根装箱一次结果。溢出、小数位数超出范围、除法在 15 位小数内不能整除、
+ * 操作数不是整数或 BigDecimal、以及会出错的运算，由该节点用已经求得的操作数值按 BigDecimal 计算，
+ * 结果与错误都由 BigDecimal 路径决定；结果经 {@link EvalState#inexactResult} 交给父节点，能打包的结果
+ * 回到定点数路径。每个子表达式只求值一次。
+ */
+public class DecimalNode implements Node {
+    // 定点数打包为 unscaled << SHIFT | DECIMAL | scale；INEXACT 表示无法以定点数计算
+    private static final long INEXACT = Long.MIN_VALUE;
+    private static final int SHIFT = 5;
+    private static final long DECIMAL = 16;
+    private static final int SCALE_MASK = 15;
+    private static final int MAX_SCALE = 15;
+    private static final long LIMIT = 1L << 58;
+    // 比较无法以定点数完成
+    private static final int UNORDERED = 2;
+    private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+    private static final BigDecimal LONG_MIN = BigDecimal.valueOf(Long.MIN_VALUE);
+    private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private final TokenType op;
+    // 一元取负时 left 为 null
+    private final Node left, right;
+    private final int opPos;
+    private final int rightPos;
+    private final ValueType type;
+    // 字面量操作数预先打包的定点数（非字面量或无法打包时为 INEXACT）
+    private final long leftConstant, rightConstant;
+
+    /** 一元取负 */
+    public DecimalNode(Node operand, int opPos) {
+        this(null, TokenType.MINUS, operand, opPos, operand.pos());
+    }
+
+    public DecimalNode(Node left, TokenType op, Node right, int opPos) {
+        this(left, op, right, opPos, right.pos());
+    }
+
+    /** rightPos 为比较运算类型错误时报告的位置，见 {@link BinaryNode#BinaryNode(Node, TokenType, Node, int, int)} */
+    public DecimalNode(Node left, TokenType op, Node right, int opPos, int rightPos) {
+        if (left == null ? op != TokenType.MINUS : !isBinary(op)) {
+            throw new IllegalArgumentException("Unsupported decimal operator: " + op);
+        }
+        this.left = left;
+        this.op = op;
+        this.right = right;
+        this.opPos = opPos;
+        this.rightPos = rightPos;
+        this.type = left == null ? ValueType.NUMBER : inferType(left.type(), op, right.type());
+        this.leftConstant = left instanceof NumberNode ? pack(((NumberNode) left).value()) : INEXACT;
+        this.rightConstant = right instanceof NumberNode ? pack(((NumberNode) right).value()) : INEXACT;
+    }
+
+    private static boolean isBinary(TokenType op) {
+        switch (op) {
+            case PLUS: case MINUS: case STAR: case SLASH: case PERCENT:
+            case GT: case GE: case LT: case LE: case EQ: case NE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static ValueType inferType(ValueType l, TokenType op, ValueType r) {
+        switch (op) {
+            case PLUS:
+                if (l.isNumeric() && r.isNumeric()) return ValueType.NUMBER;
+                if (l == ValueType.STRING || r == ValueType.STRING) return ValueType.STRING;
+                if (l != ValueType.ANY && r != ValueType.ANY) return ValueType.STRING;
+                return ValueType.ANY;
+            case MINUS:
+            case STAR:
+            case SLASH:
+            case PERCENT:
+                return ValueType.NUMBER;
+            default:
+                return ValueType.BOOLEAN;
+        }
+    }
+
+    @Override
+    public Object eval(Bindings vars) throws ParseException {
+        if (type == ValueType.BOOLEAN) return evalBoolean(vars) ? Boolean.TRUE : Boolean.FALSE;
+        if (vars == null) return evalExact(null);
+        long f = evalFixed(vars);
+        return f != INEXACT ? box(f) : vars.evalState().inexactResult;
+    }
+
+    @Override
+    public boolean evalBoolean(Bindings vars) throws ParseException {
+        if (vars == null) return Operators.truthy(evalExact(null));
+        if (type != ValueType.BOOLEAN) {
+            long f = evalFixed(vars);
+            return f != INEXACT ? f >> SHIFT != 0 : Operators.truthy(vars.evalState().inexactResult);
+        }
+        // 操作数无法打包时，其值已存放在 vars 中，须在求值另一边之前取出
+        long a = leftConstant != INEXACT ? leftConstant : fixed(left, vars);
+        Object l = a == INEXACT ? vars.evalState().inexactResult : null;
+        long b = rightConstant != INEXACT ? rightConstant : fixed(right, vars);
+        Object r = b == INEXACT ? vars.evalState().inexactResult : null;
+        int c = a != INEXACT && b != INEXACT ? compare(a, b) : UNORDERED;
+        if (c == UNORDERED) return (Boolean) apply(a != INEXACT ? box(a) : l, b != INEXACT ? box(b) : r, vars);
+        switch (op) {
+            case GT: return c > 0;
+            case GE: return c >= 0;
+            case LT: return c < 0;
+            case LE: return c <= 0;
+            case EQ: return c == 0;
+            default: return c != 0;
+        }
+    }
+
+    // ---- 定点数路径 ----
+
+    // 以定点数求值；无法以定点数表示时返回 INEXACT，已求得的值存放在 vars.evalState().inexactResult 中
+    private long evalFixed(Bindings vars) throws ParseException {
+        if (type == ValueType.BOOLEAN) return inexact(evalBoolean(vars) ? Boolean.TRUE : Boolean.FALSE, vars);
+        long b;
+        if (left == null) {
+            b = rightConstant != INEXACT ? rightConstant : fixed(right, vars);
+            // 未缩放值的范围关于 0 对称，取负不会溢出
+            if (b != INEXACT) return -(b >> SHIFT) << SHIFT | (b & (DECIMAL | SCALE_MASK));
+            return exact(negate(vars.evalState().inexactResult), vars);
+        }
+        long a = leftConstant != INEXACT ? leftConstant : fixed(left, vars);
+        Object l = a == INEXACT ? vars.evalState().inexactResult : null;
+        b = rightConstant != INEXACT ? rightConstant : fixed(right, vars);
+        if (a != INEXACT && b != INEXACT) {
+            long f = fixedArithmetic(a, b);
+            if (f != INEXACT) return f;
+            return exact(apply(box(a), box(b), vars), vars);
+        }
+        Object r = b == INEXACT ? vars.evalState().inexactResult : box(b);
+        return exact(apply(a == INEXACT ? l : box(a), r, vars), vars);
+    }
+
+    // 两个定点数的算术运算，溢出、不能整除或会出错时返回 INEXACT
+    private long fixedArithmetic(long a, long b) {
+        long decimal = (a | b) & DECIMAL;
+        int sa = (int) a & SCALE_MASK, sb = (int) b & SCALE_MASK;
+        long ua = a >> SHIFT, ub = b >> SHIFT;
+        try {
+            switch (op) {
+                case PLUS:
+                case MINUS:
+                case PERCENT: {
+                    int s = Math.max(sa, sb);
+                    ua = Math.multiplyExact(ua, POWERS_OF_TEN[s - sa]);
+                    ub = Math.multiplyExact(ub, POWERS_OF_TEN[s - sb]);
+                    if (op == TokenType.PLUS) return pack(Math.addExact(ua, ub), s, decimal);
+                    if (op == TokenType.MINUS) return pack(Math.subtractExact(ua, ub), s, decimal);
+                    return ub == 0 ? INEXACT : pack(ua % ub, s, decimal);
+                }
+                case STAR:
+                    return sa + sb > MAX_SCALE ? INEXACT : pack(Math.multiplyExact(ua, ub), sa + sb, decimal);
+                case SLASH:
+                    return divide(ua, sa, ub, sb, decimal);
+                default:
+                    return INEXACT;
+            }
+        } catch (ArithmeticException e) {
+            return INEXACT;
+        }
+    }
+
+    // 能在 15 位小数内整除时的商：从 scale 为 max(sa - sb, 0) 开始，不能整除时逐位增加
+    private static long divide(long ua, int sa, long ub, int sb, long decimal) {
+        if (ub == 0) return INEXACT;
+        int s = Math.max(sa - sb, 0);
+        long n = Math.multiplyExact(ua, POWERS_OF_TEN[s - sa + sb]);
+        while (n % ub != 0) {
+            if (s == MAX_SCALE) return INEXACT;
+            n = Math.multiplyExact(n, 10);
+            s++;
+        }
+        // 整数相除而商不是整数时结果为小数
+        return pack(n / ub, s, s > 0 ? DECIMAL : decimal);
+    }
+
+    // 比较两个定点数，对齐小数位数溢出时返回 UNORDERED
+    private static int compare(long a, long b) {
+        int sa = (int) a & SCALE_MASK, sb = (int) b & SCALE_MASK;
+        long ua = a >> SHIFT, ub = b >> SHIFT;
+        try {
+            if (sa < sb) ua = Math.multiplyExact(ua, POWERS_OF_TEN[sb - sa]);
+            else if (sb < sa) ub = Math.multiplyExact(ub, POWERS_OF_TEN[sa - sb]);
+        } catch (ArithmeticException e) {
+            return UNORDERED;
+        }
+        return Long.compare(ua, ub);
+    }
+
+    // 子节点的定点数值；无法打包时返回 INEXACT，其值存放在 vars 中
+    private static long fixed(Node n, Bindings vars) throws ParseException {
+        if (n instanceof DecimalNode) return ((DecimalNode) n).evalFixed(vars);
+        return exact(n.eval(vars), vars);
+    }
+
+    // BigDecimal 路径求得的值：能打包时回到定点数路径，否则存放在 vars 中并返回 INEXACT
+    private static long exact(Object v, Bindings vars) {
+        long f = pack(v);
+        return f != INEXACT ? f : inexact(v, vars);
+    }
+
+    private static long inexact(Object v, Bindings vars) {
+        vars.evalState().inexactResult = v;
+        return INEXACT;
+    }
+
+    private static long pack(long unscaled, int scale, long decimal) {
+        if (unscaled <= -LIMIT || unscaled >= LIMIT) return INEXACT;
+        return unscaled << SHIFT | decimal | scale;
+    }
+
+    // 整数与 BigDecimal 打包为定点数，其它值（以及超出范围的数）返回 INEXACT
+    private static long pack(Object v) {
+        if (v instanceof Long || v instanceof Integer || v instanceof Short || v instanceof Byte) {
+            return pack(((Number) v).longValue(), 0, 0);
+        }
+        if (v instanceof BigDecimal) {
+            BigDecimal d = (BigDecimal) v;
+            int scale = d.scale();
+            // 不超过 17 位有效数字的未缩放值一定小于 2^58
+            if (scale < 0 || scale > MAX_SCALE || d.precision() > 17) return INEXACT;
+            return pack(d.unscaledValue().longValue(), scale, DECIMAL);
+        }
+        return INEXACT;
+    }
+
+    private static Object box(long f) {
+        long unscaled = f >> SHIFT;
+        if ((f & DECIMAL) == 0) return Long.valueOf(unscaled);
+        return BigDecimal.valueOf(unscaled, (int) f & SCALE_MASK);
+    }
+
+    // ---- BigDecimal 路径 ----
+
+    // 没有 Bindings（编译期折叠常量）时直接按 BigDecimal 求值
+    private Object evalExact(Bindings vars) throws ParseException {
+        if (left == null) return negate(value(right, vars));
+        Object l = value(left, vars);
+        Object r = value(right, vars);
+        return apply(l, r, vars);
+    }
+
+    private static Object value(Node n, Bindings vars) throws ParseException {
+        if (n instanceof DecimalNode) return ((DecimalNode) n).evalExact(vars);
+        return n.eval(vars);
+    }
+
+    private Object negate(Object v) throws ParseException {
+        if (!isDecimal(v)) return Operators.negate(v, opPos);
+        return box(toDecimal(v).negate(), isInteger(v));
+    }
+
+    private Object apply(Object l, Object r, Bindings vars) throws ParseException {
+        switch (op) {
+            case PLUS:
+                if (!isDecimal(l) || !isDecimal(r)) return Operators.add(l, r, opPos, vars);
+                return arithmetic(l, r);
+            case MINUS:
+            case STAR:
+            case SLASH:
+            case PERCENT:
+                if (isDecimal(l) && isDecimal(r)) return arithmetic(l, r);
+                switch (op) {
+                    case MINUS: return Operators.subtract(l, r, opPos);
+                    case STAR: return Operators.multiply(l, r, opPos);
+                    case SLASH: return Operators.divide(l, r, opPos);
+                    default: return Operators.remainder(l, r, opPos);
+                }
+            case EQ:
+                return isDecimal(l) && isDecimal(r) ? toDecimal(l).compareTo(toDecimal(r)) == 0 : Operators.isEqual(l, r);
+            case NE:
+                return isDecimal(l) && isDecimal(r) ? toDecimal(l).compareTo(toDecimal(r)) != 0 : !Operators.isEqual(l, r);
+            default:
+                break;
+        }
+        if (!isDecimal(l) || !isDecimal(r)) {
+            switch (op) {
+                case GT: return Operators.greaterThan(l, r, rightPos);
+                case GE: return Operators.greaterOrEqual(l, r, rightPos);
+                case LT: return Operators.lessThan(l, r, rightPos);
+                default: return Operators.lessOrEqual(l, r, rightPos);
+            }
+        }
+        int c = toDecimal(l).compareTo(toDecimal(r));
+        switch (op) {
+            case GT: return c > 0;
+            case GE: return c >= 0;
+            case LT: return c < 0;
+            default: return c <= 0;
+        }
+    }
+
+    private Object arithmetic(Object l, Object r) throws ParseException {
+        BigDecimal a = toDecimal(l), b = toDecimal(r);
+        boolean integer = isInteger(l) && isInteger(r);
+        BigDecimal res;
+        switch (op) {
+            case PLUS: res = a.add(b); break;
+            case MINUS: res = a.subtract(b); break;
+            case STAR: res = a.multiply(b); break;
+            case SLASH:
+                if (b.signum() == 0) throw new ParseException("Division by zero", opPos);
+                res = a.divide(b, MathContext.DECIMAL128);
+                if (res.scale() < 0) res = res.setScale(0);
+                integer &= res.scale() == 0;
+                break;
+            default:
+                if (b.signum() == 0) throw new ParseException("Division by zero", opPos);
+                res = a.remainder(b).setScale(Math.max(a.scale(), b.scale()));
+                break;
+        }
+        return box(res, integer);
+    }
+
+    // 可以精确转换为 BigDecimal 的数字（NaN 与无穷大除外）
+    private static boolean isDecimal(Object v) {
+        if (isInteger(v) || v instanceof BigDecimal) return true;
+        return v instanceof Number && !Double.isNaN(((Number) v).doubleValue())
+                && !Double.isInfinite(((Number) v).doubleValue());
+    }
+
+    private static boolean isInteger(Object v) {
+        return v instanceof Long || v instanceof Integer || v instanceof Short || v instanceof Byte
+                || v instanceof BigInteger;
+    }
+
+    // 转换为 scale 不小于 0 的 BigDecimal
+    private static BigDecimal toDecimal(Object v) {
+        if (v instanceof Long || v instanceof Integer || v instanceof Short || v instanceof Byte) {
+            return BigDecimal.valueOf(((Number) v).longValue());
+        }
+        if (v instanceof BigInteger) return new BigDecimal((BigInteger) v);
+        BigDecimal d = v instanceof BigDecimal ? (BigDecimal) v : BigDecimal.valueOf(((Number) v).doubleValue());
+        return d.scale() < 0 ? d.setScale(0) : d;
+    }
+
+    private static Object box(BigDecimal d, boolean integer) {
+        if (integer && d.compareTo(LONG_MIN) >= 0 && d.compareTo(LONG_MAX) <= 0) return d.longValue();
+        return d;
+    }
+
+    @Override
+    public ValueType type() { return type; }
+
+    public TokenType op() { return op; }
+
+    /** 操作数：一元取负为 [operand]，二元运算为 [left, right] */
+    public List<Node> operands() {
+        return left == null ? Collections.singletonList(right) : Collections.unmodifiableList(Arrays.asList(left, right));
+    }
+
+    /** 返回操作数替换为 operands（个数与 {@link #operands()} 相同）、运算符与位置不变的节点 */
+    public DecimalNode withOperands(Node[] operands) {
+        if (left == null) return new DecimalNode(operands[0], opPos);
+        return new DecimalNode(operands[0], op, operands[1], opPos, rightPos);
+    }
+
+    /** 比较运算类型错误时报告的位置 */
+    public int rightPos() { return rightPos; }
+
+    @Override
+    public int pos() { return opPos; }
+}
@@ -0,0 +1,20 @@
+package org.miniexpr.nodes;
+
+import org.miniexpr.Bindings;
+
+/**
+ * 数值节点在一次求值中交给父节点的中间结果，由 {@link Bindings#evalState()} 持有。
+ * <p>
+ * 字段只供本包的节点读写：子节点写入后父节点在同一次求值中紧接着读取，不需要为取得运行时类型而装箱，
+ * 也不需要重新求值子树。外部代码只能取得实例，无法读写其中的状态。
+ */
+public final class EvalState {
+    /**
+     * NUMBER 类型的算术节点以 double 求值时记录结果装箱后是否为 Long，父节点据此决定自己的结果
+     * 是否装箱为 Long（见 {@link Operators}）
+     */
+    boolean integralResult;
+
+    /** 十进制运算子树（{@link DecimalNode}）无法以定点数表示时已求得的值，父节点读取后改按 BigDecimal 计算 */
+    Object inexactResult;
+}
@@ -0,0 +1,54 @@
+package org.miniexpr.nodes;
+
+import org.miniexpr.Bindings;
+import org.miniexpr.Node;
+import org.miniexpr.ParseException;
+import org.miniexpr.TokenType;
+import org.miniexpr.ValueType;
+
+/**
+ * 逻辑运算节点：&& 与 ||，短路求值。
+ * <p>
+ * 左操作数已经决定结果时（&& 左边为假、|| 左边为真）不会对右操作数求值，
+ * 因此右操作数中的运行时错误（例如类型错误、除零）也不会被触发。结果总是 Boolean。
+ */
+public class LogicalNode implements Node {
+    private final Node left, right;
+    private final TokenType op;
+    private final int opPos;
+
+    public LogicalNode(Node left, TokenType op, Node right, int opPos) {
+        if (op != TokenType.AND && op != TokenType.OR) {
+            throw new IllegalArgumentException("Not a logical operator: " + op);
+        }
+        this.left = left;
+        this.op = op;
+        this.right = right;
+        this.opPos = opPos;
+    }
+
+    @Override
+    public Object eval(Bindings vars) throws ParseException {
+        return evalBoolean(vars) ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    @Override
+    public boolean evalBoolean(Bindings vars) throws ParseException {
+        if (op == TokenType.AND) {
+            return left.evalBoolean(vars) && right.evalBoolean(vars);
+        }
+        return left.evalBoolean(vars) || right.evalBoolean(vars);
+    }
+
+    @Override
+    public ValueType type() { return ValueType.BOOLEAN; }
+
+    public Node left() { return left; }
+
+    public Node right() { return right; }
+
+    public TokenType op() { return op; }
+
+    @Override
+    public int pos() { return opPos; }
+}
@@ -1,15 +1,46 @@
 package org.miniexpr.nodes;
 
+import org.miniexpr.Bindings;
 import org.miniexpr.Node;
+import org.miniexpr.ValueType;
 
 public class NumberNode implements Node {
-    private final Object value; // 可以是 Long 或 Double
+    private final Object value; // 可以是 Long、Double 或 BigDecimal（精确十进制模式）
     private final int pos;
+    private final ValueType type;
+    private final long longValue;
+    private final double doubleValue;
+    private final String text;
 
-    public NumberNode(Object value, int pos) { this.value = value; this.pos = pos; }
+    public NumberNode(Object value, int pos) {
+        this.value = value;
+        this.pos = pos;
+        this.type = value instanceof Long ? ValueType.LONG
+                : value instanceof Double ? ValueType.DOUBLE : ValueType.NUMBER;
+        this.longValue = ((Number) value).longValue();
+        this.doubleValue = ((Number) value).doubleValue();
+        this.text = String.valueOf(value);
+    }
 
     @Override
-    public Object eval() { return value; }
+    public Object eval(Bindings vars) { return value; }
+
+    @Override
+    public long evalLong(Bindings vars) { return longValue; }
+
+    @Override
+    public double evalDouble(Bindings vars) { return doubleValue; }
+
+    @Override
+    public boolean evalBoolean(Bindings vars) { return doubleValue != 0.0; }
+
+    @Override
+    public ValueType type() { return type; }
+
+    public Object value() { return value; }
+
+    /** 字符串形式（{@code String.valueOf(value())}），在构造时转换一次，用于与非数值比较相等与字符串拼接 */
+    public String text() { return text; }
 
     @Override
     public int pos() { return pos; }
@@ -0,0 +1,241 @@
+package org.miniexpr.nodes;
+
+import org.miniexpr.Bindings;
+import org.miniexpr.ParseException;
+
+/**
+ * 运算符语义的静态实现，供 AST 节点与其它执行后端（例如字节码编译后的表达式）共用，
+ * 保证不同执行方式下的结果与错误信息完全一致。
+ * <p>
+ * 数值运算统一按 double 计算：任一操作数为浮点数时返回 Double；两边都是整数且结果为整数时返回 Long，
+ * 否则返回 Double。pos 参数用于错误定位（通常为运算符位置）。
+ * <p>
+ * 字符串拼接在分配结果之前检查长度上限（{@link org.miniexpr.Limits#maxStringLength()}），
+ * 各执行后端从本次求值的 {@link Bindings} 取得上限。
+ */
+public final class Operators {
+
+    private Operators() {}
+
+    // ---- 算术 ----
+
+    public static Object add(Object l, Object r, int pos) throws ParseException {
+        return add(l, r, pos, Integer.MAX_VALUE);
+    }
+
+    /** 同 {@link #add(Object, Object, int)}，拼接长度上限取自 vars（为 null 时不限制） */
+    public static Object add(Object l, Object r, int pos, Bindings vars) throws ParseException {
+        return add(l, r, pos, maxStringLength(vars));
+    }
+
+    /** 同 {@link #add(Object, Object, int)}，拼接结果超过 maxLength 个字符时在 pos 处报错 */
+    public static Object add(Object l, Object r, int pos, int maxLength) throws ParseException {
+        if (l instanceof Number && r instanceof Number) {
+            double res = ((Number) l).doubleValue() + ((Number) r).doubleValue();
+            return box((Number) l, (Number) r, res);
+        }
+        // 如果任意一方是字符串，做字符串拼接；
+        // 如果一方是数字另一方是非字符串（例如布尔值），也当作字符串拼接
+        if (l instanceof String || r instanceof String || (l != null && r != null)) {
+            String a = String.valueOf(l);
+            String b = String.valueOf(r);
+            checkLength((long) a.length() + b.length(), maxLength, pos);
+            return a.concat(b);
+        }
+        throw new ParseException("Operator '+' requires numbers or strings", pos);
+    }
+
+    /** 本次求值允许的拼接长度上限，vars 为 null（例如编译期常量折叠）时不限制 */
+    public static int maxStringLength(Bindings vars) {
+        return vars != null ? vars.maxStringLength() : Integer.MAX_VALUE;
+    }
+
+    /** 拼接结果的长度 length 超过 maxLength 时在 pos 处报错 */
+    public static void checkLength(long length, int maxLength, int pos) throws ParseException {
+        if (length > maxLength) {
+            throw new ParseException("String is too long: " + length + " characters (limit " + maxLength + ")", pos);
+        }
+    }
+
+    public static Object subtract(Object l, Object r, int pos) throws ParseException {
+        checkNumeric(l, r, pos);
+        double res = ((Number) l).doubleValue() - ((Number) r).doubleValue();
+        return box((Number) l, (Number) r, res);
+    }
+
+    public static Object multiply(Object l, Object r, int pos) throws ParseException {
+        checkNumeric(l, r, pos);
+        double res = ((Number) l).doubleValue() * ((Number) r).doubleValue();
+        return box((Number) l, (Number) r, res);
+    }
+
+    public static Object divide(Object l, Object r, int pos) throws ParseException {
+        checkNumeric(l, r, pos);
+        double b = ((Number) r).doubleValue();
+        if (b == 0.0) throw new ParseException("Division by zero", pos);
+        double res = ((Number) l).doubleValue() / b;
+        return box((Number) l, (Number) r, res);
+    }
+
+    public static Object remainder(Object l, Object r, int pos) throws ParseException {
+        checkNumeric(l, r, pos);
+        double res = ((Number) l).doubleValue() % ((Number) r).doubleValue();
+        return box((Number) l, (Number) r, res);
+    }
+
+    private static void checkNumeric(Object l, Object r, int pos) throws ParseException {
+        if (!(l instanceof Number) || !(r instanceof Number)) {
+            throw new ParseException("Numeric operator requires numeric operands", pos);
+        }
+    }
+
+    // 自动提升精度：任意一边是浮点数则返回 Double；两边都是整数且结果为整数返回 Long，否则返回 Double
+    private static Object box(Number l, Number r, double res) {
+        if (isFloating(l) || isFloating(r)) {
+            return Double.valueOf(res);
+        }
+        if (isIntegral(l) && isIntegral(r) && isIntegral(res)) {
+            return Long.valueOf((long) res);
+        }
+        return Double.valueOf(res);
+    }
+
+    // ---- 比较 ----
+
+    /** errPos 为类型错误时报告的位置（通常是右操作数的位置） */
+    public static Boolean greaterThan(Object l, Object r, int errPos) throws ParseException {
+        checkRelational(l, r, errPos);
+        return ((Number) l).doubleValue() > ((Number) r).doubleValue();
+    }
+
+    public static Boolean greaterOrEqual(Object l, Object r, int errPos) throws ParseException {
+        checkRelational(l, r, errPos);
+        return ((Number) l).doubleValue() >= ((Number) r).doubleValue();
+    }
+
+    public static Boolean lessThan(Object l, Object r, int errPos) throws ParseException {
+        checkRelational(l, r, errPos);
+        return ((Number) l).doubleValue() < ((Number) r).doubleValue();
+    }
+
+    public static Boolean lessOrEqual(Object l, Object r, int errPos) throws ParseException {
+        checkRelational(l, r, errPos);
+        return ((Number) l).doubleValue() <= ((Number) r).doubleValue();
+    }
+
+    private static void checkRelational(Object l, Object r, int errPos) throws ParseException {
+        if (!(l instanceof Number) || !(r instanceof Number)) {
+            throw new ParseException("Relational operators require numeric operands", errPos);
+        }
+    }
+
+    public static Boolean equal(Object l, Object r) {
+        return isEqual(l, r);
+    }
+
+    public static Boolean notEqual(Object l, Object r) {
+        return !isEqual(l, r);
+    }
+
+    public static boolean isEqual(Object l, Object r) {
+        // 两边都是数字 -> 数值比较
+        if (l instanceof Number && r instanceof Number) {
+            return Double.compare(((Number) l).doubleValue(), ((Number) r).doubleValue()) == 0;
+        }
+        // 其他情况：按字符串表示比较（保持宽松规则）；一边是字符串时不生成另一边的字符串表示
+        if (l instanceof String) return textEquals((String) l, r);
+        if (r instanceof String) return textEquals((String) r, l);
+        return String.valueOf(l).equals(String.valueOf(r));
+    }
+
+    /**
+     * 与字面量比较相等：literalText 为字面量的字符串形式（见 {@link NumberNode#text()}），
+     * 结果与 {@code isEqual(v, literal)} 相同。
+     */
+    public static boolean isEqual(Object v, Object literal, String literalText) {
+        if (v instanceof Number && literal instanceof Number) {
+            return Double.compare(((Number) v).doubleValue(), ((Number) literal).doubleValue()) == 0;
+        }
+        return textEquals(literalText, v);
+    }
+
+    // s 是否等于 String.valueOf(v)；字符串、布尔值、null 与整数不分配新的字符串
+    private static boolean textEquals(String s, Object v) {
+        if (v instanceof String) return s.equals(v);
+        if (v instanceof Long || v instanceof Integer || v instanceof Short || v instanceof Byte) {
+            return digitsEqual(s, ((Number) v).longValue());
+        }
+        // 布尔值与 null 的字符串形式是常量，不会分配
+        return s.equals(String.valueOf(v));
+    }
+
+    // s 是否等于 Long.toString(v)：从最低位开始逐位比较
+    private static boolean digitsEqual(String s, long v) {
+        int start = v < 0 ? 1 : 0;
+        if (s.length() <= start || start == 1 && s.charAt(0) != '-') return false;
+        int i = s.length();
+        long q = v;
+        do {
+            if (i == start) return false;
+            int digit = (int) Math.abs(q % 10);
+            if (s.charAt(--i) != '0' + digit) return false;
+            q /= 10;
+        } while (q != 0);
+        return i == start;
+    }
+
+    // ---- 逻辑 ----
+
+    public static Boolean not(Object v) {
+        return !truthy(v);
+    }
+
+    /** 真值规则：Boolean 取其值；数字非 0 为真；字符串非空为真；其它非 null 为真 */
+    public static boolean truthy(Object o) {
+        if (o instanceof Boolean) return (Boolean) o;
+        if (o instanceof Number) return ((Number) o).doubleValue() != 0.0;
+        if (o instanceof String) return !((String) o).isEmpty();
+        return o != null;
+    }
+
+    // ---- 一元 ----
+
+    public static Object unaryPlus(Object v, int pos) throws ParseException {
+        if (v instanceof Number) {
+            // +x 返回 x（保持整数/浮点）
+            return v;
+        }
+        throw new ParseException("Unary + requires numeric operand", pos);
+    }
+
+    public static Object negate(Object v, int pos) throws ParseException {
+        if (v instanceof Number) {
+            Number n = (Number) v;
+            if (n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte) {
+                return Long.valueOf(-n.longValue());
+            } else {
+                return Double.valueOf(-n.doubleValue());
+            }
+        }
+        throw new ParseException("Unary - requires numeric operand", pos);
+    }
+
+    // ---- 辅助 ----
+
+    static boolean isFloating(Number n) {
+        return n instanceof Float || n instanceof Double;
+    }
+
+    static boolean isIntegral(Number n) {
+        // 如果是 Long/Integer/Short -> true
+        if (n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte) return true;
+        // 如果是 Double/Float -> 检查是否为整数值
+        return isIntegral(n.doubleValue());
+    }
+
+    /** d 是否为有限的整数值（结果装箱为 Long 的条件之一） */
+    public static boolean isIntegral(double d) {
+        // 绝对值不小于 2^52 的有限 double 一定是整数；其余经 long 往返比较，避免 Math.floor
+        return Math.abs(d) < 0x1p52 ? d == (double) (long) d : Double.isFinite(d);
+    }
+}
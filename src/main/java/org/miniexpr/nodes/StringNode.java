@@ -1,16 +1,35 @@
 package org.miniexpr.nodes;
 
-
+import org.miniexpr.Bindings;
 import org.miniexpr.Node;
+import org.miniexpr.ValueType;
 
+/**
+ * 字符串字面量节点。值即词法分析得到的字符串，不驻留：比较相等总是按内容（{@link String#equals}），
+ * 哈希值由 String 自身在第一次使用时缓存。
+ */
 public class StringNode implements Node {
     private final String value;
     private final int pos;
 
-    public StringNode(String value, int pos) { this.value = value; this.pos = pos; }
+    public StringNode(String value, int pos) {
+        this.value = value;
+        this.pos = pos;
+    }
+
+    @Override
+    public Object eval(Bindings vars) { return value; }
 
     @Override
-    public Object eval() { return value; }
+    public boolean evalBoolean(Bindings vars) { return !value.isEmpty(); }
+
+    @Override
+    public ValueType type() { return ValueType.STRING; }
+
+    public String value() { return value; }
+
+    /** 字符串形式（即值本身），见 {@link NumberNode#text()} */
+    public String text() { return value; }
 
     @Override
     public int pos() { return pos; }
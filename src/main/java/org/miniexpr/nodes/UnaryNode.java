@@ -1,8 +1,10 @@
 package org.miniexpr.nodes;
 
+import org.miniexpr.Bindings;
 import org.miniexpr.Node;
 import org.miniexpr.ParseException;
 import org.miniexpr.TokenType;
+import org.miniexpr.ValueType;
 
 /**
  * 一元运算： !, +, -
@@ -11,47 +13,103 @@ public class UnaryNode implements Node {
     private final TokenType op;
     private final Node operand;
     private final int pos;
+    private final ValueType type;
 
     public UnaryNode(TokenType op, Node operand, int pos) {
         this.op = op;
         this.operand = operand;
         this.pos = pos;
+        this.type = inferType(op, operand.type());
+    }
+
+    private static ValueType inferType(TokenType op, ValueType t) {
+        switch (op) {
+            case NOT:
+                return ValueType.BOOLEAN;
+            case PLUS:
+                // +x 原样返回操作数
+                return t.isNumeric() ? t : ValueType.NUMBER;
+            case MINUS:
+                return t == ValueType.LONG || t == ValueType.DOUBLE ? t : ValueType.NUMBER;
+            default:
+                return ValueType.ANY;
+        }
     }
 
     @Override
-    public Object eval() throws ParseException {
-        Object v = operand.eval();
+    public Object eval(Bindings vars) throws ParseException {
+        switch (type) {
+            case BOOLEAN:
+                return evalBoolean(vars) ? Boolean.TRUE : Boolean.FALSE;
+            case LONG:
+                if (op == TokenType.MINUS) return Long.valueOf(evalLong(vars));
+                break;
+            case DOUBLE:
+                if (op == TokenType.MINUS) return Double.valueOf(evalDouble(vars));
+                break;
+            default:
+                break;
+        }
+        Object v = operand.eval(vars);
         switch (op) {
             case NOT:
-                return !toBool(v);
+                return Operators.not(v);
             case PLUS:
-                if (v instanceof Number) {
-                    // +x 返回 x（保持整数/浮点）
-                    return v;
-                }
-                throw new ParseException("Unary + requires numeric operand", pos);
+                return Operators.unaryPlus(v, pos);
             case MINUS:
-                if (v instanceof Number) {
-                    Number n = (Number) v;
-                    if (n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte) {
-                        return Long.valueOf(-n.longValue());
-                    } else {
-                        return Double.valueOf(-n.doubleValue());
-                    }
-                }
-                throw new ParseException("Unary - requires numeric operand", pos);
+                return Operators.negate(v, pos);
             default:
                 throw new ParseException("Unknown unary operator " + op, pos);
         }
     }
 
-    private boolean toBool(Object o) {
-        if (o instanceof Boolean) return (Boolean) o;
-        if (o instanceof Number) return ((Number) o).doubleValue() != 0.0;
-        if (o instanceof String) return !((String) o).isEmpty();
-        return o != null;
+    @Override
+    public long evalLong(Bindings vars) throws ParseException {
+        if (type != ValueType.LONG) return Node.super.evalLong(vars);
+        long v = operand.evalLong(vars);
+        return op == TokenType.MINUS ? -v : v;
+    }
+
+    @Override
+    public double evalDouble(Bindings vars) throws ParseException {
+        if (type == ValueType.LONG) return evalLong(vars);
+        if (type == ValueType.DOUBLE) {
+            double v = operand.evalDouble(vars);
+            return op == TokenType.MINUS ? -v : v;
+        }
+        if (type != ValueType.NUMBER) return Node.super.evalDouble(vars);
+        if (op == TokenType.PLUS && operand.type().isNumeric()) return operand.evalDouble(vars);
+        if (op == TokenType.MINUS && BinaryNode.reportsIntegral(operand) && vars != null) {
+            // Long 取负仍为 Long（0 不变为 -0.0，long 下界取负溢出），Double 按 double 取负；装箱类型不变
+            double d = operand.evalDouble(vars);
+            return vars.evalState().integralResult ? -(long) d : -d;
+        }
+        // 取对象判断（操作数为变量时不会产生新对象），取负时整数按 long 取负
+        Object v = operand.eval(vars);
+        if (!(v instanceof Number)) {
+            throw new ParseException("Unary " + (op == TokenType.MINUS ? '-' : '+') + " requires numeric operand", pos);
+        }
+        Number n = (Number) v;
+        if (op == TokenType.PLUS) return n.doubleValue();
+        boolean integral = n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte;
+        if (vars != null) vars.evalState().integralResult = integral;
+        return integral ? -n.longValue() : -n.doubleValue();
+    }
+
+    @Override
+    public boolean evalBoolean(Bindings vars) throws ParseException {
+        if (op == TokenType.NOT) return !operand.evalBoolean(vars);
+        if (type.isNumeric()) return evalDouble(vars) != 0.0;
+        return Node.super.evalBoolean(vars);
     }
 
+    @Override
+    public ValueType type() { return type; }
+
+    public TokenType op() { return op; }
+
+    public Node operand() { return operand; }
+
     @Override
     public int pos() { return pos; }
 }
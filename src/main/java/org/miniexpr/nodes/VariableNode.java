@@ -0,0 +1,34 @@
+package org.miniexpr.nodes;
+
+import org.miniexpr.Bindings;
+import org.miniexpr.Node;
+
+/**
+ * 变量节点：按解析时分配的槽位从 {@link Bindings} 中读取变量值。
+ * <p>
+ * 变量未绑定时返回标识符文本本身，与早期"标识符即字符串"的行为保持兼容
+ * （例如 {@code yes == 'yes'} 在没有提供 yes 时仍为 true）。
+ */
+public class VariableNode implements Node {
+    private final String name;
+    private final int slot;
+    private final int pos;
+
+    public VariableNode(String name, int slot, int pos) {
+        this.name = name;
+        this.slot = slot;
+        this.pos = pos;
+    }
+
+    @Override
+    public Object eval(Bindings vars) {
+        return vars.getOrDefault(slot, name);
+    }
+
+    public String name() { return name; }
+
+    public int slot() { return slot; }
+
+    @Override
+    public int pos() { return pos; }
+}
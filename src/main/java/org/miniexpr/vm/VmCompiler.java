@@ -0,0 +1,295 @@
+package org.miniexpr.vm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.miniexpr.Node;
+import org.miniexpr.TokenType;
+import org.miniexpr.ValueType;
+import org.miniexpr.nodes.BinaryNode;
+import org.miniexpr.nodes.BooleanNode;
+import org.miniexpr.nodes.CallNode;
+import org.miniexpr.nodes.ConcatNode;
+import org.miniexpr.nodes.ConditionalNode;
+import org.miniexpr.nodes.LogicalNode;
+import org.miniexpr.nodes.NumberNode;
+import org.miniexpr.nodes.StringNode;
+import org.miniexpr.nodes.UnaryNode;
+import org.miniexpr.nodes.VariableNode;
+
+/**
+ * 虚拟机后端：把 AST 降为 {@link VmProgram} 的扁平指令序列。
+ * <p>
+ * 节点按后序展开为栈式指令：操作数先入栈，运算符指令弹出操作数并压入结果。
+ * 三元运算编译为 {@code JUMP_IF_FALSE} / {@code JUMP}，{@code &&} / {@code ||} 编译为短路跳转，
+ * 函数调用的参数依次入栈后由 {@code CALL} 调用解析时解析好的 {@link CallNode}，
+ * 字符串拼接的各部分依次入栈后由 {@code CONCAT} 一次拼接（见 {@link ConcatNode#join}）。
+ * 无法识别的节点类型作为常量嵌入，通过其自身的 {@code eval} 解释执行（与字节码后端相同）。
+ * <p>
+ * 降级过程使用显式的工作栈而不是递归，因此任意深度的 AST 都可以编译；本类无状态，线程安全。
+ */
+public final class VmCompiler {
+
+    private VmCompiler() {}
+
+    /** 把以 root 为根的 AST 编译为指令序列 */
+    public static VmProgram compile(Node root) {
+        Assembler asm = new Assembler();
+        Deque<Task> work = new ArrayDeque<>();
+        work.push(new Task(root));
+        while (!work.isEmpty()) {
+            Task t = work.pop();
+            asm.step(t, work);
+        }
+        asm.op(VmProgram.RETURN);
+        return new VmProgram(asm.code(), asm.constants.toArray(), Math.max(1, asm.maxDepth), root.pos(), root.type());
+    }
+
+    // 待展开的节点及其展开进度（stage 0 为首次访问，之后每个阶段在一个子节点展开完成后继续）
+    private static final class Task {
+        final Node node;
+        int stage;
+        int jump;   // 待回填的跳转指令位置
+        int depth;  // 进入分支前的栈深度
+
+        Task(Node node) {
+            this.node = node;
+        }
+    }
+
+    private static final class Assembler {
+        private int[] code = new int[32];
+        private int length;
+        private final List<Object> constants = new ArrayList<>();
+        // 相等的字面量与变量名只存一次（CallNode 等节点按引用区分）
+        private final Map<Object, Integer> constantIndex = new HashMap<>();
+        private int depth;
+        private int maxDepth;
+
+        void step(Task t, Deque<Task> work) {
+            Node n = t.node;
+            if (n instanceof NumberNode) {
+                op(VmProgram.CONST, constant(((NumberNode) n).value()));
+                push();
+            } else if (n instanceof BooleanNode) {
+                op(VmProgram.CONST, constant(((BooleanNode) n).value() ? Boolean.TRUE : Boolean.FALSE));
+                push();
+            } else if (n instanceof StringNode) {
+                op(VmProgram.CONST, constant(((StringNode) n).value()));
+                push();
+            } else if (n instanceof VariableNode) {
+                VariableNode v = (VariableNode) n;
+                op(VmProgram.LOAD, v.slot(), constant(v.name()));
+                push();
+            } else if (n instanceof BinaryNode) {
+                binary(t, (BinaryNode) n, work);
+            } else if (n instanceof LogicalNode) {
+                logical(t, (LogicalNode) n, work);
+            } else if (n instanceof UnaryNode) {
+                unary(t, (UnaryNode) n, work);
+            } else if (n instanceof ConditionalNode) {
+                conditional(t, (ConditionalNode) n, work);
+            } else if (n instanceof CallNode) {
+                call(t, (CallNode) n, work);
+            } else if (n instanceof ConcatNode) {
+                concat(t, (ConcatNode) n, work);
+            } else {
+                interpreted(n);
+            }
+        }
+
+        private void binary(Task t, BinaryNode b, Deque<Task> work) {
+            int opcode = binaryOpcode(b.op());
+            if (opcode < 0) {
+                interpreted(b);
+                return;
+            }
+            if (t.stage == 0) {
+                t.stage = 1;
+                work.push(t);
+                work.push(new Task(b.right()));
+                work.push(new Task(b.left()));
+                return;
+            }
+            if (opcode == VmProgram.EQ || opcode == VmProgram.NE) {
+                op(opcode);
+            } else {
+                // 比较运算的类型错误报告在右操作数的位置（与 BinaryNode 一致）
+                boolean relational = opcode >= VmProgram.GT && opcode <= VmProgram.LE;
+                op(opcode, relational ? b.rightPos() : b.pos());
+            }
+            pop();
+        }
+
+        private static int binaryOpcode(TokenType op) {
+            switch (op) {
+                case PLUS: return VmProgram.ADD;
+                case MINUS: return VmProgram.SUB;
+                case STAR: return VmProgram.MUL;
+                case SLASH: return VmProgram.DIV;
+                case PERCENT: return VmProgram.REM;
+                case GT: return VmProgram.GT;
+                case GE: return VmProgram.GE;
+                case LT: return VmProgram.LT;
+                case LE: return VmProgram.LE;
+                case EQ: return VmProgram.EQ;
+                case NE: return VmProgram.NE;
+                default: return -1;
+            }
+        }
+
+        // left; AND/OR end; right; [BOOL]; end:
+        private void logical(Task t, LogicalNode l, Deque<Task> work) {
+            switch (t.stage) {
+                case 0:
+                    t.stage = 1;
+                    work.push(t);
+                    work.push(new Task(l.left()));
+                    break;
+                case 1:
+                    t.jump = op(l.op() == TokenType.AND ? VmProgram.AND : VmProgram.OR, -1);
+                    pop();
+                    t.stage = 2;
+                    work.push(t);
+                    work.push(new Task(l.right()));
+                    break;
+                default:
+                    if (!producesBoolean(l.right())) op(VmProgram.BOOL);
+                    patch(t.jump);
+            }
+        }
+
+        // 一定求值为 Boolean 的节点（比较、逻辑运算、! 与布尔常量），之后不需要 BOOL
+        private static boolean producesBoolean(Node n) {
+            return n.type() == ValueType.BOOLEAN && (n instanceof BinaryNode || n instanceof LogicalNode
+                    || n instanceof UnaryNode || n instanceof BooleanNode);
+        }
+
+        private void unary(Task t, UnaryNode u, Deque<Task> work) {
+            int opcode;
+            switch (u.op()) {
+                case NOT: opcode = VmProgram.NOT; break;
+                case PLUS: opcode = VmProgram.PLUS; break;
+                case MINUS: opcode = VmProgram.NEG; break;
+                default:
+                    interpreted(u);
+                    return;
+            }
+            if (t.stage == 0) {
+                t.stage = 1;
+                work.push(t);
+                work.push(new Task(u.operand()));
+                return;
+            }
+            if (opcode == VmProgram.NOT) op(opcode); else op(opcode, u.pos());
+        }
+
+        // cond; JUMP_IF_FALSE else; trueExpr; JUMP end; else: falseExpr; end:
+        private void conditional(Task t, ConditionalNode c, Deque<Task> work) {
+            switch (t.stage) {
+                case 0:
+                    t.stage = 1;
+                    work.push(t);
+                    work.push(new Task(c.cond()));
+                    break;
+                case 1:
+                    t.jump = op(VmProgram.JUMP_IF_FALSE, -1);
+                    pop();
+                    t.depth = depth;
+                    t.stage = 2;
+                    work.push(t);
+                    work.push(new Task(c.trueExpr()));
+                    break;
+                case 2: {
+                    int toEnd = op(VmProgram.JUMP, -1);
+                    patch(t.jump);
+                    t.jump = toEnd;
+                    depth = t.depth;
+                    t.stage = 3;
+                    work.push(t);
+                    work.push(new Task(c.falseExpr()));
+                    break;
+                }
+                default:
+                    patch(t.jump);
+            }
+        }
+
+        private void call(Task t, CallNode c, Deque<Task> work) {
+            if (t.stage == 0) {
+                t.stage = 1;
+                work.push(t);
+                List<Node> args = c.args();
+                for (int i = args.size() - 1; i >= 0; i--) work.push(new Task(args.get(i)));
+                return;
+            }
+            op(VmProgram.CALL, constant(c), c.arity());
+            depth -= c.arity();
+            push();
+        }
+
+        private void concat(Task t, ConcatNode c, Deque<Task> work) {
+            List<Node> parts = c.parts();
+            if (t.stage == 0) {
+                t.stage = 1;
+                work.push(t);
+                for (int i = parts.size() - 1; i >= 0; i--) work.push(new Task(parts.get(i)));
+                return;
+            }
+            op(VmProgram.CONCAT, constant(c), parts.size());
+            depth -= parts.size();
+            push();
+        }
+
+        // 不支持的节点：作为常量嵌入，调用其自身的 eval 解释执行
+        private void interpreted(Node n) {
+            op(VmProgram.EVAL, constant(n));
+            push();
+        }
+
+        private int constant(Object value) {
+            Integer idx = constantIndex.get(value);
+            if (idx == null) {
+                idx = constants.size();
+                constants.add(value);
+                constantIndex.put(value, idx);
+            }
+            return idx;
+        }
+
+        private void push() {
+            if (++depth > maxDepth) maxDepth = depth;
+        }
+
+        private void pop() {
+            depth--;
+        }
+
+        // 追加一条指令，返回其位置
+        int op(int opcode, int... operands) {
+            ensure(1 + operands.length);
+            int at = length;
+            code[length++] = opcode;
+            for (int operand : operands) code[length++] = operand;
+            return at;
+        }
+
+        // 把 at 处跳转指令的目标设为当前位置
+        private void patch(int at) {
+            code[at + 1] = length;
+        }
+
+        private void ensure(int n) {
+            if (length + n > code.length) code = Arrays.copyOf(code, Math.max(code.length * 2, length + n));
+        }
+
+        int[] code() {
+            return Arrays.copyOf(code, length);
+        }
+    }
+}
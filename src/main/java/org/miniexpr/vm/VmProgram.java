@@ -0,0 +1,281 @@
+package org.miniexpr.vm;
+
+import org.miniexpr.Bindings;
+import org.miniexpr.Node;
+import org.miniexpr.ParseException;
+import org.miniexpr.ValueType;
+import org.miniexpr.nodes.CallNode;
+import org.miniexpr.nodes.ConcatNode;
+import org.miniexpr.nodes.Operators;
+
+/**
+ * 由 {@link VmCompiler} 生成的扁平指令序列及其解释器（栈式虚拟机）。
+ * <p>
+ * 指令存放在一个 int 数组中：每条指令是一个操作码，后跟固定个数的操作数（常量下标、槽位、错误位置或跳转目标）。
+ * 字面量、变量名与函数调用节点存放在常量数组中。求值是一个循环加一个 {@code switch}，
+ * 操作数栈是一个大小在编译时确定（{@link #maxStack()}）的 Object 数组，求值过程不递归，
+ * 因此嵌套很深的表达式也不会因为求值而栈溢出。运算符语义与解释器、字节码后端相同（见 {@link Operators}）。
+ * <p>
+ * 实例不可变、线程安全。{@link #eval(Bindings)} 每次分配一个新的操作数栈；
+ * 在同一线程中连续求值时可以用 {@link #newStack()} 创建一个栈，通过 {@link #eval(Bindings, Object[])} 反复使用。
+ */
+public final class VmProgram implements Node {
+    // ---- 操作码（后跟的操作数个数见 OPERANDS） ----
+    static final int CONST = 0;         // k          压入 constants[k]
+    static final int LOAD = 1;          // slot, k    压入变量值，未绑定时压入变量名 constants[k]
+    static final int ADD = 2;           // pos
+    static final int SUB = 3;           // pos
+    static final int MUL = 4;           // pos
+    static final int DIV = 5;           // pos
+    static final int REM = 6;           // pos
+    static final int GT = 7;            // errPos
+    static final int GE = 8;            // errPos
+    static final int LT = 9;            // errPos
+    static final int LE = 10;           // errPos
+    static final int EQ = 11;
+    static final int NE = 12;
+    static final int NOT = 13;
+    static final int PLUS = 14;         // pos
+    static final int NEG = 15;          // pos
+    static final int BOOL = 16;         // 栈顶按真值规则转换为 Boolean
+    static final int JUMP = 17;         // target
+    static final int JUMP_IF_FALSE = 18; // target    弹出栈顶，为假时跳转
+    static final int AND = 19;          // target     栈顶为假时替换为 FALSE 并跳转，否则弹出
+    static final int OR = 20;           // target     栈顶为真时替换为 TRUE 并跳转，否则弹出
+    static final int CALL = 21;         // k, arity   调用 constants[k]（CallNode），参数在栈顶
+    static final int EVAL = 22;         // k          压入 ((Node) constants[k]).eval(vars)
+    static final int RETURN = 23;
+    static final int CONCAT = 24;       // k, count   拼接栈顶的 count 个值（constants[k] 为 ConcatNode）
+
+    static final int[] OPERANDS = {1, 2, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 1, 1, 0, 1, 1, 1, 1, 2, 1, 0, 2};
+
+    private static final String[] NAMES = {"CONST", "LOAD", "ADD", "SUB", "MUL", "DIV", "REM", "GT", "GE", "LT", "LE",
+            "EQ", "NE", "NOT", "PLUS", "NEG", "BOOL", "JUMP", "JUMP_IF_FALSE", "AND", "OR", "CALL", "EVAL", "RETURN",
+            "CONCAT"};
+
+    private final int[] code;
+    private final Object[] constants;
+    private final int maxStack;
+    private final int pos;
+    private final ValueType type;
+
+    VmProgram(int[] code, Object[] constants, int maxStack, int pos, ValueType type) {
+        this.code = code;
+        this.constants = constants;
+        this.maxStack = maxStack;
+        this.pos = pos;
+        this.type = type;
+    }
+
+    /** 求值所需的操作数栈大小 */
+    public int maxStack() { return maxStack; }
+
+    /** 指令序列的长度（操作码与操作数的个数之和） */
+    public int codeLength() { return code.length; }
+
+    /** 创建一个可供 {@link #eval(Bindings, Object[])} 反复使用的操作数栈 */
+    public Object[] newStack() {
+        return new Object[maxStack];
+    }
+
+    @Override
+    public Object eval(Bindings vars) throws ParseException {
+        return eval(vars, new Object[maxStack]);
+    }
+
+    /**
+     * 使用调用方提供的操作数栈求值。stack 的长度不得小于 {@link #maxStack()}，且不能同时被其它求值使用；
+     * 求值结束后栈中可能残留中间结果的引用。
+     */
+    public Object eval(Bindings vars, Object[] stack) throws ParseException {
+        if (stack.length < maxStack) {
+            throw new IllegalArgumentException("Operand stack too small: " + stack.length + " < " + maxStack);
+        }
+        final int[] code = this.code;
+        final Object[] k = this.constants;
+        int pc = 0;
+        int sp = 0;
+        while (true) {
+            switch (code[pc]) {
+                case CONST:
+                    stack[sp++] = k[code[pc + 1]];
+                    pc += 2;
+                    break;
+                case LOAD:
+                    stack[sp++] = vars.getOrDefault(code[pc + 1], k[code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case ADD:
+                    sp--;
+                    stack[sp - 1] = Operators.add(stack[sp - 1], stack[sp], code[pc + 1], vars);
+                    pc += 2;
+                    break;
+                case SUB:
+                    sp--;
+                    stack[sp - 1] = Operators.subtract(stack[sp - 1], stack[sp], code[pc + 1]);
+                    pc += 2;
+                    break;
+                case MUL:
+                    sp--;
+                    stack[sp - 1] = Operators.multiply(stack[sp - 1], stack[sp], code[pc + 1]);
+                    pc += 2;
+                    break;
+                case DIV:
+                    sp--;
+                    stack[sp - 1] = Operators.divide(stack[sp - 1], stack[sp], code[pc + 1]);
+                    pc += 2;
+                    break;
+                case REM:
+                    sp--;
+                    stack[sp - 1] = Operators.remainder(stack[sp - 1], stack[sp], code[pc + 1]);
+                    pc += 2;
+                    break;
+                case GT:
+                    sp--;
+                    stack[sp - 1] = Operators.greaterThan(stack[sp - 1], stack[sp], code[pc + 1]);
+                    pc += 2;
+                    break;
+                case GE:
+                    sp--;
+                    stack[sp - 1] = Operators.greaterOrEqual(stack[sp - 1], stack[sp], code[pc + 1]);
+                    pc += 2;
+                    break;
+                case LT:
+                    sp--;
+                    stack[sp - 1] = Operators.lessThan(stack[sp - 1], stack[sp], code[pc + 1]);
+                    pc += 2;
+                    break;
+                case LE:
+                    sp--;
+                    stack[sp - 1] = Operators.lessOrEqual(stack[sp - 1], stack[sp], code[pc + 1]);
+                    pc += 2;
+                    break;
+                case EQ:
+                    sp--;
+                    stack[sp - 1] = Operators.equal(stack[sp - 1], stack[sp]);
+                    pc++;
+                    break;
+                case NE:
+                    sp--;
+                    stack[sp - 1] = Operators.notEqual(stack[sp - 1], stack[sp]);
+                    pc++;
+                    break;
+                case NOT:
+                    stack[sp - 1] = Operators.not(stack[sp - 1]);
+                    pc++;
+                    break;
+                case PLUS:
+                    stack[sp - 1] = Operators.unaryPlus(stack[sp - 1], code[pc + 1]);
+                    pc += 2;
+                    break;
+                case NEG:
+                    stack[sp - 1] = Operators.negate(stack[sp - 1], code[pc + 1]);
+                    pc += 2;
+                    break;
+                case BOOL:
+                    stack[sp - 1] = Operators.truthy(stack[sp - 1]) ? Boolean.TRUE : Boolean.FALSE;
+                    pc++;
+                    break;
+                case JUMP:
+                    pc = code[pc + 1];
+                    break;
+                case JUMP_IF_FALSE:
+                    pc = Operators.truthy(stack[--sp]) ? pc + 2 : code[pc + 1];
+                    break;
+                case AND:
+                    if (Operators.truthy(stack[sp - 1])) {
+                        sp--;
+                        pc += 2;
+                    } else {
+                        stack[sp - 1] = Boolean.FALSE;
+                        pc = code[pc + 1];
+                    }
+                    break;
+                case OR:
+                    if (Operators.truthy(stack[sp - 1])) {
+                        stack[sp - 1] = Boolean.TRUE;
+                        pc = code[pc + 1];
+                    } else {
+                        sp--;
+                        pc += 2;
+                    }
+                    break;
+                case CALL:
+                    sp = call((CallNode) k[code[pc + 1]], code[pc + 2], stack, sp, vars);
+                    pc += 3;
+                    break;
+                case EVAL:
+                    stack[sp++] = ((Node) k[code[pc + 1]]).eval(vars);
+                    pc += 2;
+                    break;
+                case CONCAT: {
+                    int count = code[pc + 2];
+                    Object[] values = new Object[count];
+                    sp -= count;
+                    System.arraycopy(stack, sp, values, 0, count);
+                    stack[sp++] = ((ConcatNode) k[code[pc + 1]]).join(values, vars);
+                    pc += 3;
+                    break;
+                }
+                case RETURN:
+                    return stack[sp - 1];
+                default:
+                    throw new IllegalStateException("Bad opcode " + code[pc] + " at " + pc);
+            }
+        }
+    }
+
+    // 弹出 arity 个参数并压入调用结果，返回新的栈顶
+    private static int call(CallNode c, int arity, Object[] stack, int sp, Bindings vars) throws ParseException {
+        int base = sp - arity;
+        Object result;
+        switch (arity) {
+            case 0: result = c.invoke0(vars); break;
+            case 1: result = c.invoke1(stack[base], vars); break;
+            case 2: result = c.invoke2(stack[base], stack[base + 1], vars); break;
+            case 3: result = c.invoke3(stack[base], stack[base + 1], stack[base + 2], vars); break;
+            default: {
+                Object[] args = new Object[arity];
+                System.arraycopy(stack, base, args, 0, arity);
+                result = c.invoke(args, vars);
+            }
+        }
+        stack[base] = result;
+        return base + 1;
+    }
+
+    @Override
+    public ValueType type() { return type; }
+
+    @Override
+    public int pos() { return pos; }
+
+    /** 返回指令序列的文本形式（每行一条指令），用于调试 */
+    public String disassemble() {
+        StringBuilder sb = new StringBuilder();
+        int pc = 0;
+        while (pc < code.length) {
+            int op = code[pc];
+            sb.append(pc).append(": ").append(NAMES[op]);
+            for (int i = 1; i <= OPERANDS[op]; i++) sb.append(' ').append(code[pc + i]);
+            if (op == CONST || op == LOAD || op == CALL || op == EVAL || op == CONCAT) {
+                sb.append("    // ").append(describe(constants[code[pc + (op == LOAD ? 2 : 1)]]));
+            }
+            sb.append('\n');
+            pc += 1 + OPERANDS[op];
+        }
+        return sb.toString();
+    }
+
+    private static String describe(Object constant) {
+        if (constant instanceof CallNode) return ((CallNode) constant).function().name() + "()";
+        if (constant instanceof Node) return constant.getClass().getSimpleName();
+        if (constant instanceof String) return "'" + constant + "'";
+        return String.valueOf(constant);
+    }
+
+    @Override
+    public String toString() {
+        return "VmProgram(code=" + code.length + ", constants=" + constants.length + ", maxStack=" + maxStack + ")";
+    }
+}
@@ -0,0 +1,92 @@
+package org.miniexpr;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.miniexpr.functions.FunctionDef;
+import org.miniexpr.functions.FunctionRegistry;
+
+/**
+ * 十进制模式：定点数路径无法表示时改按 BigDecimal 计算，结果与 BigDecimal 语义一致，且每个子表达式只求值一次。
+ */
+public class DecimalModeTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private MiniExprEngine engine(ExecutionMode mode) {
+        FunctionRegistry functions = FunctionRegistry.builtins();
+        // 不是纯函数：每次调用返回下一个整数
+        functions.register(FunctionDef.object0("tick", new Supplier<Object>() {
+            @Override
+            public Object get() {
+                return (long) calls.incrementAndGet();
+            }
+        }));
+        // 不是纯函数：计数并把参数转换为 Double，使十进制运算每一层都无法以定点数计算
+        functions.register(FunctionDef.object1("dbl", new Function<Object, Object>() {
+            @Override
+            public Object apply(Object v) {
+                calls.incrementAndGet();
+                return ((Number) v).doubleValue();
+            }
+        }));
+        return MiniExprEngine.builder().mode(mode).numeric(NumericMode.DECIMAL).functions(functions).build();
+    }
+
+    @Test
+    public void inexactResultDoesNotReevaluateOperands() throws ParseException {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            calls.set(0);
+            CompiledExpression expr = engine(mode).compile("tick() / 3");
+            assertEquals(mode.name(), new BigDecimal("0.3333333333333333333333333333333333"), expr.eval(expr.newBindings()));
+            assertEquals(mode.name(), 1, calls.get());
+
+            calls.set(0);
+            expr = engine(mode).compile("tick() / 3 > 0.3 && -(tick() * 0.5) == -1.0");
+            assertEquals(mode.name(), true, expr.eval(expr.newBindings()));
+            assertEquals(mode.name(), 2, calls.get());
+        }
+    }
+
+    // 重新求值子树时调用次数随深度指数增长，超时即失败
+    @Test(timeout = 10000)
+    public void deeplyNestedFallbackEvaluatesEachCallOnce() throws ParseException {
+        int depth = 40;
+        StringBuilder source = new StringBuilder("x");
+        for (int i = 0; i < depth; i++) source.insert(0, "dbl(").append(" - 1) * 2");
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            calls.set(0);
+            CompiledExpression expr = engine(mode).compile(source.toString());
+            double expected = 0.5;
+            for (int i = 0; i < depth; i++) expected = (expected - 1) * 2;
+            assertEquals(mode.name(), 0, new BigDecimal(expected).compareTo(
+                    (BigDecimal) expr.eval(expr.newBindings().set("x", 0.5))));
+            assertEquals(mode.name(), depth, calls.get());
+        }
+    }
+
+    @Test
+    public void fallbackResultsMatchBigDecimal() throws ParseException {
+        CompiledExpression expr = engine(ExecutionMode.INTERPRETER).compile("(a - b) * 3 / 7 % 1 + -a");
+        Object[] values = {0L, 3L, -7L, new BigDecimal("0.125"), new BigDecimal("123456789012345678.9"), 2.5, 1e-3};
+        for (Object a : values) {
+            for (Object b : values) {
+                BigDecimal x = decimal(a), y = decimal(b);
+                BigDecimal expected = x.subtract(y).multiply(BigDecimal.valueOf(3))
+                        .divide(BigDecimal.valueOf(7), java.math.MathContext.DECIMAL128)
+                        .remainder(BigDecimal.ONE).add(x.negate());
+                Object actual = expr.eval(expr.newBindings().set("a", a).set("b", b));
+                assertEquals(a + ", " + b, 0, expected.compareTo(new BigDecimal(actual.toString())));
+            }
+        }
+    }
+
+    private static BigDecimal decimal(Object v) {
+        return v instanceof Double ? BigDecimal.valueOf((Double) v) : new BigDecimal(v.toString());
+    }
+}
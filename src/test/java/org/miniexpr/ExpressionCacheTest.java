@@ -0,0 +1,93 @@
+package org.miniexpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * 缓存的命中不加锁：计数在并发下保持准确，超出容量时淘汰最久未访问的条目，大小不超过容量。
+ */
+public class ExpressionCacheTest {
+
+    @Test
+    public void hitsReturnTheSameCompiledExpression() throws ParseException {
+        ExpressionCache cache = new ExpressionCache(4);
+        CompiledExpression first = cache.get("a + 1");
+        assertSame(first, cache.get("a + 1"));
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void zeroSizeDisablesCaching() throws ParseException {
+        ExpressionCache cache = new ExpressionCache(0);
+        assertNotSame(cache.get("a + 1"), cache.get("a + 1"));
+        assertEquals(0, cache.hitCount());
+        assertEquals(2, cache.missCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedEntries() throws ParseException {
+        ExpressionCache cache = new ExpressionCache(16);
+        CompiledExpression hot = cache.get("x0");
+        for (int i = 1; i < 16; i++) {
+            cache.get("x" + i);
+            assertSame(hot, cache.get("x0"));
+        }
+        cache.get("x16");
+        // 一次淘汰到容量的 15/16：最早插入且之后没有访问的 x1 被淘汰，一直在访问的 x0 保留
+        assertEquals(15, cache.size());
+        assertEquals(2, cache.evictionCount());
+        assertSame(hot, cache.get("x0"));
+        long misses = cache.missCount();
+        cache.get("x1");
+        assertEquals(misses + 1, cache.missCount());
+        for (int i = 0; i < 1000; i++) {
+            cache.get("y" + i);
+            assertTrue(cache.toString(), cache.size() <= 16);
+        }
+    }
+
+    @Test
+    public void concurrentHitsAreCountedExactly() throws Exception {
+        final ExpressionCache cache = new ExpressionCache(64);
+        final int threads = 8;
+        final int perThread = 20_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int seed = t;
+                futures.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int i = 0; i < perThread; i++) {
+                            String source = "a + " + ((i + seed) % 32);
+                            assertEquals(source, cache.get(source).source());
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> f : futures) f.get();
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(threads * perThread, cache.hitCount() + cache.missCount());
+        assertTrue(cache.toString(), cache.missCount() >= 32);
+        assertEquals(32, cache.size());
+        assertEquals(0, cache.evictionCount());
+    }
+}
@@ -0,0 +1,184 @@
+package org.miniexpr;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+import org.miniexpr.functions.FunctionDef;
+import org.miniexpr.functions.FunctionRegistry;
+
+/**
+ * 合并求值的一组表达式：共享的子表达式每次求值只计算一次，结果按输入顺序返回并与单独求值相同，
+ * 只有结构完全相同的子表达式才会合并。
+ */
+public class ExpressionSetTest {
+
+    private final AtomicInteger costCalls = new AtomicInteger();
+    private final AtomicInteger tickCalls = new AtomicInteger();
+
+    // cost(x)：纯函数，返回 x * 10；tick(x)：非纯函数，返回 x
+    private MiniExprEngine engine() {
+        FunctionRegistry functions = FunctionRegistry.builtins();
+        functions.register(FunctionDef.object1("cost", new Function<Object, Object>() {
+            @Override
+            public Object apply(Object x) {
+                costCalls.incrementAndGet();
+                return ((Number) x).longValue() * 10;
+            }
+        }).pure());
+        functions.register(FunctionDef.object1("tick", new Function<Object, Object>() {
+            @Override
+            public Object apply(Object x) {
+                tickCalls.incrementAndGet();
+                return x;
+            }
+        }));
+        return MiniExprEngine.builder().functions(functions).build();
+    }
+
+    // 逐个单独编译求值的结果
+    private static Object[] individually(MiniExprEngine engine, String[] sources, Map<String, Object> vars)
+            throws ParseException {
+        Object[] out = new Object[sources.length];
+        for (int i = 0; i < sources.length; i++) out[i] = engine.compile(sources[i]).eval(vars);
+        return out;
+    }
+
+    @Test
+    public void sharedSubtreesAreComputedOncePerEvaluation() throws ParseException {
+        MiniExprEngine engine = engine();
+        String[] sources = {"cost(a) * 2", "cost(a) + b", "cost(a) > 30 && b > 0", "tick(a) + tick(a)", "tick(a)"};
+        ExpressionSet set = engine.compileAll(sources);
+        assertEquals(1, set.sharedCount());
+
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("a", 4L);
+        vars.put("b", 1L);
+        for (int round = 1; round <= 3; round++) {
+            assertArrayEquals(new Object[] {80L, 41L, true, 8L, 4L}, set.eval(vars));
+            assertEquals(round, costCalls.get());
+            // 非纯函数的调用不合并，每处各自执行
+            assertEquals(3 * round, tickCalls.get());
+        }
+    }
+
+    @Test
+    public void sharedSubtreesInSkippedBranchesAreNotComputed() throws ParseException {
+        MiniExprEngine engine = engine();
+        String[] sources = {"f && cost(a) > 0", "!f || cost(a) > 0", "f ? cost(a) : 0", "f"};
+        ExpressionSet set = engine.compileAll(sources);
+        assertEquals(2, set.sharedCount());
+
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("a", 4L);
+        vars.put("f", false);
+        assertArrayEquals(new Object[] {false, true, 0L, false}, set.eval(vars));
+        assertEquals(0, costCalls.get());
+
+        vars.put("f", true);
+        assertArrayEquals(new Object[] {true, true, 40L, true}, set.eval(vars));
+        assertEquals(1, costCalls.get());
+    }
+
+    @Test
+    public void resultsComeBackInInputOrder() throws ParseException {
+        MiniExprEngine engine = engine();
+        List<String> sources = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            // 交替出现共享与不共享的表达式，结果各不相同
+            sources.add(i % 3 == 0 ? "a * b + " + i : i % 3 == 1 ? "'r' + " + i + " + c" : "(a * b) % " + (i + 1));
+        }
+        ExpressionSet set = engine.compileAll(sources);
+        assertEquals(sources.size(), set.size());
+
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("a", 6L);
+        vars.put("b", 7L);
+        vars.put("c", "z");
+        Object[] expected = individually(engine, sources.toArray(new String[0]), vars);
+        assertArrayEquals(expected, set.eval(vars));
+
+        // 按槽位绑定与写入调用方的数组，结果相同
+        Bindings bindings = set.newBindings();
+        bindings.set(set.slotOf("a"), 6L).set(set.slotOf("b"), 7L).set(set.slotOf("c"), "z");
+        Object[] out = new Object[set.size()];
+        set.eval(bindings, out);
+        assertArrayEquals(expected, out);
+        for (int i = 0; i < set.size(); i++) assertEquals(sources.get(i), set.source(i));
+    }
+
+    @Test
+    public void onlyStructurallyIdenticalSubtreesAreMerged() throws ParseException {
+        MiniExprEngine engine = engine();
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("a", "x");
+        vars.put("b", "y");
+        vars.put("n", 2L);
+
+        // a + b 与 b + a 不合并：字符串拼接不满足交换律
+        String[] swapped = {"a + b", "b + a"};
+        ExpressionSet set = engine.compileAll(swapped);
+        assertEquals(0, set.sharedCount());
+        assertArrayEquals(new Object[] {"xy", "yx"}, set.eval(vars));
+
+        // 1 与 1.0 是不同的字面量：结果的类型不同
+        String[] literals = {"n * 1 + 0", "n * 1.0 + 0", "n * 1 - 1", "n * 1.0 - 1"};
+        set = engine.compileAll(literals);
+        assertEquals(2, set.sharedCount());
+        Object[] results = set.eval(vars);
+        assertArrayEquals(new Object[] {2L, 2.0, 1L, 1.0}, results);
+        assertArrayEquals(individually(engine, literals, vars), results);
+
+        // 完全相同的子表达式合并，包括在不同表达式中出现的位置不同
+        String[] same = {"a + b", "(a + b) + '!'", "n > 1 ? a + b : b"};
+        set = engine.compileAll(same);
+        assertEquals(1, set.sharedCount());
+        assertArrayEquals(new Object[] {"xy", "xy!", "xy"}, set.eval(vars));
+    }
+
+    @Test
+    public void errorsArePositionedInTheFailingExpression() throws ParseException {
+        MiniExprEngine engine = engine();
+        // x / y 是共享的，合并后的节点位置来自第一个表达式；第一个表达式短路不求值，出错的是第二个表达式
+        String[] sources = {"f && x / y > 0", "x / y + 1"};
+        ExpressionSet set = engine.compileAll(sources);
+        assertEquals(1, set.sharedCount());
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("f", false);
+        vars.put("x", 1L);
+        vars.put("y", 0L);
+        try {
+            set.eval(vars);
+            fail("expected a division error");
+        } catch (ParseException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Division by zero"));
+            assertEquals(sources[1].indexOf('/'), e.pos);
+        }
+
+        Bindings bindings = set.newBindings()
+                .set(set.slotOf("f"), true).set(set.slotOf("x"), 1L).set(set.slotOf("y"), "s");
+        Object[] out = new Object[2];
+        try {
+            set.eval(bindings, out);
+            fail("expected a type error");
+        } catch (ParseException e) {
+            CompiledExpression first = engine.compile(sources[0]);
+            try {
+                first.eval(first.newBindings().set("f", true).set("x", 1L).set("y", "s"));
+                fail("expected the same error individually");
+            } catch (ParseException individual) {
+                assertEquals(individual.getMessage(), e.getMessage());
+                assertEquals(individual.pos, e.pos);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.miniexpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.miniexpr.functions.FunctionDef;
+import org.miniexpr.functions.FunctionRegistry;
+
+/**
+ * 存储文件记录函数注册表的指纹：编译时折叠过的纯函数调用在注册表变化后不会以旧结果读回。
+ */
+public class ExpressionStoreTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static FunctionDef rate(final long value) {
+        return FunctionDef.object0("rate", new Supplier<Object>() {
+            @Override
+            public Object get() {
+                return value;
+            }
+        });
+    }
+
+    private static FunctionDef now() {
+        return FunctionDef.object0("now", new Supplier<Object>() {
+            @Override
+            public Object get() {
+                return 0L;
+            }
+        });
+    }
+
+    private static MiniExprEngine engine(FunctionDef... defs) {
+        FunctionRegistry functions = FunctionRegistry.builtins();
+        for (FunctionDef def : defs) functions.register(def);
+        return MiniExprEngine.builder().functions(functions).build();
+    }
+
+    private static Object eval(CompiledExpression expr) throws ParseException {
+        return expr.eval(expr.newBindings().set("x", 10L));
+    }
+
+    @Test
+    public void changedFunctionsInvalidateTheFile() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("rules.bin");
+        List<String> sources = Collections.singletonList("rate() * x");
+        // 纯函数 rate() 在编译时折叠为 1
+        assertEquals(10L, eval(new ExpressionStore(engine(rate(1).pure())).load(file, sources).get(0)));
+
+        // 同一个函数改为非纯函数：指纹不同，文件失效并按新注册表重新编译
+        ExpressionStore impure = new ExpressionStore(engine(rate(2)));
+        try {
+            impure.read(file);
+            fail("expected a fingerprint mismatch");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("different functions"));
+        }
+        assertEquals(20L, eval(impure.load(file, sources).get(0)));
+        assertEquals(20L, eval(impure.read(file).get(0)));
+
+        // 增加函数同样使文件失效
+        try {
+            new ExpressionStore(engine(rate(2), now())).read(file);
+            fail("expected a fingerprint mismatch");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("different functions"));
+        }
+    }
+
+    @Test
+    public void registrationOrderDoesNotChangeTheFingerprint() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("rules.bin");
+        ExpressionStore store = new ExpressionStore(engine(rate(1).pure(), now()));
+        store.write(file, Collections.singletonList(store.engine().compile("rate() * x")));
+        assertEquals(10L, eval(new ExpressionStore(engine(now(), rate(1).pure())).read(file).get(0)));
+    }
+}
@@ -0,0 +1,195 @@
+package org.miniexpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.miniexpr.functions.FunctionDef;
+import org.miniexpr.functions.FunctionRegistry;
+
+/**
+ * 复杂度限制：默认不限制时长链可以编译与求值，设置限制后超出的输入以带位置的 ParseException 失败；
+ * 求值超时在函数调用返回之后检查。
+ */
+public class LimitsTest {
+
+    private static String chain(String op, int terms) {
+        StringBuilder sb = new StringBuilder("x0");
+        for (int i = 1; i < terms; i++) sb.append(op).append('x').append(i % 5);
+        return sb.toString();
+    }
+
+    @Test
+    public void longFlatChainsCompileByDefault() throws ParseException {
+        for (ExecutionMode mode : new ExecutionMode[]{ExecutionMode.INTERPRETER, ExecutionMode.VM}) {
+            MiniExprEngine engine = MiniExprEngine.builder().mode(mode).build();
+            CompiledExpression or = engine.compile(chain(" || ", 3000));
+            assertEquals(mode.name(), true, or.eval(or.newBindings().set("x0", false).set("x1", true)));
+
+            CompiledExpression sum = engine.compile(chain(" + ", 1500));
+            Bindings b = sum.newBindings();
+            for (int i = 0; i < 5; i++) b.set("x" + i, (long) i);
+            assertEquals(mode.name(), 3000L, sum.eval(b));
+        }
+    }
+
+    @Test
+    public void maxDepthRejectsDeepInput() {
+        MiniExprEngine engine = MiniExprEngine.builder()
+                .limits(Limits.DEFAULT.withMaxDepth(Limits.SAFE_MAX_DEPTH)).build();
+        String source = chain(" + ", Limits.SAFE_MAX_DEPTH + 1);
+        try {
+            engine.compile(source);
+            fail("expected a depth error");
+        } catch (ParseException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("nested too deeply"));
+            assertEquals(source.lastIndexOf('+'), e.pos);
+        }
+    }
+
+    @Test
+    public void untrustedLimitsRejectOversizedInput() throws ParseException {
+        MiniExprEngine engine = MiniExprEngine.builder().limits(Limits.UNTRUSTED).build();
+        CompiledExpression small = engine.compile("a + 2");
+        assertEquals(3L, small.eval(small.newBindings().set("a", 1L)));
+
+        String[] sources = {
+                chain(" + ", 1001), chain(" + ", 3000), "'" + new String(new char[Limits.UNTRUSTED.maxLength()]) + "'"
+        };
+        for (String source : sources) {
+            try {
+                engine.compile(source);
+                fail("expected a limit error for " + source.length() + " characters");
+            } catch (ParseException e) {
+                assertTrue(e.getMessage(), e.pos >= 0);
+            }
+        }
+
+        CompiledExpression concat = engine.compile("s + s + s + s + s");
+        try {
+            concat.eval(concat.newBindings().set("s", new String(new char[20_000])));
+            fail("expected a string length error");
+        } catch (ParseException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("String is too long"));
+        }
+    }
+
+    @Test
+    public void defaultIsNone() {
+        assertSame(Limits.NONE, Limits.DEFAULT);
+        assertEquals(Limits.NO_TIMEOUT, Limits.DEFAULT.evalTimeoutNanos());
+    }
+
+    @Test
+    public void maxTokensRejectsAtTheFirstExcessToken() {
+        MiniExprEngine engine = MiniExprEngine.builder().limits(Limits.NONE.withMaxTokens(5)).build();
+        try {
+            engine.compile("a + b * c - d");
+            fail("expected a token limit error");
+        } catch (ParseException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("too many tokens (limit 5)"));
+            // 第 6 个 Token 是 '-'
+            assertEquals(10, e.pos);
+        }
+    }
+
+    @Test
+    public void maxStringLengthRejectsConcatenationInEveryMode() throws ParseException {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            MiniExprEngine engine = MiniExprEngine.builder().mode(mode)
+                    .limits(Limits.NONE.withMaxStringLength(10)).build();
+            CompiledExpression expr = engine.compile("s + '-' + s");
+            assertEquals(mode.name(), "abcd-abcd", expr.eval(expr.newBindings().set("s", "abcd")));
+            try {
+                expr.eval(expr.newBindings().set("s", "abcdef"));
+                fail("expected a string length error in " + mode);
+            } catch (ParseException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("String is too long: 13 characters (limit 10)"));
+                assertEquals(mode.name(), 8, e.pos);
+            }
+        }
+    }
+
+    private static final String SLOW_CALLS = "slow() + slow() + slow() + slow()";
+
+    private static MiniExprEngine slowEngine(final AtomicInteger calls, ExecutionMode mode, Limits limits) {
+        FunctionRegistry functions = FunctionRegistry.builtins();
+        functions.register(FunctionDef.object0("slow", new Supplier<Object>() {
+            @Override
+            public Object get() {
+                calls.incrementAndGet();
+                try {
+                    Thread.sleep(60);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return 1L;
+            }
+        }));
+        return MiniExprEngine.builder().mode(mode).functions(functions).limits(limits).build();
+    }
+
+    // 超时在第 calls 次调用返回之后检测到，位置是该次调用
+    private static void assertTimedOutAtLastCall(String context, ParseException e, int calls) {
+        assertTrue(e.getMessage(), e.getMessage().contains("Evaluation timed out (limit 100 ms)"));
+        assertTrue(context + ": " + calls + " calls", calls >= 1 && calls < 4);
+        int pos = -1;
+        for (int i = 0; i < calls; i++) pos = SLOW_CALLS.indexOf("slow", pos + 1);
+        assertEquals(context, pos, e.pos);
+    }
+
+    @Test
+    public void evalTimeoutStopsAfterTheCallThatExceedsIt() throws ParseException {
+        Limits limits = Limits.NONE.withEvalTimeout(100, TimeUnit.MILLISECONDS);
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            AtomicInteger calls = new AtomicInteger();
+            CompiledExpression expr = slowEngine(calls, mode, limits).compile(SLOW_CALLS);
+            try {
+                expr.eval();
+                fail("expected a timeout in " + mode);
+            } catch (ParseException e) {
+                assertTimedOutAtLastCall(mode.name(), e, calls.get());
+            }
+            // 每次求值重新计时
+            calls.set(0);
+            try {
+                expr.evalLong(expr.newBindings());
+                fail("expected a timeout in " + mode);
+            } catch (ParseException e) {
+                assertTimedOutAtLastCall(mode.name(), e, calls.get());
+            }
+        }
+
+        AtomicInteger calls = new AtomicInteger();
+        MiniExprEngine engine = slowEngine(calls, ExecutionMode.INTERPRETER, limits);
+        try {
+            engine.compileAll(Collections.singletonList(SLOW_CALLS)).eval(Collections.<String, Object>emptyMap());
+            fail("expected a timeout in the expression set");
+        } catch (ParseException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("timed out"));
+        }
+        calls.set(0);
+        try {
+            engine.compile(SLOW_CALLS).incremental().eval();
+            fail("expected a timeout in incremental evaluation");
+        } catch (ParseException e) {
+            assertTimedOutAtLastCall("incremental", e, calls.get());
+        }
+    }
+
+    @Test
+    public void withoutTimeoutEveryCallRuns() throws ParseException {
+        AtomicInteger calls = new AtomicInteger();
+        CompiledExpression expr = slowEngine(calls, ExecutionMode.VM, Limits.UNTRUSTED.withoutEvalTimeout())
+                .compile(SLOW_CALLS);
+        assertEquals(4L, expr.eval());
+        assertEquals(4, calls.get());
+    }
+}
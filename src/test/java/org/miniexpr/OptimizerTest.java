@@ -0,0 +1,132 @@
+package org.miniexpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.function.Function;
+
+import org.junit.Test;
+import org.miniexpr.functions.FunctionDef;
+import org.miniexpr.functions.FunctionRegistry;
+import org.miniexpr.nodes.CallNode;
+import org.miniexpr.nodes.ConcatNode;
+import org.miniexpr.nodes.NumberNode;
+
+/**
+ * 优化器的常量折叠与化简不改变结果：值与 Java 类型都与不优化时相同，编译期求值失败的子树仍在求值时以原来的位置报错。
+ * 每种执行方式都检查。
+ */
+public class OptimizerTest {
+
+    // real(x)：声明为 DOUBLE；str(x)：声明为 STRING
+    private static MiniExprEngine engine(ExecutionMode mode, boolean optimize) {
+        FunctionRegistry functions = FunctionRegistry.builtins();
+        functions.register(FunctionDef.object1("real", new Function<Object, Object>() {
+            @Override
+            public Object apply(Object x) {
+                return ((Number) x).doubleValue();
+            }
+        }).pure().returning(ValueType.DOUBLE));
+        functions.register(FunctionDef.object1("str", new Function<Object, Object>() {
+            @Override
+            public Object apply(Object x) {
+                return String.valueOf(x);
+            }
+        }).pure().returning(ValueType.STRING));
+        return MiniExprEngine.builder().mode(mode).optimize(optimize).functions(functions).build();
+    }
+
+    // 求值结果或异常，用于比较
+    private static Object outcome(CompiledExpression expr, Object x) {
+        Bindings b = expr.newBindings();
+        if (x != null && expr.variables().contains("x")) b.set("x", x);
+        try {
+            return expr.eval(b);
+        } catch (ParseException e) {
+            return e;
+        }
+    }
+
+    private static void assertSameOutcome(String context, Object expected, Object actual) {
+        if (expected instanceof ParseException) {
+            if (!(actual instanceof ParseException)) fail(context + ": expected an error but got " + actual);
+            assertEquals(context, ((ParseException) expected).getMessage(), ((ParseException) actual).getMessage());
+            assertEquals(context, ((ParseException) expected).pos, ((ParseException) actual).pos);
+            return;
+        }
+        if (actual instanceof ParseException) fail(context + ": unexpected " + ((ParseException) actual).getMessage());
+        // Double.equals 区分 -0.0 与 0.0、NaN 等于自身；类型不同（1 与 1.0）也不相等
+        assertEquals(context, expected, actual);
+        assertEquals(context, expected.getClass(), actual.getClass());
+    }
+
+    @Test
+    public void simplificationsPreserveValueAndType() throws ParseException {
+        String[] sources = {
+                // -0.0 - 0 为 -0.0；x + 0 不化简
+                "-0.0 - 0", "-0.0 + 0", "real(x) - 0", "real(x) + 0", "real(x) * 1", "1 * real(x)", "real(x) / 1",
+                "x * 1", "x - 0", "-(-x)", "-(-real(x))", "+x", "+real(x)",
+                // !!x 对非布尔的 x 是真值而不是 x 本身
+                "!!x", "!!real(x)", "!!(x == 1)", "!!str(x)",
+                // true && x 为 x 的真值
+                "true && x", "false || x", "x && true", "x || false", "true && real(x)", "true && str(x)",
+                "(x == 1) && true", "true && 0", "true && 'a'", "false && x", "true || x",
+                // 字符串拼接的合并
+                "str(x) + ''", "'' + str(x)", "x + ''", "'a' + x + 1 + 2", "str(x) + 1 + 2.5 + true",
+                "str(x) + -0.0 + 1000.0", "1 + 2 + 'a' + x", "x + 1 + 'a'", "'a' + x + 'b' + x + 1 + ''",
+                "str(x) + (1 + 2) + 'c'", "(x == 1 ? 'y' : 'n') + 1 + 2",
+                // 条件与纯函数调用的折叠
+                "1 > 0 ? x : 2", "abs(-3) + x", "max(1, 2.0) + x", "min(-0.0, 0) + 0",
+        };
+        Object[] values = {null, 0L, 1L, 5L, -0.0, 0.0, 2.5, Double.NaN, "", "s", true, false};
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            MiniExprEngine plain = engine(mode, false);
+            MiniExprEngine optimizing = engine(mode, true);
+            for (String source : sources) {
+                CompiledExpression expected = plain.compile(source);
+                CompiledExpression actual = optimizing.compile(source);
+                for (Object x : values) {
+                    assertSameOutcome(mode + " " + source + " x=" + x, outcome(expected, x), outcome(actual, x));
+                }
+            }
+        }
+
+        // 化简确实发生了
+        MiniExprEngine engine = engine(ExecutionMode.INTERPRETER, true);
+        Node zero = engine.compile("-0.0 - 0").root();
+        assertTrue(zero instanceof NumberNode);
+        assertEquals(-0.0, ((NumberNode) zero).value());
+        assertTrue(engine.compile("real(x) - 0").root() instanceof CallNode);
+        assertTrue(engine.compile("'a' + x + 1 + 2").root() instanceof ConcatNode);
+        assertEquals(ValueType.BOOLEAN, engine.compile("!!x").root().type());
+        assertEquals(ValueType.BOOLEAN, engine.compile("true && x").root().type());
+    }
+
+    @Test
+    public void foldedErrorsAreRaisedAtEvaluationWithTheOriginalPosition() throws ParseException {
+        String[] sources = {
+                "1 / 0", "x + 1 / 0", "'a' + (2 / 0)", "x > 1 ? 1 / 0 : 2", "1 > 0 ? 3 / 0 : x",
+                "'a' * 2", "-'a' + x", "abs('a') + x", "true && 4 / 0 > 1", "str(x) + 1 + 5 / 0",
+        };
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            MiniExprEngine plain = engine(mode, false);
+            MiniExprEngine optimizing = engine(mode, true);
+            for (String source : sources) {
+                // 编译时不报错
+                CompiledExpression actual = optimizing.compile(source);
+                CompiledExpression expected = plain.compile(source);
+                for (Object x : new Object[] {null, 5L, 0L}) {
+                    assertSameOutcome(mode + " " + source + " x=" + x, outcome(expected, x), outcome(actual, x));
+                }
+            }
+
+            CompiledExpression division = optimizing.compile("x + 1 / 0");
+            Object error = outcome(division, 5L);
+            assertTrue(mode + " " + error, error instanceof ParseException);
+            assertTrue(((ParseException) error).getMessage(),
+                    ((ParseException) error).getMessage().startsWith("Division by zero"));
+            assertEquals("x + 1 / 0".indexOf('/'), ((ParseException) error).pos);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package org.miniexpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.miniexpr.functions.FunctionRegistry;
+import org.miniexpr.nodes.BinaryNode;
+import org.miniexpr.nodes.BooleanNode;
+import org.miniexpr.nodes.CallNode;
+import org.miniexpr.nodes.ConditionalNode;
+import org.miniexpr.nodes.LogicalNode;
+import org.miniexpr.nodes.NumberNode;
+import org.miniexpr.nodes.StringNode;
+import org.miniexpr.nodes.UnaryNode;
+import org.miniexpr.nodes.VariableNode;
+
+/**
+ * 解析器（未经优化的 AST）：优先级与结合性、一元运算符链、函数参数，以及错误与限制的位置。
+ */
+public class ParserTest {
+
+    private static Node parse(String source, Limits limits) throws ParseException {
+        return new Parser(new Lexer(source), FunctionRegistry.builtins(), limits).parseExpression();
+    }
+
+    private static Node parse(String source) throws ParseException {
+        return parse(source, Limits.NONE);
+    }
+
+    private static String symbol(TokenType op) {
+        switch (op) {
+            case PLUS: return "+";
+            case MINUS: return "-";
+            case STAR: return "*";
+            case SLASH: return "/";
+            case PERCENT: return "%";
+            case GT: return ">";
+            case GE: return ">=";
+            case LT: return "<";
+            case LE: return "<=";
+            case EQ: return "==";
+            case NE: return "!=";
+            case AND: return "&&";
+            case OR: return "||";
+            case NOT: return "!";
+            default: return op.name();
+        }
+    }
+
+    // 完全加括号的形式，显示树的结构
+    private static String render(Node n) {
+        if (n instanceof NumberNode) return String.valueOf(((NumberNode) n).value());
+        if (n instanceof StringNode) return "'" + ((StringNode) n).value() + "'";
+        if (n instanceof BooleanNode) return String.valueOf(((BooleanNode) n).value());
+        if (n instanceof VariableNode) return ((VariableNode) n).name();
+        if (n instanceof UnaryNode) {
+            UnaryNode u = (UnaryNode) n;
+            return "(" + symbol(u.op()) + render(u.operand()) + ")";
+        }
+        if (n instanceof BinaryNode) {
+            BinaryNode b = (BinaryNode) n;
+            return "(" + render(b.left()) + " " + symbol(b.op()) + " " + render(b.right()) + ")";
+        }
+        if (n instanceof LogicalNode) {
+            LogicalNode l = (LogicalNode) n;
+            return "(" + render(l.left()) + " " + symbol(l.op()) + " " + render(l.right()) + ")";
+        }
+        if (n instanceof ConditionalNode) {
+            ConditionalNode c = (ConditionalNode) n;
+            return "(" + render(c.cond()) + " ? " + render(c.trueExpr()) + " : " + render(c.falseExpr()) + ")";
+        }
+        if (n instanceof CallNode) {
+            CallNode c = (CallNode) n;
+            StringBuilder sb = new StringBuilder(c.function().name()).append('(');
+            for (int i = 0; i < c.arity(); i++) {
+                if (i > 0) sb.append(", ");
+                sb.append(render(c.args().get(i)));
+            }
+            return sb.append(')').toString();
+        }
+        throw new AssertionError("unexpected node " + n.getClass().getSimpleName());
+    }
+
+    private static void assertTree(String expected, String source) throws ParseException {
+        assertEquals(source, expected, render(parse(source)));
+    }
+
+    @Test
+    public void binaryOperatorsFollowPrecedenceAndAssociateLeft() throws ParseException {
+        assertTree("((a + (b * c)) - ((d / e) % f))", "a + b * c - d / e % f");
+        assertTree("((a - b) - c)", "a - b - c");
+        assertTree("((a / b) / c)", "a / b / c");
+        assertTree("(a || (b && (c == (d < (e + 1)))))", "a || b && c == d < e + 1");
+        assertTree("(((a < b) == (c >= d)) != e)", "a < b == c >= d != e");
+        assertTree("((a || b) || c)", "a || b || c");
+        assertTree("((a + b) * c)", "(a + b) * c");
+        assertTree("(a * (b - (c + d)))", "a * (b - ((c + d)))");
+    }
+
+    @Test
+    public void conditionalsAreRightAssociative() throws ParseException {
+        assertTree("(a ? b : (c ? d : e))", "a ? b : c ? d : e");
+        assertTree("(a ? (b ? c : d) : e)", "a ? b ? c : d : e");
+        assertTree("(a ? (b ? c : d) : (e ? f : g))", "a ? b ? c : d : e ? f : g");
+        // 条件是整个 || 表达式，分支可以是任意表达式
+        assertTree("((a || (b && c)) ? (d + 1) : (e * 2))", "a || b && c ? d + 1 : e * 2");
+        assertTree("((x ? 1 : 2) + 3)", "(x ? 1 : 2) + 3");
+        assertTree("(x ? 1 : (2 + 3))", "x ? 1 : 2 + 3");
+    }
+
+    @Test
+    public void unaryOperatorsBindTighterThanBinaryOnes() throws ParseException {
+        assertTree("(-(-a))", "- -a");
+        assertTree("(!(!(!a)))", "!!!a");
+        assertTree("(-(+(-a)))", "-+-a");
+        assertTree("((-a) * b)", "-a * b");
+        assertTree("(a - (-b))", "a - -b");
+        assertTree("((!a) && b)", "!a && b");
+        assertTree("(!(a && b))", "!(a && b)");
+        assertTree("(-2)", "-2");
+    }
+
+    @Test
+    public void callArgumentsAreFullExpressions() throws ParseException {
+        assertTree("max((a + 1), min(b, (c * 2)))", "max(a + 1, min(b, c * 2))");
+        assertTree("abs((-a))", "abs(-a)");
+        assertTree("max((a ? b : c), (d || e))", "max(a ? b : c, d || e)");
+        assertTree("(abs(a) * 2)", "abs(a) * 2");
+        assertTree("(abs((a + b)) + abs(c))", "abs((a + b)) + abs(c)");
+        assertTree("('x' + y)", "'x' + y");
+    }
+
+    private static void assertError(String source, String message, int pos) {
+        try {
+            Node n = parse(source);
+            fail(source + " parsed as " + render(n));
+        } catch (ParseException e) {
+            assertTrue(source + ": " + e.getMessage(), e.getMessage().contains(message));
+            assertEquals(source, pos, e.pos);
+        }
+    }
+
+    @Test
+    public void errorsReportTheOffendingPosition() {
+        assertError("a + ", "Unexpected token", 4);
+        assertError("a + * b", "Unexpected token", 4);
+        assertError("a b", "Unexpected token after expression", 2);
+        assertError("(a + b", "Expected ')' to close '('", 6);
+        assertError("(a + b))", "Unexpected token after expression", 7);
+        assertError("a ? b", "Expected ':' in conditional expression", 5);
+        assertError("a ? b , c", "Expected ':' in conditional expression", 6);
+        assertError("max(a b)", "Expected ')' to close function call", 6);
+        assertError("max(a, )", "Unexpected token", 7);
+        assertError("1 + nope(2)", "Unknown function: nope", 4);
+        assertError("x * abs(1, 2)", "Function 'abs' does not take 2 arguments", 4);
+    }
+
+    @Test
+    public void depthAndNodeLimitsReportTheNodeThatExceedsThem() throws ParseException {
+        Limits depth3 = Limits.NONE.withMaxDepth(3);
+        assertEquals("((a + b) + c)", render(parse("a + b + c", depth3)));
+        // 括号不增加深度
+        assertEquals("(-(-a))", render(parse("-(-(a))", depth3)));
+        try {
+            parse("a + b + c + d", depth3);
+            fail("expected a depth error");
+        } catch (ParseException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("nested too deeply (limit 3)"));
+            assertEquals(10, e.pos);
+        }
+        try {
+            parse("a ? b : c ? d : e ? f : g", depth3);
+            fail("expected a depth error");
+        } catch (ParseException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("nested too deeply (limit 3)"));
+        }
+        try {
+            parse("abs(abs(abs(x)))", depth3);
+            fail("expected a depth error");
+        } catch (ParseException e) {
+            assertEquals(0, e.pos);
+        }
+
+        Limits nodes5 = Limits.NONE.withMaxNodes(5);
+        assertEquals("((a + b) + c)", render(parse("a + b + c", nodes5)));
+        try {
+            parse("a + b + c + d", nodes5);
+            fail("expected a node limit error");
+        } catch (ParseException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("too many nodes (limit 5)"));
+            // 第 6 个节点是 d
+            assertEquals(12, e.pos);
+        }
+    }
+
+    @Test
+    public void deepInputDoesNotRecurseInTheParser() throws ParseException {
+        int n = 100_000;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) sb.append("-(");
+        sb.append('a');
+        for (int i = 0; i < n; i++) sb.append(')');
+        Node node = parse(sb.toString());
+        int depth = 0;
+        while (node instanceof UnaryNode) {
+            node = ((UnaryNode) node).operand();
+            depth++;
+        }
+        assertEquals(n, depth);
+        assertTrue(node instanceof VariableNode);
+    }
+}
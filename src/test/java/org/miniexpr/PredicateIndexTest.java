@@ -0,0 +1,183 @@
+package org.miniexpr;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * 谓词索引与逐个求值的差分测试：结果与异常都与对每个表达式调用 evalBoolean 相同，包括数值、字符串与布尔原子条件、
+ * {@code !=}、常量在左边的比较、NaN 与 -0.0、未绑定的变量以及无法索引的表达式。
+ */
+public class PredicateIndexTest {
+
+    private final MiniExprEngine engine = MiniExprEngine.builder().build();
+
+    // 逐个求值的结果；出错时返回编号最小的表达式的异常
+    private static Object expected(PredicateIndex index, Map<String, Object> vars) {
+        List<Integer> matched = new ArrayList<>();
+        for (int i = 0; i < index.size(); i++) {
+            CompiledExpression expr = index.expression(i);
+            Bindings b = expr.newBindings();
+            for (String name : expr.variables()) {
+                if (vars.containsKey(name)) b.set(name, vars.get(name));
+            }
+            try {
+                if (expr.evalBoolean(b)) matched.add(i);
+            } catch (ParseException e) {
+                return e;
+            }
+        }
+        int[] out = new int[matched.size()];
+        for (int i = 0; i < out.length; i++) out[i] = matched.get(i);
+        return out;
+    }
+
+    private static void assertMatchesLikeEvaluation(PredicateIndex index, Map<String, Object> vars, String context) {
+        Object expected = expected(index, vars);
+        try {
+            int[] actual = index.match(vars);
+            if (expected instanceof ParseException) {
+                fail(context + ": expected " + ((ParseException) expected).getMessage()
+                        + " but matched " + Arrays.toString(actual));
+            }
+            assertArrayEquals(context, (int[]) expected, actual);
+        } catch (ParseException e) {
+            if (!(expected instanceof ParseException)) {
+                fail(context + ": expected " + Arrays.toString((int[]) expected) + " but got " + e.getMessage());
+            }
+            assertEquals(context, ((ParseException) expected).getMessage(), e.getMessage());
+            assertEquals(context, ((ParseException) expected).pos, e.pos);
+        }
+    }
+
+    private static Map<String, Object> vars(Object... pairs) {
+        Map<String, Object> vars = new HashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) vars.put((String) pairs[i], pairs[i + 1]);
+        return vars;
+    }
+
+    @Test
+    public void atomsOfEveryKindMatchLikeEvaluation() throws ParseException {
+        String[] sources = {
+                "n == 1", "n != 1", "n > 2", "n >= 2.5", "n < 0", "n <= 0",
+                // 常量在左边
+                "1 == n", "3 > n", "0 <= n", "2.5 != n",
+                // -0.0 与 0 数值相等
+                "n == 0", "n == -0.0", "-0.0 < n",
+                // 字符串与布尔
+                "s == 'a'", "s != 'a'", "'b' == s", "s == '1'", "f == true", "f != false", "true == f",
+                // 未绑定的变量取变量名本身
+                "u == 'u'", "u != 'u'",
+                // 多个原子条件与其后的其它项
+                "n > 0 && s == 'a'", "n >= 1 && n < 3 && f == true", "s != 'b' && n + 1 > 2",
+                // 无法索引
+                "n > 1 || s == 'a'", "!(n == 1)", "n * 2 == 4", "f"
+        };
+        PredicateIndex index = engine.compileIndex(sources);
+        assertTrue(index.toString(), index.indexedCount() < index.size());
+
+        Object[] numbers = {0L, -0.0, 0.0, 1L, 1.0, 2L, 2.5, 3L, -1L, Double.NaN};
+        Object[] strings = {"a", "b", "1", ""};
+        for (Object n : numbers) {
+            for (Object s : strings) {
+                for (Object f : new Object[] {true, false}) {
+                    assertMatchesLikeEvaluation(index, vars("n", n, "s", s, "f", f), n + "/" + s + "/" + f);
+                }
+            }
+        }
+        // NaN 不等于任何值，大小比较都为假；u 未绑定，u == 'u' 成立
+        assertArrayEquals(new int[] {1, 9, 14, 15, 20, 26},
+                index.match(vars("n", Double.NaN, "s", "b", "f", false)));
+        // 只由原子条件组成的表达式由索引判定，不再求值
+        PredicateIndex.Matcher matcher = index.matcher();
+        matcher.match(vars("n", 5L, "s", "z", "f", false));
+        assertTrue(String.valueOf(matcher.lastEvaluated()), matcher.lastEvaluated() < index.size());
+    }
+
+    @Test
+    public void nonNumericValuesInOrderingAtomsFailLikeEvaluation() throws ParseException {
+        PredicateIndex index = engine.compileIndex("s == 'a'", "f && n > 1", "n > 1", "n == 'x'");
+        // 第 1 个表达式被短路，第 2 个出错
+        assertMatchesLikeEvaluation(index, vars("s", "a", "f", false, "n", "x"), "string n");
+        assertMatchesLikeEvaluation(index, vars("s", "a", "f", true, "n", 2L), "numeric n");
+        // n 未绑定时取 "n"
+        assertMatchesLikeEvaluation(index, vars("s", "b", "f", true), "unbound n");
+    }
+
+    @Test
+    public void randomExpressionsMatchLikeEvaluation() throws ParseException {
+        Random random = new Random(20240917L);
+        String[] numericVars = {"n", "m"};
+        String[] ops = {"==", "!=", ">", ">=", "<", "<="};
+        String[] numberConsts = {"0", "-0.0", "1", "2", "2.5", "-3", "100"};
+        String[] stringConsts = {"'a'", "'b'", "'1'", "''"};
+        String[] tails = {"n + m > 2", "s + 'x' == 'ax'", "m % 2 == 0", "f", "!f"};
+        for (int round = 0; round < 20; round++) {
+            List<String> sources = new ArrayList<>();
+            for (int i = 0; i < 60; i++) {
+                if (random.nextInt(8) == 0) {
+                    // 无法索引：以 || 或其它项开头
+                    sources.add(tails[random.nextInt(tails.length)] + " || n == " + numberConsts[random.nextInt(7)]);
+                    continue;
+                }
+                StringBuilder sb = new StringBuilder();
+                int atoms = 1 + random.nextInt(3);
+                for (int a = 0; a < atoms; a++) {
+                    if (a > 0) sb.append(" && ");
+                    String atom;
+                    switch (random.nextInt(4)) {
+                        case 0:
+                        case 1: {
+                            String v = numericVars[random.nextInt(2)];
+                            String op = ops[random.nextInt(ops.length)];
+                            String c = numberConsts[random.nextInt(numberConsts.length)];
+                            atom = random.nextBoolean() ? v + " " + op + " " + c : c + " " + op + " " + v;
+                            break;
+                        }
+                        case 2: {
+                            String op = random.nextBoolean() ? "==" : "!=";
+                            String c = stringConsts[random.nextInt(stringConsts.length)];
+                            atom = random.nextBoolean() ? "s " + op + " " + c : c + " " + op + " s";
+                            break;
+                        }
+                        default:
+                            atom = (random.nextBoolean() ? "f" : "u") + (random.nextBoolean() ? " == " : " != ")
+                                    + (random.nextBoolean() ? "true" : "'u'");
+                            break;
+                    }
+                    sb.append(atom);
+                }
+                if (random.nextInt(3) == 0) sb.append(" && ").append(tails[random.nextInt(tails.length)]);
+                sources.add(sb.toString());
+            }
+            PredicateIndex index = engine.compileIndex(sources);
+            PredicateIndex.Matcher matcher = index.matcher();
+
+            Object[] numbers = {0L, -0.0, 1L, 2L, 2.5, 3L, -3L, 100.0, Double.NaN, "2", "a"};
+            Object[] strings = {"a", "b", "1", "", 1L};
+            for (int record = 0; record < 200; record++) {
+                Map<String, Object> vars = new HashMap<>();
+                // 每个变量有时不绑定
+                if (random.nextInt(10) != 0) vars.put("n", numbers[random.nextInt(numbers.length)]);
+                if (random.nextInt(10) != 0) vars.put("m", numbers[random.nextInt(numbers.length)]);
+                if (random.nextInt(10) != 0) vars.put("s", strings[random.nextInt(strings.length)]);
+                if (random.nextInt(10) != 0) vars.put("f", random.nextBoolean());
+                if (random.nextInt(4) == 0) vars.put("u", "u");
+                assertMatchesLikeEvaluation(index, vars, "round " + round + " " + vars);
+                // 复用的 Matcher 与一次性匹配结果相同
+                Object expected = expected(index, vars);
+                if (expected instanceof int[]) assertArrayEquals((int[]) expected, matcher.match(vars));
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.miniexpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.miniexpr.async.AsyncResolver;
+import org.miniexpr.batch.Columns;
+import org.miniexpr.functions.FunctionDef;
+import org.miniexpr.functions.FunctionRegistry;
+
+/**
+ * {@code &&}、{@code ||} 与三元运算的短路：已能决定结果时，右边（未选中的分支）不求值、其中的变量不请求。
+ * 每种执行方式都在开启与关闭优化时检查。
+ */
+public class ShortCircuitTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private List<MiniExprEngine> engines() {
+        FunctionRegistry functions = FunctionRegistry.builtins();
+        // 不是纯函数，优化器不会折叠；被调用时计数并失败
+        functions.register(FunctionDef.object0("boom", new Supplier<Object>() {
+            @Override
+            public Object get() {
+                calls.incrementAndGet();
+                throw new IllegalStateException("right-hand side must not be evaluated");
+            }
+        }));
+        List<MiniExprEngine> engines = new ArrayList<>();
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            for (boolean optimize : new boolean[]{true, false}) {
+                engines.add(MiniExprEngine.builder().mode(mode).optimize(optimize).functions(functions).build());
+            }
+        }
+        return engines;
+    }
+
+    private Object eval(MiniExprEngine engine, String source) throws ParseException {
+        CompiledExpression expr = engine.compile(source);
+        return expr.eval(expr.newBindings().set("yes", true).set("no", false).set("n", 0L));
+    }
+
+    @Test
+    public void rightSideIsNotEvaluatedWhenLeftDecides() throws ParseException {
+        for (MiniExprEngine engine : engines()) {
+            assertEquals(engine.toString(), true, eval(engine, "yes || boom()"));
+            assertEquals(engine.toString(), false, eval(engine, "no && boom()"));
+            assertEquals(engine.toString(), false, eval(engine, "yes && no && boom() && boom()"));
+            assertEquals(engine.toString(), true, eval(engine, "no || n > -1 || boom()"));
+            assertEquals(engine.toString(), 1L, eval(engine, "yes ? 1 : boom()"));
+            assertEquals(engine.toString(), 2L, eval(engine, "n != 0 ? boom() : 2"));
+            assertEquals(engine.toString(), true, eval(engine, "(no && boom()) == false"));
+        }
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    public void rightSideIsEvaluatedWhenLeftDoesNotDecide() {
+        for (MiniExprEngine engine : engines()) {
+            for (String source : new String[]{"no || boom()", "yes && boom()", "no ? 1 : boom()"}) {
+                int before = calls.get();
+                try {
+                    eval(engine, source);
+                    fail(source + " should have failed in " + engine);
+                } catch (ParseException e) {
+                    assertTrue(e.getMessage(), e.getMessage().contains("must not be evaluated"));
+                }
+                assertEquals(source, before + 1, calls.get());
+            }
+        }
+    }
+
+    @Test
+    public void batchRowsDecidedByLeftSkipRightSide() throws ParseException {
+        for (MiniExprEngine engine : engines()) {
+            CompiledExpression expr = engine.compile("x > 0 || boom()");
+            BitSet out = new BitSet();
+            expr.evalBatch(new Columns(3).add("x", new long[]{1, 2, 3}), out);
+            assertEquals(3, out.cardinality());
+        }
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    public void asyncDoesNotFetchVariablesOnTheSkippedSide() throws Exception {
+        final List<String> requested = Collections.synchronizedList(new ArrayList<String>());
+        AsyncResolver resolver = new AsyncResolver() {
+            @Override
+            public CompletableFuture<Object> resolve(String name) {
+                requested.add(name);
+                return CompletableFuture.<Object>completedFuture(name.startsWith("t") ? Boolean.TRUE : Boolean.FALSE);
+            }
+        };
+        for (MiniExprEngine engine : engines()) {
+            requested.clear();
+            assertEquals(true, engine.compile("t1 || f1 || f2").evalAsync(resolver).get());
+            assertEquals(Collections.singletonList("t1"), requested);
+
+            requested.clear();
+            assertEquals(false, engine.compile("f1 ? t1 : f2 && t2").evalAsync(resolver).get());
+            assertEquals(Arrays.asList("f1", "f2"), requested);
+        }
+    }
+}
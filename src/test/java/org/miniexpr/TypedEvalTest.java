@@ -0,0 +1,116 @@
+package org.miniexpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+import org.miniexpr.functions.FunctionDef;
+import org.miniexpr.functions.FunctionRegistry;
+
+/**
+ * 基本类型求值路径（evalLong / evalDouble / evalBoolean）：与对象路径结果一致、子树只求值一次、求值时不分配对象。
+ */
+public class TypedEvalTest {
+
+    private static MiniExprEngine engine(final AtomicInteger calls) {
+        FunctionRegistry functions = FunctionRegistry.builtins();
+        functions.register(FunctionDef.object1("big", new Function<Object, Object>() {
+            @Override
+            public Object apply(Object v) {
+                calls.incrementAndGet();
+                return v;
+            }
+        }).returning(ValueType.NUMBER));
+        return MiniExprEngine.builder().functions(functions).build();
+    }
+
+    @Test
+    public void boxingFallbackDoesNotReevaluateOperands() throws ParseException {
+        AtomicInteger calls = new AtomicInteger();
+        CompiledExpression expr = engine(calls).compile("big(a) * 100000000");
+        Bindings b = expr.newBindings().set("a", 4_000_000_000_000L);
+
+        // 结果超出 long 范围，装箱为 Long 时饱和
+        assertEquals((double) Long.MAX_VALUE, expr.evalDouble(b), 0.0);
+        assertEquals(1, calls.get());
+        assertEquals(Long.MAX_VALUE, expr.eval(b));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void negativeZeroFollowsOperandTypes() throws ParseException {
+        AtomicInteger calls = new AtomicInteger();
+        CompiledExpression expr = engine(calls).compile("-(big(x) % 2) * 1");
+        // Long 操作数：-4 % 2 装箱为 Long 0，取负仍为 0
+        assertEquals(0, Double.compare(0.0, expr.evalDouble(expr.newBindings().set("x", -4L))));
+        // Double 操作数：-4.0 % 2 为 -0.0，取负为 0.0
+        assertEquals(0, Double.compare(0.0, expr.evalDouble(expr.newBindings().set("x", -4.0))));
+        assertEquals(0, Double.compare(-0.0, expr.evalDouble(expr.newBindings().set("x", 4.0))));
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void typedResultsMatchObjectPath() throws ParseException {
+        String[] sources = {
+                "a % b", "-(a % b)", "a * b - c", "(a / b) % 2", "-(a * b) + c * 1000000000000000000000.5",
+                "a * 9223372036854775807 / b",
+                "(a - c) * (b - c) % 3", "-(-(a / b))", "a * b * c * 1000000000000"
+        };
+        Object[] values = {0L, -4L, 2L, 7L, -3L, -4.0, 0.0, -0.0, 2.5, 9.0e18, Long.MIN_VALUE, Long.MAX_VALUE};
+        MiniExprEngine plain = MiniExprEngine.builder().optimize(false).build();
+        for (String source : sources) {
+            CompiledExpression expr = plain.compile(source);
+            for (Object a : values) {
+                for (Object b : values) {
+                    Bindings bindings = expr.newBindings().set("a", a).set("b", b).set("c", 3L);
+                    double expected;
+                    try {
+                        expected = ((Number) expr.eval(bindings)).doubleValue();
+                    } catch (ParseException e) {
+                        continue;
+                    }
+                    double actual = expr.evalDouble(bindings);
+                    assertEquals(source + " with a=" + a + ", b=" + b, 0, Double.compare(expected, actual));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void numericPathDoesNotAllocate() throws ParseException {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        // 变量的静态类型未知：a + b 可能是字符串拼接，只能按对象求值，因此这里只用其余的运算
+        CompiledExpression number = MiniExpr.compile("(a * 2 - b) % 7 - -c / 4 * (a - 1)");
+        CompiledExpression condition = MiniExpr.compile("a * 2 - b > 1.5 && c - a * b < 100 || !(a == b)");
+        Bindings nb = number.newBindings().set("a", 3L).set("b", 4.5).set("c", 12345L);
+        Bindings cb = condition.newBindings().set("a", 3L).set("b", 4.5).set("c", 12345L);
+
+        int iterations = 200_000;
+        double sink = 0;
+        // 预热，使 JIT 编译完成后再计量
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < iterations; i++) {
+                sink += number.evalDouble(nb);
+                if (condition.evalBoolean(cb)) sink++;
+            }
+        }
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < iterations; i++) {
+            sink += number.evalDouble(nb);
+            if (condition.evalBoolean(cb)) sink++;
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        // 计量本身与偶发的 JIT 重编译会分配少量内存，远小于每次求值一个对象（16 字节）的量
+        assertEquals("bytes allocated over " + iterations + " evaluations (sink " + sink + ")",
+                true, allocated < iterations);
+    }
+}
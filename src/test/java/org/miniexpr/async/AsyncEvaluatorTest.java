@@ -0,0 +1,188 @@
+package org.miniexpr.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Test;
+import org.miniexpr.MiniExpr;
+import org.miniexpr.MiniExprEngine;
+import org.miniexpr.ParseException;
+import org.miniexpr.functions.FunctionDef;
+import org.miniexpr.functions.FunctionRegistry;
+
+/**
+ * 用注入延迟的内存桩解析器检查异步求值：只请求走到的变量、同一轮的请求同时进行、每个变量只请求一次。
+ */
+public class AsyncEvaluatorTest {
+    private static final long LATENCY_MS = 150;
+
+    private final ScheduledExecutorService timer = Executors.newScheduledThreadPool(4);
+
+    @After
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /** 每个请求在 LATENCY_MS 之后完成，记录请求顺序与同时进行的请求数的峰值 */
+    private final class StubResolver implements AsyncResolver {
+        final Map<String, Object> values = new HashMap<>();
+        final List<String> requested = Collections.synchronizedList(new ArrayList<String>());
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+
+        StubResolver put(String name, Object value) {
+            values.put(name, value);
+            return this;
+        }
+
+        @Override
+        public CompletableFuture<Object> resolve(final String name) {
+            requested.add(name);
+            int now = inFlight.incrementAndGet();
+            while (true) {
+                int p = peak.get();
+                if (now <= p || peak.compareAndSet(p, now)) break;
+            }
+            final CompletableFuture<Object> f = new CompletableFuture<>();
+            timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    inFlight.decrementAndGet();
+                    if (values.get(name) instanceof RuntimeException) {
+                        f.completeExceptionally((RuntimeException) values.get(name));
+                    } else {
+                        f.complete(values.containsKey(name) ? values.get(name) : AsyncResolver.UNBOUND);
+                    }
+                }
+            }, LATENCY_MS, TimeUnit.MILLISECONDS);
+            return f;
+        }
+    }
+
+    @Test
+    public void independentFetchesRunConcurrently() throws Exception {
+        StubResolver resolver = new StubResolver().put("a", 1L).put("b", 2L).put("c", 3L);
+        long start = System.nanoTime();
+        Object result = MiniExpr.compile("a * 100 + b * 10 + c").evalAsync(resolver).get();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(123L, result);
+        assertEquals(3, resolver.peak.get());
+        // 三个请求在同一轮中同时进行：总耗时接近一次延迟，而不是三次
+        assertTrue("took " + elapsedMs + " ms", elapsedMs < 3 * LATENCY_MS);
+    }
+
+    @Test
+    public void onlyReachedBranchIsFetched() throws Exception {
+        StubResolver resolver = new StubResolver().put("vip", true).put("discount", 0.2).put("price", 10L);
+        assertEquals(0.2, MiniExpr.compile("vip ? discount : price * 0.05").evalAsync(resolver).get());
+        assertEquals(Arrays.asList("vip", "discount"), resolver.requested);
+        assertEquals(1, resolver.peak.get());
+    }
+
+    @Test
+    public void shortCircuitSkipsRightSideVariables() throws Exception {
+        StubResolver resolver = new StubResolver().put("a", 0L).put("b", 5L).put("c", true);
+        assertEquals(true, MiniExpr.compile("a > 0 && b > 0 || c").evalAsync(resolver).get());
+        assertEquals(Arrays.asList("a", "c"), resolver.requested);
+    }
+
+    @Test
+    public void eachVariableIsFetchedOnce() throws Exception {
+        StubResolver resolver = new StubResolver().put("a", 3L);
+        assertEquals(15L, MiniExpr.compile("a * a + a + a").evalAsync(resolver).get());
+        assertEquals(Collections.singletonList("a"), resolver.requested);
+    }
+
+    @Test
+    public void unboundVariableKeepsIdentifierSemantics() throws Exception {
+        StubResolver resolver = new StubResolver();
+        assertEquals(true, MiniExpr.compile("mode == 'mode'").evalAsync(resolver).get());
+    }
+
+    @Test
+    public void resolverFailureFailsTheEvaluation() throws Exception {
+        StubResolver resolver = new StubResolver().put("a", 1L).put("b", new IllegalStateException("store down"));
+        try {
+            MiniExpr.compile("a + b").evalAsync(resolver).get();
+            fail("expected failure");
+        } catch (ExecutionException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void evaluationErrorsMatchSynchronousEvaluation() throws Exception {
+        StubResolver resolver = new StubResolver().put("a", 1L).put("b", 0L);
+        try {
+            MiniExpr.compile("a / b").evalAsync(resolver).get();
+            fail("expected failure");
+        } catch (ExecutionException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof ParseException);
+            assertEquals(2, ((ParseException) e.getCause()).pos);
+        }
+    }
+
+    @Test
+    public void impureConditionIsEvaluatedOnceAndBothBranchesAreFetched() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        FunctionRegistry functions = FunctionRegistry.builtins();
+        // 非纯函数：依次返回 true、false、true ...
+        functions.register(FunctionDef.object0("flip", new Supplier<Object>() {
+            @Override
+            public Object get() {
+                return calls.incrementAndGet() % 2 == 1;
+            }
+        }));
+        MiniExprEngine engine = MiniExprEngine.builder().functions(functions).build();
+
+        StubResolver resolver = new StubResolver().put("a", 1L).put("b", 2L).put("x", 5L);
+        assertEquals(1L, engine.compile("x > 0 && flip() ? a : b").evalAsync(resolver).get());
+        assertEquals(1, calls.get());
+        assertEquals(Arrays.asList("x", "a", "b"), resolver.requested);
+
+        calls.set(0);
+        resolver.requested.clear();
+        assertEquals(true, engine.compile("flip() || a > b").evalAsync(resolver).get());
+        assertEquals(1, calls.get());
+        assertEquals(Arrays.asList("a", "b"), resolver.requested);
+    }
+
+    @Test
+    public void decidedConditionIsReusedInLaterRounds() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        FunctionRegistry functions = FunctionRegistry.builtins();
+        functions.register(FunctionDef.object1("positive", new Function<Object, Object>() {
+            @Override
+            public Object apply(Object v) {
+                calls.incrementAndGet();
+                return ((Long) v) > 0;
+            }
+        }).pure());
+        MiniExprEngine engine = MiniExprEngine.builder().functions(functions).build();
+
+        // 第一轮取 x，第二轮决定条件并取 a，第三轮决定内层条件；最后求值时再调用一次
+        StubResolver resolver = new StubResolver().put("x", 5L).put("a", true).put("c", 3L);
+        assertEquals(3L, engine.compile("positive(x) ? (a ? c : d) : e").evalAsync(resolver).get());
+        assertEquals(Arrays.asList("x", "a", "c"), resolver.requested);
+        assertEquals(2, calls.get());
+    }
+}
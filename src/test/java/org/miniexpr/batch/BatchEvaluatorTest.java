@@ -0,0 +1,166 @@
+package org.miniexpr.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+import org.miniexpr.Bindings;
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.MiniExprEngine;
+import org.miniexpr.ParseException;
+
+/**
+ * 列式批量求值与逐行求值的差分测试：混合类型的列上结果（包括 Long / Double 装箱）、异常与出错前已写入的行
+ * 都与逐行调用 {@link CompiledExpression#eval(Bindings)} 相同。
+ */
+public class BatchEvaluatorTest {
+
+    // 超过两个分块，且最后一个分块不满
+    private static final int ROWS = BatchEvaluator.CHUNK_SIZE * 2 + 300;
+    private static final long EXACT = 1L << 53;
+
+    private final MiniExprEngine engine = MiniExprEngine.builder().build();
+
+    // a、b：long 列，含 0、负数与 2^53 附近的值；x：double 列，含小数、-0.0 与 NaN；
+    // f：boolean 列；o：Object 列，混合 Long、Double、String 与 Boolean；d：不为 0 的 long 列
+    private static Columns columns(long seed) {
+        Random random = new Random(seed);
+        long[] a = new long[ROWS], b = new long[ROWS], d = new long[ROWS];
+        double[] x = new double[ROWS];
+        boolean[] f = new boolean[ROWS];
+        Object[] o = new Object[ROWS];
+        long[] edges = {0, 1, -1, 2, 3, -7, EXACT - 1, EXACT, EXACT + 1, -EXACT, -EXACT - 3, Long.MAX_VALUE / 3};
+        double[] specials = {0.0, -0.0, Double.NaN, 0.5, -2.5, 3.0, 1e17, -1e-3};
+        for (int i = 0; i < ROWS; i++) {
+            a[i] = random.nextInt(4) == 0 ? edges[random.nextInt(edges.length)] : random.nextInt(201) - 100;
+            b[i] = random.nextInt(4) == 0 ? edges[random.nextInt(edges.length)] : random.nextInt(21) - 10;
+            d[i] = random.nextInt(19) - 9;
+            if (d[i] == 0) d[i] = 4;
+            x[i] = random.nextInt(3) == 0 ? specials[random.nextInt(specials.length)] : (random.nextInt(2001) - 1000) / 8.0;
+            f[i] = random.nextBoolean();
+            switch (random.nextInt(5)) {
+                case 0: o[i] = (long) (random.nextInt(11) - 5); break;
+                case 1: o[i] = random.nextInt(7) / 2.0; break;
+                case 2: o[i] = random.nextBoolean() ? "k" : "v"; break;
+                case 3: o[i] = random.nextBoolean(); break;
+                default: o[i] = edges[random.nextInt(edges.length)]; break;
+            }
+        }
+        return new Columns(ROWS).add("a", a).add("b", b).add("d", d).add("x", x).add("f", f).add("o", o);
+    }
+
+    private static Bindings row(CompiledExpression expr, Columns columns, int i) {
+        Bindings b = expr.newBindings();
+        for (String name : expr.variables()) {
+            Object column = columns.column(name);
+            if (column instanceof long[]) b.set(name, ((long[]) column)[i]);
+            else if (column instanceof double[]) b.set(name, ((double[]) column)[i]);
+            else if (column instanceof boolean[]) b.set(name, ((boolean[]) column)[i]);
+            else if (column != null) b.set(name, ((Object[]) column)[i]);
+        }
+        return b;
+    }
+
+    private void assertSameAsPerRow(String source, Columns columns) throws ParseException {
+        CompiledExpression expr = engine.compile(source);
+        Object[] batch = new Object[ROWS];
+        double[] doubles = new double[ROWS];
+        BitSet bits = new BitSet();
+        expr.evalBatch(columns, batch);
+        expr.evalBatch(columns, bits);
+        boolean numeric = true;
+        for (int i = 0; i < ROWS; i++) {
+            Object expected = expr.eval(row(expr, columns, i));
+            // equals 区分 Long 与 Double、0.0 与 -0.0
+            assertEquals(source + " at row " + i, expected, batch[i]);
+            assertEquals(source + " truthiness at row " + i, expr.evalBoolean(row(expr, columns, i)), bits.get(i));
+            numeric &= expected instanceof Number;
+        }
+        if (!numeric) return;
+        expr.evalBatch(columns, doubles);
+        for (int i = 0; i < ROWS; i++) {
+            assertEquals(source + " as double at row " + i,
+                    expr.evalDouble(row(expr, columns, i)), doubles[i], 0.0);
+        }
+    }
+
+    @Test
+    public void matchesPerRowEvaluationOnMixedColumns() throws ParseException {
+        String[] sources = {
+                // long / double 的装箱：整除得 Long，否则 Double；有 Double 操作数时总是 Double
+                "a / d", "b / d", "x / d", "a / d + x", "(a + b) / d * 2",
+                // 2^53 附近的取模（整数取模的快速路径与回退到 double 取模）与除数为 0 的 NaN
+                "a % b", "a % d", "b % 7", "x % d", "a % b + 1", "-a % d",
+                "a + b", "a - b * 3", "a * x", "-x", "+a", "-(a - b)",
+                // 比较、相等与短路
+                "a > b", "x <= a", "a == b", "x != x", "o == 'k'", "o == a", "f == (a > 0)",
+                "a % 3 == 0 && x > 0", "!f || o == 'k'", "f && a", "o || x",
+                // 三元运算合并不同类型的分支
+                "f ? a : x", "a > 0 ? a / 2 : x", "f ? o : b", "x > 0 ? 'p' + a : !f",
+                // Object 列与混合类型的运算
+                "a + o", "'v' + a + x + f", "o + '-' + b",
+                // 函数调用逐行求值
+                "abs(a) + 1", "max(a, x) % 7", "min(b, d) / d"
+        };
+        for (long seed = 0; seed < 3; seed++) {
+            Columns columns = columns(seed);
+            for (String source : sources) assertSameAsPerRow(source, columns);
+        }
+    }
+
+    @Test
+    public void shortCircuitAvoidsErrorsThatPerRowEvaluationAvoids() throws ParseException {
+        Columns columns = columns(7);
+        assertSameAsPerRow("b == 0 || a / b > 1", columns);
+        assertSameAsPerRow("b != 0 && a / b > 1", columns);
+        assertSameAsPerRow("b == 0 ? x : a / b", columns);
+    }
+
+    // 第 failing 行出错：批量求值抛出与逐行求值相同的异常，之前的行已写入
+    private void assertFailsLikePerRow(String source, Columns columns, int failing) throws ParseException {
+        CompiledExpression expr = engine.compile(source);
+        ParseException expected = null;
+        for (int i = 0; i < ROWS && expected == null; i++) {
+            try {
+                expr.eval(row(expr, columns, i));
+                assertTrue(source + " row " + i + " should fail", i != failing);
+            } catch (ParseException e) {
+                assertEquals(source, failing, i);
+                expected = e;
+            }
+        }
+        Object[] out = new Object[ROWS];
+        try {
+            expr.evalBatch(columns, out);
+            fail("expected " + expected.getMessage());
+        } catch (ParseException e) {
+            assertEquals(source, expected.getMessage(), e.getMessage());
+            assertEquals(source, expected.pos, e.pos);
+        }
+        for (int i = 0; i < failing; i++) {
+            assertEquals(source + " at row " + i, expr.eval(row(expr, columns, i)), out[i]);
+        }
+    }
+
+    @Test
+    public void midChunkErrorsMatchPerRowEvaluation() throws ParseException {
+        int failing = BatchEvaluator.CHUNK_SIZE + 500;
+        long[] n = new long[ROWS];
+        long[] z = new long[ROWS];
+        Object[] s = new Object[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            n[i] = i - 3;
+            z[i] = i == failing ? 0 : (i % 5) + 1;
+            s[i] = i == failing ? "text" : (Object) (long) i;
+        }
+        Columns columns = new Columns(ROWS).add("n", n).add("z", z).add("s", s);
+        assertFailsLikePerRow("n / z", columns, failing);
+        assertFailsLikePerRow("1 + n / (z * 1.0)", columns, failing);
+        assertFailsLikePerRow("n >= 0 ? s * 2 : 0", columns, failing);
+        assertFailsLikePerRow("abs(n) - s", columns, failing);
+    }
+}
@@ -0,0 +1,123 @@
+package org.miniexpr.batch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.MiniExprEngine;
+import org.miniexpr.ParseException;
+import org.miniexpr.functions.FunctionDef;
+import org.miniexpr.functions.FunctionRegistry;
+
+/**
+ * 多线程批量求值：出错时等正在执行的任务结束后才抛出，调用线程在执行器的线程中等待时不会卡住。
+ */
+public class ParallelEvaluatorTest {
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    // work(x)：x 为 0 时立即失败，否则等待 50 ms 后返回 x
+    private CompiledExpression work() throws ParseException {
+        FunctionRegistry functions = FunctionRegistry.builtins();
+        functions.register(FunctionDef.object1("work", new Function<Object, Object>() {
+            @Override
+            public Object apply(Object x) {
+                calls.incrementAndGet();
+                if (((Number) x).longValue() == 0) throw new IllegalStateException("row failed");
+                active.incrementAndGet();
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    active.decrementAndGet();
+                }
+                return x;
+            }
+        }));
+        return MiniExprEngine.builder().functions(functions).build().compile("work(x)");
+    }
+
+    private static Columns rows(int n, int failing) {
+        long[] x = new long[n];
+        for (int i = 0; i < n; i++) x[i] = i == failing ? 0 : i + 1;
+        return new Columns(n).add("x", x);
+    }
+
+    @Test
+    public void failureWaitsForRunningChunks() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            ParallelEvaluator parallel = new ParallelEvaluator(pool, 1);
+            CompiledExpression expr = work();
+            try {
+                parallel.eval(expr, rows(64, 1), new Object[64]);
+                fail("expected failure");
+            } catch (ParseException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("row failed"));
+            }
+            // 返回时没有仍在执行的任务，之后也不会再开始新的任务
+            assertEquals(0, active.get());
+            int settled = calls.get();
+            Thread.sleep(200);
+            assertEquals(settled, calls.get());
+            assertTrue("calls " + settled, settled < 64);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void callerInsideForkJoinPoolDoesNotStarve() throws Exception {
+        final ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            final CompiledExpression expr = work();
+            final Columns columns = rows(8, -1);
+            // 唯一的工作线程自己发起并行求值：子任务只能由它在等待时执行
+            Object[] out = pool.submit(new Callable<Object[]>() {
+                @Override
+                public Object[] call() throws Exception {
+                    Object[] out = new Object[8];
+                    new ParallelEvaluator(pool, 2).eval(expr, columns, out);
+                    return out;
+                }
+            }).get();
+            assertArrayEquals(new Object[]{1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L}, out);
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void callerInsideSaturatedPoolDoesNotDeadlock() throws Exception {
+        final ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            final CompiledExpression expr = work();
+            final Columns columns = rows(8, -1);
+            Object[] out = pool.submit(new Callable<Object[]>() {
+                @Override
+                public Object[] call() throws Exception {
+                    Object[] out = new Object[8];
+                    new ParallelEvaluator(pool, 2).eval(expr, columns, out);
+                    return out;
+                }
+            }).get();
+            assertArrayEquals(new Object[]{1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L}, out);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
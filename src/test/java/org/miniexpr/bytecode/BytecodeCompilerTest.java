@@ -0,0 +1,56 @@
+package org.miniexpr.bytecode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.miniexpr.Lexer;
+import org.miniexpr.Node;
+import org.miniexpr.ParseException;
+import org.miniexpr.Parser;
+
+/**
+ * 字节码编译：生成过程栈溢出时返回 null（由调用方回退为解释执行），每个生成类有自己的类加载器。
+ */
+public class BytecodeCompilerTest {
+
+    private static Node parse(String source) throws ParseException {
+        return new Parser(new Lexer(source)).parseExpression();
+    }
+
+    @Test
+    public void stackOverflowWhileGeneratingFallsBack() throws Exception {
+        StringBuilder sb = new StringBuilder("x");
+        for (int i = 0; i < 2000; i++) sb.append(" + x");
+        final Node root = parse(sb.toString());
+        final BytecodeCompiler compiler = new BytecodeCompiler();
+        final AtomicReference<Object> result = new AtomicReference<>();
+        // 栈很小的线程上，按 AST 递归的生成过程一定会栈溢出；方法体远小于 class 文件的限制
+        Thread thread = new Thread(null, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    result.set(compiler.compile(root) == null ? "fallback" : "compiled");
+                } catch (Throwable e) {
+                    result.set(e);
+                }
+            }
+        }, "small-stack", 64 * 1024);
+        thread.start();
+        thread.join();
+        assertEquals("fallback", result.get());
+        // 之后同一个编译器照常可用
+        assertNotNull(compiler.compile(parse("x + 1")));
+    }
+
+    @Test
+    public void eachGeneratedClassHasItsOwnLoader() throws ParseException {
+        BytecodeCompiler compiler = new BytecodeCompiler();
+        Node a = compiler.compile(parse("x + 1"));
+        Node b = compiler.compile(parse("x * 2"));
+        assertNotSame(a.getClass().getClassLoader(), b.getClass().getClassLoader());
+    }
+}
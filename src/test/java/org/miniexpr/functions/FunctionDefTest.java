@@ -0,0 +1,167 @@
+package org.miniexpr.functions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+import java.util.function.LongUnaryOperator;
+
+import org.junit.Test;
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.ExecutionMode;
+import org.miniexpr.MiniExprEngine;
+import org.miniexpr.ParseException;
+import org.miniexpr.ValueType;
+
+/**
+ * 函数调用：参数个数检查、纯函数的编译期求值、数值函数的基本类型实现与声明的结果类型。
+ */
+public class FunctionDefTest {
+
+    private final AtomicInteger longCalls = new AtomicInteger();
+    private final AtomicInteger doubleCalls = new AtomicInteger();
+    private final AtomicInteger objectCalls = new AtomicInteger();
+
+    // half(x)：long 实现整除，double 实现除以 2；id(x) 原样返回并声明为 LONG，twice(x) 为纯函数
+    private FunctionRegistry functions() {
+        FunctionRegistry functions = FunctionRegistry.builtins();
+        functions.register(FunctionDef.numeric1("half", new LongUnaryOperator() {
+            @Override
+            public long applyAsLong(long x) {
+                longCalls.incrementAndGet();
+                return x / 2;
+            }
+        }, new DoubleUnaryOperator() {
+            @Override
+            public double applyAsDouble(double x) {
+                doubleCalls.incrementAndGet();
+                return x / 2;
+            }
+        }));
+        functions.register(FunctionDef.object1("id", new Function<Object, Object>() {
+            @Override
+            public Object apply(Object x) {
+                return x;
+            }
+        }).returning(ValueType.LONG));
+        functions.register(FunctionDef.object1("real", new Function<Object, Object>() {
+            @Override
+            public Object apply(Object x) {
+                return ((Number) x).doubleValue();
+            }
+        }).returning(ValueType.DOUBLE));
+        functions.register(FunctionDef.object1("twice", new Function<Object, Object>() {
+            @Override
+            public Object apply(Object x) {
+                objectCalls.incrementAndGet();
+                return ((Number) x).longValue() * 2;
+            }
+        }).pure());
+        functions.register(FunctionDef.varargs("count", 1, 3, new Function<Object[], Object>() {
+            @Override
+            public Object apply(Object[] args) {
+                return (long) args.length;
+            }
+        }));
+        return functions;
+    }
+
+    private void assertArityError(MiniExprEngine engine, String source, String message) {
+        try {
+            engine.compile(source);
+            fail("expected an arity error for " + source);
+        } catch (ParseException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+            assertEquals(source, source.indexOf(message.substring(message.indexOf('\'') + 1, message.lastIndexOf('\''))),
+                    e.pos);
+        }
+    }
+
+    @Test
+    public void callsWithTheWrongNumberOfArgumentsAreRejected() throws ParseException {
+        MiniExprEngine engine = MiniExprEngine.builder().functions(functions()).build();
+        assertArityError(engine, "1 + half(1, 2)", "Function 'half' does not take 2 arguments");
+        assertArityError(engine, "half()", "Function 'half' does not take 0 arguments");
+        assertArityError(engine, "x * count()", "Function 'count' does not take 0 arguments");
+        assertArityError(engine, "count(1, 2, 3, 4)", "Function 'count' does not take 4 arguments");
+        assertEquals(3L, engine.compile("count(1, 'a', x)").eval());
+        try {
+            FunctionDef.varargs("bad", 2, 1, null);
+            fail("expected an invalid arity range");
+        } catch (IllegalArgumentException expected) {
+            // 期望
+        }
+    }
+
+    @Test
+    public void pureCallsWithConstantArgumentsAreFoldedAtCompileTime() throws ParseException {
+        MiniExprEngine engine = MiniExprEngine.builder().functions(functions()).build();
+        CompiledExpression folded = engine.compile("twice(3) + x");
+        assertEquals(1, objectCalls.get());
+        for (int i = 0; i < 3; i++) assertEquals(7L, folded.eval(folded.newBindings().set("x", 1L)));
+        assertEquals(1, objectCalls.get());
+
+        // 参数不是常量时每次求值调用
+        CompiledExpression dynamic = engine.compile("twice(x)");
+        assertEquals(4L, dynamic.eval(dynamic.newBindings().set("x", 2L)));
+        assertEquals(2, objectCalls.get());
+
+        // 不优化时不折叠
+        CompiledExpression unoptimized = MiniExprEngine.builder().functions(functions()).optimize(false).build()
+                .compile("twice(3)");
+        assertEquals(2, objectCalls.get());
+        assertEquals(6L, unoptimized.eval());
+        assertEquals(3, objectCalls.get());
+    }
+
+    @Test
+    public void numericArgumentsUseThePrimitiveForms() throws ParseException {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            longCalls.set(0);
+            doubleCalls.set(0);
+            MiniExprEngine engine = MiniExprEngine.builder().mode(mode).functions(functions()).build();
+
+            CompiledExpression longs = engine.compile("half(id(a)) + 1");
+            assertEquals(ValueType.LONG, longs.root().type());
+            assertEquals(mode.name(), 3L, longs.eval(longs.newBindings().set("a", 5L)));
+            assertEquals(mode.name(), 3L, longs.evalLong(longs.newBindings().set("a", 5L)));
+            assertEquals(mode.name(), 2, longCalls.get());
+            assertEquals(mode.name(), 0, doubleCalls.get());
+
+            CompiledExpression doubles = engine.compile("half(real(a))");
+            assertEquals(ValueType.DOUBLE, doubles.root().type());
+            assertEquals(mode.name(), 2.5, doubles.eval(doubles.newBindings().set("a", 5L)));
+            assertEquals(mode.name(), 2.5, doubles.evalDouble(doubles.newBindings().set("a", 5L)), 0.0);
+            assertEquals(mode.name(), 2, doubleCalls.get());
+
+            // 静态类型未知时按运行时的参数类型选择实现
+            CompiledExpression any = engine.compile("half(a)");
+            assertEquals(ValueType.NUMBER, any.root().type());
+            assertEquals(mode.name(), 2L, any.eval(any.newBindings().set("a", 5L)));
+            assertEquals(mode.name(), 2.5, any.eval(any.newBindings().set("a", 5.0)));
+        }
+    }
+
+    @Test
+    public void declaredResultTypeOverridesTheInferredOne() throws ParseException {
+        FunctionDef half = functions().lookup("half", 1);
+        assertEquals(ValueType.LONG, half.resultType(new ValueType[]{ValueType.LONG}));
+        assertEquals(ValueType.DOUBLE, half.resultType(new ValueType[]{ValueType.DOUBLE}));
+        assertEquals(ValueType.NUMBER, half.resultType(new ValueType[]{ValueType.ANY}));
+
+        FunctionDef declared = half.returning(ValueType.DOUBLE);
+        assertEquals(ValueType.DOUBLE, declared.resultType(new ValueType[]{ValueType.LONG}));
+        assertEquals(ValueType.DOUBLE, declared.resultType(new ValueType[]{ValueType.ANY}));
+
+        // 声明为 DOUBLE 后，LONG 参数也走 double 实现
+        FunctionRegistry functions = functions();
+        functions.register(declared);
+        CompiledExpression expr = MiniExprEngine.builder().functions(functions).build().compile("half(id(a))");
+        assertEquals(ValueType.DOUBLE, expr.root().type());
+        assertEquals(2.5, expr.eval(expr.newBindings().set("a", 5L)));
+        assertEquals(0, longCalls.get());
+    }
+}
@@ -0,0 +1,196 @@
+package org.miniexpr.incremental;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+import org.miniexpr.Bindings;
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.MiniExprEngine;
+import org.miniexpr.ParseException;
+import org.miniexpr.functions.FunctionDef;
+import org.miniexpr.functions.FunctionRegistry;
+
+/**
+ * 增量求值：只重新计算依赖已变化变量的节点，结果始终与完整求值相同；非纯函数每次调用，
+ * 原地修改的变量值需要 invalidate()。
+ */
+public class IncrementalEvaluatorTest {
+
+    private final AtomicInteger sizeCalls = new AtomicInteger();
+    private final AtomicInteger tickCalls = new AtomicInteger();
+
+    // size(x)：纯函数，返回列表长度；tick(x)：非纯函数，返回 x
+    private MiniExprEngine engine() {
+        FunctionRegistry functions = FunctionRegistry.builtins();
+        functions.register(FunctionDef.object1("size", new Function<Object, Object>() {
+            @Override
+            public Object apply(Object x) {
+                sizeCalls.incrementAndGet();
+                return (long) ((List<?>) x).size();
+            }
+        }).pure());
+        functions.register(FunctionDef.object1("tick", new Function<Object, Object>() {
+            @Override
+            public Object apply(Object x) {
+                tickCalls.incrementAndGet();
+                return x;
+            }
+        }));
+        return MiniExprEngine.builder().functions(functions).build();
+    }
+
+    @Test
+    public void onlyNodesReadingChangedVariablesAreRecomputed() throws ParseException {
+        IncrementalEvaluator inc = engine().compile("(a + b) * (c - d)").incremental();
+        assertEquals(3, inc.nodeCount());
+        inc.set("a", 1L).set("b", 2L).set("c", 10L).set("d", 4L);
+        assertEquals(18L, inc.eval());
+        assertEquals(3, inc.lastRecomputed());
+
+        assertEquals(18L, inc.eval());
+        assertEquals(0, inc.lastRecomputed());
+
+        // 与原值相等的赋值不使结果作废
+        inc.set("a", 1L);
+        assertEquals(18L, inc.eval());
+        assertEquals(0, inc.lastRecomputed());
+
+        inc.set("a", 2L);
+        assertEquals(24L, inc.eval());
+        assertEquals(2, inc.lastRecomputed());
+
+        inc.set("d", 5L);
+        assertEquals(20L, inc.eval());
+        assertEquals(2, inc.lastRecomputed());
+
+        inc.set("b", 3L).set("c", 7L);
+        assertEquals(10L, inc.eval());
+        assertEquals(3, inc.lastRecomputed());
+
+        // 表达式中没有的变量被忽略
+        inc.set("zzz", 1L);
+        assertEquals(10L, inc.eval());
+        assertEquals(0, inc.lastRecomputed());
+
+        assertEquals(7, inc.evaluations());
+        assertEquals(10, inc.totalRecomputed());
+    }
+
+    @Test
+    public void setAllAndUnsetInvalidateTheirDependents() throws ParseException {
+        CompiledExpression expr = engine().compile("a + b > 5 ? 'big ' + c : c + ' small'");
+        IncrementalEvaluator inc = expr.incremental();
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("a", 1L);
+        vars.put("b", 2L);
+        vars.put("c", "x");
+        vars.put("unused", 0L);
+        inc.setAll(vars);
+        assertEquals("x small", inc.eval());
+        int full = inc.lastRecomputed();
+
+        // 只有 b 变化：条件重新计算，另一个分支第一次计算
+        vars.put("b", 9L);
+        inc.setAll(vars);
+        assertEquals("big x", inc.eval());
+        assertEquals(4, inc.lastRecomputed());
+
+        inc.setAll(vars);
+        assertEquals("big x", inc.eval());
+        assertEquals(0, inc.lastRecomputed());
+
+        // 回到原来的分支：c + ' small' 的结果沿用
+        vars.put("b", 2L);
+        inc.setAll(vars);
+        assertEquals("x small", inc.eval());
+        assertEquals(3, inc.lastRecomputed());
+
+        // 取消绑定：未绑定的变量求值为标识符文本，与完整求值相同
+        int c = expr.variables().indexOf("c");
+        inc.unset(c);
+        Bindings b = expr.newBindings().set("a", 1L).set("b", 2L);
+        assertEquals(expr.eval(b), inc.eval());
+        assertEquals(2, inc.lastRecomputed());
+        inc.unset(c);
+        inc.eval();
+        assertEquals(0, inc.lastRecomputed());
+        assertEquals(4, full);
+    }
+
+    @Test
+    public void impureCallsAreRecomputedEveryTime() throws ParseException {
+        IncrementalEvaluator inc = engine().compile("tick(a) + b * c").incremental();
+        inc.set("a", 1L).set("b", 2L).set("c", 3L);
+        assertEquals(7L, inc.eval());
+        assertEquals(3, inc.lastRecomputed());
+        assertEquals(1, tickCalls.get());
+
+        // b * c 沿用，调用与包含它的 + 重新计算
+        assertEquals(7L, inc.eval());
+        assertEquals(2, inc.lastRecomputed());
+        assertEquals(2, tickCalls.get());
+    }
+
+    @Test
+    public void invalidateRecomputesAfterInPlaceMutation() throws ParseException {
+        IncrementalEvaluator inc = engine().compile("size(items) * 2").incremental();
+        List<Object> items = new ArrayList<>();
+        items.add("x");
+        inc.set("items", items);
+        assertEquals(2L, inc.eval());
+        assertEquals(1, sizeCalls.get());
+
+        // 原地修改：值仍是同一个对象，结果沿用（纯函数不再调用）
+        items.add("y");
+        inc.set("items", items);
+        assertEquals(2L, inc.eval());
+        assertEquals(1, sizeCalls.get());
+
+        inc.invalidate();
+        assertEquals(4L, inc.eval());
+        assertEquals(inc.nodeCount(), inc.lastRecomputed());
+        assertEquals(2, sizeCalls.get());
+    }
+
+    @Test
+    public void randomUpdatesMatchFullEvaluation() throws ParseException {
+        String[] sources = {
+                "(a + b) * (c - d) / (e == 0 ? 1 : e)",
+                "a > b && c > d || e % 3 == 0",
+                "'k' + a + (b > c ? b : c) + d * 1.5",
+                "max(a, b) + min(c, d) - abs(e)"
+        };
+        String[] names = {"a", "b", "c", "d", "e"};
+        Random random = new Random(42);
+        for (String source : sources) {
+            CompiledExpression expr = engine().compile(source);
+            IncrementalEvaluator inc = expr.incremental();
+            Bindings full = expr.newBindings();
+            for (String name : names) {
+                inc.set(name, 1L);
+                full.set(name, 1L);
+            }
+            for (int step = 0; step < 500; step++) {
+                int changes = 1 + random.nextInt(2);
+                for (int i = 0; i < changes; i++) {
+                    String name = names[random.nextInt(names.length)];
+                    Object value = random.nextInt(4) == 0
+                            ? (Object) (random.nextInt(9) / 2.0) : (Object) (long) random.nextInt(9);
+                    inc.set(name, value);
+                    full.set(name, value);
+                }
+                assertEquals(source + " step " + step, expr.eval(full), inc.eval());
+                assertTrue(source, inc.lastRecomputed() <= inc.nodeCount());
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.miniexpr.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.MiniExpr;
+import org.miniexpr.MiniExprEngine;
+import org.miniexpr.ParseException;
+
+/**
+ * 作为引擎监听器的计数、表达式个数上限、JMX 属性与操作，以及按单次求值平均耗时的排序。
+ */
+public class ExpressionMetricsTest {
+
+    @Test
+    public void slowestSortsByMeanEvaluationTime() throws ParseException {
+        ExpressionMetrics metrics = new ExpressionMetrics();
+        CompiledExpression frequent = MiniExpr.compile("a + 1");
+        CompiledExpression slow = MiniExpr.compile("b * 2");
+        CompiledExpression medium = MiniExpr.compile("c - 3");
+        // 总耗时：frequent 100 us、slow 20 us、medium 5 us；平均：100 ns、10 us、1 us
+        for (int i = 0; i < 1000; i++) metrics.evaluated(frequent, 100);
+        for (int i = 0; i < 2; i++) metrics.evaluated(slow, 10_000);
+        for (int i = 0; i < 5; i++) metrics.evaluated(medium, 1_000);
+
+        List<ExpressionStats> slowest = metrics.slowest(3);
+        assertEquals(3, slowest.size());
+        assertEquals("b * 2", slowest.get(0).source());
+        assertEquals("c - 3", slowest.get(1).source());
+        assertEquals("a + 1", slowest.get(2).source());
+        assertEquals(1, metrics.slowest(1).size());
+        assertEquals(true, metrics.getSlowestExpressions()[0].startsWith("mean 10000 ns"));
+    }
+
+    @Test
+    public void listenerCountsCompilationsEvaluationsAndErrors() throws ParseException {
+        ExpressionMetrics metrics = new ExpressionMetrics();
+        MiniExprEngine engine = MiniExprEngine.builder().listener(metrics).build();
+        CompiledExpression expr = engine.compile("a / b");
+        expr.eval(expr.newBindings().set("a", 6L).set("b", 2L));
+        expr.evalDouble(expr.newBindings().set("a", 6L).set("b", 3L));
+        try {
+            expr.eval(expr.newBindings().set("a", 6L).set("b", 0L));
+            fail("expected division by zero");
+        } catch (ParseException expected) {
+        }
+        try {
+            engine.compile("a +");
+            fail("expected a syntax error");
+        } catch (ParseException expected) {
+        }
+
+        ExpressionStats stats = metrics.stats("a / b");
+        assertEquals(1, stats.compilations());
+        assertEquals(2, stats.evaluations());
+        assertEquals(1, stats.errors());
+        assertTrue(stats.lastError(), stats.lastError().contains("Division by zero"));
+        assertEquals(1, metrics.stats("a +").compileErrors());
+        assertEquals(2, metrics.getTrackedExpressions());
+        assertEquals(2, metrics.failing(10).size());
+    }
+
+    @Test
+    public void expressionsBeyondTheCapAreCountedAsUntracked() throws ParseException {
+        ExpressionMetrics metrics = new ExpressionMetrics(1);
+        MiniExprEngine engine = MiniExprEngine.builder().listener(metrics).cacheSize(0).build();
+        for (int i = 0; i < 5; i++) {
+            CompiledExpression expr = engine.compile("x + " + i);
+            expr.eval(expr.newBindings().set("x", 1L));
+        }
+        assertEquals(1, metrics.getTrackedExpressions());
+        assertEquals(1, metrics.stats("x + 0").evaluations());
+        assertNull(metrics.stats("x + 1"));
+        assertNull(metrics.untracked().source());
+        assertEquals(4, metrics.untracked().evaluations());
+        assertEquals(5, metrics.getEvaluations());
+    }
+
+    @Test
+    public void mbeanExposesTotalsAndReset() throws Exception {
+        ExpressionMetrics metrics = new ExpressionMetrics();
+        CompiledExpression expr = MiniExpr.compile("a * 2");
+        metrics.evaluated(expr, 500);
+        metrics.evaluated(expr, 1500);
+
+        String name = "test-" + System.nanoTime();
+        ObjectName objectName = metrics.register(name);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertEquals(2L, server.getAttribute(objectName, "Evaluations"));
+            assertEquals(2000L, server.getAttribute(objectName, "TotalEvalNanos"));
+            assertEquals(1, server.getAttribute(objectName, "TrackedExpressions"));
+            String[] slowest = (String[]) server.getAttribute(objectName, "SlowestExpressions");
+            assertEquals(1, slowest.length);
+            assertTrue(slowest[0], slowest[0].endsWith(": a * 2"));
+            server.invoke(objectName, "reset", null, null);
+            assertEquals(0L, server.getAttribute(objectName, "Evaluations"));
+        } finally {
+            metrics.unregister(name);
+        }
+        assertEquals(false, server.isRegistered(objectName));
+    }
+}
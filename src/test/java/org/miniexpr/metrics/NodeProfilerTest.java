@@ -0,0 +1,69 @@
+package org.miniexpr.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.MiniExprEngine;
+import org.miniexpr.ParseException;
+
+/**
+ * 逐节点计时：计数按源码登记，重新编译同一表达式时复用，登记的源码个数有上限。
+ */
+public class NodeProfilerTest {
+
+    private static void eval(CompiledExpression expr, long a) throws ParseException {
+        expr.eval(expr.newBindings().set("a", a).set("b", 2L));
+    }
+
+    @Test
+    public void recompilingTheSameSourceReusesItsProfile() throws ParseException {
+        NodeProfiler profiler = new NodeProfiler(1);
+        MiniExprEngine engine = MiniExprEngine.builder().profiler(profiler).cacheSize(0).build();
+        for (int i = 0; i < 1000; i++) eval(engine.compile("a * b + a"), i);
+
+        List<NodeProfile> roots = profiler.roots();
+        assertEquals(1, roots.size());
+        NodeProfile root = roots.get(0);
+        assertEquals("BinaryNode(+)", root.label());
+        assertEquals(1000, root.calls());
+        assertEquals(1, root.children().size());
+        assertEquals(1000, root.children().get(0).calls());
+        assertEquals(2, profiler.hotspots(10).size());
+    }
+
+    @Test
+    public void differentShapeForTheSameSourceReplacesTheProfile() throws ParseException {
+        NodeProfiler profiler = new NodeProfiler(1);
+        MiniExprEngine optimized = MiniExprEngine.builder().profiler(profiler).build();
+        MiniExprEngine plain = MiniExprEngine.builder().profiler(profiler).optimize(false).build();
+        // 优化后 2 * 3 折叠为常量，只剩一个计时节点；不优化时有两个
+        eval(optimized.compile("a + 2 * 3"), 1);
+        assertEquals(1, profiler.hotspots(10).size());
+        eval(plain.compile("a + 2 * 3"), 1);
+        assertEquals(1, profiler.roots().size());
+        assertEquals(2, profiler.hotspots(10).size());
+        assertEquals(1, profiler.roots().get(0).calls());
+    }
+
+    @Test
+    public void registeredSourcesAreCapped() throws ParseException {
+        NodeProfiler profiler = new NodeProfiler(1, 2);
+        MiniExprEngine engine = MiniExprEngine.builder().profiler(profiler).cacheSize(0).build();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 100; i++) eval(engine.compile("a + " + i), i);
+        }
+        assertEquals(2, profiler.roots().size());
+        for (NodeProfile root : profiler.roots()) assertEquals(3, root.calls());
+
+        NodeProfile before = profiler.roots().get(0);
+        profiler.reset();
+        assertSame(before, profiler.roots().get(0));
+        assertEquals(0, before.calls());
+        profiler.clear();
+        assertEquals(0, profiler.roots().size());
+    }
+}
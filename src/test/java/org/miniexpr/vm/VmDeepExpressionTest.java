@@ -0,0 +1,39 @@
+package org.miniexpr.vm;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.miniexpr.CompiledExpression;
+import org.miniexpr.ExecutionMode;
+import org.miniexpr.MiniExprEngine;
+import org.miniexpr.ParseException;
+
+/**
+ * VM 执行方式编译并求值嵌套很深的表达式，开启优化时也不会栈溢出（优化器溢出时保留未优化的 AST）。
+ */
+public class VmDeepExpressionTest {
+    private static final int DEPTH = 100_000;
+
+    // prefix 重复 n 次、x、suffix 重复 n 次
+    private static String wrap(String prefix, String suffix, int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) sb.append(prefix);
+        sb.append('x');
+        for (int i = 0; i < n; i++) sb.append(suffix);
+        return sb.toString();
+    }
+
+    @Test
+    public void deepExpressionsCompileWithAndWithoutOptimizer() throws ParseException {
+        for (boolean optimize : new boolean[]{true, false}) {
+            MiniExprEngine engine = MiniExprEngine.builder().mode(ExecutionMode.VM).optimize(optimize).build();
+
+            CompiledExpression sum = engine.compile(wrap("(", " + 1) * 1", DEPTH));
+            assertEquals(ExecutionMode.VM, sum.mode());
+            assertEquals(DEPTH + 2L, sum.eval(sum.newBindings().set("x", 2L)));
+
+            CompiledExpression negated = engine.compile(wrap("-(", ")", DEPTH + 1));
+            assertEquals(-2L, negated.eval(negated.newBindings().set("x", 2L)));
+        }
+    }
+}